@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 
 /**
@@ -45,8 +46,17 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, logRemovalListener, null);
+    }
+
+    /**
+     * @param compactionIoBudget the budget shared by the compactions of the bookie, or null to throttle the
+     *                           compaction at the configured rate on its own
+     */
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                CompactionIoBudget compactionIoBudget) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = new Throttler(conf, compactionIoBudget);
         this.logRemovalListener = logRemovalListener;
     }
 
@@ -67,18 +77,31 @@ public abstract class AbstractLogCompactor {
      */
     public static class Throttler {
         private final RateLimiter rateLimiter;
+        // Shared by all the throttlers of the bookie, instead of rateLimiter, when not null
+        private final CompactionIoBudget budget;
         private final boolean isThrottleByBytes;
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final AtomicLong acquiredBytes = new AtomicLong();
 
-        Throttler(ServerConfiguration conf) {
+        Throttler(ServerConfiguration conf, CompactionIoBudget budget) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
-            this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
-                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            if (budget != null) {
+                this.budget = budget;
+                this.rateLimiter = null;
+            } else {
+                this.budget = null;
+                this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
+                    ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            }
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
         boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
-            return rateLimiter.tryAcquire(this.isThrottleByBytes ? permits : 1, timeout, unit);
+            int toAcquire = this.isThrottleByBytes ? permits : 1;
+            if (budget != null) {
+                return budget.tryAcquire(toAcquire, timeout, unit);
+            }
+            return rateLimiter.tryAcquire(toAcquire, timeout, unit);
         }
 
         // GC thread will check the status for the rate limiter
@@ -99,6 +122,14 @@ public abstract class AbstractLogCompactor {
                     // ignore
                 }
             }
+            acquiredBytes.addAndGet(permits);
+        }
+
+        /**
+         * @return the bytes acquired by {@link #acquire(int)} since the throttler was created
+         */
+        long getAcquiredBytes() {
+            return acquiredBytes.get();
         }
 
         public void cancelledAcquire() {
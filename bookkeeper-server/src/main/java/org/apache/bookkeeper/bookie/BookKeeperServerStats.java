@@ -117,6 +117,17 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_PIPELINE_ASSEMBLE = "JOURNAL_PIPELINE_ASSEMBLE";
+    String JOURNAL_PIPELINE_BUFFER_WAIT = "JOURNAL_PIPELINE_BUFFER_WAIT";
+    String JOURNAL_PIPELINE_WRITE_QUEUE = "JOURNAL_PIPELINE_WRITE_QUEUE";
+    String JOURNAL_PIPELINE_WRITE = "JOURNAL_PIPELINE_WRITE";
+    String JOURNAL_GROUP_COMMIT_WINDOW = "JOURNAL_GROUP_COMMIT_WINDOW";
+    String JOURNAL_WRITE_RATE = "JOURNAL_WRITE_RATE";
+    String JOURNAL_ROUTED_LEDGERS = "JOURNAL_ROUTED_LEDGERS";
+    String JOURNAL_UNFLUSHED_ACKED_BYTES = "JOURNAL_UNFLUSHED_ACKED_BYTES";
+    String JOURNAL_UNFLUSHED_ACKED_AGE = "JOURNAL_UNFLUSHED_ACKED_AGE";
+    String JOURNAL_ACK_ON_ENQUEUE = "JOURNAL_ACK_ON_ENQUEUE";
+    String JOURNAL_ACK_ON_ENQUEUE_WINDOW_FULL = "JOURNAL_ACK_ON_ENQUEUE_WINDOW_FULL";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -158,6 +169,8 @@ public interface BookKeeperServerStats {
     String COMPACT_RUNTIME = "COMPACT_RUNTIME";
     String EXTRACT_META_RUNTIME = "EXTRACT_META_RUNTIME";
     String ENTRY_LOG_COMPACT_RATIO = "ENTRY_LOG_COMPACT_RATIO";
+    String GC_METADATA_CALLS = "GC_METADATA_CALLS";
+    String GC_KNOWN_ALIVE_LEDGERS_SKIPPED = "GC_KNOWN_ALIVE_LEDGERS_SKIPPED";
 
     // Index Related Counters
     String INDEX_INMEM_ILLEGAL_STATE_RESET = "INDEX_INMEM_ILLEGAL_STATE_RESET";
@@ -33,6 +33,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -50,6 +51,9 @@ import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -63,6 +67,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirExcepti
 import org.apache.bookkeeper.bookie.stats.BookieStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
@@ -76,6 +81,7 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.BookKeeperConstants;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
@@ -98,6 +104,8 @@ public class BookieImpl implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    // Routes the ledgers to the journals by load, null to route them by ledger id
+    private final JournalRouter journalRouter;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -107,6 +115,9 @@ public class BookieImpl implements Bookie {
     public static final long METAENTRY_ID_FORCE_LEDGER  = -0x4000;
     static final long METAENTRY_ID_LEDGER_EXPLICITLAC  = -0x8000;
 
+    // Max size of the replayed journal records of a journal directory waiting to be added to the ledger storage
+    private static final int JOURNAL_REPLAY_MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
     private final LedgerDirsManager ledgerDirsManager;
     protected final Supplier<BookieServiceInfo> bookieServiceInfoProvider;
     private final LedgerDirsManager indexDirsManager;
@@ -438,6 +449,12 @@ public class BookieImpl implements Bookie {
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
 
+        if (conf.getJournalLoadBalancing() && journals.size() > 1) {
+            journalRouter = new JournalRouter(journals, statsLogger.scope(JOURNAL_SCOPE));
+        } else {
+            journalRouter = null;
+        }
+
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
 
@@ -484,6 +501,9 @@ public class BookieImpl implements Bookie {
             @Override
             public void ledgerDeleted(long ledgerId) {
                 masterKeyCache.remove(ledgerId);
+                if (journalRouter != null) {
+                    journalRouter.ledgerDeleted(ledgerId);
+                }
             }
         };
 
@@ -611,13 +631,55 @@ public class BookieImpl implements Bookie {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+        int replayThreads = conf.getJournalReplayThreads();
+        if (replayThreads > 1) {
+            replayInParallel(scanner, replayThreads);
+        } else {
+            for (Journal journal : journals) {
+                replay(journal, scanner);
+            }
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
+    /**
+     * Replay the journal directories in parallel, each one on its own thread. The replayed entries are added to the
+     * ledger storage by a pool of threads, the entries of a ledger by the same thread, in order.
+     */
+    private void replayInParallel(JournalScanner scanner, int replayThreads) throws IOException {
+        OrderedExecutor replayExecutor = OrderedExecutor.newBuilder().numThreads(replayThreads)
+                .name("BookieJournalReplay").build();
+        ExecutorService readExecutor = Executors.newFixedThreadPool(journals.size(),
+                new DefaultThreadFactory("BookieJournalReplayReader"));
+        try {
+            List<Future<?>> replays = new ArrayList<>(journals.size());
+            for (Journal journal : journals) {
+                replays.add(readExecutor.submit(() -> {
+                    replay(journal, new ParallelJournalScanner(scanner, replayExecutor,
+                            JOURNAL_REPLAY_MAX_PENDING_BYTES));
+                    return null;
+                }));
+            }
+            for (Future<?> replay : replays) {
+                try {
+                    replay.get();
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException) {
+                        throw (IOException) ee.getCause();
+                    }
+                    throw new IOException(ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journals", ie);
+        } finally {
+            readExecutor.shutdownNow();
+            replayExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Replay journal files and updates journal's in-memory lastLogMark object.
      *
@@ -641,18 +703,33 @@ public class BookieImpl implements Bookie {
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
         // system calls done.
+        long startNanos = MathUtils.nowInNano();
+        long[] replayed = new long[2];
+        JournalScanner countingScanner = (journalVersion, offset, entry) -> {
+            replayed[0]++;
+            replayed[1] += entry.remaining();
+            scanner.process(journalVersion, offset, entry);
+        };
         for (Long id : logs) {
             long logPosition = 0L;
             if (id == markedLog.getLogFileId()) {
                 logPosition = markedLog.getLogFileOffset();
             }
             LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner, conf.isSkipReplayJournalInvalidRecord());
+            long scanOffset = journal.scanJournal(id, logPosition, countingScanner,
+                    conf.isSkipReplayJournalInvalidRecord());
+            if (scanner instanceof ParallelJournalScanner) {
+                // The entries must have reached the ledger storage before moving the mark past them
+                ((ParallelJournalScanner) scanner).awaitProcessed();
+            }
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
             journal.setLastLogMark(id, scanOffset);
         }
+        LOG.info("Replayed {} records ({} bytes) from {} journal files of {} in {} ms", replayed[0], replayed[1],
+                logs.size(), journal.getJournalDirectory(),
+                TimeUnit.NANOSECONDS.toMillis(MathUtils.elapsedNanos(startNanos)));
     }
 
     @Override
@@ -669,6 +746,7 @@ public class BookieImpl implements Bookie {
         dirsMonitor.start();
 
         // replay journals
+        long phaseStartNanos = MathUtils.nowInNano();
         try {
             readJournal();
         } catch (IOException | BookieException ioe) {
@@ -677,7 +755,10 @@ public class BookieImpl implements Bookie {
             return;
         }
 
+        long replayNanos = MathUtils.elapsedNanos(phaseStartNanos);
+
         // Do a fully flush after journal replay
+        phaseStartNanos = MathUtils.nowInNano();
         try {
             syncThread.requestFlush().get();
         } catch (InterruptedException e) {
@@ -689,6 +770,9 @@ public class BookieImpl implements Bookie {
             return;
         }
 
+        long flushNanos = MathUtils.elapsedNanos(phaseStartNanos);
+
+        phaseStartNanos = MathUtils.nowInNano();
         if (conf.isLocalConsistencyCheckOnStartup()) {
             LOG.info("Running local consistency check on startup prior to accepting IO.");
             List<LedgerStorage.DetectedInconsistency> errors = null;
@@ -709,7 +793,12 @@ public class BookieImpl implements Bookie {
             }
         }
 
-        LOG.info("Finished reading journal, starting bookie");
+        long consistencyCheckNanos = MathUtils.elapsedNanos(phaseStartNanos);
+
+        LOG.info("Finished reading journal, starting bookie. Startup phases: journal replay {} ms,"
+                + " flush after replay {} ms, local consistency check {} ms",
+                TimeUnit.NANOSECONDS.toMillis(replayNanos), TimeUnit.NANOSECONDS.toMillis(flushNanos),
+                TimeUnit.NANOSECONDS.toMillis(consistencyCheckNanos));
 
 
         /*
@@ -937,6 +1026,9 @@ public class BookieImpl implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
+        if (journalRouter != null) {
+            return journalRouter.getJournal(ledgerId);
+        }
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
@@ -1162,6 +1254,33 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    public ByteBufList readEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        int entriesSize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading up to {} entries from {}@{}", maxCount, firstEntryId, ledgerId);
+            }
+            ByteBufList entries = handle.readEntries(firstEntryId, maxCount, maxSize);
+            entriesSize = entries.readableBytes();
+            bookieStats.getReadBytes().addCount(entriesSize);
+            success = true;
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entriesSize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(entriesSize);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -119,6 +119,11 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         boolean shouldForceWrite = false;
         synchronized (this) {
             int len = src.readableBytes();
+            // When the data does not fit in the write buffer, the buffer has to be flushed anyway, so write the
+            // data along with it instead of copying it
+            if (len > writeBuffer.writableBytes() && writeGathered(src)) {
+                copied = len;
+            }
             while (copied < len) {
                 int bytesToCopy = Math.min(src.readableBytes() - copied, writeBuffer.writableBytes());
                 writeBuffer.writeBytes(src, src.readerIndex() + copied, bytesToCopy);
@@ -144,6 +149,31 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Write the data in the write buffer followed by the data in src to the {@link FileChannel} with a single gather
+     * write, without copying src. Callers are expected to synchronize appropriately.
+     *
+     * @return false if src is not written, because it is not in direct memory, in which case the file channel would
+     *         copy it to a temporary direct buffer anyway
+     * @throws IOException if the write fails.
+     */
+    protected boolean writeGathered(ByteBuf src) throws IOException {
+        if (!src.isDirect()) {
+            return false;
+        }
+        ByteBuffer[] srcBuffers = src.nioBuffers();
+        ByteBuffer[] buffers = new ByteBuffer[srcBuffers.length + 1];
+        buffers[0] = writeBuffer.internalNioBuffer(0, writeBuffer.writerIndex());
+        System.arraycopy(srcBuffers, 0, buffers, 1, srcBuffers.length);
+        long remaining = (long) writeBuffer.writerIndex() + src.readableBytes();
+        while (remaining > 0) {
+            remaining -= fileChannel.write(buffers);
+        }
+        writeBuffer.clear();
+        writeBufferStartPosition.set(fileChannel.position());
+        return true;
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
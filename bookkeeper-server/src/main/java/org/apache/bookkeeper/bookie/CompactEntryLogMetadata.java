@@ -0,0 +1,403 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
+
+/**
+ * An {@link EntryLogMetadata} which keeps its ledgers in a direct buffer, in a few bytes per ledger, instead of a
+ * hash map on the heap.
+ *
+ * <p>The ledgers are sorted by id, and encoded in blocks of {@value #BLOCK_SIZE} ledgers. The buffer holds:
+ * <pre>
+ * tombstones: a bit per ledger, set when the ledger is removed
+ * index:      per block, 8-bytes::first-ledger-id, 4-bytes::offset-of-the-block
+ * blocks:     per ledger, varint::ledger-id-delta (except for the first ledger of the block), varint::size
+ * </pre>
+ *
+ * <p>Removing a ledger only sets its tombstone. The ledgers added after the encoding, which is rare as the metadata
+ * of an entry log is complete once the entry log is flushed, are kept in a hash map on the heap.
+ *
+ * <p>The metadata is reference counted: it must be {@link #release() released} when it is no longer used, and a
+ * reader which may race with the release must {@link #tryRetain() retain} it first. Reading the ledgers after the
+ * buffer is released fails with an {@link io.netty.util.IllegalReferenceCountException}.
+ */
+public class CompactEntryLogMetadata extends EntryLogMetadata {
+    static final int BLOCK_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    // ledger id, 0, size, 0, as ArrayGroupSort sorts groups of 4 longs
+    private static final int GROUP_SIZE = 4;
+
+    /**
+     * Visitor of the encoded ledgers.
+     */
+    private interface EncodedLedgerVisitor {
+        void accept(int index, long ledgerId, long size);
+    }
+
+    private final ByteBuf buffer;
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+    private final int numLedgers;
+    // Encoded ledgers which are not removed, and added ledgers which are not encoded
+    private int numLiveLedgers;
+    // Ledgers added after the encoding, or extra size of encoded ledgers, null if none
+    private ConcurrentLongLongHashMap addedLedgers;
+
+    private CompactEntryLogMetadata(EntryLogMetadata meta, ByteBuf buffer) {
+        this(meta.getEntryLogId(), meta.getTotalSize(), meta.getRemainingSize(), (int) meta.getLedgersCount(),
+                buffer);
+    }
+
+    private CompactEntryLogMetadata(long entryLogId, long totalSize, long remainingSize, int numLedgers,
+                                    ByteBuf buffer) {
+        super(entryLogId, totalSize, remainingSize);
+        this.buffer = buffer;
+        this.numLedgers = numLedgers;
+        this.numLiveLedgers = numLedgers;
+    }
+
+    /**
+     * Encode the ledgers of a metadata in a buffer of the given allocator.
+     */
+    public static CompactEntryLogMetadata copyOf(EntryLogMetadata meta, ByteBufAllocator allocator) {
+        return new CompactEntryLogMetadata(meta, encodeLedgers(meta, allocator));
+    }
+
+    static ByteBuf encodeLedgers(EntryLogMetadata meta, ByteBufAllocator allocator) {
+        int n = (int) meta.getLedgersCount();
+        long[] groups = new long[n * GROUP_SIZE];
+        int[] count = {0};
+        meta.forEachLedger((ledgerId, size) -> {
+            if (count[0] < n) {
+                groups[count[0] * GROUP_SIZE] = ledgerId;
+                groups[count[0] * GROUP_SIZE + 2] = size;
+            }
+            count[0]++;
+        });
+        if (count[0] != n) {
+            throw new IllegalStateException("Ledgers of entry log " + meta.getEntryLogId()
+                    + " modified while encoding");
+        }
+        ArrayGroupSort.sort(groups);
+
+        int numBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int dataOffset = tombstonesSize(n) + numBlocks * INDEX_ENTRY_SIZE;
+        int size = dataOffset;
+        for (int i = 0; i < n; i++) {
+            if (i % BLOCK_SIZE != 0) {
+                size += varintSize(groups[i * GROUP_SIZE] - groups[(i - 1) * GROUP_SIZE]);
+            }
+            size += varintSize(groups[i * GROUP_SIZE + 2]);
+        }
+
+        ByteBuf buffer = allocator.directBuffer(size, size);
+        buffer.writeZero(tombstonesSize(n));
+        buffer.writerIndex(dataOffset);
+        for (int i = 0; i < n; i++) {
+            long ledgerId = groups[i * GROUP_SIZE];
+            if (i % BLOCK_SIZE == 0) {
+                int indexOffset = tombstonesSize(n) + (i / BLOCK_SIZE) * INDEX_ENTRY_SIZE;
+                buffer.setLong(indexOffset, ledgerId);
+                buffer.setInt(indexOffset + Long.BYTES, buffer.writerIndex());
+            } else {
+                writeVarint(buffer, ledgerId - groups[(i - 1) * GROUP_SIZE]);
+            }
+            writeVarint(buffer, groups[i * GROUP_SIZE + 2]);
+        }
+        return buffer;
+    }
+
+    /**
+     * Wrap the ledgers encoded by {@link #encodeLedgers(EntryLogMetadata, ByteBufAllocator)}, without copying them.
+     */
+    static CompactEntryLogMetadata wrap(long entryLogId, long totalSize, long remainingSize, int numLedgers,
+                                        ByteBuf encodedLedgers) {
+        return new CompactEntryLogMetadata(entryLogId, totalSize, remainingSize, numLedgers, encodedLedgers);
+    }
+
+    /**
+     * Decode the ledgers which are not removed from a buffer of {@link #encodeLedgers(EntryLogMetadata,
+     * ByteBufAllocator)}.
+     */
+    static void decodeLedgers(ByteBuf buffer, int numLedgers, BiConsumerLong processor) {
+        forEachEncodedLedger(buffer, numLedgers, (index, ledgerId, size) -> processor.accept(ledgerId, size));
+    }
+
+    /**
+     * Visit the encoded ledgers which are not removed.
+     */
+    private static void forEachEncodedLedger(ByteBuf ledgers, int numLedgers, EncodedLedgerVisitor visitor) {
+        int tombstonesSize = tombstonesSize(numLedgers);
+        int numBlocks = (numLedgers + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int block = 0; block < numBlocks; block++) {
+            int indexOffset = tombstonesSize + block * INDEX_ENTRY_SIZE;
+            long ledgerId = ledgers.getLong(indexOffset);
+            int offset = ledgers.getInt(indexOffset + Long.BYTES);
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(numLedgers, start + BLOCK_SIZE);
+            for (int i = start; i < end; i++) {
+                if (i != start) {
+                    long delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = ledgers.getByte(offset++);
+                        delta |= (long) (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    ledgerId += delta;
+                }
+                long size = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = ledgers.getByte(offset++);
+                    size |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                if (!isRemoved(ledgers, i)) {
+                    visitor.accept(i, ledgerId, size);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addLedgerSize(long ledgerId, long size) {
+        if (!containsLedger(ledgerId)) {
+            numLiveLedgers++;
+        }
+        if (addedLedgers == null) {
+            addedLedgers = ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(16)
+                    .concurrencyLevel(1)
+                    .build();
+        }
+        addedLedgers.addAndGet(ledgerId, size);
+        totalSize += size;
+        remainingSize += size;
+    }
+
+    @Override
+    public boolean containsLedger(long ledgerId) {
+        return containsEncodedLedger(ledgerId) || (addedLedgers != null && addedLedgers.containsKey(ledgerId));
+    }
+
+    private boolean containsEncodedLedger(long ledgerId) {
+        // Find the last block starting at or before the ledger
+        int low = 0;
+        int high = (numLedgers + BLOCK_SIZE - 1) / BLOCK_SIZE - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(tombstonesSize(numLedgers) + mid * INDEX_ENTRY_SIZE) <= ledgerId) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return false;
+        }
+
+        int indexOffset = tombstonesSize(numLedgers) + block * INDEX_ENTRY_SIZE;
+        long currentId = buffer.getLong(indexOffset);
+        int offset = buffer.getInt(indexOffset + Long.BYTES);
+        int end = Math.min(numLedgers, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE; i < end; i++) {
+            if (i != block * BLOCK_SIZE) {
+                long delta = getVarint(buffer, offset);
+                offset += varintSize(delta);
+                currentId += delta;
+            }
+            if (currentId == ledgerId) {
+                return !isRemoved(buffer, i);
+            } else if (currentId > ledgerId) {
+                return false;
+            }
+            offset += varintSize(getVarint(buffer, offset));
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return numLiveLedgers == 0;
+    }
+
+    @Override
+    public long getLedgersCount() {
+        return numLiveLedgers;
+    }
+
+    @Override
+    public void forEachLedger(BiConsumerLong processor) {
+        ConcurrentLongLongHashMap added = addedLedgers;
+        if (added == null) {
+            forEachEncodedLedger(buffer, numLedgers, (index, ledgerId, size) -> processor.accept(ledgerId, size));
+            return;
+        }
+
+        forEachEncodedLedger(buffer, numLedgers, (index, ledgerId, size) -> {
+            long addedSize = added.get(ledgerId);
+            processor.accept(ledgerId, addedSize > 0 ? size + addedSize : size);
+        });
+        added.forEach((ledgerId, size) -> {
+            if (!containsEncodedLedger(ledgerId)) {
+                processor.accept(ledgerId, size);
+            }
+        });
+    }
+
+    /**
+     * @return a copy of the ledgers, which is not updated when ledgers are removed from this metadata
+     */
+    @Override
+    public ConcurrentLongLongHashMap getLedgersMap() {
+        ConcurrentLongLongHashMap ledgers = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(Math.max(numLiveLedgers, 1))
+                .concurrencyLevel(1)
+                .build();
+        forEachLedger(ledgers::put);
+        return ledgers;
+    }
+
+    @Override
+    public void removeLedgerIf(LongPredicate predicate) {
+        if (addedLedgers != null) {
+            // Before the encoded ledgers, to know whether a removed ledger is also encoded
+            addedLedgers.removeIf((ledgerId, size) -> {
+                if (!predicate.test(ledgerId)) {
+                    return false;
+                }
+                remainingSize -= size;
+                if (!containsEncodedLedger(ledgerId)) {
+                    numLiveLedgers--;
+                }
+                return true;
+            });
+        }
+
+        forEachEncodedLedger(buffer, numLedgers, (index, ledgerId, size) -> {
+            if (predicate.test(ledgerId)) {
+                buffer.setByte(index >>> 3, buffer.getByte(index >>> 3) | (1 << (index & 7)));
+                remainingSize -= size;
+                numLiveLedgers--;
+            }
+        });
+    }
+
+    @Override
+    protected String ledgersToString() {
+        return getLedgersMap().toString();
+    }
+
+    /**
+     * @return the size of the encoded ledgers, in bytes
+     */
+    public int getEncodedSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Remove all the ledgers. The buffer must still be {@link #release() released}.
+     */
+    @Override
+    public void clear() {
+        entryLogId = -1L;
+        totalSize = -1L;
+        remainingSize = -1L;
+        for (int i = 0; i < tombstonesSize(numLedgers); i++) {
+            buffer.setByte(i, 0xFF);
+        }
+        numLiveLedgers = 0;
+        addedLedgers = null;
+    }
+
+    /**
+     * Retain the metadata, unless it is already released.
+     *
+     * @return true if the metadata was retained, and must then be released
+     */
+    public boolean tryRetain() {
+        int cnt;
+        do {
+            cnt = refCnt.get();
+            if (cnt <= 0) {
+                return false;
+            }
+        } while (!refCnt.compareAndSet(cnt, cnt + 1));
+        return true;
+    }
+
+    /**
+     * Release the metadata, and the buffer of the ledgers with the last reference.
+     */
+    public void release() {
+        if (refCnt.decrementAndGet() == 0) {
+            buffer.release();
+        }
+    }
+
+    private static int tombstonesSize(int numLedgers) {
+        return (numLedgers + 7) >>> 3;
+    }
+
+    private static boolean isRemoved(ByteBuf ledgers, int index) {
+        return (ledgers.getByte(index >>> 3) & (1 << (index & 7))) != 0;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(ByteBuf buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
+    private static long getVarint(ByteBuf ledgers, int offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = ledgers.getByte(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compaction rate shared by all the compactions of a bookie, which backs off while the add and read requests
+ * are slow.
+ *
+ * <p>The budget is created by the ledger storage, see {@link LedgerStorage#getCompactionIoBudget()}, and the
+ * request processor reports the latency of the requests with {@link #recordRequestLatency(long)}. Every
+ * second, the rate is halved if the 99th percentile of the latencies of the last second is above the threshold,
+ * down to a sixteenth of the configured compaction rate, and grows by a sixteenth of the configured rate otherwise.
+ * The latencies are counted in power of two buckets of microseconds, so the percentile is only accurate to a
+ * factor of two.
+ */
+public class CompactionIoBudget {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionIoBudget.class);
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int RATE_STEPS = 16;
+    // Below this number of requests in an interval, the rate is not lowered
+    private static final long MIN_SAMPLES = 100;
+    private static final int NUM_BUCKETS = 32;
+
+    private final RateLimiter rateLimiter;
+    private final double maxRate;
+    private final long latencyThresholdMicros;
+    private final LongAdder[] latencyBuckets = new LongAdder[NUM_BUCKETS];
+    private volatile long lastAdjustNanos;
+
+    CompactionIoBudget(double maxRate, long latencyThresholdMs) {
+        this.maxRate = maxRate;
+        this.latencyThresholdMicros = TimeUnit.MILLISECONDS.toMicros(latencyThresholdMs);
+        this.rateLimiter = RateLimiter.create(maxRate);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+        this.lastAdjustNanos = MathUtils.nowInNano();
+    }
+
+    /**
+     * Create a budget from the compaction rate of the configuration.
+     *
+     * @return the budget, or null if {@link ServerConfiguration#isCompactionIoBudgetEnabled()} is false
+     */
+    public static CompactionIoBudget create(ServerConfiguration conf) {
+        if (!conf.isCompactionIoBudgetEnabled()) {
+            return null;
+        }
+        double rate = conf.getIsThrottleByBytes() ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries();
+        return new CompactionIoBudget(rate, conf.getCompactionIoBudgetLatencyThresholdMs());
+    }
+
+    /**
+     * Report the latency of an add or read request.
+     */
+    public void recordRequestLatency(long latencyNanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        int bucket = Math.min(NUM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        latencyBuckets[bucket].increment();
+    }
+
+    boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        if (MathUtils.nowInNano() - lastAdjustNanos >= ADJUST_INTERVAL_NANOS) {
+            adjust();
+        }
+        return rateLimiter.tryAcquire(permits, timeout, unit);
+    }
+
+    private synchronized void adjust() {
+        long now = MathUtils.nowInNano();
+        if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+        lastAdjustNanos = now;
+
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = latencyBuckets[i].sumThenReset();
+            total += counts[i];
+        }
+        long p99Micros = 0;
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS && total > 0; i++) {
+            cumulative += counts[i];
+            if (cumulative * 100 >= total * 99) {
+                // Upper bound of the bucket
+                p99Micros = 1L << (i + 1);
+                break;
+            }
+        }
+
+        double rate = rateLimiter.getRate();
+        double newRate;
+        if (total >= MIN_SAMPLES && p99Micros > latencyThresholdMicros) {
+            newRate = Math.max(maxRate / RATE_STEPS, rate / 2);
+        } else {
+            newRate = Math.min(maxRate, rate + maxRate / RATE_STEPS);
+        }
+        if (newRate != rate) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request p99 latency {}us over {} requests, compaction rate {} -> {}",
+                        p99Micros, total, rate, newRate);
+            }
+            rateLimiter.setRate(newRate);
+        }
+    }
+
+    /**
+     * @return the current compaction rate, in bytes or entries per second
+     */
+    double getRate() {
+        return rateLimiter.getRate();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compacts first the entry logs which reclaim the most space for the bytes read and copied, weighted by their age,
+ * like the cleaner of a log-structured file system.
+ *
+ * <p>Compacting an entry log of usage {@code u} reads the whole entry log and copies {@code u} of it, to reclaim
+ * {@code 1 - u} of it. The entry logs are ordered by {@code (1 - u) * age / (1 + u)}, where the age is the number of
+ * entry logs created since the entry log. The data of an old entry log has outlived many deletions, and is likely to
+ * stay, so an old entry log is worth compacting at a higher usage than a young one, whose usage is still dropping.
+ */
+public class CostBenefitEntryLogSelectionPolicy implements EntryLogSelectionPolicy {
+
+    @Override
+    public List<Candidate> select(List<Candidate> candidates, long newestEntryLogId) {
+        List<Candidate> selected = new ArrayList<>(candidates);
+        selected.sort(Comparator.comparingDouble((Candidate c) -> score(c, newestEntryLogId)).reversed()
+                .thenComparingDouble(Candidate::getUsage));
+        return selected;
+    }
+
+    static double score(Candidate candidate, long newestEntryLogId) {
+        double usage = Math.max(0.0, Math.min(1.0, candidate.getUsage()));
+        long age = Math.max(1, newestEntryLogId - candidate.getEntryLogId() + 1);
+        return (1.0 - usage) * age / (1.0 + usage);
+    }
+}
@@ -44,7 +44,10 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -92,12 +95,29 @@ public class DefaultEntryLogger implements EntryLogger {
         private final File logFile;
         private long ledgerIdAssigned = UNASSIGNED_LEDGERID;
 
+        // The entries written since the last record of the index file, as (end position, ledger id, size)
+        // triplets in the order of the entry log, guarded by unindexedLock
+        private EntryLogIndexFile indexFile;
+        private final Object unindexedLock = new Object();
+        private long[] unindexedEntries;
+        private int unindexedCount;
+
         public BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
                 long logId, File logFile, long unpersistedBytesBound) throws IOException {
+            this(allocator, fc, writeCapacity, readCapacity, logId, logFile, unpersistedBytesBound, null);
+        }
+
+        BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
+                long logId, File logFile, long unpersistedBytesBound, EntryLogIndexFile indexFile)
+                throws IOException {
             super(allocator, fc, writeCapacity, readCapacity, unpersistedBytesBound);
             this.logId = logId;
             this.entryLogMetadata = new EntryLogMetadata(logId);
             this.logFile = logFile;
+            this.indexFile = indexFile;
+            if (indexFile != null) {
+                this.unindexedEntries = new long[3 * 64];
+            }
         }
         public long getLogId() {
             return logId;
@@ -109,6 +129,105 @@ public class DefaultEntryLogger implements EntryLogger {
 
         public void registerWrittenEntry(long ledgerId, long entrySize) {
             entryLogMetadata.addLedgerSize(ledgerId, entrySize);
+            synchronized (unindexedLock) {
+                if (unindexedEntries != null) {
+                    if (unindexedCount == unindexedEntries.length) {
+                        unindexedEntries = Arrays.copyOf(unindexedEntries, unindexedCount * 2);
+                    }
+                    // The entry was just written, under the lock of the entry log manager, so it ends at the
+                    // current position, which might still be in the write buffer
+                    unindexedEntries[unindexedCount++] = position();
+                    unindexedEntries[unindexedCount++] = ledgerId;
+                    unindexedEntries[unindexedCount++] = entrySize;
+                }
+            }
+        }
+
+        @Override
+        public long forceWrite(boolean forceMetadata) throws IOException {
+            long positionForceWrite = super.forceWrite(forceMetadata);
+            EntryLogIndexFile indexFile = getIndexFile();
+            if (indexFile != null) {
+                appendToIndexFile(indexFile, positionForceWrite);
+            }
+            return positionForceWrite;
+        }
+
+        /**
+         * Append the entries which are synced and not in the index file yet to the index file. The record ends
+         * at the end of the last of these entries, so the entries after it can be scanned from there.
+         *
+         * <p>The index file is not synced here but when it is closed: a record lost in a crash only leaves more
+         * entries to scan.
+         */
+        private void appendToIndexFile(EntryLogIndexFile indexFile, long positionForceWrite) {
+            // Keep the records in the order of the entries
+            synchronized (indexFile) {
+                ConcurrentLongLongHashMap ledgers = null;
+                long position = -1L;
+                synchronized (unindexedLock) {
+                    if (unindexedEntries == null) {
+                        return;
+                    }
+                    int synced = 0;
+                    while (synced < unindexedCount && unindexedEntries[synced] <= positionForceWrite) {
+                        if (ledgers == null) {
+                            ledgers = newUnindexedLedgers();
+                        }
+                        position = unindexedEntries[synced];
+                        ledgers.addAndGet(unindexedEntries[synced + 1], unindexedEntries[synced + 2]);
+                        synced += 3;
+                    }
+                    if (synced == 0) {
+                        return;
+                    }
+                    unindexedCount -= synced;
+                    System.arraycopy(unindexedEntries, synced, unindexedEntries, 0, unindexedCount);
+                }
+                try {
+                    indexFile.append(position, ledgers);
+                } catch (IOException e) {
+                    // The records appended so far are still valid, the entries after them are scanned when reading
+                    LOG.warn("Failed to append to the index file {} of entry log {}, stop maintaining it",
+                            indexFile.getFile(), logId, e);
+                    closeIndexFile();
+                }
+            }
+        }
+
+        private EntryLogIndexFile getIndexFile() {
+            synchronized (unindexedLock) {
+                return indexFile;
+            }
+        }
+
+        private void closeIndexFile() {
+            EntryLogIndexFile toClose;
+            synchronized (unindexedLock) {
+                toClose = indexFile;
+                indexFile = null;
+                unindexedEntries = null;
+            }
+            if (toClose != null) {
+                try {
+                    toClose.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close the index file {} of entry log {}", toClose.getFile(), logId, e);
+                }
+            }
+        }
+
+        private static ConcurrentLongLongHashMap newUnindexedLedgers() {
+            return ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(16)
+                    .concurrencyLevel(1)
+                    .build();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closeIndexFile();
+            super.close();
         }
 
         public ConcurrentLongLongHashMap getLedgersMap() {
@@ -510,6 +629,13 @@ public class DefaultEntryLogger implements EntryLogger {
         return entryLoggerAllocator;
     }
 
+    /**
+     * get the allocator of the buffers of the entry logger.
+     */
+    ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
     /**
      * Remove entry log.
      *
@@ -531,6 +657,10 @@ public class DefaultEntryLogger implements EntryLogger {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
             return false;
         }
+        File indexFile = EntryLogIndexFile.getIndexFile(entryLogFile.getParentFile(), entryLogId);
+        if (indexFile.exists() && !indexFile.delete()) {
+            LOG.warn("Could not delete entry log index file {}", indexFile);
+        }
         return true;
     }
 
@@ -837,6 +967,57 @@ public class DefaultEntryLogger implements EntryLogger {
     }
 
 
+    @Override
+    public ByteBuf readEntries(ByteBufAllocator allocator, long location, int maxBytes)
+            throws IOException, Bookie.NoEntryException {
+        long entryLogId = logIdForOffset(location);
+        // Include the size header of the first entry
+        long pos = posForOffset(location) - 4;
+
+        BufferedReadChannel fc = getChannelForLogId(entryLogId);
+        ByteBuf records = allocator.directBuffer(maxBytes, maxBytes);
+        try {
+            // The data before the write buffer of the current log is already in the file, so that part of the
+            // region is read without holding the lock of the log channel, which would block the writes
+            BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+            long flushedPosition = null != bc ? bc.getFileChannelPosition() : Long.MAX_VALUE;
+            int flushedLength = (int) Math.max(0, Math.min(maxBytes, flushedPosition - pos));
+
+            // Bypass the small read buffer of the channel and read the flushed region with positional reads on the
+            // shared file channel
+            FileChannel fileChannel = fc.validateAndGetFileChannel();
+            while (records.readableBytes() < flushedLength) {
+                int readBytes = fileChannel.read(
+                        records.internalNioBuffer(records.writerIndex(), flushedLength - records.readableBytes()),
+                        pos + records.readableBytes());
+                if (readBytes <= 0) {
+                    // Reached the end of the file
+                    return records;
+                }
+                records.writerIndex(records.writerIndex() + readBytes);
+            }
+
+            if (null != bc && records.isWritable()) {
+                synchronized (bc) {
+                    // Only the tail of the region that is still in the write buffer is read under the lock, without
+                    // reading past the end of the data that was already appended
+                    long tailPos = pos + records.readableBytes();
+                    int length = (int) Math.min(records.writableBytes(), bc.position() - tailPos);
+                    if (length > 0) {
+                        bc.read(records, tailPos, length);
+                    }
+                }
+            }
+            return records;
+        } catch (BufferedChannelBase.BufferedChannelClosedException | AsynchronousCloseException e) {
+            ReferenceCountUtil.release(records);
+            throw new IOException("Entry log file " + entryLogId + " was closed while reading", e);
+        } catch (IOException e) {
+            ReferenceCountUtil.release(records);
+            throw e;
+        }
+    }
+
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
         long entryLogId = logIdForOffset(location);
@@ -986,6 +1167,12 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     @Override
     public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        // Start the read position in the current entry log file to be after
+        // the header where all of the ledger entries are.
+        scanEntryLog(entryLogId, LOGFILE_HEADER_SIZE, scanner);
+    }
+
+    private void scanEntryLog(long entryLogId, long startPos, EntryLogScanner scanner) throws IOException {
         // Buffer where to read the entrySize (4 bytes) and the ledgerId (8 bytes)
         ByteBuf headerBuffer = Unpooled.buffer(4 + 8);
         BufferedReadChannel bc;
@@ -996,9 +1183,7 @@ public class DefaultEntryLogger implements EntryLogger {
             LOG.warn("Failed to get channel to scan entry log: " + entryLogId + ".log");
             throw e;
         }
-        // Start the read position in the current entry log file to be after
-        // the header where all of the ledger entries are.
-        long pos = LOGFILE_HEADER_SIZE;
+        long pos = startPos;
 
         // Start with a reasonably sized buffer size
         ByteBuf data = allocator.directBuffer(1024 * 1024);
@@ -1063,10 +1248,107 @@ public class DefaultEntryLogger implements EntryLogger {
             throw fne;
         } catch (Exception e) {
             LOG.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+        }
 
-            // Fall-back to scanning
-            return extractEntryLogMetadataByScanning(entryLogId, throttler);
+        // Then try the index file, scanning only the entries which are not in the index file
+        try {
+            EntryLogMetadata meta = extractEntryLogMetadataFromIndexFile(entryLogId, throttler);
+            if (meta != null) {
+                return meta;
+            }
+        } catch (FileNotFoundException fne) {
+            LOG.warn("Cannot find entry log file {}.log : {}", Long.toHexString(entryLogId), fne.getMessage());
+            throw fne;
+        } catch (IOException e) {
+            LOG.info("Failed to get ledgers from index file of: {}.log : {}", entryLogId, e.getMessage());
+        }
+
+        // Fall-back to scanning
+        return extractEntryLogMetadataByScanning(entryLogId, throttler);
+    }
+
+    /**
+     * Extract the metadata of an entry log from its index file, and the entries after the last record of the
+     * index file.
+     *
+     * @return the metadata, or null if the entry log has no index file
+     */
+    EntryLogMetadata extractEntryLogMetadataFromIndexFile(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        File indexFile = EntryLogIndexFile.getIndexFile(findFile(entryLogId).getParentFile(), entryLogId);
+        if (!indexFile.exists()) {
+            return null;
         }
+        long logSize = getChannelForLogId(entryLogId).size();
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        long position = EntryLogIndexFile.read(indexFile, entryLogId, logSize, meta);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read ledgers of entry log {} from index file up to position {}, scanning {} more bytes",
+                    entryLogId, position, logSize - position);
+        }
+        if (position < logSize) {
+            scanEntryLog(entryLogId, position, new EntryLogScanner() {
+                @Override
+                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                    if (throttler != null) {
+                        throttler.acquire(entry.readableBytes());
+                    }
+                    meta.addLedgerSize(ledgerId, entry.readableBytes() + 4);
+                }
+
+                @Override
+                public boolean accept(long ledgerId) {
+                    return ledgerId >= 0;
+                }
+            });
+        }
+        return meta;
+    }
+
+    /**
+     * Write the index file of an entry log by scanning the entry log. Unless overwrite is set, the entry logs
+     * which already have an index file or a ledgers map are skipped.
+     *
+     * @return true if the index file was written
+     */
+    public boolean writeIndexFile(long entryLogId, boolean overwrite) throws IOException {
+        File dir = findFile(entryLogId).getParentFile();
+        File indexFile = EntryLogIndexFile.getIndexFile(dir, entryLogId);
+        if (!overwrite) {
+            if (indexFile.exists()) {
+                return false;
+            }
+            Header header = getHeaderForLogId(entryLogId);
+            if (header.version >= HEADER_V1 && header.ledgersMapOffset != 0L) {
+                return false;
+            }
+        }
+
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        long[] position = { LOGFILE_HEADER_SIZE };
+        scanEntryLog(entryLogId, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                meta.addLedgerSize(ledgerId, entry.readableBytes() + 4);
+                position[0] = offset + 4 + entry.readableBytes();
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId >= 0;
+            }
+        });
+
+        // Write the whole file aside, so a reader never sees it partially written
+        File tmpFile = new File(dir, indexFile.getName() + ".tmp");
+        try (EntryLogIndexFile index = EntryLogIndexFile.create(tmpFile, entryLogId)) {
+            if (!meta.isEmpty()) {
+                index.append(position[0], meta.getLedgersMap());
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return true;
     }
 
     EntryLogMetadata extractEntryLogMetadataFromIndex(long entryLogId) throws IOException {
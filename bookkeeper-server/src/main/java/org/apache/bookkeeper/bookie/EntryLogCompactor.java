@@ -49,7 +49,16 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, null);
+    }
+
+    public EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionIoBudget compactionIoBudget) {
+        super(conf, logRemover, compactionIoBudget);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * The index file of an entry log, which holds the sizes of the ledgers in the entry log, so the metadata of the
+ * entry log can be rebuilt without scanning it when the entry log has no ledgers map (because the bookie crashed
+ * before the entry log was rotated, or the entry log was written by an older version).
+ *
+ * <pre>
+ * Header is composed of:
+ * Fingerprint: 4 bytes "BKLI"
+ * Version: 4 bytes
+ * Entry log id: 8 bytes
+ *
+ * Followed by records, each composed of:
+ * length of the rest of the record: 4 bytes
+ * crc32c checksum of the rest of the record: 4 bytes
+ * position in the entry log up to which the entries are counted: 8 bytes
+ * num ledgers in the record: 4 bytes
+ * ledger entries: sequence of (ledgerid, size of the entries since the previous record) (8 + 8 bytes each)
+ * </pre>
+ *
+ * <p>The file is only appended to. A record is appended each time the entry log is synced, with the entries
+ * synced since the previous record. The file itself is only synced when it is closed. The records are read up to
+ * the first one which is truncated, corrupted or counts entries beyond the end of the entry log, and the entries of
+ * the entry log after the position of the last record read have to be scanned.
+ */
+class EntryLogIndexFile implements Closeable {
+
+    static final String INDEX_FILE_SUFFIX = ".lidx";
+
+    private static final int FINGERPRINT = ('B' << 24) | ('K' << 16) | ('L' << 8) | 'I';
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 8;
+
+    // Length and checksum
+    private static final int RECORD_PREFIX_SIZE = 4 + 4;
+    // Position and number of ledgers
+    private static final int RECORD_HEADER_SIZE = 8 + 4;
+    private static final int RECORD_ENTRY_SIZE = 8 + 8;
+
+    private final File file;
+    private final FileChannel fileChannel;
+
+    private EntryLogIndexFile(File file, FileChannel fileChannel) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+    }
+
+    static File getIndexFile(File dir, long entryLogId) {
+        return new File(dir, Long.toHexString(entryLogId) + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Create the index file of an entry log, replacing the file if it exists.
+     */
+    static EntryLogIndexFile create(File file, long entryLogId) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel fc = raf.getChannel();
+        try {
+            fc.truncate(0);
+            ByteBuf header = Unpooled.buffer(HEADER_SIZE);
+            header.writeInt(FINGERPRINT);
+            header.writeInt(VERSION);
+            header.writeLong(entryLogId);
+            writeFully(fc, header);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        return new EntryLogIndexFile(file, fc);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Append a record with the sizes of the entries written since the previous record. The record is synced when
+     * the file is closed.
+     *
+     * @param position the end of the last entry counted in the record
+     * @param ledgerSizes the size of the entries of each ledger since the previous record
+     */
+    synchronized void append(long position, ConcurrentLongLongHashMap ledgerSizes) throws IOException {
+        int ledgersCount = (int) ledgerSizes.size();
+        int length = RECORD_HEADER_SIZE + ledgersCount * RECORD_ENTRY_SIZE;
+        ByteBuf record = Unpooled.buffer(RECORD_PREFIX_SIZE + length);
+        record.writeInt(length);
+        record.writeInt(0);
+        record.writeLong(position);
+        record.writeInt(ledgersCount);
+        ledgerSizes.forEach((ledgerId, size) -> {
+            record.writeLong(ledgerId);
+            record.writeLong(size);
+        });
+        record.setInt(4, Crc32cIntChecksum.computeChecksum(record, RECORD_PREFIX_SIZE, length));
+        writeFully(fileChannel, record);
+    }
+
+    /**
+     * Sync and close the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            fileChannel.force(true);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Add the sizes of the ledgers in the index file to the metadata of the entry log.
+     *
+     * @param entryLogSize the size of the entry log file
+     * @return the position in the entry log up to which the entries are counted in the metadata
+     * @throws IOException if the file cannot be read, or has an invalid header
+     */
+    static long read(File file, long entryLogId, long entryLogSize, EntryLogMetadata meta) throws IOException {
+        ByteBuf buf = Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath()));
+        if (buf.readableBytes() < HEADER_SIZE || buf.readInt() != FINGERPRINT) {
+            throw new IOException("Invalid header in entry log index file " + file);
+        }
+        int version = buf.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of entry log index file " + file);
+        }
+        long logId = buf.readLong();
+        if (logId != entryLogId) {
+            throw new IOException("Entry log index file " + file + " belongs to entryLogId " + logId);
+        }
+
+        long position = DefaultEntryLogger.LOGFILE_HEADER_SIZE;
+        while (buf.readableBytes() >= RECORD_PREFIX_SIZE + RECORD_HEADER_SIZE) {
+            int length = buf.readInt();
+            int checksum = buf.readInt();
+            if (length < RECORD_HEADER_SIZE || length > buf.readableBytes()
+                    || (length - RECORD_HEADER_SIZE) % RECORD_ENTRY_SIZE != 0
+                    || Crc32cIntChecksum.computeChecksum(buf, buf.readerIndex(), length) != checksum) {
+                // Record left off by a crash
+                break;
+            }
+            ByteBuf record = buf.readSlice(length);
+            long recordPosition = record.readLong();
+            int ledgersCount = record.readInt();
+            if (recordPosition < position || recordPosition > entryLogSize
+                    || ledgersCount != (length - RECORD_HEADER_SIZE) / RECORD_ENTRY_SIZE) {
+                // The entries of the record did not make it to the entry log
+                break;
+            }
+            for (int i = 0; i < ledgersCount; i++) {
+                meta.addLedgerSize(record.readLong(), record.readLong());
+            }
+            position = recordPosition;
+        }
+        return position;
+    }
+
+    private static void writeFully(FileChannel fc, ByteBuf buf) throws IOException {
+        while (buf.isReadable()) {
+            buf.skipBytes(fc.write(buf.nioBuffer()));
+        }
+    }
+}
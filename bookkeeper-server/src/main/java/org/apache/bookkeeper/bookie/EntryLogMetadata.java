@@ -21,6 +21,9 @@
 
 package org.apache.bookkeeper.bookie;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import java.io.DataInputStream;
@@ -28,6 +31,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.function.LongPredicate;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
 
 /**
  * Records the total size, remaining size and the set of ledgers that comprise a
@@ -39,6 +43,7 @@ public class EntryLogMetadata {
     protected long remainingSize;
     protected final ConcurrentLongLongHashMap ledgersMap;
     private static final short DEFAULT_SERIALIZATION_VERSION = 0;
+    private static final short COMPACT_SERIALIZATION_VERSION = 1;
 
     protected EntryLogMetadata() {
         ledgersMap = ConcurrentLongLongHashMap.newBuilder()
@@ -47,6 +52,16 @@ public class EntryLogMetadata {
                 .build();
     }
 
+    /**
+     * Create a metadata which keeps the ledgers in its own representation, instead of the ledgers map.
+     */
+    protected EntryLogMetadata(long logId, long totalSize, long remainingSize) {
+        this.ledgersMap = null;
+        this.entryLogId = logId;
+        this.totalSize = totalSize;
+        this.remainingSize = remainingSize;
+    }
+
     public EntryLogMetadata(long logId) {
         this();
         this.entryLogId = logId;
@@ -91,6 +106,20 @@ public class EntryLogMetadata {
         return ledgersMap;
     }
 
+    /**
+     * @return the number of ledgers in the entry log
+     */
+    public long getLedgersCount() {
+        return ledgersMap.size();
+    }
+
+    /**
+     * Process the ledgers of the entry log, with their size.
+     */
+    public void forEachLedger(BiConsumerLong processor) {
+        ledgersMap.forEach(processor);
+    }
+
     public void removeLedgerIf(LongPredicate predicate) {
         ledgersMap.removeIf((ledgerId, size) -> {
             boolean shouldRemove = predicate.test(ledgerId);
@@ -105,10 +134,14 @@ public class EntryLogMetadata {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("{totalSize = ").append(totalSize).append(", remainingSize = ").append(remainingSize)
-                .append(", ledgersMap = ").append(ledgersMap.toString()).append("}");
+                .append(", ledgersMap = ").append(ledgersToString()).append("}");
         return sb.toString();
     }
 
+    protected String ledgersToString() {
+        return ledgersMap.toString();
+    }
+
     /**
      * Serializes {@link EntryLogMetadata} and writes to
      * {@link DataOutputStream}.
@@ -133,8 +166,8 @@ public class EntryLogMetadata {
         out.writeLong(entryLogId);
         out.writeLong(totalSize);
         out.writeLong(remainingSize);
-        out.writeLong(ledgersMap.size());
-        ledgersMap.forEach((ledgerId, size) -> {
+        out.writeLong(getLedgersCount());
+        forEachLedger((ledgerId, size) -> {
             try {
                 out.writeLong(ledgerId);
                 out.writeLong(size);
@@ -145,6 +178,39 @@ public class EntryLogMetadata {
         out.flush();
     }
 
+    /**
+     * Serializes {@link EntryLogMetadata} with the ledgers encoded by {@link CompactEntryLogMetadata}, and writes
+     * to {@link DataOutputStream}.
+     * <pre>
+     * schema:
+     * 2-bytes: schema-version
+     * 8-bytes: entrylog-entryLogId
+     * 8-bytes: entrylog-totalSize
+     * 8-bytes: entrylog-remainingSize
+     * 4-bytes: total number of ledgers
+     * 4-bytes: size of the encoded ledgers
+     * encoded ledgers
+     * </pre>
+     * @param out
+     * @throws IOException
+     *             throws if it couldn't serialize metadata-fields
+     */
+    public void serializeCompact(DataOutputStream out) throws IOException {
+        ByteBuf ledgers = CompactEntryLogMetadata.encodeLedgers(this, UnpooledByteBufAllocator.DEFAULT);
+        try {
+            out.writeShort(COMPACT_SERIALIZATION_VERSION);
+            out.writeLong(entryLogId);
+            out.writeLong(totalSize);
+            out.writeLong(remainingSize);
+            out.writeInt((int) getLedgersCount());
+            out.writeInt(ledgers.readableBytes());
+            ledgers.readBytes(out, ledgers.readableBytes());
+        } finally {
+            ledgers.release();
+        }
+        out.flush();
+    }
+
     /**
      * Deserializes {@link EntryLogMetadataRecyclable} from given {@link DataInputStream}.
      * Caller has to recycle returned {@link EntryLogMetadataRecyclable}.
@@ -156,6 +222,17 @@ public class EntryLogMetadata {
         EntryLogMetadataRecyclable metadata = EntryLogMetadataRecyclable.get();
         try {
             short serVersion = in.readShort();
+            if (serVersion == COMPACT_SERIALIZATION_VERSION) {
+                metadata.entryLogId = in.readLong();
+                metadata.totalSize = in.readLong();
+                metadata.remainingSize = in.readLong();
+                int numLedgers = in.readInt();
+                byte[] ledgers = new byte[in.readInt()];
+                in.readFully(ledgers);
+                CompactEntryLogMetadata.decodeLedgers(Unpooled.wrappedBuffer(ledgers), numLedgers,
+                        metadata.ledgersMap::put);
+                return metadata;
+            }
             if ((serVersion != DEFAULT_SERIALIZATION_VERSION)) {
                 throw new IOException(String.format("%s. expected =%d, found=%d", "serialization version doesn't match",
                         DEFAULT_SERIALIZATION_VERSION, serVersion));
@@ -179,6 +256,32 @@ public class EntryLogMetadata {
         }
     }
 
+    /**
+     * Deserializes a value of {@link #serializeCompact(DataOutputStream)} into a {@link CompactEntryLogMetadata}
+     * which wraps the encoded ledgers of the value, without copying them into a hash map.
+     * Caller has to release returned {@link CompactEntryLogMetadata}.
+     * @param value
+     * @return null if the value is not serialized with the compact encoding
+     * @throws IOException
+     */
+    public static CompactEntryLogMetadata deserializeCompact(byte[] value) throws IOException {
+        ByteBuf in = Unpooled.wrappedBuffer(value);
+        if (in.readableBytes() < Short.BYTES || in.readShort() != COMPACT_SERIALIZATION_VERSION) {
+            return null;
+        }
+        try {
+            long entryLogId = in.readLong();
+            long totalSize = in.readLong();
+            long remainingSize = in.readLong();
+            int numLedgers = in.readInt();
+            int length = in.readInt();
+            return CompactEntryLogMetadata.wrap(entryLogId, totalSize, remainingSize, numLedgers,
+                    in.slice(in.readerIndex(), length));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated entry log metadata", e);
+        }
+    }
+
     public void clear() {
         entryLogId = -1L;
         totalSize = -1L;
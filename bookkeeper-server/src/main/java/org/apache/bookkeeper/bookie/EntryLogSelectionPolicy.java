@@ -0,0 +1,61 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Chooses which of the entry logs below the compaction threshold are compacted first.
+ *
+ * <p>A compaction round may stop before compacting all the candidates, when it exceeds its maximum time, so the
+ * order decides how much space the round reclaims for the bytes it copies. Implementations are configured with
+ * {@link org.apache.bookkeeper.conf.ServerConfiguration#setCompactionEntryLogSelectionPolicyClass(Class)}, and
+ * must have a public no-argument constructor.
+ */
+public interface EntryLogSelectionPolicy {
+
+    /**
+     * The usage of an entry log when the compaction round started.
+     */
+    @Getter
+    @AllArgsConstructor
+    class Candidate {
+        private final long entryLogId;
+        private final long totalSize;
+        private final long remainingSize;
+        // The remaining size relative to the total size, or to the entry log size limit if greater
+        private final double usage;
+    }
+
+    /**
+     * Order the entry logs to compact.
+     *
+     * @param candidates
+     *          the entry logs whose usage is below the compaction threshold
+     * @param newestEntryLogId
+     *          the id of the newest entry log known to the garbage collector. The entry log ids grow with time, so
+     *          the distance to it tells the age of a candidate
+     * @return the entry logs to compact, in the order to compact them
+     */
+    List<Candidate> select(List<Candidate> candidates, long newestEntryLogId);
+}
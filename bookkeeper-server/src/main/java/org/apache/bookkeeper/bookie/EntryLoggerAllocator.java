@@ -62,6 +62,7 @@ class EntryLoggerAllocator {
     private final Object createCompactionLogLock = new Object();
     private final DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
     private final boolean entryLogPreAllocationEnabled;
+    private final boolean entryLogIndexFileEnabled;
     private final ByteBufAllocator byteBufAllocator;
     final ByteBuf logfileHeader = Unpooled.buffer(DefaultEntryLogger.LOGFILE_HEADER_SIZE);
     private volatile long writingLogId = -1;
@@ -76,6 +77,7 @@ class EntryLoggerAllocator {
         this.preallocatedLogId = logId;
         this.recentlyCreatedEntryLogsStatus = recentlyCreatedEntryLogsStatus;
         this.entryLogPreAllocationEnabled = conf.isEntryLogFilePreAllocationEnabled();
+        this.entryLogIndexFileEnabled = conf.isEntryLogIndexFileEnabled();
         this.allocatorExecutor = Executors.newSingleThreadExecutor();
 
         // Initialize the entry log header buffer. This cannot be a static object
@@ -180,10 +182,24 @@ class EntryLoggerAllocator {
         } while (testLogFile == null);
 
         File newLogFile = new File(dirForNextEntryLog, logFileName);
-        FileChannel channel = new RandomAccessFile(newLogFile, "rw").getChannel();
+        EntryLogIndexFile indexFile = null;
+        if (entryLogIndexFileEnabled && suffix.equals(DefaultEntryLogger.LOG_FILE_SUFFIX)) {
+            // Replaces the index file left by a previous entry log with the same id, if any
+            indexFile = EntryLogIndexFile.create(
+                    EntryLogIndexFile.getIndexFile(dirForNextEntryLog, preallocatedLogId), preallocatedLogId);
+        }
+        FileChannel channel;
+        try {
+            channel = new RandomAccessFile(newLogFile, "rw").getChannel();
+        } catch (IOException e) {
+            if (indexFile != null) {
+                indexFile.close();
+            }
+            throw e;
+        }
 
         BufferedLogChannel logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
-                conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes());
+                conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes(), indexFile);
         logfileHeader.readerIndex(0);
         logChannel.write(logfileHeader);
 
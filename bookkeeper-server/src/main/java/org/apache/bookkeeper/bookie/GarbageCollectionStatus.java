@@ -21,6 +21,8 @@
 
 package org.apache.bookkeeper.bookie;
 
+import java.util.List;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -44,4 +46,25 @@ public class GarbageCollectionStatus {
     private long lastMinorCompactionTime;
     private long majorCompactionCounter;
     private long minorCompactionCounter;
+
+    // number of entry logs compacted, and still to compact, in the current compaction.
+    private int compactedEntryLogs;
+    private int pendingEntryLogs;
+    // the entry logs being compacted.
+    private List<EntryLogCompactionProgress> compactingEntryLogs;
+    // the compaction rate shared by all the compactions, or 0 if each compaction has its own rate.
+    private double compactionIoBudgetRate;
+
+    /**
+     * Progress of the compaction of an entry log.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class EntryLogCompactionProgress {
+        private final long entryLogId;
+        // bytes of the entries of live ledgers, to copy when the compaction started.
+        private final long liveBytes;
+        private final long copiedBytes;
+        private final long startTime;
+    }
 }
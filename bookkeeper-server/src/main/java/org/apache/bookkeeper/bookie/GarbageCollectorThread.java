@@ -25,12 +25,20 @@ import static org.apache.bookkeeper.util.BookKeeperConstants.METADATA_CACHE;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.Uninterruptibles;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -38,16 +46,20 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+import org.apache.bookkeeper.bookie.GarbageCollectionStatus.EntryLogCompactionProgress;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
 import org.apache.bookkeeper.bookie.stats.GarbageCollectorStats;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -69,6 +81,9 @@ public class GarbageCollectorThread implements Runnable {
     private final ScheduledExecutorService gcExecutor;
     Future<?> scheduledFuture = null;
 
+    // Compaction rate shared with the other garbage collector threads of the bookie, null when disabled
+    private final CompactionIoBudget compactionIoBudget;
+
     // This is the fixed delay in milliseconds before running the Garbage Collector Thread again.
     final long gcWaitTime;
 
@@ -93,6 +108,16 @@ public class GarbageCollectorThread implements Runnable {
     // Entry Logger Handle
     final EntryLogger entryLogger;
     AbstractLogCompactor compactor;
+    final EntryLogSelectionPolicy selectionPolicy;
+
+    // Concurrent compactions, null when the entry logs are compacted one at a time on the gc thread
+    private final ExecutorService compactionExecutor;
+    // A compactor per concurrent compaction, the first one being compactor
+    private final List<AbstractLogCompactor> compactors = new ArrayList<>();
+    private final BlockingQueue<AbstractLogCompactor> idleCompactors;
+    private final Map<Long, CompactionProgress> compactionsInProgress = new ConcurrentHashMap<>();
+    private final AtomicInteger compactedEntryLogs = new AtomicInteger();
+    private final AtomicInteger pendingEntryLogs = new AtomicInteger();
 
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
@@ -142,7 +167,30 @@ public class GarbageCollectorThread implements Runnable {
                                   final CompactableLedgerStorage ledgerStorage,
                                   EntryLogger entryLogger,
                                   StatsLogger statsLogger) throws IOException {
-        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, newExecutor());
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger,
+                CompactionIoBudget.create(conf), PooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Create a garbage collector thread.
+     *
+     * @param conf
+     *          Server Configuration Object.
+     * @param compactionIoBudget
+     *          Budget shared by the compactions of the bookie, or null to throttle each compaction on its own.
+     * @param allocator
+     *          Allocator of the bookie, for the compact entry log metadata.
+     * @throws IOException
+     */
+    public GarbageCollectorThread(ServerConfiguration conf, LedgerManager ledgerManager,
+                                  final LedgerDirsManager ledgerDirsManager,
+                                  final CompactableLedgerStorage ledgerStorage,
+                                  EntryLogger entryLogger,
+                                  StatsLogger statsLogger,
+                                  CompactionIoBudget compactionIoBudget,
+                                  ByteBufAllocator allocator) throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, newExecutor(),
+                compactionIoBudget, allocator);
     }
 
     @VisibleForTesting
@@ -165,12 +213,27 @@ public class GarbageCollectorThread implements Runnable {
                                   StatsLogger statsLogger,
                                   ScheduledExecutorService gcExecutor)
         throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, gcExecutor,
+                CompactionIoBudget.create(conf), PooledByteBufAllocator.DEFAULT);
+    }
+
+    private GarbageCollectorThread(ServerConfiguration conf,
+                                   LedgerManager ledgerManager,
+                                   final LedgerDirsManager ledgerDirsManager,
+                                   final CompactableLedgerStorage ledgerStorage,
+                                   EntryLogger entryLogger,
+                                   StatsLogger statsLogger,
+                                   ScheduledExecutorService gcExecutor,
+                                   CompactionIoBudget compactionIoBudget,
+                                   ByteBufAllocator allocator)
+        throws IOException {
         this.gcExecutor = gcExecutor;
+        this.compactionIoBudget = compactionIoBudget;
         this.conf = conf;
 
         this.ledgerDirsManager = ledgerDirsManager;
         this.entryLogger = entryLogger;
-        this.entryLogMetaMap = createEntryLogMetadataMap();
+        this.entryLogMetaMap = createEntryLogMetadataMap(allocator);
         this.ledgerStorage = ledgerStorage;
         this.gcWaitTime = conf.getGcWaitTime();
 
@@ -224,13 +287,29 @@ public class GarbageCollectorThread implements Runnable {
                 }
             }
         };
-        if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
-        } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+        int compactionThreads = Math.max(1, conf.getCompactionThreadsPerLedgerDir());
+        for (int i = 0; i < compactionThreads; i++) {
+            if (conf.getUseTransactionalCompaction()) {
+                compactors.add(new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                        compactionIoBudget));
+            } else {
+                compactors.add(new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover, compactionIoBudget));
+            }
         }
+        this.compactor = compactors.get(0);
+        this.idleCompactors = new ArrayBlockingQueue<>(compactionThreads, false, compactors);
+        this.compactionExecutor = compactionThreads > 1
+                ? Executors.newFixedThreadPool(compactionThreads,
+                        new DefaultThreadFactory("GarbageCollectorCompaction"))
+                : null;
 
-        this.throttler = new AbstractLogCompactor.Throttler(conf);
+        try {
+            this.selectionPolicy = ReflectionUtils.newInstance(conf.getCompactionEntryLogSelectionPolicyClass());
+        } catch (ConfigurationException e) {
+            throw new IOException("Failed to load the compaction entry log selection policy", e);
+        }
+
+        this.throttler = new AbstractLogCompactor.Throttler(conf, compactionIoBudget);
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0d) {
                 throw new IOException("Invalid minor compaction threshold "
@@ -282,7 +361,7 @@ public class GarbageCollectorThread implements Runnable {
         lastMinorCompactionTime = lastMajorCompactionTime = System.currentTimeMillis();
     }
 
-    private EntryLogMetadataMap createEntryLogMetadataMap() throws IOException {
+    private EntryLogMetadataMap createEntryLogMetadataMap(ByteBufAllocator allocator) throws IOException {
         if (conf.isGcEntryLogMetadataCacheEnabled()) {
             String baseDir = Strings.isNullOrEmpty(conf.getGcEntryLogMetadataCachePath())
                 ? this.ledgerDirsManager.getAllLedgerDirs().get(0).getPath() : conf.getGcEntryLogMetadataCachePath();
@@ -293,6 +372,8 @@ public class GarbageCollectorThread implements Runnable {
                     baseDir + "/" + METADATA_CACHE, e);
                 throw e;
             }
+        } else if (conf.isGcEntryLogMetadataCompactEncodingEnabled()) {
+            return new InMemoryEntryLogMetadataMap(allocator);
         } else {
             return new InMemoryEntryLogMetadataMap();
         }
@@ -343,6 +424,10 @@ public class GarbageCollectorThread implements Runnable {
         return forceGarbageCollection.get();
     }
 
+    public CompactionIoBudget getCompactionIoBudget() {
+        return compactionIoBudget;
+    }
+
     public boolean isMajorGcSuspend() {
         return suspendMajorCompaction.get();
     }
@@ -580,7 +665,7 @@ public class GarbageCollectorThread implements Runnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
+     * Compaction will be executed in the order chosen by the {@link EntryLogSelectionPolicy}.
      * Those entry log files whose remaining size percentage is higher than threshold
      * would not be compacted.
      * </p>
@@ -593,10 +678,8 @@ public class GarbageCollectorThread implements Runnable {
         int[] entryLogUsageBuckets = new int[numBuckets];
         int[] compactedBuckets = new int[numBuckets];
 
-        ArrayList<LinkedList<Long>> compactableBuckets = new ArrayList<>(numBuckets);
-        for (int i = 0; i < numBuckets; i++) {
-            compactableBuckets.add(new LinkedList<>());
-        }
+        List<EntryLogSelectionPolicy.Candidate> candidates = new ArrayList<>();
+        MutableLong newestEntryLogId = new MutableLong(-1L);
 
         long start = System.currentTimeMillis();
         MutableLong end = new MutableLong(start);
@@ -609,6 +692,7 @@ public class GarbageCollectorThread implements Runnable {
             }
             int bucketIndex = calculateUsageIndex(numBuckets, usage);
             entryLogUsageBuckets[bucketIndex]++;
+            newestEntryLogId.setValue(Math.max(newestEntryLogId.longValue(), meta.getEntryLogId()));
 
             if (timeDiff.getValue() < maxTimeMillis) {
                 end.setValue(System.currentTimeMillis());
@@ -622,7 +706,8 @@ public class GarbageCollectorThread implements Runnable {
                 return;
             }
 
-            compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            candidates.add(new EntryLogSelectionPolicy.Candidate(meta.getEntryLogId(), meta.getTotalSize(),
+                    meta.getRemainingSize(), usage));
         });
         currentEntryLogUsageBuckets = entryLogUsageBuckets;
         gcStats.setEntryLogUsageBuckets(currentEntryLogUsageBuckets);
@@ -630,18 +715,18 @@ public class GarbageCollectorThread implements Runnable {
                 "Compaction: entry log usage buckets before compaction [10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}",
                 entryLogUsageBuckets);
 
-        final int maxBucket = calculateUsageIndex(numBuckets, threshold);
-        int totalEntryLogIds = 0;
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            totalEntryLogIds += compactableBuckets.get(currBucket).size();
-        }
+        List<EntryLogSelectionPolicy.Candidate> selected =
+                selectionPolicy.select(candidates, newestEntryLogId.longValue());
+        int totalEntryLogIds = selected.size();
         long lastPrintTimestamp = 0;
-        AtomicInteger processedEntryLogCnt = new AtomicInteger(0);
+        AtomicInteger processedEntryLogCnt = compactedEntryLogs;
+        processedEntryLogCnt.set(0);
+        pendingEntryLogs.set(totalEntryLogIds);
 
-        stopCompaction:
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
-            while (!entryLogIds.isEmpty()) {
+        // The concurrent compactions hold the compacting flag for the gc thread until they are all done
+        boolean parallel = compactionExecutor != null && compacting.compareAndSet(false, true);
+        try {
+            for (EntryLogSelectionPolicy.Candidate candidate : selected) {
                 if (timeDiff.getValue() < maxTimeMillis) {
                     end.setValue(System.currentTimeMillis());
                     timeDiff.setValue(end.getValue() - start);
@@ -650,35 +735,51 @@ public class GarbageCollectorThread implements Runnable {
                 if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
                     // We allow the usage limit calculation to continue so that we get an accurate
                     // report of where the usage was prior to running compaction.
-                    break stopCompaction;
+                    break;
                 }
 
-                final int bucketIndex = currBucket;
-                final long logId = entryLogIds.remove();
+                final int bucketIndex = calculateUsageIndex(numBuckets, candidate.getUsage());
+                final long logId = candidate.getEntryLogId();
                 if (System.currentTimeMillis() - lastPrintTimestamp >= MINUTE) {
                     lastPrintTimestamp = System.currentTimeMillis();
                     LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
                         processedEntryLogCnt.get(), totalEntryLogIds, logId);
                 }
-                entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
-                    if (meta == null) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Metadata for entry log {} already deleted", logId);
-                        }
-                        return;
-                    }
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                                meta.getEntryLogId(), meta.getUsage(), threshold);
-                    }
+                pendingEntryLogs.decrementAndGet();
+                if (!parallel) {
+                    compactEntryLog(logId, threshold, bucketIndex, compactedBuckets, null);
+                    continue;
+                }
 
-                    long priorRemainingSize = meta.getRemainingSize();
-                    compactEntryLog(meta);
-                    gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
-                    compactedBuckets[bucketIndex]++;
-                    processedEntryLogCnt.getAndIncrement();
+                // Wait for a compaction to finish if they are all in use
+                AbstractLogCompactor logCompactor;
+                try {
+                    logCompactor = idleCompactors.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                compactionExecutor.execute(() -> {
+                    try {
+                        compactEntryLog(logId, threshold, bucketIndex, compactedBuckets, logCompactor);
+                    } catch (EntryLogMetadataMapException e) {
+                        LOG.warn("Failed to get the metadata of entry log {} to compact", logId, e);
+                    } finally {
+                        idleCompactors.add(logCompactor);
+                    }
                 });
             }
+        } finally {
+            if (parallel) {
+                // Wait for all the compactors to be idle
+                List<AbstractLogCompactor> idle = new ArrayList<>(compactors.size());
+                while (idle.size() < compactors.size()) {
+                    idle.add(Uninterruptibles.takeUninterruptibly(idleCompactors));
+                }
+                idleCompactors.addAll(idle);
+                compacting.set(false);
+            }
+            pendingEntryLogs.set(0);
         }
 
         if (LOG.isDebugEnabled()) {
@@ -696,6 +797,39 @@ public class GarbageCollectorThread implements Runnable {
                 + "compacted entry log ratio {}", entryLogUsageBuckets, compactedBuckets, entryLogCompactRatio);
     }
 
+    /**
+     * Compact an entry log by id, if it still exists.
+     *
+     * @param logCompactor the compactor to use, or null to compact with {@link #compactEntryLog(EntryLogMetadata)}
+     */
+    private void compactEntryLog(long logId, double threshold, int bucketIndex, int[] compactedBuckets,
+                                 AbstractLogCompactor logCompactor) throws EntryLogMetadataMapException {
+        entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
+            if (meta == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Metadata for entry log {} already deleted", logId);
+                }
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                        meta.getEntryLogId(), meta.getUsage(), threshold);
+            }
+
+            long priorRemainingSize = meta.getRemainingSize();
+            if (logCompactor == null) {
+                compactEntryLog(meta);
+            } else {
+                doCompactEntryLog(meta, logCompactor);
+            }
+            gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
+            synchronized (compactedBuckets) {
+                compactedBuckets[bucketIndex]++;
+            }
+            compactedEntryLogs.getAndIncrement();
+        });
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -723,7 +857,9 @@ public class GarbageCollectorThread implements Runnable {
         LOG.info("Shutting down GarbageCollectorThread");
 
         throttler.cancelledAcquire();
-        compactor.throttler.cancelledAcquire();
+        for (AbstractLogCompactor logCompactor : compactors) {
+            logCompactor.throttler.cancelledAcquire();
+        }
         while (!compacting.compareAndSet(false, true)) {
             // Wait till the thread stops compacting
             Thread.sleep(100);
@@ -731,6 +867,9 @@ public class GarbageCollectorThread implements Runnable {
 
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdownNow();
+        }
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
@@ -774,16 +913,50 @@ public class GarbageCollectorThread implements Runnable {
         }
 
         try {
-            // Do the actual compaction
-            compactor.compact(entryLogMeta);
-        } catch (Exception e) {
-            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            doCompactEntryLog(entryLogMeta, compactor);
         } finally {
             // Mark compaction done
             compacting.set(false);
         }
     }
 
+    private void doCompactEntryLog(EntryLogMetadata entryLogMeta, AbstractLogCompactor logCompactor) {
+        long entryLogId = entryLogMeta.getEntryLogId();
+        compactionsInProgress.put(entryLogId, new CompactionProgress(entryLogMeta.getRemainingSize(),
+                logCompactor.throttler));
+        try {
+            // Do the actual compaction
+            logCompactor.compact(entryLogMeta);
+        } catch (Exception e) {
+            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogId, e);
+        } finally {
+            compactionsInProgress.remove(entryLogId);
+        }
+    }
+
+    /**
+     * Progress of the compaction of an entry log, measured by the bytes acquired from the throttler of its
+     * compactor, since the compactor only compacts one entry log at a time.
+     */
+    private static class CompactionProgress {
+        private final long liveBytes;
+        private final AbstractLogCompactor.Throttler throttler;
+        private final long startBytes;
+        private final long startTime;
+
+        CompactionProgress(long liveBytes, AbstractLogCompactor.Throttler throttler) {
+            this.liveBytes = liveBytes;
+            this.throttler = throttler;
+            this.startBytes = throttler.getAcquiredBytes();
+            this.startTime = System.currentTimeMillis();
+        }
+
+        EntryLogCompactionProgress toStatus(long entryLogId) {
+            return new EntryLogCompactionProgress(entryLogId, liveBytes, throttler.getAcquiredBytes() - startBytes,
+                    startTime);
+        }
+    }
+
     /**
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
@@ -847,6 +1020,12 @@ public class GarbageCollectorThread implements Runnable {
             .lastMinorCompactionTime(lastMinorCompactionTime)
             .majorCompactionCounter(gcStats.getMajorCompactionCounter().get())
             .minorCompactionCounter(gcStats.getMinorCompactionCounter().get())
+            .compactedEntryLogs(compactedEntryLogs.get())
+            .pendingEntryLogs(pendingEntryLogs.get())
+            .compactingEntryLogs(compactionsInProgress.entrySet().stream()
+                    .map(e -> e.getValue().toStatus(e.getKey()))
+                    .collect(Collectors.toList()))
+            .compactionIoBudgetRate(compactionIoBudget != null ? compactionIoBudget.getRate() : 0)
             .build();
     }
 }
@@ -0,0 +1,103 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the time the journal waits to group entries in a single commit.
+ *
+ * <p>Waiting only pays off if other entries arrive while waiting. The controller keeps an estimate of the arrival
+ * rate of the entries and of the commit latency, which is the fsync latency when the entries are acknowledged after
+ * the sync, or the write latency otherwise. When less than one entry is expected to arrive during a commit, the
+ * window is 0 and each entry is committed as soon as possible. Otherwise the window is the expected commit latency,
+ * capped by {@code journalMaxGroupWaitMSec}: the entries arriving meanwhile would have waited for the commit in
+ * progress anyway.
+ */
+class GroupCommitController {
+
+    // Weight of the last sample in the estimates
+    private static final double SMOOTHING = 0.2;
+
+    // Minimum duration of an arrival rate sample
+    private static final long RATE_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long maxGroupWaitNanos;
+
+    // Estimate of the commit latency, in nanoseconds. 0 until the first commit is measured
+    private volatile double commitLatencyNanos = 0;
+
+    // Arrival rate estimate and current sample, only accessed by the journal thread
+    private double arrivalsPerNano = 0;
+    private long sampleStartNanos;
+    private long sampleArrivals = 0;
+
+    private volatile long groupWaitNanos = 0;
+
+    GroupCommitController(long maxGroupWaitNanos) {
+        this.maxGroupWaitNanos = maxGroupWaitNanos;
+        this.sampleStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Record entries taken from the journal queue. Called by the journal thread only, including when the queue was
+     * empty, so that the rate decays when the journal gets idle.
+     */
+    void recordArrivals(int count, long nowNanos) {
+        sampleArrivals += count;
+        long elapsedNanos = nowNanos - sampleStartNanos;
+        if (elapsedNanos < RATE_SAMPLE_NANOS) {
+            return;
+        }
+
+        double rate = (double) sampleArrivals / elapsedNanos;
+        arrivalsPerNano = arrivalsPerNano == 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * arrivalsPerNano;
+        sampleStartNanos = nowNanos;
+        sampleArrivals = 0;
+        updateGroupWait();
+    }
+
+    /**
+     * Record the latency of a commit, i.e. of a journal sync or write depending on when the entries are
+     * acknowledged.
+     */
+    void recordCommit(long latencyNanos) {
+        double current = commitLatencyNanos;
+        commitLatencyNanos = current == 0 ? latencyNanos : SMOOTHING * latencyNanos + (1 - SMOOTHING) * current;
+    }
+
+    private void updateGroupWait() {
+        double commitLatency = commitLatencyNanos;
+        if (arrivalsPerNano * commitLatency < 1) {
+            // No other entry is expected to arrive during a commit, there is nothing to wait for
+            groupWaitNanos = 0;
+        } else {
+            groupWaitNanos = Math.min(maxGroupWaitNanos, (long) commitLatency);
+        }
+    }
+
+    /**
+     * @return the current group commit window, in nanoseconds
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie;
 
+import io.netty.buffer.ByteBufAllocator;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -27,10 +28,25 @@ import java.util.function.BiConsumer;
 
 /**
  * In-memory metadata-store to store entry-log metadata-map in memory-map.
+ *
+ * <p>When created with an allocator, the metadata are stored as {@link CompactEntryLogMetadata}, with the ledgers
+ * in direct buffers of the allocator. The map releases them when they are replaced or removed, and retains them
+ * while they are passed to an action, so that a metadata removed concurrently stays readable until the action
+ * returns.
  */
 public class InMemoryEntryLogMetadataMap implements EntryLogMetadataMap {
 
     private final Map<Long, EntryLogMetadata> entryLogMetaMap = new ConcurrentHashMap<>();
+    // Allocator of the compact metadata, null to store the metadata as they are put
+    private final ByteBufAllocator compactAllocator;
+
+    public InMemoryEntryLogMetadataMap() {
+        this(null);
+    }
+
+    public InMemoryEntryLogMetadataMap(ByteBufAllocator compactAllocator) {
+        this.compactAllocator = compactAllocator;
+    }
 
     @Override
     public boolean containsKey(long entryLogId) {
@@ -39,23 +55,47 @@ public class InMemoryEntryLogMetadataMap implements EntryLogMetadataMap {
 
     @Override
     public void put(long entryLogId, EntryLogMetadata entryLogMeta) {
-        entryLogMetaMap.put(entryLogId, entryLogMeta);
+        if (compactAllocator != null && !(entryLogMeta instanceof CompactEntryLogMetadata)) {
+            entryLogMeta = CompactEntryLogMetadata.copyOf(entryLogMeta, compactAllocator);
+        }
+        EntryLogMetadata previous = entryLogMetaMap.put(entryLogId, entryLogMeta);
+        if (previous != entryLogMeta) {
+            release(previous);
+        }
     }
 
     @Override
     public void forEach(BiConsumer<Long, EntryLogMetadata> action) {
-        entryLogMetaMap.forEach(action);
+        entryLogMetaMap.forEach((entryLogId, entryLogMeta) -> {
+            if (retain(entryLogMeta)) {
+                try {
+                    action.accept(entryLogId, entryLogMeta);
+                } finally {
+                    release(entryLogMeta);
+                }
+            }
+        });
     }
 
     @Override
     public void forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action)
             throws BookieException.EntryLogMetadataMapException {
-        action.accept(entryLogId, entryLogMetaMap.get(entryLogId));
+        EntryLogMetadata entryLogMeta = entryLogMetaMap.get(entryLogId);
+        if (entryLogMeta == null || !retain(entryLogMeta)) {
+            // Not in the map, or removed since
+            action.accept(entryLogId, null);
+            return;
+        }
+        try {
+            action.accept(entryLogId, entryLogMeta);
+        } finally {
+            release(entryLogMeta);
+        }
     }
 
     @Override
     public void remove(long entryLogId) {
-        entryLogMetaMap.remove(entryLogId);
+        release(entryLogMetaMap.remove(entryLogId));
     }
 
     @Override
@@ -70,12 +110,26 @@ public class InMemoryEntryLogMetadataMap implements EntryLogMetadataMap {
 
     @Override
     public void clear() {
-        entryLogMetaMap.clear();
+        entryLogMetaMap.keySet().forEach(this::remove);
     }
 
     @Override
     public void close() throws IOException {
-        entryLogMetaMap.clear();
+        clear();
+    }
+
+    /**
+     * @return false if the metadata was released, after being removed concurrently
+     */
+    private static boolean retain(EntryLogMetadata entryLogMeta) {
+        return !(entryLogMeta instanceof CompactEntryLogMetadata)
+                || ((CompactEntryLogMetadata) entryLogMeta).tryRetain();
+    }
+
+    private static void release(EntryLogMetadata entryLogMeta) {
+        if (entryLogMeta instanceof CompactEntryLogMetadata) {
+            ((CompactEntryLogMetadata) entryLogMeta).release();
+        }
     }
 
 }
@@ -187,7 +187,8 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         ledgerCache = new LedgerCacheImpl(conf, activeLedgers,
                 null == indexDirsManager ? ledgerDirsManager : indexDirsManager, statsLogger);
         gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager,
-                                              this, entryLogger, statsLogger.scope("gc"));
+                                              this, entryLogger, statsLogger.scope("gc"),
+                                              CompactionIoBudget.create(conf), this.entryLogger.getAllocator());
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
         // Expose Stats
         getOffsetStats = statsLogger.getOpStatsLogger(STORAGE_GET_OFFSET);
@@ -689,6 +690,11 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public CompactionIoBudget getCompactionIoBudget() {
+        return gcThread.getCompactionIoBudget();
+    }
+
     @Override
     public OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         return ledgerCache.getEntriesIterator(ledgerId);
@@ -25,6 +25,9 @@ import com.carrotsearch.hppc.ObjectHashSet;
 import com.carrotsearch.hppc.procedures.ObjectProcedure;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
@@ -41,10 +44,15 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectBufferedChannel;
 import org.apache.bookkeeper.common.collections.BatchedArrayBlockingQueue;
 import org.apache.bookkeeper.common.collections.BatchedBlockingQueue;
 import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
@@ -52,7 +60,10 @@ import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.Counter;
@@ -92,6 +103,13 @@ public class Journal implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        /**
+         * Create the buffered channel used to write the given journal file.
+         */
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -304,6 +322,8 @@ public class Journal implements CheckpointSource {
         Object ctx;
         long enqueueTime;
         boolean ackBeforeSync;
+        // Size of the entry if it was acknowledged when enqueued, 0 otherwise
+        int ackedOnEnqueueBytes;
 
         OpStatsLogger journalAddEntryStats;
         Counter callbackTime;
@@ -314,6 +334,7 @@ public class Journal implements CheckpointSource {
             QueueEntry qe = RECYCLER.get();
             qe.entry = entry;
             qe.ackBeforeSync = ackBeforeSync;
+            qe.ackedOnEnqueueBytes = 0;
             qe.cb = cb;
             qe.ctx = ctx;
             qe.ledgerId = ledgerId;
@@ -326,6 +347,10 @@ public class Journal implements CheckpointSource {
 
         @Override
         public void run() {
+            if (ackedOnEnqueueBytes > 0) {
+                recycle();
+                return;
+            }
             long startTime = System.nanoTime();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Acknowledge Ledger: {}, Entry: {}", ledgerId, entryId);
@@ -336,6 +361,17 @@ public class Journal implements CheckpointSource {
             recycle();
         }
 
+        /**
+         * Fail an entry that could not be written to the journal.
+         */
+        void fail(int rc) {
+            if (ackedOnEnqueueBytes == 0) {
+                journalAddEntryStats.registerFailedEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+                cb.writeComplete(rc, ledgerId, entryId, null, ctx);
+            }
+            recycle();
+        }
+
         private Object getCtx() {
             return ctx;
         }
@@ -379,12 +415,14 @@ public class Journal implements CheckpointSource {
             closeFileIfNecessary();
 
             // Notify the waiters that the force write succeeded
+            Object lastHandler = null;
             for (int i = 0; i < forceWriteWaiters.size(); i++) {
                 QueueEntry qe = forceWriteWaiters.get(i);
                 if (qe != null) {
-                    if (qe.getCtx() instanceof BookieRequestHandler
+                    if (qe.getCtx() != lastHandler && qe.getCtx() instanceof BookieRequestHandler
                             && qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
-                        writeHandlers.add((BookieRequestHandler) qe.getCtx());
+                        lastHandler = qe.getCtx();
+                        writeHandlers.add((BookieRequestHandler) lastHandler);
                     }
                     qe.run();
                 }
@@ -541,8 +579,11 @@ public class Journal implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncNanos, TimeUnit.NANOSECONDS);
+                if (groupCommitController != null && syncData) {
+                    groupCommitController.recordCommit(fsyncNanos);
+                }
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
@@ -559,34 +600,234 @@ public class Journal implements CheckpointSource {
         }
     }
 
+    /**
+     * A batch of entries assembled by the journal thread, to be written to the journal file by the
+     * {@link JournalWriteThread}.
+     */
+    private static class WriteBatch {
+        private final ByteBuf buffer;
+        private JournalChannel logFile;
+        private long logId;
+        private RecyclableArrayList<QueueEntry> entries;
+        private long lastFlushPosition;
+        private boolean shouldForceWrite;
+        private boolean shouldClose;
+        private long assembleStartTime;
+        private long enqueueTime;
+
+        private WriteBatch(ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+
+        private void reset() {
+            buffer.clear();
+            logFile = null;
+            entries = null;
+        }
+    }
+
+    /**
+     * JournalWriteThread writes the batches assembled by the journal thread to the journal files, while the journal
+     * thread assembles the next batch and the {@link ForceWriteThread} syncs the previous ones.
+     */
+    private class JournalWriteThread extends BookieCriticalThread {
+        volatile boolean running = true;
+
+        JournalWriteThread() {
+            super("JournalWriteThread");
+            this.setPriority(Thread.MAX_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            LOG.info("Journal Write Thread started");
+            ThreadRegistry.register(super.getName());
+
+            if (conf.isBusyWaitEnabled()) {
+                try {
+                    CpuAffinity.acquireCore();
+                } catch (Exception e) {
+                    LOG.warn("Unable to acquire CPU core for Journal Write thread: {}", e.getMessage(), e);
+                }
+            }
+
+            final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
+            while (running) {
+                WriteBatch batch = null;
+                try {
+                    batch = pendingWriteBatches.take();
+                    journalStats.getPipelineWriteQueueStats()
+                            .registerSuccessfulEvent(MathUtils.elapsedNanos(batch.enqueueTime), TimeUnit.NANOSECONDS);
+
+                    writeBatch(batch, writeHandlers);
+                } catch (IOException ioe) {
+                    LOG.error("I/O exception in Journal Write thread", ioe);
+                    running = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOG.info("Journal Write thread interrupted");
+                    running = false;
+                } finally {
+                    if (batch != null) {
+                        recycleWriteBatch(batch);
+                    }
+                }
+            }
+            // The journal thread could be waiting for a free batch
+            interruptThread();
+        }
+
+        private void writeBatch(WriteBatch batch, ObjectHashSet<BookieRequestHandler> writeHandlers)
+                throws IOException, InterruptedException {
+            long writeStartTime = MathUtils.nowInNano();
+            JournalChannel logFile = batch.logFile;
+            logFile.preAllocIfNeeded(batch.buffer.readableBytes());
+            BufferedChannel bc = logFile.getBufferedChannel();
+            bc.write(batch.buffer);
+            bc.flush();
+            long writeNanos = MathUtils.elapsedNanos(writeStartTime);
+            journalStats.getPipelineWriteStats().registerSuccessfulEvent(writeNanos, TimeUnit.NANOSECONDS);
+            if (groupCommitController != null && !syncData) {
+                groupCommitController.recordCommit(writeNanos);
+            }
+
+            ackFlushedEntries(batch.entries, writeHandlers);
+            journalStats.getJournalFlushStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(writeStartTime), TimeUnit.NANOSECONDS);
+
+            if (batch.shouldForceWrite) {
+                forceWriteRequests.put(createForceWriteRequest(logFile, batch.logId, batch.lastFlushPosition,
+                        batch.entries, batch.shouldClose));
+            } else {
+                batch.entries.recycle();
+            }
+            // The entries are now owned by the force write thread
+            batch.entries = null;
+        }
+
+        /**
+         * Stop the thread and wait for it to exit, even when the caller is interrupted, so that it no longer holds
+         * a batch once this returns.
+         */
+        void shutdown() {
+            running = false;
+            this.interrupt();
+            Uninterruptibles.joinUninterruptibly(this);
+        }
+    }
+
+    // Max time to wait on shutdown for the entries acknowledged when enqueued to be written
+    private static final long ACKED_ENTRIES_SHUTDOWN_WAIT_MS = 10_000;
+
+    // Max time the journal thread waits at once while grouping acknowledged entries, so it notices a shutdown
+    private static final long ACKED_ENTRIES_POLL_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
     static final int PADDING_MASK = -0x100;
+    static final int PACKED_MASK = -0x200;
+    // Max size of an entry packed with other entries in a single record
+    static final int PACKED_ENTRY_MAX_SIZE = 1024;
+    // Max size of the entries of a packed record
+    static final int PACKED_RECORD_MAX_SIZE = 64 * 1024;
+    // Mask, length and checksum of a packed record
+    static final int PACKED_RECORD_HEADER_SIZE = 12;
 
-    static void writePaddingBytes(JournalChannel jc, ByteBuf paddingBuffer, int journalAlignSize)
-            throws IOException {
-        int bytesToAlign = (int) (jc.bc.position() % journalAlignSize);
-        if (0 != bytesToAlign) {
-            int paddingBytes = journalAlignSize - bytesToAlign;
-            if (paddingBytes < 8) {
-                paddingBytes = journalAlignSize - (8 - paddingBytes);
+    /**
+     * Packs consecutive small entries of the same connection in a single journal record, from
+     * {@link JournalChannel#V8}. The packed record starts with {@link #PACKED_MASK}, followed by the length of the
+     * packed entries and their checksum, then by the entries, each one prefixed with its length. It saves the
+     * record checksum of each entry, and the replay of the entries of a connection reads a single record.
+     */
+    private static class RecordPacker {
+        private final ByteBuf header = Unpooled.buffer(PACKED_RECORD_HEADER_SIZE);
+        private final ByteBuf entries = Unpooled.buffer(PACKED_RECORD_MAX_SIZE);
+        private Object ctx;
+
+        boolean isEmpty() {
+            return entries.readableBytes() == 0;
+        }
+
+        /**
+         * @return true if the entry can be added to the pending record
+         */
+        boolean fits(Object ctx, int entrySize) {
+            return isEmpty()
+                    || (ctx == this.ctx && entries.readableBytes() + 4 + entrySize <= PACKED_RECORD_MAX_SIZE);
+        }
+
+        void add(Object ctx, ByteBuf entry) {
+            this.ctx = ctx;
+            entries.writeInt(entry.readableBytes());
+            entries.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+        }
+
+        /**
+         * Write the pending record, to the batch if not null, or to the journal file.
+         *
+         * @return the size of the record
+         */
+        int write(JournalChannel logFile, BufferedChannel bc, WriteBatch writeBatch) throws IOException {
+            int len = entries.readableBytes();
+            header.clear();
+            header.writeInt(PACKED_MASK);
+            header.writeInt(len);
+            header.writeInt(recordChecksum(len, entries));
+            int recordSize = header.readableBytes() + len;
+            if (writeBatch != null) {
+                writeBatch.buffer.writeBytes(header);
+                writeBatch.buffer.writeBytes(entries);
             } else {
-                paddingBytes -= 8;
+                logFile.preAllocIfNeeded(recordSize);
+                bc.write(header);
+                bc.write(entries);
             }
-            paddingBuffer.clear();
-            // padding mask
-            paddingBuffer.writeInt(PADDING_MASK);
-            // padding len
-            paddingBuffer.writeInt(paddingBytes);
-            // padding bytes
-            paddingBuffer.writerIndex(paddingBuffer.writerIndex() + paddingBytes);
+            entries.clear();
+            ctx = null;
+            return recordSize;
+        }
+    }
 
+    static void writePaddingBytes(JournalChannel jc, ByteBuf paddingBuffer, int journalAlignSize)
+            throws IOException {
+        if (preparePaddingBytes(jc.bc.position(), paddingBuffer, journalAlignSize)) {
             jc.preAllocIfNeeded(paddingBuffer.readableBytes());
             // write padding bytes
             jc.bc.write(paddingBuffer);
         }
     }
 
+    /**
+     * Fill the padding buffer with the padding record needed to align the given position of the journal.
+     *
+     * @return false if the position is already aligned
+     */
+    static boolean preparePaddingBytes(long position, ByteBuf paddingBuffer, int journalAlignSize) {
+        int bytesToAlign = (int) (position % journalAlignSize);
+        if (0 == bytesToAlign) {
+            return false;
+        }
+
+        int paddingBytes = journalAlignSize - bytesToAlign;
+        if (paddingBytes < 8) {
+            paddingBytes = journalAlignSize - (8 - paddingBytes);
+        } else {
+            paddingBytes -= 8;
+        }
+        paddingBuffer.clear();
+        // padding mask
+        paddingBuffer.writeInt(PADDING_MASK);
+        // padding len
+        paddingBuffer.writeInt(paddingBytes);
+        // padding bytes
+        paddingBuffer.writerIndex(paddingBuffer.writerIndex() + paddingBytes);
+        return true;
+    }
+
     static final long MB = 1024 * 1024L;
     static final int KB = 1024;
+    // size of the read-ahead buffer used to scan the journal files
+    static final int REPLAY_READ_AHEAD_SIZE = 4 * 1024 * KB;
+    // size of the windows mapped to scan the journal files with mmap
+    static final int REPLAY_MMAP_WINDOW_SIZE = 64 * 1024 * KB;
     // max journal file size
     final long maxJournalSize;
     // pre-allocation size for the journal files
@@ -609,6 +850,10 @@ public class Journal implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // Tunes the group wait from the load, null if the group wait is fixed to maxGroupWaitInNanos
+    private final GroupCommitController groupCommitController;
+    // Bounds the deferred sync entries acknowledged when enqueued, null if they are acknowledged after the write
+    private final UnflushedAckWindow unflushedAckWindow;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
@@ -621,6 +866,17 @@ public class Journal implements CheckpointSource {
     // Should data be fsynced on disk before triggering the callback
     private final boolean syncData;
 
+    // Aligned buffers used to write the journal files with direct I/O, null if direct I/O is disabled
+    private final NativeIO nativeIO;
+    private final BufferPool directIOBufferPool;
+    private volatile boolean directIOAvailable = true;
+
+    // Pipeline between the journal thread, assembling the batches, and the journal write thread, null if the
+    // journal writes are not pipelined
+    private final JournalWriteThread writeThread;
+    private final BlockingQueue<WriteBatch> freeWriteBatches;
+    private final BlockingQueue<WriteBatch> pendingWriteBatches;
+
     private final LastLogMark lastLogMark = new LastLogMark(0, 0);
 
     private static final String LAST_MARK_DEFAULT_NAME = "lastMark";
@@ -635,6 +891,8 @@ public class Journal implements CheckpointSource {
     BatchedBlockingQueue<ForceWriteRequest> forceWriteRequests;
 
     volatile boolean running = true;
+    // Set on shutdown to write the acknowledged entries without grouping them any longer
+    private volatile boolean draining = false;
     private final LedgerDirsManager ledgerDirsManager;
     private final ByteBufAllocator allocator;
 
@@ -645,6 +903,9 @@ public class Journal implements CheckpointSource {
 
     private MemoryLimitController memoryLimitController;
 
+    // Load of the journal, for the routing of the ledgers
+    private final LongAdder enqueuedBytes = new LongAdder();
+    private final LongAdder enqueuedEntries = new LongAdder();
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager) {
@@ -691,8 +952,44 @@ public class Journal implements CheckpointSource {
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        this.groupCommitController = conf.getJournalAdaptiveGroupCommit() && maxGroupWaitInNanos > 0
+                ? new GroupCommitController(maxGroupWaitInNanos) : null;
+        this.unflushedAckWindow = conf.getJournalAckDeferredSyncOnEnqueue()
+                ? new UnflushedAckWindow(conf.getJournalMaxUnflushedAckedBytes(),
+                        conf.getJournalMaxUnflushedAckedMSec(), journalStatsLogger)
+                : null;
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
+
+        NativeIO directNativeIO = null;
+        BufferPool directBufferPool = null;
+        if (conf.getJournalDirectIO()) {
+            try {
+                directNativeIO = new NativeIOImpl();
+                // The journal file being written, and the previous one until the force write thread closes it
+                directBufferPool = new BufferPool(directNativeIO, allocator,
+                        DirectBufferedChannel.writeCapacity(journalWriteBufferSize), 2);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to allocate the journal direct I/O buffers, using buffered writes", e);
+                directNativeIO = null;
+            }
+        }
+        this.nativeIO = directNativeIO;
+        this.directIOBufferPool = directBufferPool;
+
+        int writePipelineDepth = conf.getJournalWritePipelineDepth();
+        if (writePipelineDepth >= 2) {
+            this.freeWriteBatches = new ArrayBlockingQueue<>(writePipelineDepth);
+            this.pendingWriteBatches = new ArrayBlockingQueue<>(writePipelineDepth);
+            for (int i = 0; i < writePipelineDepth; i++) {
+                freeWriteBatches.add(new WriteBatch(allocator.directBuffer(journalWriteBufferSize)));
+            }
+            this.writeThread = new JournalWriteThread();
+        } else {
+            this.freeWriteBatches = null;
+            this.pendingWriteBatches = null;
+            this.writeThread = null;
+        }
         // read last log mark
         if (conf.getJournalDirs().length == 1) {
             lastMarkFileName = LAST_MARK_DEFAULT_NAME;
@@ -713,7 +1010,9 @@ public class Journal implements CheckpointSource {
 
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
-                () -> memoryLimitController.currentUsage());
+                () -> memoryLimitController.currentUsage(),
+                () -> TimeUnit.NANOSECONDS.toMicros(groupCommitController != null
+                        ? groupCommitController.getGroupWaitNanos() : maxGroupWaitInNanos));
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -810,6 +1109,31 @@ public class Journal implements CheckpointSource {
      */
     public long scanJournal(long journalId, long journalPos, JournalScanner scanner, boolean skipInvalidRecord)
         throws IOException {
+        return scanJournal(journalId, journalPos, scanner, skipInvalidRecord, conf.getJournalScanMmap());
+    }
+
+    /**
+     * Scan the journal.
+     *
+     * <p>From version {@link JournalChannel#V7}, the checksum of each record is verified. A record whose checksum
+     * or length is invalid, and which is only followed by zeros until the end of the file, is where the journal was
+     * left off by a crash in the middle of a write: the scan stops and returns the offset of that record. Any other
+     * invalid record is a corruption of the journal, handled like the invalid records of the older versions, by
+     * failing the scan, or by skipping the rest of the file if skipInvalidRecord is set.
+     *
+     * <p>From version {@link JournalChannel#V8}, the entries of a packed record are passed one by one to the
+     * scanner, with the offset of the packed record.
+     *
+     * @param journalId         Journal Log Id
+     * @param journalPos        Offset to start scanning
+     * @param scanner           Scanner to handle entries
+     * @param skipInvalidRecord when invalid record,should we skip it or not
+     * @param useMmap           memory-map the journal file instead of reading it
+     * @return scanOffset - represents the byte till which journal was read
+     * @throws IOException
+     */
+    public long scanJournal(long journalId, long journalPos, JournalScanner scanner, boolean skipInvalidRecord,
+                            boolean useMmap) throws IOException {
         JournalChannel recLog;
         if (journalPos <= 0) {
             recLog = new JournalChannel(journalDirectory, journalId, journalPreAllocSize, journalWriteBufferSize,
@@ -819,71 +1143,146 @@ public class Journal implements CheckpointSource {
                     journalPos, conf, fileChannelProvider);
         }
         int journalVersion = recLog.getFormatVersion();
+        boolean checksummed = journalVersion >= JournalChannel.V7;
+        // Read the journal in large chunks rather than with a couple of reads per record
+        JournalRecordReader reader = null;
         try {
-            ByteBuffer lenBuff = ByteBuffer.allocate(4);
-            ByteBuffer recBuff = ByteBuffer.allocate(64 * 1024);
+            reader = useMmap ? JournalRecordReader.mapped(recLog, REPLAY_MMAP_WINDOW_SIZE)
+                    : JournalRecordReader.readAhead(recLog, REPLAY_READ_AHEAD_SIZE);
             while (true) {
                 // entry start offset
-                long offset = recLog.fc.position();
+                long offset = reader.position();
                 // start reading entry
-                lenBuff.clear();
-                fullRead(recLog, lenBuff);
-                if (lenBuff.remaining() != 0) {
+                ByteBuffer lenBuff = reader.read(4);
+                if (lenBuff == null) {
                     break;
                 }
-                lenBuff.flip();
                 int len = lenBuff.getInt();
                 if (len == 0) {
                     break;
                 }
                 boolean isPaddingRecord = false;
+                boolean isPackedRecord = false;
                 if (len < 0) {
-                    if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                    if (len == PACKED_MASK && journalVersion >= JournalChannel.V8) {
+                        lenBuff = reader.read(4);
+                        if (lenBuff == null) {
+                            break;
+                        }
+                        len = lenBuff.getInt();
+                        isPackedRecord = true;
+                    } else if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
-                        lenBuff.clear();
-                        fullRead(recLog, lenBuff);
-                        if (lenBuff.remaining() != 0) {
+                        lenBuff = reader.read(4);
+                        if (lenBuff == null) {
                             break;
                         }
-                        lenBuff.flip();
                         len = lenBuff.getInt();
                         if (len == 0) {
                             continue;
                         }
                         isPaddingRecord = true;
+                    } else if (checksummed && isTornTail(recLog, reader.position())) {
+                        LOG.warn("Stopping the scan of journal {} at torn record with invalid length {} at offset {}",
+                                journalId, len, offset);
+                        return offset;
                     } else {
                         LOG.error("Invalid record found with negative length: {}", len);
                         throw new IOException("Invalid record found with negative length " + len);
                     }
                 }
-                recBuff.clear();
-                if (recBuff.remaining() < len) {
-                    recBuff = ByteBuffer.allocate(len);
+                int checksum = 0;
+                if (checksummed && !isPaddingRecord) {
+                    ByteBuffer checksumBuff = reader.read(4);
+                    if (checksumBuff == null) {
+                        break;
+                    }
+                    checksum = checksumBuff.getInt();
                 }
-                recBuff.limit(len);
-                if (fullRead(recLog, recBuff) != len) {
+                ByteBuffer recBuff = reader.read(len);
+                if (recBuff == null) {
                     // This seems scary, but it just means that this is where we
                     // left off writing
                     break;
                 }
-                recBuff.flip();
-                if (!isPaddingRecord) {
+                if (isPaddingRecord) {
+                    continue;
+                }
+                if (checksummed && checksum != recordChecksum(len, Unpooled.wrappedBuffer(recBuff))) {
+                    if (!isTornTail(recLog, reader.position())) {
+                        LOG.error("Invalid checksum for record at offset {} of journal {}", offset, journalId);
+                        throw new IOException("Invalid checksum for record at offset " + offset + " of journal "
+                                + journalId);
+                    }
+                    LOG.warn("Stopping the scan of journal {} at torn record with invalid checksum at offset {}",
+                            journalId, offset);
+                    return offset;
+                }
+                if (isPackedRecord) {
+                    // the entries of a packed record all have the offset of the record
+                    while (recBuff.hasRemaining()) {
+                        int entryLen = recBuff.getInt();
+                        if (entryLen < 0 || entryLen > recBuff.remaining()) {
+                            throw new IOException("Invalid entry length " + entryLen + " in packed record at offset "
+                                    + offset);
+                        }
+                        ByteBuffer entry = recBuff.slice();
+                        entry.limit(entryLen);
+                        recBuff.position(recBuff.position() + entryLen);
+                        scanner.process(journalVersion, offset, entry);
+                    }
+                } else {
                     scanner.process(journalVersion, offset, recBuff);
                 }
             }
-            return recLog.fc.position();
+            return reader.position();
         } catch (IOException e) {
             if (skipInvalidRecord) {
                 LOG.warn("Failed to parse journal file, and skipInvalidRecord is true, skip this journal file reply");
             } else {
                 throw e;
             }
-            return recLog.fc.position();
+            return reader != null ? reader.position() : recLog.fc.position();
         } finally {
+            if (reader != null) {
+                reader.close();
+            }
             recLog.close();
         }
     }
 
+    /**
+     * @return whether the journal file only contains zeros from the given position, so that an invalid record just
+     *         before is the last one written, interrupted by a crash, rather than a corruption of the journal
+     */
+    private static boolean isTornTail(JournalChannel recLog, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        long size = recLog.fc.size();
+        while (position < size) {
+            buf.clear();
+            int read = recLog.fc.read(buf, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Compute the checksum of a record of a journal of version {@link JournalChannel#V7} or later, which covers
+     * the record length and the record data.
+     */
+    static int recordChecksum(int len, ByteBuf data) {
+        int checksum = Crc32cIntChecksum.resumeChecksum(0, Ints.toByteArray(len), 0, 4);
+        return Crc32cIntChecksum.resumeChecksum(checksum, data, data.readerIndex(), data.readableBytes());
+    }
+
     /**
      * record an add entry operation in journal.
      */
@@ -903,12 +1302,39 @@ public class Journal implements CheckpointSource {
 
         journalStats.getJournalQueueSize().inc();
 
-        memoryLimitController.reserveMemory(entry.readableBytes());
+        int entrySize = entry.readableBytes();
+        memoryLimitController.reserveMemory(entrySize);
+        enqueuedBytes.add(entrySize);
+        enqueuedEntries.increment();
+
+        boolean ackOnEnqueue = false;
+        if (ackBeforeSync && unflushedAckWindow != null) {
+            ackOnEnqueue = unflushedAckWindow.tryAdd(entrySize);
+            if (!ackOnEnqueue) {
+                journalStats.getAckOnEnqueueWindowFullCounter().inc();
+            }
+        }
 
-        queue.put(QueueEntry.create(
-                entry, ackBeforeSync, ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
+        long enqueueTime = MathUtils.nowInNano();
+        QueueEntry qe = QueueEntry.create(
+                entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
                 journalStats.getJournalAddEntryStats(),
-                callbackTime));
+                callbackTime);
+        if (ackOnEnqueue) {
+            qe.ackedOnEnqueueBytes = entrySize;
+        }
+        queue.put(qe);
+
+        if (ackOnEnqueue) {
+            // The queue entry can be recycled by the journal thread from now on
+            journalStats.getAckOnEnqueueCounter().inc();
+            journalStats.getJournalAddEntryStats().registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            cb.writeComplete(0, ledgerId, entryId, null, ctx);
+            if (ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+        }
     }
 
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
@@ -930,6 +1356,20 @@ public class Journal implements CheckpointSource {
         return queue.size();
     }
 
+    /**
+     * @return the number of bytes of the entries added to the journal since it was created
+     */
+    long getEnqueuedBytes() {
+        return enqueuedBytes.sum();
+    }
+
+    /**
+     * @return the number of entries added to the journal since it was created
+     */
+    long getEnqueuedEntries() {
+        return enqueuedEntries.sum();
+    }
+
     @VisibleForTesting
     JournalChannel newLogFile(long logId, Long replaceLogId) throws IOException {
         return new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
@@ -967,13 +1407,24 @@ public class Journal implements CheckpointSource {
 
         RecyclableArrayList<QueueEntry> toFlush = entryListRecycler.newInstance();
         int numEntriesToFlush = 0;
-        ByteBuf lenBuff = Unpooled.buffer(4);
+        // Entries to flush which were acknowledged when enqueued
+        int numAckedEntriesToFlush = 0;
+        // record length, followed by the record checksum from V7
+        int recordHeaderSize = journalFormatVersionToWrite >= JournalChannel.V7 ? 8 : 4;
+        ByteBuf lenBuff = Unpooled.buffer(recordHeaderSize);
+        // Small entries are packed in a single record from V8
+        RecordPacker packer = journalFormatVersionToWrite >= JournalChannel.V8 ? new RecordPacker() : null;
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
+        // Batch being assembled, when the journal writes are pipelined
+        WriteBatch writeBatch = null;
         forceWriteThread.start();
+        if (writeThread != null) {
+            writeThread.start();
+        }
         Stopwatch journalCreationWatcher = Stopwatch.createUnstarted();
         Stopwatch journalFlushWatcher = Stopwatch.createUnstarted();
         long batchSize = 0;
@@ -994,6 +1445,11 @@ public class Journal implements CheckpointSource {
             int localQueueEntriesIdx = 0;
             int localQueueEntriesLen = 0;
             QueueEntry qe = null;
+            if (writeThread != null) {
+                writeBatch = freeWriteBatches.take();
+            }
+            // Position in the journal file after the entries of the batch
+            long writePosition = 0;
             while (true) {
                 // new journal file to write
                 if (null == logFile) {
@@ -1013,6 +1469,20 @@ public class Journal implements CheckpointSource {
                     bc = logFile.getBufferedChannel();
 
                     lastFlushPosition = bc.position();
+                    writePosition = lastFlushPosition;
+                }
+
+                // Time to wait for more entries before committing a group
+                long groupWaitNanos = groupCommitController != null
+                        ? groupCommitController.getGroupWaitNanos() : maxGroupWaitInNanos;
+                boolean flushWhenEmpty = flushWhenQueueEmpty;
+                boolean groupingAcked = false;
+                if (numEntriesToFlush > 0 && numEntriesToFlush == numAckedEntriesToFlush && !draining) {
+                    // Nobody waits for the pending entries, so keep grouping them until the max time an
+                    // acknowledged entry can wait to be written
+                    groupWaitNanos = unflushedAckWindow.getMaxNanos();
+                    flushWhenEmpty = false;
+                    groupingAcked = true;
                 }
 
                 if (qe == null) {
@@ -1031,10 +1501,12 @@ public class Journal implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushWhenEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
+                        } else if (groupingAcked) {
+                            pollWaitTimeNanos = Math.min(pollWaitTimeNanos, ACKED_ENTRIES_POLL_SLICE_NANOS);
                         }
 
                         localQueueEntriesLen = queue.pollAll(localQueueEntries,
@@ -1042,6 +1514,9 @@ public class Journal implements CheckpointSource {
                     }
 
                     dequeueStartTime = MathUtils.nowInNano();
+                    if (groupCommitController != null) {
+                        groupCommitController.recordArrivals(localQueueEntriesLen, dequeueStartTime);
+                    }
 
                     if (localQueueEntriesLen > 0) {
                         qe = localQueueEntries[localQueueEntriesIdx];
@@ -1053,12 +1528,12 @@ public class Journal implements CheckpointSource {
                     boolean shouldFlush = false;
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
-                    if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                    if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                         groupWhenTimeout = true;
-                    } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                    } else if (groupWaitNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1070,12 +1545,13 @@ public class Journal implements CheckpointSource {
                         journalStats.getFlushMaxWaitCounter().inc();
                     } else if (qe != null
                             && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                            || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                            || ((writeBatch != null ? writePosition : bc.position())
+                                > lastFlushPosition + bufferedWritesThreshold))) {
                         // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                         groupWhenTimeout = false;
                         shouldFlush = true;
                         journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                    } else if (qe == null && flushWhenQueueEmpty) {
+                    } else if (qe == null && (flushWhenEmpty || groupWaitNanos <= 0)) {
                         // We should get here only if we flushWhenQueueEmpty is true else we would wait
                         // for timeout that would put is past the maxWait threshold
                         // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1087,41 +1563,42 @@ public class Journal implements CheckpointSource {
 
                     // toFlush is non null and not empty so should be safe to access getFirst
                     if (shouldFlush) {
-                        if (journalFormatVersionToWrite >= JournalChannel.V5) {
-                            writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
+                        if (packer != null && !packer.isEmpty()) {
+                            writePosition += packer.write(logFile, bc, writeBatch);
                         }
-                        journalFlushWatcher.reset().start();
-                        bc.flush();
-
-                        for (int i = 0; i < toFlush.size(); i++) {
-                            QueueEntry entry = toFlush.get(i);
-                            if (entry != null && (!syncData || entry.ackBeforeSync)) {
-                                toFlush.set(i, null);
-                                numEntriesToFlush--;
-                                if (entry.getCtx() instanceof BookieRequestHandler
-                                        && entry.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
-                                    writeHandlers.add((BookieRequestHandler) entry.getCtx());
-                                }
-                                entry.run();
+                        if (writeBatch == null) {
+                            if (journalFormatVersionToWrite >= JournalChannel.V5) {
+                                writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                             }
-                        }
-                        writeHandlers.forEach(
-                                (ObjectProcedure<? super BookieRequestHandler>)
-                                        BookieRequestHandler::flushPendingResponse);
-                        writeHandlers.clear();
-
-                        lastFlushPosition = bc.position();
-                        journalStats.getJournalFlushStats().registerSuccessfulEvent(
-                                journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
-
-                        // Trace the lifetime of entries through persistence
-                        if (LOG.isDebugEnabled()) {
-                            for (QueueEntry e : toFlush) {
-                                if (e != null && LOG.isDebugEnabled()) {
-                                    LOG.debug("Written and queuing for flush Ledger: {}  Entry: {}",
-                                              e.ledgerId, e.entryId);
+                            journalFlushWatcher.reset().start();
+                            bc.flush();
+
+                            numEntriesToFlush -= ackFlushedEntries(toFlush, writeHandlers);
+
+                            lastFlushPosition = bc.position();
+                            long flushNanos = journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS);
+                            journalStats.getJournalFlushStats().registerSuccessfulEvent(flushNanos,
+                                    TimeUnit.NANOSECONDS);
+                            if (groupCommitController != null && !syncData) {
+                                groupCommitController.recordCommit(flushNanos);
+                            }
+
+                            // Trace the lifetime of entries through persistence
+                            if (LOG.isDebugEnabled()) {
+                                for (QueueEntry e : toFlush) {
+                                    if (e != null && LOG.isDebugEnabled()) {
+                                        LOG.debug("Written and queuing for flush Ledger: {}  Entry: {}",
+                                                  e.ledgerId, e.entryId);
+                                    }
                                 }
                             }
+                        } else {
+                            if (journalFormatVersionToWrite >= JournalChannel.V5
+                                    && preparePaddingBytes(writePosition, paddingBuff, journalAlignmentSize)) {
+                                writePosition += paddingBuff.readableBytes();
+                                writeBatch.buffer.writeBytes(paddingBuff);
+                            }
+                            lastFlushPosition = writePosition;
                         }
 
                         journalStats.getForceWriteBatchEntriesStats()
@@ -1138,16 +1615,29 @@ public class Journal implements CheckpointSource {
                         //   synchronize frequently, which will increase disk io util.
                         //   when flush interval reaches journalPageCacheFlushIntervalMSec (default: 1s),
                         //   it will trigger data sync to disk
-                        if (syncData
+                        boolean shouldForceWrite = syncData
                                 || shouldRolloverJournal
                                 || (System.currentTimeMillis() - lastFlushTimeMs
-                                >= journalPageCacheFlushIntervalMSec)) {
+                                >= journalPageCacheFlushIntervalMSec);
+                        if (writeBatch != null) {
+                            // The journal write thread writes the batch, acknowledges the entries which do not
+                            // wait for the sync, and hands the batch over to the force write thread
+                            submitWriteBatch(writeBatch, logFile, logId, lastFlushPosition, toFlush,
+                                    shouldForceWrite, shouldRolloverJournal);
+                            // The batch is owned by the journal write thread from now on
+                            writeBatch = null;
+                            writeBatch = takeFreeWriteBatch();
+                            if (shouldForceWrite) {
+                                lastFlushTimeMs = System.currentTimeMillis();
+                            }
+                        } else if (shouldForceWrite) {
                             forceWriteRequests.put(createForceWriteRequest(logFile, logId, lastFlushPosition,
                                     toFlush, shouldRolloverJournal));
                             lastFlushTimeMs = System.currentTimeMillis();
                         }
                         toFlush = entryListRecycler.newInstance();
                         numEntriesToFlush = 0;
+                        numAckedEntriesToFlush = 0;
 
                         batchSize = 0L;
                         // check whether journal file is over file limit
@@ -1188,22 +1678,56 @@ public class Journal implements CheckpointSource {
                     int entrySize = qe.entry.readableBytes();
                     journalStats.getJournalWriteBytes().addCount(entrySize);
 
-                    batchSize += (4 + entrySize);
+                    if (packer != null && entrySize <= PACKED_ENTRY_MAX_SIZE) {
+                        if (!packer.fits(qe.ctx, entrySize)) {
+                            writePosition += packer.write(logFile, bc, writeBatch);
+                        }
+                        if (packer.isEmpty()) {
+                            // the entry starts a new packed record
+                            batchSize += PACKED_RECORD_HEADER_SIZE;
+                        }
+                        packer.add(qe.ctx, qe.entry);
+                        batchSize += (4 + entrySize);
+                    } else {
+                        if (packer != null && !packer.isEmpty()) {
+                            // keep the entries in order in the journal
+                            writePosition += packer.write(logFile, bc, writeBatch);
+                        }
+                        batchSize += (recordHeaderSize + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
+                        if (writeBatch != null) {
+                            writeBatch.buffer.writeInt(entrySize);
+                            if (recordHeaderSize > 4) {
+                                writeBatch.buffer.writeInt(recordChecksum(entrySize, qe.entry));
+                            }
+                            writeBatch.buffer.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                            writePosition += recordHeaderSize + entrySize;
+                        } else {
+                            lenBuff.clear();
+                            lenBuff.writeInt(entrySize);
+                            if (recordHeaderSize > 4) {
+                                lenBuff.writeInt(recordChecksum(entrySize, qe.entry));
+                            }
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                            // preAlloc based on size
+                            logFile.preAllocIfNeeded(recordHeaderSize + entrySize);
 
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
+                            bc.write(lenBuff);
+                            bc.write(qe.entry);
+                        }
+                    }
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     ReferenceCountUtil.release(qe.entry);
                 }
 
+                if (numEntriesToFlush == 0 && writeBatch != null) {
+                    writeBatch.assembleStartTime = MathUtils.nowInNano();
+                }
                 toFlush.add(qe);
                 numEntriesToFlush++;
+                if (qe.ackedOnEnqueueBytes > 0) {
+                    numAckedEntriesToFlush++;
+                }
 
                 if (localQueueEntriesIdx < localQueueEntriesLen) {
                     qe = localQueueEntries[localQueueEntriesIdx];
@@ -1223,6 +1747,12 @@ public class Journal implements CheckpointSource {
             // the bookie. If we execute this as a part of graceful shutdown,
             // close will flush the file system cache making any previous
             // cached writes durable so this is fine as well.
+            if (writeThread != null) {
+                writeThread.shutdown();
+                if (writeBatch != null) {
+                    recycleWriteBatch(writeBatch);
+                }
+            }
             IOUtils.close(LOG, bc);
             if (journalAliveListener != null) {
                 journalAliveListener.onJournalExit();
@@ -1231,8 +1761,122 @@ public class Journal implements CheckpointSource {
         LOG.info("Journal exited loop!");
     }
 
+    /**
+     * Acknowledge the flushed entries which do not have to wait for the force write.
+     *
+     * @return the number of entries acknowledged
+     */
+    private int ackFlushedEntries(RecyclableArrayList<QueueEntry> entries,
+                                  ObjectHashSet<BookieRequestHandler> writeHandlers) {
+        int acknowledged = 0;
+        // Consecutive entries of a connection, like the entries of a packed record, register it once
+        Object lastHandler = null;
+        for (int i = 0; i < entries.size(); i++) {
+            QueueEntry entry = entries.get(i);
+            if (entry != null && (!syncData || entry.ackBeforeSync)) {
+                entries.set(i, null);
+                acknowledged++;
+                if (entry.ackedOnEnqueueBytes > 0) {
+                    unflushedAckWindow.remove(entry.ackedOnEnqueueBytes);
+                } else if (entry.getCtx() != lastHandler && entry.getCtx() instanceof BookieRequestHandler
+                        && entry.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
+                    lastHandler = entry.getCtx();
+                    writeHandlers.add((BookieRequestHandler) lastHandler);
+                }
+                entry.run();
+            }
+        }
+        writeHandlers.forEach(
+                (ObjectProcedure<? super BookieRequestHandler>)
+                        BookieRequestHandler::flushPendingResponse);
+        writeHandlers.clear();
+        return acknowledged;
+    }
+
+    /**
+     * Hand a batch back to the journal thread. The entries still attached to the batch were neither acknowledged
+     * nor handed over to the force write thread, since the batch could not be written, so they are failed.
+     */
+    private void recycleWriteBatch(WriteBatch batch) {
+        if (batch.entries != null) {
+            for (int i = 0; i < batch.entries.size(); i++) {
+                QueueEntry entry = batch.entries.get(i);
+                if (entry != null) {
+                    if (entry.ackedOnEnqueueBytes > 0) {
+                        unflushedAckWindow.remove(entry.ackedOnEnqueueBytes);
+                    }
+                    entry.fail(BookieProtocol.EIO);
+                }
+            }
+            batch.entries.recycle();
+        }
+        batch.reset();
+        // There are never more batches than the capacity of the queue
+        freeWriteBatches.add(batch);
+    }
+
+    /**
+     * Hand over an assembled batch to the journal write thread.
+     */
+    private void submitWriteBatch(WriteBatch batch, JournalChannel logFile, long logId,
+                                        long lastFlushPosition, RecyclableArrayList<QueueEntry> entries,
+                                        boolean shouldForceWrite, boolean shouldClose)
+            throws InterruptedException {
+        journalStats.getPipelineAssembleStats().registerSuccessfulEvent(
+                MathUtils.elapsedNanos(batch.assembleStartTime), TimeUnit.NANOSECONDS);
+
+        batch.logFile = logFile;
+        batch.logId = logId;
+        batch.entries = entries;
+        batch.lastFlushPosition = lastFlushPosition;
+        batch.shouldForceWrite = shouldForceWrite;
+        batch.shouldClose = shouldClose;
+        batch.enqueueTime = MathUtils.nowInNano();
+        pendingWriteBatches.put(batch);
+    }
+
+    /**
+     * @return a free batch to assemble the next entries, waiting for one if all the batches are in use
+     */
+    private WriteBatch takeFreeWriteBatch() throws InterruptedException {
+        long waitStartTime = MathUtils.nowInNano();
+        WriteBatch nextBatch = freeWriteBatches.take();
+        journalStats.getPipelineBufferWaitStats().registerSuccessfulEvent(
+                MathUtils.elapsedNanos(waitStartTime), TimeUnit.NANOSECONDS);
+        return nextBatch;
+    }
+
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (directIOBufferPool == null) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                return new BufferedChannel(allocator, fc, capacity);
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                if (directIOAvailable) {
+                    try {
+                        DirectBufferedChannel channel = DirectBufferedChannel.tryCreate(nativeIO, directIOBufferPool,
+                                allocator, file, fc, capacity);
+                        if (channel != null) {
+                            return channel;
+                        }
+                        // All the direct I/O buffers are held by journal files not closed yet
+                        LOG.info("No direct I/O buffer available for journal {}, using buffered writes", file);
+                    } catch (IOException | LinkageError | RuntimeException e) {
+                        // Native library not loaded, or direct I/O not supported by the file system
+                        LOG.warn("Unable to open journal {} with direct I/O, using buffered writes", file, e);
+                        directIOAvailable = false;
+                    }
+                }
+                return create(fc, capacity);
+            }
+        };
     }
 
     /**
@@ -1244,6 +1888,13 @@ public class Journal implements CheckpointSource {
                 return;
             }
             LOG.info("Shutting down Journal");
+            draining = true;
+            if (unflushedAckWindow != null && thread != null && thread.isAlive()
+                    && !unflushedAckWindow.awaitEmpty(ACKED_ENTRIES_SHUTDOWN_WAIT_MS)) {
+                // The clients were told these entries were added
+                LOG.warn("Shutting down Journal with {} bytes of acknowledged entries not written",
+                        unflushedAckWindow.getBytes());
+            }
             if (fileChannelProvider != null) {
                 fileChannelProvider.close();
             }
@@ -1253,6 +1904,20 @@ public class Journal implements CheckpointSource {
             running = false;
             this.interruptThread();
             this.joinThread();
+            if (directIOBufferPool != null) {
+                directIOBufferPool.close();
+            }
+            if (freeWriteBatches != null) {
+                // Batches still pending were never written, since the write thread has exited
+                WriteBatch pending;
+                while ((pending = pendingWriteBatches.poll()) != null) {
+                    recycleWriteBatch(pending);
+                }
+                for (WriteBatch batch : freeWriteBatches) {
+                    ReferenceCountUtil.release(batch.buffer);
+                }
+                freeWriteBatches.clear();
+            }
             LOG.info("Finished Shutting down Journal thread");
         } catch (IOException | InterruptedException ie) {
             Thread.currentThread().interrupt();
@@ -1260,18 +1925,6 @@ public class Journal implements CheckpointSource {
         }
     }
 
-    private static int fullRead(JournalChannel fc, ByteBuffer bb) throws IOException {
-        int total = 0;
-        while (bb.remaining() > 0) {
-            int rc = fc.read(bb);
-            if (rc <= 0) {
-                return total;
-            }
-            total += rc;
-        }
-        return total;
-    }
-
     /**
      * Wait for the Journal thread to exit.
      * This is method is needed in order to mock the journal, we can't mock final method of java.lang.Thread class
@@ -69,11 +69,15 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicit lac entry
     public static final int V6 = 6;
+    // Adding a CRC32C checksum to each record
+    public static final int V7 = 7;
+    // Packing small entries of a connection in a single record
+    public static final int V8 = 8;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V8;
 
     private final long preAllocSize;
     private final int journalAlignSize;
@@ -185,11 +189,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             // readonly, use fileChannel directly, no need to use BufferedChannel
@@ -247,7 +251,7 @@ class JournalChannel implements Closeable {
         }
     }
 
-    private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
+    private void writeHeader(File fn, Journal.BufferedChannelBuilder bcBuilder,
                              int writeBufferSize) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
@@ -258,7 +262,7 @@ class JournalChannel implements Closeable {
         bb.clear();
         fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        bc = bcBuilder.create(fn, fc, writeBufferSize);
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
         fc.write(zeros, nextPrealloc - journalAlignSize);
@@ -283,7 +287,7 @@ class JournalChannel implements Closeable {
     }
 
     void preAllocIfNeeded(long size) throws IOException {
-        if (bc.position() + size > nextPrealloc) {
+        while (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
             zeros.clear();
             fc.write(zeros, nextPrealloc - journalAlignSize);
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of the records of a journal file, from the position of its journal channel.
+ *
+ * <p>{@link #read(int)} returns a buffer which is only valid until the next read, so that the implementations
+ * can return a view of their internal buffer instead of copying the data.
+ */
+abstract class JournalRecordReader implements Closeable {
+
+    /**
+     * @return the position in the journal file of the next byte to read
+     */
+    abstract long position() throws IOException;
+
+    /**
+     * Read the next bytes of the journal file.
+     *
+     * @param length number of bytes to read
+     * @return a buffer holding the bytes read, from position 0 to its limit, or null if the file ends before
+     *         length bytes, in which case the remaining bytes of the file are consumed
+     */
+    abstract ByteBuffer read(int length) throws IOException;
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Create a reader which reads the journal file through a direct read-ahead buffer of the given size.
+     */
+    static JournalRecordReader readAhead(JournalChannel channel, int readAheadSize) {
+        return new ReadAheadReader(channel, readAheadSize);
+    }
+
+    /**
+     * Create a reader which memory-maps the journal file, by windows of the given size.
+     */
+    static JournalRecordReader mapped(JournalChannel channel, int windowSize) throws IOException {
+        return new MappedReader(channel, windowSize);
+    }
+
+    private static class ReadAheadReader extends JournalRecordReader {
+        private final JournalChannel channel;
+        private final ByteBuf readAheadBuf;
+        private final ByteBuffer readAhead;
+        // Records which do not fit in the read-ahead buffer are copied here
+        private ByteBuffer recBuff = ByteBuffer.allocate(64 * 1024);
+
+        ReadAheadReader(JournalChannel channel, int readAheadSize) {
+            this.channel = channel;
+            this.readAheadBuf = Unpooled.directBuffer(readAheadSize);
+            this.readAhead = readAheadBuf.nioBuffer(0, readAheadSize);
+            this.readAhead.limit(0);
+        }
+
+        @Override
+        long position() throws IOException {
+            return channel.fc.position() - readAhead.remaining();
+        }
+
+        @Override
+        ByteBuffer read(int length) throws IOException {
+            if (readAhead.remaining() < length && length <= readAhead.capacity()) {
+                // Move the buffered bytes to the start and fill the rest
+                readAhead.compact();
+                while (readAhead.position() < length) {
+                    if (channel.read(readAhead) <= 0) {
+                        break;
+                    }
+                }
+                readAhead.flip();
+            }
+            if (readAhead.remaining() >= length) {
+                int limit = readAhead.limit();
+                readAhead.limit(readAhead.position() + length);
+                ByteBuffer record = readAhead.slice();
+                readAhead.position(readAhead.limit());
+                readAhead.limit(limit);
+                return record;
+            }
+
+            if (recBuff.capacity() < length) {
+                recBuff = ByteBuffer.allocate(length);
+            }
+            recBuff.clear();
+            recBuff.limit(length);
+            recBuff.put(readAhead);
+            while (recBuff.hasRemaining()) {
+                if (channel.read(recBuff) <= 0) {
+                    return null;
+                }
+            }
+            recBuff.flip();
+            return recBuff;
+        }
+
+        @Override
+        public void close() {
+            readAheadBuf.release();
+        }
+    }
+
+    private static class MappedReader extends JournalRecordReader {
+        private final FileChannel fc;
+        private final int windowSize;
+        private final long fileSize;
+        private long position;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedReader(JournalChannel channel, int windowSize) throws IOException {
+            this.fc = channel.fc;
+            this.windowSize = windowSize;
+            this.fileSize = fc.size();
+            this.position = fc.position();
+        }
+
+        @Override
+        long position() {
+            return position;
+        }
+
+        @Override
+        ByteBuffer read(int length) throws IOException {
+            if (fileSize - position < length) {
+                position = fileSize;
+                return null;
+            }
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                // The previous window is unmapped when it gets garbage collected
+                long size = Math.min(Math.max(windowSize, length), fileSize - position);
+                window = fc.map(FileChannel.MapMode.READ_ONLY, position, size);
+                windowStart = position;
+            }
+            ByteBuffer record = window.duplicate();
+            record.position((int) (position - windowStart));
+            record.limit(record.position() + length);
+            position += length;
+            return record.slice();
+        }
+    }
+}
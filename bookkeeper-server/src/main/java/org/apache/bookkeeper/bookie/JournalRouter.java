@@ -0,0 +1,246 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ROUTED_LEDGERS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_RATE;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Routes the ledgers to the journals by load.
+ *
+ * <p>A ledger is routed to a journal the first time it is written, and keeps writing to it until it is deleted, it
+ * is not written for about ten minutes, or the bookie restarts, so the entries of a ledger are never spread over
+ * several journals while they are written. New ledgers go to the least loaded journal. The load of
+ * a journal is the rate of bytes written to it, plus the bytes waiting in its queue, plus the expected rate of the
+ * ledgers routed to it since the rate was last measured. The expected rate of a ledger is the average rate of the
+ * ledgers written during the last sample, so the closed ledgers do not dilute it.
+ */
+class JournalRouter {
+
+    // Minimum duration of a write rate sample
+    private static final long RATE_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Weight of the last sample in the write rate estimates
+    private static final double SMOOTHING = 0.5;
+
+    // Number of samples, of at least RATE_SAMPLE_NANOS each, after which a ledger that was not written is forgotten
+    private static final long LEDGER_IDLE_SAMPLES = 600;
+
+    // The journal of a ledger is stored with the last sample in which the ledger was written
+    private static final int JOURNAL_INDEX_BITS = 16;
+    private static final long JOURNAL_INDEX_MASK = (1L << JOURNAL_INDEX_BITS) - 1;
+
+    private final List<Journal> journals;
+    private final long rateSampleNanos;
+    private final long ledgerIdleSamples;
+    private final ConcurrentLongLongHashMap ledgerJournals = ConcurrentLongLongHashMap.newBuilder()
+            .autoShrink(true).build();
+
+    // Ledgers written, per journal, since the last sample
+    private final AtomicLongArray writtenLedgers;
+    private volatile long currentSample = 0;
+
+    // Guarded by this
+    private final long[] routedLedgers;
+    private final long[] activeLedgers;
+    private final int[] newLedgers;
+    private final long[] lastEnqueuedBytes;
+    private final long[] lastEnqueuedEntries;
+    private final double[] bytesPerSec;
+    private final double[] bytesPerEntry;
+    private long lastSampleNanos;
+
+    JournalRouter(List<Journal> journals, StatsLogger statsLogger) {
+        this(journals, statsLogger, RATE_SAMPLE_NANOS, LEDGER_IDLE_SAMPLES);
+    }
+
+    @VisibleForTesting
+    JournalRouter(List<Journal> journals, StatsLogger statsLogger, long rateSampleNanos, long ledgerIdleSamples) {
+        this.journals = journals;
+        this.rateSampleNanos = rateSampleNanos;
+        this.ledgerIdleSamples = ledgerIdleSamples;
+        int numJournals = journals.size();
+        this.writtenLedgers = new AtomicLongArray(numJournals);
+        this.routedLedgers = new long[numJournals];
+        this.activeLedgers = new long[numJournals];
+        this.newLedgers = new int[numJournals];
+        this.lastEnqueuedBytes = new long[numJournals];
+        this.lastEnqueuedEntries = new long[numJournals];
+        this.bytesPerSec = new double[numJournals];
+        this.bytesPerEntry = new double[numJournals];
+        this.lastSampleNanos = MathUtils.nowInNano();
+
+        for (int i = 0; i < numJournals; i++) {
+            final int journalIndex = i;
+            StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(i));
+            journalStatsLogger.registerGauge(JOURNAL_WRITE_RATE, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return (long) getBytesPerSec(journalIndex);
+                }
+            });
+            journalStatsLogger.registerGauge(JOURNAL_ROUTED_LEDGERS, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return getRoutedLedgers(journalIndex);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the journal the given ledger writes to, routing the ledger if it was not routed yet
+     */
+    Journal getJournal(long ledgerId) {
+        long value = ledgerJournals.get(ledgerId);
+        if (value >= 0) {
+            int journalIndex = (int) (value & JOURNAL_INDEX_MASK);
+            long sample = currentSample;
+            if ((value >>> JOURNAL_INDEX_BITS) != sample
+                    && ledgerJournals.compareAndSet(ledgerId, value, (sample << JOURNAL_INDEX_BITS) | journalIndex)) {
+                // First write of the ledger in this sample
+                writtenLedgers.incrementAndGet(journalIndex);
+            }
+            return journals.get(journalIndex);
+        }
+        return journals.get(route(ledgerId));
+    }
+
+    private synchronized int route(long ledgerId) {
+        long value = ledgerJournals.get(ledgerId);
+        if (value >= 0) {
+            return (int) (value & JOURNAL_INDEX_MASK);
+        }
+
+        long now = MathUtils.nowInNano();
+        if (now - lastSampleNanos >= rateSampleNanos) {
+            sample(now);
+        }
+
+        // The ledgers routed since the last sample are expected to write as much as the average active ledger
+        double totalBytesPerSec = 0;
+        long totalLedgers = 0;
+        for (int i = 0; i < journals.size(); i++) {
+            totalBytesPerSec += bytesPerSec[i];
+            totalLedgers += activeLedgers[i];
+        }
+        double ledgerBytesPerSec = totalLedgers > 0 ? Math.max(1, totalBytesPerSec / totalLedgers) : 1;
+
+        int selected = 0;
+        double minLoad = Double.MAX_VALUE;
+        for (int i = 0; i < journals.size(); i++) {
+            double load = bytesPerSec[i] + journals.get(i).getJournalQueueLength() * bytesPerEntry[i]
+                    + newLedgers[i] * ledgerBytesPerSec;
+            if (load < minLoad) {
+                minLoad = load;
+                selected = i;
+            }
+        }
+
+        ledgerJournals.put(ledgerId, (currentSample << JOURNAL_INDEX_BITS) | selected);
+        writtenLedgers.incrementAndGet(selected);
+        routedLedgers[selected]++;
+        newLedgers[selected]++;
+        return selected;
+    }
+
+    @VisibleForTesting
+    synchronized long getRoutedLedgers(int journalIndex) {
+        return routedLedgers[journalIndex];
+    }
+
+    private synchronized double getBytesPerSec(int journalIndex) {
+        long now = MathUtils.nowInNano();
+        if (now - lastSampleNanos >= rateSampleNanos) {
+            sample(now);
+        }
+        return bytesPerSec[journalIndex];
+    }
+
+    private void sample(long now) {
+        double elapsedSecs = (double) (now - lastSampleNanos) / TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < journals.size(); i++) {
+            Journal journal = journals.get(i);
+            long enqueuedBytes = journal.getEnqueuedBytes();
+            long enqueuedEntries = journal.getEnqueuedEntries();
+            long bytes = enqueuedBytes - lastEnqueuedBytes[i];
+            long entries = enqueuedEntries - lastEnqueuedEntries[i];
+            bytesPerSec[i] = SMOOTHING * (bytes / elapsedSecs) + (1 - SMOOTHING) * bytesPerSec[i];
+            if (entries > 0) {
+                bytesPerEntry[i] = (double) bytes / entries;
+            }
+            lastEnqueuedBytes[i] = enqueuedBytes;
+            lastEnqueuedEntries[i] = enqueuedEntries;
+            newLedgers[i] = 0;
+            activeLedgers[i] = writtenLedgers.getAndSet(i, 0);
+        }
+        lastSampleNanos = now;
+        currentSample++;
+
+        if (currentSample % ledgerIdleSamples == 0) {
+            expireIdleLedgers();
+        }
+    }
+
+    /**
+     * Forget the journal of the ledgers that were not written in the last idle samples, so that the closed ledgers
+     * do not accumulate. They are routed again if they are written later.
+     */
+    private void expireIdleLedgers() {
+        long minSample = currentSample - ledgerIdleSamples;
+        ledgerJournals.removeIf((ledgerId, value) -> {
+            if ((value >>> JOURNAL_INDEX_BITS) < minSample) {
+                routedLedgers[(int) (value & JOURNAL_INDEX_MASK)]--;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Forget the journal of a deleted ledger.
+     */
+    synchronized void ledgerDeleted(long ledgerId) {
+        long value = ledgerJournals.remove(ledgerId);
+        if (value >= 0) {
+            routedLedgers[(int) (value & JOURNAL_INDEX_MASK)]--;
+        }
+    }
+}
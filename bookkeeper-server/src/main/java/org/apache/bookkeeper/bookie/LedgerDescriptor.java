@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * Implements a ledger inside a bookie. In particular, it implements operations
@@ -77,6 +78,8 @@ public abstract class LedgerDescriptor {
 
     abstract long addEntry(ByteBuf entry) throws IOException, BookieException;
     abstract ByteBuf readEntry(long entryId) throws IOException, BookieException;
+    abstract ByteBufList readEntries(long firstEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException;
 
     abstract long getLastAddConfirmed() throws IOException, BookieException;
     abstract boolean waitForLastAddConfirmedUpdate(long previousLAC,
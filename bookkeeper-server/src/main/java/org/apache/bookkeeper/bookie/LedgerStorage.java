@@ -37,6 +37,7 @@ import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * Interface for storing ledger data on persistent storage.
@@ -144,6 +145,39 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read a batch of consecutive entries of a ledger from storage.
+     *
+     * <p>The batch starts with firstEntryId and stops at the first entry that cannot be read, after maxCount
+     * entries, or before the total size of the entries exceeds maxBytes. The first entry is always part of the
+     * batch, and the errors reading it are propagated to the caller.
+     *
+     * <p>The default implementation reads the entries one by one with {@link #getEntry(long, long)}.
+     *
+     * @return the entries of the batch, in entry id order. The caller must release.
+     */
+    default ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxBytes)
+            throws IOException, BookieException {
+        ByteBufList entries = ByteBufList.get(getEntry(ledgerId, firstEntryId));
+        long size = entries.readableBytes();
+        for (int i = 1; i < maxCount; i++) {
+            ByteBuf entry;
+            try {
+                entry = getEntry(ledgerId, firstEntryId + i);
+            } catch (IOException | BookieException e) {
+                break;
+            }
+
+            size += entry.readableBytes();
+            if (size > maxBytes) {
+                entry.release();
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -339,6 +373,16 @@ public interface LedgerStorage {
         return Collections.emptyList();
     }
 
+    /**
+     * Get the compaction rate shared by the compactions of the storage, to which the latency of the requests of
+     * the bookie is reported.
+     *
+     * @return the budget, or null if the compactions do not use one
+     */
+    default CompactionIoBudget getCompactionIoBudget() {
+        return null;
+    }
+
     /**
      * Returns the primitive long iterator for entries of the ledger, stored in
      * this LedgerStorage. The returned iterator provide weakly consistent state
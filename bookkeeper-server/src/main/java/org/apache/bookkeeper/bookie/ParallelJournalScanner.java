@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link JournalScanner} which hands the records over to another scanner on the threads of an
+ * {@link OrderedExecutor}, using the ledger id as the ordering key.
+ *
+ * <p>The records of a ledger are processed in the journal order, on a single thread, while the records of different
+ * ledgers are processed in parallel. The records are copied, since the journal scan reuses its buffer, and the
+ * size of the records waiting to be processed is bounded. The first failure of the delegate scanner is rethrown
+ * to the journal scan, and by {@link #awaitProcessed()}.
+ */
+class ParallelJournalScanner implements JournalScanner {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelJournalScanner.class);
+
+    private final JournalScanner scanner;
+    private final OrderedExecutor executor;
+    private final int maxPendingBytes;
+    private final Semaphore pendingBytes;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    ParallelJournalScanner(JournalScanner scanner, OrderedExecutor executor, int maxPendingBytes) {
+        this.scanner = scanner;
+        this.executor = executor;
+        this.maxPendingBytes = maxPendingBytes;
+        this.pendingBytes = new Semaphore(maxPendingBytes);
+    }
+
+    @Override
+    public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+        checkFailure();
+
+        int size = entry.remaining();
+        // Records larger than the limit wait for all the pending records to be processed
+        int permits = Math.min(size, maxPendingBytes);
+        try {
+            pendingBytes.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journal", e);
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate(size);
+        copy.put(entry);
+        copy.flip();
+        long ledgerId = copy.getLong(0);
+        executor.executeOrdered(ledgerId, () -> {
+            try {
+                if (failure.get() == null) {
+                    scanner.process(journalVersion, offset, copy);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to replay journal record of ledger {} at offset {}", ledgerId, offset, e);
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to replay journal record of ledger {} at offset {}", ledgerId, offset, e);
+                failure.compareAndSet(null, new IOException(e));
+            } finally {
+                pendingBytes.release(permits);
+            }
+        });
+    }
+
+    /**
+     * Wait for all the records passed to {@link #process} to be processed.
+     *
+     * @throws IOException if the processing of a record failed
+     */
+    void awaitProcessed() throws IOException {
+        try {
+            pendingBytes.acquire(maxPendingBytes);
+            pendingBytes.release(maxPendingBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying the journal", e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -21,11 +21,16 @@
 
 package org.apache.bookkeeper.bookie;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GC_KNOWN_ALIVE_LEDGERS_SKIPPED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GC_METADATA_CALLS;
 import static org.apache.bookkeeper.common.concurrent.FutureUtils.result;
 
 import com.google.common.collect.Sets;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableSet;
 import java.util.Set;
@@ -36,6 +41,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.Cleanup;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
@@ -49,7 +55,11 @@ import org.apache.bookkeeper.meta.MetadataBookieDriver;
 import org.apache.bookkeeper.meta.MetadataDrivers;
 import org.apache.bookkeeper.meta.exceptions.MetadataException;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.commons.configuration.ConfigurationException;
 import org.slf4j.Logger;
@@ -68,7 +78,19 @@ import org.slf4j.LoggerFactory;
  * <b>globalActiveLedgers</b>, do garbage collection on them.
  * </ul>
  * </p>
+ *
+ * <p>
+ * With more than one slice configured, the ledgers of the bookie are split by ledger id into slices of
+ * the same size, and each garbage collection only compares the next slice, listing the metadata store up
+ * to the end of the slice. With a known-alive ttl, the ledgers found in the metadata store are not looked
+ * up again until the ttl expires, and a slice of such ledgers is skipped.
+ * </p>
  */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Garbage Collector related stats"
+)
 public class ScanAndCompareGarbageCollector implements GarbageCollector {
 
     static final Logger LOG = LoggerFactory.getLogger(ScanAndCompareGarbageCollector.class);
@@ -85,6 +107,25 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
     private StatsLogger statsLogger;
     private final int maxConcurrentRequests;
 
+    private final int numSlices;
+    private final long knownAliveTtlMillis;
+    // Ledger id to the time it was last found in the metadata store, null if the ttl is 0
+    private final ConcurrentLongLongHashMap knownAliveLedgers;
+    // The first ledger id of the next slice
+    private long nextSliceStart = 0;
+    private final AtomicLong metadataCalls = new AtomicLong();
+
+    @StatsDoc(
+        name = GC_METADATA_CALLS,
+        help = "Number of ledger range listings and ledger metadata reads of a garbage collection"
+    )
+    private final OpStatsLogger metadataCallsStats;
+    @StatsDoc(
+        name = GC_KNOWN_ALIVE_LEDGERS_SKIPPED,
+        help = "Number of ledgers not compared with the metadata store because they were recently found in it"
+    )
+    private final Counter knownAliveLedgersSkipped;
+
     public ScanAndCompareGarbageCollector(LedgerManager ledgerManager, CompactableLedgerStorage ledgerStorage,
             ServerConfiguration conf, StatsLogger statsLogger) throws IOException {
         this.ledgerManager = ledgerManager;
@@ -104,6 +145,15 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
 
         verifyMetadataOnGc = conf.getVerifyMetadataOnGC();
 
+        this.numSlices = Math.max(1, conf.getGcMetadataScanSlices());
+        this.knownAliveTtlMillis = TimeUnit.SECONDS.toMillis(conf.getGcKnownAliveLedgerTtlSeconds());
+        this.knownAliveLedgers = knownAliveTtlMillis > 0
+                ? ConcurrentLongLongHashMap.newBuilder().concurrencyLevel(1).build() : null;
+        this.metadataCallsStats = statsLogger.getOpStatsLogger(GC_METADATA_CALLS);
+        this.knownAliveLedgersSkipped = statsLogger.getCounter(GC_KNOWN_ALIVE_LEDGERS_SKIPPED);
+        LOG.info("Garbage collection of ledgers : slices={}, knownAliveTtlMillis={}",
+                numSlices, knownAliveTtlMillis);
+
         this.activeLedgerCounter = 0;
     }
 
@@ -124,6 +174,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
             NavigableSet<Long> bkActiveLedgers = Sets.newTreeSet(ledgerStorage.getActiveLedgersInRange(0,
                     Long.MAX_VALUE));
             this.activeLedgerCounter = bkActiveLedgers.size();
+            metadataCalls.set(0);
 
             long curTime = System.currentTimeMillis();
             boolean checkOverreplicatedLedgers = (enableGcOverReplicatedLedger && curTime
@@ -141,40 +192,54 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 lastOverReplicatedLedgerGcTimeMillis = System.currentTimeMillis();
             }
 
-            // Iterate over all the ledger on the metadata store
+            NavigableSet<Long> slice = nextSlice(bkActiveLedgers);
+            if (isKnownAlive(slice, curTime)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Skip the metadata of the known alive ledgers {} - {}", slice.first(), slice.last());
+                }
+                knownAliveLedgersSkipped.addCount(slice.size());
+                return;
+            }
+
+            // Iterate over the ledgers on the metadata store, up to the end of the slice
             long zkOpTimeoutMs = this.conf.getZkTimeout() * 2;
             LedgerRangeIterator ledgerRangeIterator = ledgerManager
                     .getLedgerRanges(zkOpTimeoutMs);
             Set<Long> ledgersInMetadata = null;
             long start;
             long end = -1;
-            boolean done = false;
+            boolean done = slice.isEmpty();
             AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
             Versioned<LedgerMetadata> metadata = null;
             while (!done) {
                 start = end + 1;
+                metadataCalls.incrementAndGet();
                 if (ledgerRangeIterator.hasNext()) {
                     LedgerRange lRange = ledgerRangeIterator.next();
                     ledgersInMetadata = lRange.getLedgers();
                     end = lRange.end();
+                    done = end >= slice.last();
                 } else {
                     ledgersInMetadata = new TreeSet<>();
                     end = Long.MAX_VALUE;
                     done = true;
                 }
 
-                Iterable<Long> subBkActiveLedgers = bkActiveLedgers.subSet(start, true, end, true);
+                Iterable<Long> subBkActiveLedgers = slice.subSet(start, true, end, true);
 
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Active in metadata {}, Active in bookie {}", ledgersInMetadata, subBkActiveLedgers);
                 }
                 for (Long bkLid : subBkActiveLedgers) {
-                    if (!ledgersInMetadata.contains(bkLid)) {
+                    if (ledgersInMetadata.contains(bkLid)) {
+                        markKnownAlive(bkLid, curTime);
+                    } else {
                         if (verifyMetadataOnGc) {
                             isBookieInEnsembles.set(false);
                             metadata = null;
                             int rc = BKException.Code.OK;
                             try {
+                                metadataCalls.incrementAndGet();
                                 metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs,
                                         TimeUnit.MILLISECONDS);
                             } catch (BKException | TimeoutException e) {
@@ -197,6 +262,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                                     }
                                 });
                                 if (isBookieInEnsembles.get()) {
+                                    markKnownAlive(bkLid, curTime);
                                     continue;
                                 }
                             } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
@@ -205,6 +271,9 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                                 continue;
                             }
                         }
+                        if (knownAliveLedgers != null) {
+                            knownAliveLedgers.remove(bkLid);
+                        }
                         garbageCleaner.clean(bkLid);
                     }
                 }
@@ -212,6 +281,60 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
         } catch (Throwable t) {
             // ignore exception, collecting garbage next time
             LOG.warn("Exception when iterating over the metadata", t);
+        } finally {
+            metadataCallsStats.registerSuccessfulValue(metadataCalls.get());
+        }
+    }
+
+    /**
+     * Get the next slice of the ledgers of the bookie, starting over from the first ledger after the last slice.
+     */
+    private NavigableSet<Long> nextSlice(NavigableSet<Long> bkActiveLedgers) {
+        if (numSlices == 1) {
+            purgeKnownAliveLedgers(bkActiveLedgers);
+            return bkActiveLedgers;
+        }
+        Iterator<Long> iterator = bkActiveLedgers.tailSet(nextSliceStart, true).iterator();
+        if (!iterator.hasNext()) {
+            purgeKnownAliveLedgers(bkActiveLedgers);
+            iterator = bkActiveLedgers.iterator();
+        }
+        int sliceSize = (bkActiveLedgers.size() + numSlices - 1) / numSlices;
+        NavigableSet<Long> slice = new TreeSet<>();
+        while (iterator.hasNext() && slice.size() < sliceSize) {
+            slice.add(iterator.next());
+        }
+        nextSliceStart = slice.isEmpty() ? 0 : slice.last() + 1;
+        return slice;
+    }
+
+    /**
+     * Forget the ledgers which expired, or are no longer on the bookie, once all the slices are compared.
+     */
+    private void purgeKnownAliveLedgers(Set<Long> bkActiveLedgers) {
+        if (knownAliveLedgers != null) {
+            long now = System.currentTimeMillis();
+            knownAliveLedgers.removeIf((ledgerId, foundTime) -> now - foundTime >= knownAliveTtlMillis
+                    || !bkActiveLedgers.contains(ledgerId));
+        }
+    }
+
+    private boolean isKnownAlive(NavigableSet<Long> ledgers, long now) {
+        if (knownAliveLedgers == null || ledgers.isEmpty()) {
+            return false;
+        }
+        for (Long ledgerId : ledgers) {
+            long foundTime = knownAliveLedgers.get(ledgerId);
+            if (foundTime < 0 || now - foundTime >= knownAliveTtlMillis) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void markKnownAlive(long ledgerId, long now) {
+        if (knownAliveLedgers != null) {
+            knownAliveLedgers.put(ledgerId, now);
         }
     }
 
@@ -236,6 +359,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 // check ledger ensembles before creating lock nodes.
                 // this is to reduce the number of lock node creations and deletions in ZK.
                 // the ensemble check is done again after the lock node is created.
+                metadataCalls.incrementAndGet();
                 Versioned<LedgerMetadata> preCheckMetadata = ledgerManager.readLedgerMetadata(ledgerId).get();
                 if (!isNotBookieIncludedInLedgerEnsembles(preCheckMetadata)) {
                     latch.countDown();
@@ -261,6 +385,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 // current bookie again and, in that case, we cannot remove the ledger from local storage
                 lum.acquireUnderreplicatedLedger(ledgerId);
                 semaphore.acquire();
+                metadataCalls.incrementAndGet();
                 ledgerManager.readLedgerMetadata(ledgerId)
                     .whenComplete((metadata, exception) -> {
                             try {
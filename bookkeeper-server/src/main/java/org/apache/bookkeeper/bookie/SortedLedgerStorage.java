@@ -421,6 +421,11 @@ public class SortedLedgerStorage
         return interleavedLedgerStorage.getGarbageCollectionStatus();
     }
 
+    @Override
+    public CompactionIoBudget getCompactionIoBudget() {
+        return interleavedLedgerStorage.getCompactionIoBudget();
+    }
+
     @Override
     public PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         PrimitiveIterator.OfLong entriesInMemtableItr = memTable.getListOfEntriesOfLedger(ledgerId);
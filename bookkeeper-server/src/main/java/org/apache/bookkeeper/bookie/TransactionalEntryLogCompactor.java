@@ -57,7 +57,16 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, null);
+    }
+
+    public TransactionalEntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            CompactionIoBudget compactionIoBudget) {
+        super(conf, logRemover, compactionIoBudget);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
     }
@@ -0,0 +1,144 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_UNFLUSHED_ACKED_AGE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_UNFLUSHED_ACKED_BYTES;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Bounds the entries of a journal which are acknowledged when enqueued, before they are written to the journal file,
+ * and would be lost if the bookie crashed.
+ *
+ * <p>The window opens with the first entry acknowledged, and closes when all the acknowledged entries are written.
+ * An entry is only acknowledged when enqueued if the window does not exceed the maximum size with it, and has not
+ * been open for longer than the maximum time. Otherwise the entry is acknowledged after it is written, and the
+ * window closes once the journal catches up with the entries acknowledged before.
+ */
+class UnflushedAckWindow {
+
+    private final long maxBytes;
+    private final long maxNanos;
+
+    // Guarded by this
+    private long bytes;
+    private long entries;
+    private long openNanos;
+
+    UnflushedAckWindow(long maxBytes, long maxMSec, StatsLogger statsLogger) {
+        this.maxBytes = maxBytes;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMSec);
+
+        statsLogger.registerGauge(JOURNAL_UNFLUSHED_ACKED_BYTES, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return getBytes();
+            }
+        });
+        statsLogger.registerGauge(JOURNAL_UNFLUSHED_ACKED_AGE, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return TimeUnit.NANOSECONDS.toMillis(getAgeNanos());
+            }
+        });
+    }
+
+    /**
+     * @return the maximum time the acknowledged entries can wait to be written, in nanoseconds
+     */
+    long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Add an entry to the window, if it fits.
+     *
+     * @return true if the entry can be acknowledged before it is written
+     */
+    synchronized boolean tryAdd(int size) {
+        long now = MathUtils.nowInNano();
+        if (entries > 0 && (now - openNanos >= maxNanos || bytes + size > maxBytes)) {
+            return false;
+        }
+        if (entries == 0) {
+            if (size > maxBytes) {
+                return false;
+            }
+            openNanos = now;
+        }
+        bytes += size;
+        entries++;
+        return true;
+    }
+
+    /**
+     * Remove an acknowledged entry from the window, once it is written to the journal file.
+     */
+    synchronized void remove(int size) {
+        bytes -= size;
+        entries--;
+        if (entries == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for all the acknowledged entries to be written to the journal file.
+     *
+     * @return false if some acknowledged entries are still not written after the timeout
+     */
+    synchronized boolean awaitEmpty(long timeoutMs) throws InterruptedException {
+        long deadline = MathUtils.nowInNano() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (entries > 0) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - MathUtils.nowInNano());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            wait(remainingMs);
+        }
+        return true;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time since the window was opened, or 0 if all the acknowledged entries are written
+     */
+    synchronized long getAgeNanos() {
+        return entries > 0 ? MathUtils.elapsedNanos(openNanos) : 0;
+    }
+}
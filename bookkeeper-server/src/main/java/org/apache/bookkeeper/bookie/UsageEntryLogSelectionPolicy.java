@@ -0,0 +1,45 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compacts the entry logs from the least used to the most used, by steps of 10% of usage. The entry logs in the same
+ * step are compacted in the order they were listed.
+ */
+public class UsageEntryLogSelectionPolicy implements EntryLogSelectionPolicy {
+    private static final int NUM_STEPS = 10;
+
+    @Override
+    public List<Candidate> select(List<Candidate> candidates, long newestEntryLogId) {
+        List<Candidate> selected = new ArrayList<>(candidates);
+        // The sort is stable
+        selected.sort(Comparator.comparingInt(c -> step(c.getUsage())));
+        return selected;
+    }
+
+    private static int step(double usage) {
+        return Math.min(NUM_STEPS - 1, (int) Math.floor(usage * NUM_STEPS));
+    }
+}
@@ -22,6 +22,8 @@ package org.apache.bookkeeper.bookie.stats;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ACK_ON_ENQUEUE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ACK_ON_ENQUEUE_WINDOW_FULL;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
@@ -31,11 +33,16 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WINDOW;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PIPELINE_ASSEMBLE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PIPELINE_BUFFER_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PIPELINE_WRITE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PIPELINE_WRITE_QUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PROCESS_TIME_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_SIZE;
@@ -103,6 +110,35 @@ public class JournalStats {
         happensAfter = JOURNAL_CREATION_LATENCY
     )
     private final OpStatsLogger journalFlushStats;
+    @StatsDoc(
+        name = JOURNAL_PIPELINE_ASSEMBLE,
+        help = "operation stats of assembling a batch of entries in a pipeline buffer, from the first entry of the"
+            + " batch to its hand off to the journal write thread",
+        parent = JOURNAL_PROCESS_TIME_LATENCY
+    )
+    private final OpStatsLogger pipelineAssembleStats;
+    @StatsDoc(
+        name = JOURNAL_PIPELINE_BUFFER_WAIT,
+        help = "operation stats of waiting for a free pipeline buffer to assemble the next batch",
+        parent = JOURNAL_PROCESS_TIME_LATENCY,
+        happensAfter = JOURNAL_PIPELINE_ASSEMBLE
+    )
+    private final OpStatsLogger pipelineBufferWaitStats;
+    @StatsDoc(
+        name = JOURNAL_PIPELINE_WRITE_QUEUE,
+        help = "operation stats of batches waiting for the journal write thread",
+        parent = JOURNAL_ADD_ENTRY,
+        happensAfter = JOURNAL_PIPELINE_ASSEMBLE
+    )
+    private final OpStatsLogger pipelineWriteQueueStats;
+    @StatsDoc(
+        name = JOURNAL_PIPELINE_WRITE,
+        help = "operation stats of writing a batch to the journal file in the journal write thread"
+            + " (but not yet fsyncing to disks)",
+        parent = JOURNAL_ADD_ENTRY,
+        happensAfter = JOURNAL_PIPELINE_WRITE_QUEUE
+    )
+    private final OpStatsLogger pipelineWriteStats;
     @StatsDoc(
         name = JOURNAL_PROCESS_TIME_LATENCY,
         help = "operation stats of processing requests in a journal (from dequeue an item to finish processing it)",
@@ -162,6 +198,17 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_ACK_ON_ENQUEUE,
+        help = "The number of deferred sync entries acknowledged when added to the journal queue"
+    )
+    private final Counter ackOnEnqueueCounter;
+    @StatsDoc(
+        name = JOURNAL_ACK_ON_ENQUEUE_WINDOW_FULL,
+        help = "The number of deferred sync entries acknowledged after the journal write, because the window of"
+            + " acknowledged entries not written yet was full"
+    )
+    private final Counter ackOnEnqueueWindowFullCounter;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -172,15 +219,24 @@ public class JournalStats {
             help = "The actual amount of memory in bytes currently used by the bookie journal"
     )
     private final Gauge<Long> journalMemoryUsedStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_COMMIT_WINDOW,
+            help = "The current time the journal waits to group entries in a single commit, in microseconds"
+    )
+    private final Gauge<Long> groupCommitWindowStats;
 
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
-                        Supplier<Long> currentJournalMemoryBytes) {
+                        Supplier<Long> currentJournalMemoryBytes, Supplier<Long> groupCommitWindowMicros) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
         fwEnqueueTimeStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE);
         journalCreationStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_CREATION_LATENCY);
         journalFlushStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FLUSH_LATENCY);
+        pipelineAssembleStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_PIPELINE_ASSEMBLE);
+        pipelineBufferWaitStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_PIPELINE_BUFFER_WAIT);
+        pipelineWriteQueueStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_PIPELINE_WRITE_QUEUE);
+        pipelineWriteStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_PIPELINE_WRITE);
         journalQueueStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_QUEUE_LATENCY);
         journalProcessTimeStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_PROCESS_TIME_LATENCY);
         forceWriteGroupingCountStats =
@@ -195,6 +251,9 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        ackOnEnqueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_ACK_ON_ENQUEUE);
+        ackOnEnqueueWindowFullCounter =
+                statsLogger.getCounter(BookKeeperServerStats.JOURNAL_ACK_ON_ENQUEUE_WINDOW_FULL);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
@@ -221,6 +280,19 @@ public class JournalStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        groupCommitWindowStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return groupCommitWindowMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_WINDOW, groupCommitWindowStats);
     }
 
     @VisibleForTesting
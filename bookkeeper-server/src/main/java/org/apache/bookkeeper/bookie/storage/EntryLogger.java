@@ -21,6 +21,8 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +69,53 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read a contiguous region of an entrylog, starting with the entry at the given location.
+     *
+     * <p>The returned buffer holds consecutive entry records, each one being the 4 bytes size
+     * of the entry followed by the entry itself, as they are laid out in the entrylog. It holds
+     * at most maxBytes bytes, so the last record may be truncated, and it is shorter when the
+     * end of the written data is reached. Implementations should serve it with as few positional
+     * reads as possible. The default implementation reads the entries one by one.
+     *
+     * @param allocator the allocator of the returned buffer
+     * @param entryLocation the location of the first entry of the region
+     * @param maxBytes the maximum number of bytes to read
+     * @return a buffer with the entry records. The caller must release.
+     */
+    default ByteBuf readEntries(ByteBufAllocator allocator, long entryLocation, int maxBytes)
+            throws IOException, NoEntryException {
+        ByteBuf records = allocator.buffer(maxBytes, maxBytes);
+        try {
+            long location = entryLocation;
+            while (records.writableBytes() > Integer.BYTES) {
+                ByteBuf entry;
+                try {
+                    entry = readEntry(location);
+                } catch (IOException e) {
+                    if (records.readableBytes() == 0) {
+                        throw e;
+                    }
+                    // Reached the end of the entrylog
+                    break;
+                }
+
+                try {
+                    int entrySize = entry.readableBytes();
+                    records.writeInt(entrySize);
+                    records.writeBytes(entry, entry.readerIndex(), Math.min(entrySize, records.writableBytes()));
+                    location += Integer.BYTES + entrySize;
+                } finally {
+                    ReferenceCountUtil.release(entry);
+                }
+            }
+            return records;
+        } catch (IOException e) {
+            ReferenceCountUtil.release(records);
+            throw e;
+        }
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
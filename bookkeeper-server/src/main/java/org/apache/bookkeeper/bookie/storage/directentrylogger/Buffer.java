@@ -55,6 +55,7 @@ class Buffer {
     public static final int ALIGNMENT = 4096;
     private static final int MAX_ALIGNMENT = Integer.MAX_VALUE & ~(ALIGNMENT - 1);
     static final byte[] PADDING = generatePadding();
+    private static final byte[] ZEROS = new byte[ALIGNMENT];
 
     final NativeIO nativeIO;
     final int bufferSize;
@@ -233,6 +234,18 @@ class Buffer {
         return nextAlignment;
     }
 
+    /**
+     * Pad the buffer to the next alignment position with zeros, for formats where the padding must read as the end
+     * of the data.
+     * @return the position of the next alignment.
+     */
+    int padToAlignmentWithZeros() {
+        int bufferPos = byteBuffer.position();
+        int nextAlignment = nextAlignment(bufferPos);
+        byteBuffer.put(ZEROS, 0, nextAlignment - bufferPos);
+        return nextAlignment;
+    }
+
     /**
      * Clear the bytes written. This doesn't actually destroy the data, but moves the position back to the start of
      * the buffer.
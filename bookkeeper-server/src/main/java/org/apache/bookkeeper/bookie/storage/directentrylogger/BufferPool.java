@@ -31,7 +31,8 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIO;
 public class BufferPool implements AutoCloseable {
     private final ArrayBlockingQueue<Buffer> pool;
 
-    BufferPool(NativeIO nativeIO, ByteBufAllocator allocator, int bufferSize, int maxPoolSize) throws IOException {
+    public BufferPool(NativeIO nativeIO, ByteBufAllocator allocator, int bufferSize, int maxPoolSize)
+            throws IOException {
         pool = new ArrayBlockingQueue<>(maxPoolSize);
         for (int i = 0; i < maxPoolSize; i++) {
             pool.add(new Buffer(nativeIO, allocator, bufferSize));
@@ -47,6 +48,13 @@ public class BufferPool implements AutoCloseable {
         }
     }
 
+    /**
+     * @return a buffer of the pool, or null if all the buffers are in use
+     */
+    Buffer tryAcquire() {
+        return pool.poll();
+    }
+
     void release(Buffer buffer) {
         buffer.reset();
         if (!pool.add(buffer)) {
@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.bookie.BufferedChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * A {@link BufferedChannel} which writes to the file with direct I/O (O_DIRECT), bypassing the page cache.
+ * <p/>
+ * The buffered data is copied to an aligned {@link Buffer} taken from a {@link BufferPool} and written with
+ * pwrite. Direct I/O needs aligned offsets and sizes, so the write buffer always starts at an aligned position
+ * of the file. A flush writes all the buffered data, padding the last block with zeros, and keeps the last
+ * partial block in the write buffer, to be written again, completed, by the next flush. Aligning the
+ * writes of the caller to {@link Buffer#ALIGNMENT} avoids rewriting blocks.
+ * <p/>
+ * Force writes use fdatasync, or fsync when the metadata must be forced too. The file channel passed to
+ * the constructor is still used for reads, and by the owner of the channel for writes outside of the
+ * buffered range, such as preallocation.
+ */
+public class DirectBufferedChannel extends BufferedChannel {
+    private final NativeIO nativeIO;
+    private final BufferPool bufferPool;
+    private final String filename;
+    private final int fd;
+    private final Buffer buffer;
+    private boolean closed = false;
+
+    /**
+     * Create a channel writing to the file with direct I/O, without waiting for a buffer of the pool.
+     *
+     * @return the channel, or null if all the buffers of the pool are in use
+     */
+    public static DirectBufferedChannel tryCreate(NativeIO nativeIO, BufferPool bufferPool,
+                                                  ByteBufAllocator allocator, File file, FileChannel fc,
+                                                  int capacity) throws IOException {
+        Buffer buffer = bufferPool.tryAcquire();
+        if (buffer == null) {
+            return null;
+        }
+        return new DirectBufferedChannel(nativeIO, bufferPool, buffer, allocator, file, fc, capacity);
+    }
+
+    private DirectBufferedChannel(NativeIO nativeIO, BufferPool bufferPool, Buffer buffer,
+                                  ByteBufAllocator allocator, File file, FileChannel fc, int capacity)
+            throws IOException {
+        super(allocator, fc, writeCapacity(capacity));
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.buffer = buffer;
+        this.filename = file.toString();
+
+        try {
+            fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+            checkState(fd >= 0, "Open should have thrown exception, fd is invalid : %d", fd);
+        } catch (NativeIOException ne) {
+            // The file channel belongs to the caller, only release what was allocated here
+            bufferPool.release(buffer);
+            ReferenceCountUtil.release(writeBuffer);
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        if (buffer.size() < writeCapacity) {
+            closeQuietly();
+            throw new IOException(exMsg("Pooled buffer too small").kv("file", filename)
+                                  .kv("bufferSize", buffer.size())
+                                  .kv("writeCapacity", writeCapacity).toString());
+        }
+
+        // Read back the partial block before the current position, so that the first write starts aligned
+        long startPosition = position & ~(Buffer.ALIGNMENT - 1);
+        int partialLength = (int) (position - startPosition);
+        while (writeBuffer.writerIndex() < partialLength) {
+            int read = writeBuffer.writeBytes(fc, startPosition + writeBuffer.writerIndex(),
+                    partialLength - writeBuffer.writerIndex());
+            if (read <= 0) {
+                closeQuietly();
+                throw new IOException(exMsg("Short read of partial block").kv("file", filename)
+                                      .kv("offset", startPosition).kv("length", partialLength).toString());
+            }
+        }
+        writeBufferStartPosition.set(startPosition);
+    }
+
+    /**
+     * @return the capacity of the write buffer of a channel created with the given capacity, which is also the
+     *         minimum size of the buffers of the pool
+     */
+    public static int writeCapacity(int capacity) {
+        // The write buffer must have room for new data after keeping a partial block
+        return Math.max(Buffer.nextAlignment(capacity), 2 * Buffer.ALIGNMENT);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = writeBuffer.writerIndex();
+        if (length == 0) {
+            return;
+        }
+
+        long offset = writeBufferStartPosition.get();
+        buffer.reset();
+        buffer.writeByteBuf(writeBuffer.slice(0, length));
+        int bytesToWrite = buffer.padToAlignmentWithZeros();
+        try {
+            int ret = nativeIO.pwrite(fd, buffer.pointer(), bytesToWrite, offset);
+            if (ret != bytesToWrite) {
+                throw new IOException(exMsg("Incomplete write")
+                    .kv("filename", filename)
+                    .kv("offset", offset)
+                    .kv("writeSize", bytesToWrite)
+                    .kv("bytesWritten", ret)
+                    .toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("offset", offset)
+                .kv("writeSize", bytesToWrite)
+                .kv("errno", ne.getErrno())
+                .toString());
+        }
+
+        int fullBlocksLength = length & ~(Buffer.ALIGNMENT - 1);
+        if (fullBlocksLength > 0) {
+            int partialLength = length - fullBlocksLength;
+            writeBuffer.setBytes(0, writeBuffer, fullBlocksLength, partialLength);
+            writeBuffer.clear();
+            writeBuffer.writerIndex(partialLength);
+            writeBufferStartPosition.addAndGet(fullBlocksLength);
+        }
+    }
+
+    @Override
+    protected boolean writeGathered(ByteBuf src) {
+        // Direct I/O needs the data in aligned buffers
+        return false;
+    }
+
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        // All the flushed data, including the partial block still buffered, has been written to the file
+        long positionForceWrite = writeBufferStartPosition.get();
+        if (unpersistedBytesBound > 0) {
+            synchronized (this) {
+                unpersistedBytes.set(writeBuffer.readableBytes());
+            }
+        }
+
+        try {
+            int ret = forceMetadata ? nativeIO.fsync(fd) : nativeIO.fdatasync(fd);
+            checkState(ret == 0, "Fsync should throw exception on non-zero return (%d)", ret);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage())
+                                  .kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString());
+        }
+        return positionForceWrite;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            int ret = nativeIO.close(fd);
+            checkState(ret == 0, "Close should throw exception on non-zero return (%d)", ret);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage())
+                                  .kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString());
+        } finally {
+            bufferPool.release(buffer);
+            super.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            // ignore, the channel is not usable anyway
+        }
+        if (buffer != null) {
+            bufferPool.release(buffer);
+        }
+        ReferenceCountUtil.release(writeBuffer);
+    }
+}
@@ -211,6 +211,34 @@ public class DirectEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true);
     }
 
+    @Override
+    public ByteBuf readEntries(ByteBufAllocator allocator, long entryLocation, int maxBytes)
+            throws IOException, NoEntryException {
+        int logId = (int) (entryLocation >> 32);
+        // Include the size header of the first entry
+        long offset = (entryLocation & 0xFFFFFFFFL) - Integer.BYTES;
+
+        LogReader reader = getReader(logId);
+        try {
+            // Loads the block of the first entry, refreshing the known size of the log if needed, so that the
+            // region can then be clamped to it
+            reader.readIntAt(offset);
+            int size = (int) Math.min(maxBytes, reader.maxOffset() - offset);
+            ByteBuf records = allocator.buffer(size, size);
+            try {
+                reader.readIntoBufferAt(records, offset, size);
+            } catch (IOException e) {
+                ReferenceCountUtil.release(records);
+                throw e;
+            }
+            return records;
+        } catch (EOFException eof) {
+            throw new NoEntryException(
+                    exMsg("Entry location doesn't exist").kv("location", entryLocation).toString(),
+                    -1L, -1L);
+        }
+    }
+
     private LogReader getReader(int logId) throws IOException {
         Cache<Integer, LogReader> cache = caches.get();
         try {
@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
 
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -45,6 +46,10 @@ class DirectWriter implements LogWriter {
     final ExecutorService writeExecutor;
     final Object bufferLock = new Object();
     final List<Future<?>> outstandingWrites = new ArrayList<Future<?>>();
+    // Buffers waiting to be written, the write tasks write all the buffers queued when they run as a single batch
+    final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    // Held while writing a batch, so that a sync is never submitted while a batch is being written
+    final Object writeBatchLock = new Object();
     final Slogger slog;
     Buffer nativeBuffer;
     long offset;
@@ -124,38 +129,69 @@ class DirectWriter implements LogWriter {
         Buffer tmpBuffer = bufferPool.acquire();
         tmpBuffer.reset();
         tmpBuffer.writeByteBuf(buf);
+        submitWrite(tmpBuffer, bytesToWrite, offset);
+    }
+
+    private void submitWrite(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException {
+        synchronized (pendingWrites) {
+            pendingWrites.add(new PendingWrite(buffer, bytesToWrite, offsetToWrite));
+        }
         Future<?> f = writeExecutor.submit(() -> {
-            writeByteBuf(tmpBuffer, bytesToWrite, offset);
+            writePending(NativeIO.SYNC_NONE);
             return null;
-            });
+        });
         addOutstandingWrite(f);
     }
 
-    private void writeByteBuf(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException{
-        try {
-            if (bytesToWrite <= 0) {
+    /**
+     * Write all the queued buffers as a single batch, followed by the given sync.
+     */
+    private void writePending(int syncMode) throws IOException {
+        synchronized (writeBatchLock) {
+            PendingWrite[] batch;
+            synchronized (pendingWrites) {
+                batch = pendingWrites.toArray(new PendingWrite[0]);
+                pendingWrites.clear();
+            }
+            if (batch.length == 0 && syncMode == NativeIO.SYNC_NONE) {
                 return;
             }
-            int ret = nativeIO.pwrite(fd, buffer.pointer(), bytesToWrite, offsetToWrite);
-            if (ret != bytesToWrite) {
-                throw new IOException(exMsg("Incomplete write")
+
+            long[] pointers = new long[batch.length];
+            int[] counts = new int[batch.length];
+            long[] offsets = new long[batch.length];
+            long bytesToWrite = 0;
+            for (int i = 0; i < batch.length; i++) {
+                pointers[i] = batch[i].buffer.pointer();
+                counts[i] = batch[i].size;
+                offsets[i] = batch[i].offset;
+                bytesToWrite += batch[i].size;
+            }
+            try {
+                long ret = nativeIO.pwriteBatch(fd, pointers, counts, offsets, batch.length, syncMode);
+                if (ret != bytesToWrite) {
+                    throw new IOException(exMsg("Incomplete write")
+                        .kv("filename", filename)
+                        .kv("offset", offsets[0])
+                        .kv("buffers", batch.length)
+                        .kv("writeSize", bytesToWrite)
+                        .kv("bytesWritten", ret)
+                        .toString());
+                }
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg("Write error")
                     .kv("filename", filename)
-                    .kv("pointer", buffer.pointer())
-                    .kv("offset", offsetToWrite)
+                    .kv("offset", batch.length > 0 ? offsets[0] : -1)
+                    .kv("buffers", batch.length)
                     .kv("writeSize", bytesToWrite)
-                    .kv("bytesWritten", ret)
+                    .kv("sync", syncMode != NativeIO.SYNC_NONE)
+                    .kv("errno", ne.getErrno())
                     .toString());
+            } finally {
+                for (PendingWrite write : batch) {
+                    bufferPool.release(write.buffer);
+                }
             }
-        } catch (NativeIOException ne) {
-            throw new IOException(exMsg("Write error")
-                .kv("filename", filename)
-                .kv("offset", offsetToWrite)
-                .kv("writeSize", bytesToWrite)
-                .kv("pointer", buffer.pointer())
-                .kv("errno", ne.getErrno())
-                .toString());
-        } finally {
-            bufferPool.release(buffer);
         }
     }
 
@@ -206,18 +242,30 @@ class DirectWriter implements LogWriter {
 
     @Override
     public void flush() throws IOException {
-        flushBuffer();
+        synchronized (bufferLock) {
+            if (nativeBuffer != null && nativeBuffer.position() > 0) {
+                // Queue the current buffer without waking up the write executor, when another buffer can take
+                // its place right away, since it is written below with the sync
+                Buffer replacement = bufferPool.tryAcquire();
+                if (replacement != null) {
+                    int bytesToWrite = nativeBuffer.padToAlignment();
+                    synchronized (pendingWrites) {
+                        pendingWrites.add(new PendingWrite(nativeBuffer, bytesToWrite, offset));
+                    }
+                    offset += bytesToWrite;
+                    nativeBuffer = replacement;
+                } else {
+                    flushBuffer();
+                }
+            }
+        }
 
+        // Wait for the batches of the write executor first, so that a failed write is reported instead of being
+        // followed by a successful sync
         waitForOutstandingWrites();
 
-        try {
-            int ret = nativeIO.fsync(fd);
-            checkState(ret == 0, "Fsync should throw exception on non-zero return (%d)", ret);
-        } catch (NativeIOException ne) {
-            throw new IOException(exMsg(ne.getMessage())
-                                  .kv("file", filename)
-                                  .kv("errno", ne.getErrno()).toString());
-        }
+        // Write the buffers still queued and sync the file in a single batch
+        writePending(NativeIO.SYNC_ALL);
     }
 
     @Override
@@ -300,16 +348,15 @@ class DirectWriter implements LogWriter {
                 long offsetToWrite = offset;
                 offset += bytesToWrite;
 
-                Future<?> f = writeExecutor.submit(() -> {
-                    writeByteBuf(bufferToFlush, bytesToWrite, offsetToWrite);
-                    return null;
-                });
-                addOutstandingWrite(f);
-
-                // must acquire after triggering the write
-                // otherwise it could try to acquire a buffer without kicking off
-                // a subroutine that will free another
-                this.nativeBuffer = bufferPool.acquire();
+                try {
+                    submitWrite(bufferToFlush, bytesToWrite, offsetToWrite);
+                } finally {
+                    // must acquire after triggering the write
+                    // otherwise it could try to acquire a buffer without kicking off
+                    // a subroutine that will free another.
+                    // The write is triggered even when a previous failed write is reported
+                    this.nativeBuffer = bufferPool.acquire();
+                }
             }
         }
     }
@@ -318,4 +365,16 @@ class DirectWriter implements LogWriter {
     public int serializedSize(ByteBuf buf) {
         return buf.readableBytes() + Integer.BYTES;
     }
+
+    private static class PendingWrite {
+        final Buffer buffer;
+        final int size;
+        final long offset;
+
+        PendingWrite(Buffer buffer, int size, long offset) {
+            this.buffer = buffer;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
 }
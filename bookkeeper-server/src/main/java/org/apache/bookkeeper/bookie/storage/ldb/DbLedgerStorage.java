@@ -47,6 +47,7 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.CompactionIoBudget;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
@@ -61,6 +62,8 @@ import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigT
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.IoUringNativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
 import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -69,6 +72,7 @@ import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.commons.lang3.StringUtils;
 // CHECKSTYLE.ON: IllegalImport
@@ -82,6 +86,10 @@ public class DbLedgerStorage implements LedgerStorage {
 
     public static final String WRITE_CACHE_MAX_SIZE_MB = "dbStorage_writeCacheMaxSizeMb";
     public static final String READ_AHEAD_CACHE_MAX_SIZE_MB = "dbStorage_readAheadCacheMaxSizeMb";
+    public static final String READ_CACHE_STRIPED = "dbStorage_readCacheStriped";
+    public static final String READ_CACHE_PROTECTED_PERCENTAGE = "dbStorage_readCacheProtectedPercentage";
+    public static final String READ_CACHE_PROMOTION_THRESHOLD = "dbStorage_readCachePromotionThreshold";
+    public static final String READ_CACHE_FREQUENCY_SKETCH_MAX_ITEMS = "dbStorage_readCacheFrequencySketchMaxItems";
     public static final String DIRECT_IO_ENTRYLOGGER = "dbStorage_directIOEntryLogger";
     public static final String DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB =
         "dbStorage_directIOEntryLoggerTotalWriteBufferSizeMB";
@@ -103,6 +111,17 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_ADAPTIVE = "dbStorage_readAheadAdaptive";
+    static final String READ_AHEAD_MAX_BATCH_SIZE = "dbStorage_readAheadMaxBatchSize";
+    static final String READ_AHEAD_ASYNC = "dbStorage_readAheadAsync";
+    static final String READ_AHEAD_THREADS = "dbStorage_readAheadThreads";
+    static final String READ_AHEAD_MAX_PENDING_BATCHES = "dbStorage_readAheadMaxPendingBatches";
+    static final String FLUSH_THREADS = "dbStorage_flushThreads";
+    static final String LOCATION_CACHE_MAX_SIZE_MB = "dbStorage_locationCacheMaxSizeMb";
+    static final String WRITE_ADMISSION_CONTROL = "dbStorage_writeAdmissionControl";
+    static final String WRITE_ADMISSION_THRESHOLD_PERCENTAGE = "dbStorage_writeAdmissionThresholdPercentage";
+    static final String WRITE_ADMISSION_MAX_DELAY_MILLIS = "dbStorage_writeAdmissionMaxDelayMs";
+    static final String CACHE_MAX_PIN_WAIT_MILLIS = "dbStorage_cacheMaxPinWaitMs";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
     // the default value is -1. this feature(limit of read ahead bytes) is disabled
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE = -1;
@@ -126,6 +145,9 @@ public class DbLedgerStorage implements LedgerStorage {
 
     private ExecutorService entryLoggerWriteExecutor = null;
     private ExecutorService entryLoggerFlushExecutor = null;
+    private final List<IoUringNativeIO> ioUringNativeIOs = new ArrayList<>();
+    // Shared by the garbage collector threads of all the directories
+    private CompactionIoBudget compactionIoBudget;
 
     protected ByteBufAllocator allocator;
 
@@ -156,6 +178,7 @@ public class DbLedgerStorage implements LedgerStorage {
         boolean directIOEntryLogger = getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER, false);
 
         this.allocator = allocator;
+        this.compactionIoBudget = CompactionIoBudget.create(conf);
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
 
         log.info("Started Db Ledger Storage");
@@ -213,6 +236,16 @@ public class DbLedgerStorage implements LedgerStorage {
                     conf,
                     DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS,
                     DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS);
+                NativeIO nativeIO = new NativeIOImpl();
+                if (conf.getIoUringEnabled()) {
+                    if (IoUringNativeIO.isAvailable()) {
+                        IoUringNativeIO ioUringNativeIO = new IoUringNativeIO();
+                        ioUringNativeIOs.add(ioUringNativeIO);
+                        nativeIO = ioUringNativeIO;
+                    } else {
+                        log.warn("io_uring is not available, the direct entry logger uses pwrite and fsync");
+                    }
+                }
                 Slf4jSlogger slog = new Slf4jSlogger(DbLedgerStorage.class);
                 entryLoggerWriteExecutor = Executors.newSingleThreadExecutor(
                     new DefaultThreadFactory("EntryLoggerWrite"));
@@ -225,7 +258,7 @@ public class DbLedgerStorage implements LedgerStorage {
                 }
 
                 entrylogger = new DirectEntryLogger(ledgerDir, new EntryLogIdsImpl(ldm, slog),
-                    new NativeIOImpl(),
+                    nativeIO,
                     allocator, entryLoggerWriteExecutor, entryLoggerFlushExecutor,
                     conf.getEntryLogSizeLimit(),
                     conf.getNettyMaxFrameSizeBytes() - 500,
@@ -284,8 +317,9 @@ public class DbLedgerStorage implements LedgerStorage {
             int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger,
-                                                  statsLogger, allocator, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize);
+                                                  statsLogger, allocator, compactionIoBudget, writeCacheSize,
+                                                  readCacheSize, readAheadCacheBatchSize,
+                                                  readAheadCacheBatchBytesSize);
     }
 
     @Override
@@ -318,6 +352,7 @@ public class DbLedgerStorage implements LedgerStorage {
         if (entryLoggerFlushExecutor != null) {
             entryLoggerFlushExecutor.shutdown();
         }
+        ioUringNativeIOs.forEach(IoUringNativeIO::close);
     }
 
     @Override
@@ -361,6 +396,12 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxBytes)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntries(ledgerId, firstEntryId, maxCount, maxBytes);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -597,6 +638,11 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    @Override
+    public CompactionIoBudget getCompactionIoBudget() {
+        return compactionIoBudget;
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
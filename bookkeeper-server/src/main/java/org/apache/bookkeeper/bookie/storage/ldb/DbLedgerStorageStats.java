@@ -46,6 +46,8 @@ class DbLedgerStorageStats {
 
     private static final String ADD_ENTRY = "add-entry";
     private static final String READ_ENTRY = "read-entry";
+    private static final String READ_ENTRIES = "read-entries";
+    private static final String READ_ENTRIES_COUNT = "read-entries-count";
     private static final String READ_ENTRY_LOCATIONS_INDEX_TIME = "read-locations-index-time";
     private static final String READ_ENTRYLOG_TIME = "read-entrylog-time";
     private static final String WRITE_CACHE_HITS = "write-cache-hits";
@@ -55,8 +57,14 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED_BYTES = "readahead-wasted-bytes";
+    private static final String READAHEAD_REJECTED = "readahead-rejected";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
+    private static final String FLUSH_WRITE_ENTRIES = "flush-write-entries";
+    private static final String FLUSH_PARTITION_WRITE = "flush-partition-write";
+    private static final String FLUSH_PARTITION_INDEX = "flush-partition-index";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
@@ -66,10 +74,19 @@ class DbLedgerStorageStats {
     // throttled-write-requests is deprecated, use new metric: throttled-write
     private static final String THROTTLED_WRITE = "throttled-write";
     private static final String REJECTED_WRITE_REQUESTS = "rejected-write-requests";
+    private static final String WRITE_ADMISSION_DELAY = "write-admission-delay";
+    private static final String WRITE_ADMISSION_FLUSH_BANDWIDTH = "write-admission-flush-bandwidth";
+    private static final String WRITE_ADMISSION_PRESSURE = "write-admission-pressure";
+    private static final String WRITE_ADMISSION_RATE = "write-admission-rate";
     private static final String WRITE_CACHE_SIZE = "write-cache-size";
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_EVICTIONS = "read-cache-evictions";
+    private static final String READ_CACHE_PROTECTED_HITS = "read-cache-protected-hits";
+    private static final String READ_CACHE_PROMOTIONS = "read-cache-promotions";
+    private static final String READ_CACHE_PINNED_DROPS = "read-cache-pinned-drops";
+    private static final String WRITE_CACHE_PINNED_OVERFLOWS = "write-cache-pinned-overflows";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -83,6 +100,16 @@ class DbLedgerStorageStats {
         parent = BOOKIE_READ_ENTRY
     )
     private final OpStatsLogger readEntryStats;
+    @StatsDoc(
+        name = READ_ENTRIES,
+        help = "operation stats of reading batches of consecutive entries from db ledger storage"
+    )
+    private final OpStatsLogger readEntriesStats;
+    @StatsDoc(
+        name = READ_ENTRIES_COUNT,
+        help = "the distribution of num of entries returned by one batch read"
+    )
+    private final OpStatsLogger readEntriesCountStats;
     @StatsDoc(
             name = READ_ENTRY_LOCATIONS_INDEX_TIME,
             help = "time spent reading entries from the locations index of the db ledger storage engine",
@@ -134,6 +161,27 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+            name = READAHEAD_HITS,
+            help = "number of read-ahead entries that were later read from the read cache, only tracked with the"
+                + " adaptive read-ahead. It is estimated on the next read cache miss of the ledger, from the entries"
+                + " of the last read-ahead batch that precede the missed entry. The ratio with the"
+                + " readahead-batch-count sum gives the read-ahead hit ratio",
+            parent = READ_CACHE_HITS
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+            name = READAHEAD_WASTED_BYTES,
+            help = "estimated number of bytes that were read-ahead and never read, only tracked with the adaptive"
+                + " read-ahead"
+    )
+    private final Counter readAheadWastedBytes;
+    @StatsDoc(
+            name = READAHEAD_REJECTED,
+            help = "number of asynchronous read-ahead batches that were dropped because the read-ahead executor"
+                + " queue was full"
+    )
+    private final Counter readAheadRejectedCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -144,6 +192,22 @@ class DbLedgerStorageStats {
             help = "operation stats of flushing to the current entry log file"
     )
     private final OpStatsLogger flushEntryLogStats;
+    @StatsDoc(
+            name = FLUSH_WRITE_ENTRIES,
+            help = "operation stats of sorting the write cache and appending all its entries to the entry log files,"
+                + " building the locations index batches along the way"
+    )
+    private final OpStatsLogger flushWriteEntriesStats;
+    @StatsDoc(
+            name = FLUSH_PARTITION_WRITE,
+            help = "time spent by each flush partition appending its entries to the entry log files"
+    )
+    private final OpStatsLogger flushPartitionWriteStats;
+    @StatsDoc(
+            name = FLUSH_PARTITION_INDEX,
+            help = "time spent by each flush partition adding the entry locations to its locations index batch"
+    )
+    private final OpStatsLogger flushPartitionIndexStats;
     @StatsDoc(
             name = FLUSH_LOCATIONS_INDEX,
             help = "operation stats of flushing to the locations index"
@@ -174,6 +238,27 @@ class DbLedgerStorageStats {
         help = "The number of requests rejected due to write cache is full"
     )
     private final Counter rejectedWriteRequests;
+    @StatsDoc(
+        name = WRITE_ADMISSION_DELAY,
+        help = "The distribution of the delays imposed to adds by the write admission control"
+    )
+    private final OpStatsLogger writeAdmissionDelayStats;
+    @StatsDoc(
+        name = WRITE_ADMISSION_FLUSH_BANDWIDTH,
+        help = "Estimated flush bandwidth used by the write admission control, in bytes per second"
+    )
+    private final Gauge<Long> writeAdmissionFlushBandwidthGauge;
+    @StatsDoc(
+        name = WRITE_ADMISSION_PRESSURE,
+        help = "Write admission pressure seen by the last add, from 0 (not throttled) to 100 (write cache full)"
+    )
+    private final Gauge<Long> writeAdmissionPressureGauge;
+    @StatsDoc(
+        name = WRITE_ADMISSION_RATE,
+        help = "Rate at which adds are currently admitted in the write cache, in bytes per second,"
+            + " 0 when they are not throttled"
+    )
+    private final Gauge<Long> writeAdmissionRateGauge;
 
     @StatsDoc(
         name = WRITE_CACHE_SIZE,
@@ -195,14 +280,51 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = READ_CACHE_EVICTIONS,
+        help = "Total number of entries evicted from read cache to make space for new entries"
+    )
+    private final Gauge<Long> readCacheEvictionsGauge;
+    @StatsDoc(
+        name = READ_CACHE_PROTECTED_HITS,
+        help = "Total number of read cache hits served from the protected area of the read cache",
+        parent = READ_CACHE_HITS
+    )
+    private final Gauge<Long> readCacheProtectedHitsGauge;
+    @StatsDoc(
+        name = READ_CACHE_PROMOTIONS,
+        help = "Total number of entries promoted from the probationary to the protected area of the read cache"
+    )
+    private final Gauge<Long> readCachePromotionsGauge;
+    @StatsDoc(
+        name = READ_CACHE_PINNED_DROPS,
+        help = "Total number of entries not inserted in read cache because the segment to reuse was still pinned"
+            + " by readers"
+    )
+    private final Gauge<Long> readCachePinnedDropsGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_PINNED_OVERFLOWS,
+        help = "Total number of write cache segments replaced on clear because they were still pinned by readers"
+    )
+    private final Gauge<Long> writeCachePinnedOverflowsGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> readCacheEvictionsSupplier,
+                         Supplier<Long> readCacheProtectedHitsSupplier,
+                         Supplier<Long> readCachePromotionsSupplier,
+                         Supplier<Long> readCachePinnedDropsSupplier,
+                         Supplier<Long> writeCachePinnedOverflowsSupplier,
+                         Supplier<Long> writeAdmissionFlushBandwidthSupplier,
+                         Supplier<Long> writeAdmissionPressureSupplier,
+                         Supplier<Long> writeAdmissionRateSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
+        readEntriesStats = stats.getThreadScopedOpStatsLogger(READ_ENTRIES);
+        readEntriesCountStats = stats.getOpStatsLogger(READ_ENTRIES_COUNT);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
@@ -212,8 +334,14 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedBytes = stats.getCounter(READAHEAD_WASTED_BYTES);
+        readAheadRejectedCounter = stats.getCounter(READAHEAD_REJECTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
+        flushWriteEntriesStats = stats.getOpStatsLogger(FLUSH_WRITE_ENTRIES);
+        flushPartitionWriteStats = stats.getOpStatsLogger(FLUSH_PARTITION_WRITE);
+        flushPartitionIndexStats = stats.getOpStatsLogger(FLUSH_PARTITION_INDEX);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
@@ -221,6 +349,7 @@ class DbLedgerStorageStats {
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
         rejectedWriteRequests = stats.getThreadScopedCounter(REJECTED_WRITE_REQUESTS);
+        writeAdmissionDelayStats = stats.getOpStatsLogger(WRITE_ADMISSION_DELAY);
 
         writeCacheSizeGauge = new Gauge<Long>() {
             @Override
@@ -271,6 +400,36 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        readCacheEvictionsGauge = newLongGauge(readCacheEvictionsSupplier);
+        stats.registerGauge(READ_CACHE_EVICTIONS, readCacheEvictionsGauge);
+        readCacheProtectedHitsGauge = newLongGauge(readCacheProtectedHitsSupplier);
+        stats.registerGauge(READ_CACHE_PROTECTED_HITS, readCacheProtectedHitsGauge);
+        readCachePromotionsGauge = newLongGauge(readCachePromotionsSupplier);
+        stats.registerGauge(READ_CACHE_PROMOTIONS, readCachePromotionsGauge);
+        readCachePinnedDropsGauge = newLongGauge(readCachePinnedDropsSupplier);
+        stats.registerGauge(READ_CACHE_PINNED_DROPS, readCachePinnedDropsGauge);
+        writeCachePinnedOverflowsGauge = newLongGauge(writeCachePinnedOverflowsSupplier);
+        stats.registerGauge(WRITE_CACHE_PINNED_OVERFLOWS, writeCachePinnedOverflowsGauge);
+        writeAdmissionFlushBandwidthGauge = newLongGauge(writeAdmissionFlushBandwidthSupplier);
+        stats.registerGauge(WRITE_ADMISSION_FLUSH_BANDWIDTH, writeAdmissionFlushBandwidthGauge);
+        writeAdmissionPressureGauge = newLongGauge(writeAdmissionPressureSupplier);
+        stats.registerGauge(WRITE_ADMISSION_PRESSURE, writeAdmissionPressureGauge);
+        writeAdmissionRateGauge = newLongGauge(writeAdmissionRateSupplier);
+        stats.registerGauge(WRITE_ADMISSION_RATE, writeAdmissionRateGauge);
+    }
+
+    private static Gauge<Long> newLongGauge(Supplier<Long> supplier) {
+        return new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return supplier.get();
+            }
+        };
     }
 
 }
@@ -0,0 +1,279 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.DEFAULT_MAX_PIN_WAIT_NANOS;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.awaitUnpinned;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default read cache implementation.
+ *
+ * <p>Uses the specified amount of memory and pairs it with a hashmap.
+ *
+ * <p>The memory is split in multiple segments that are used in a
+ * ring-buffer fashion. When the read cache is full, the oldest segment
+ * is cleared and rotated to make space for new entries to be added to
+ * the read cache.
+ *
+ * <p>The entries are returned as retained slices of the segments, which pin
+ * them. A segment is only recycled once all its slices are released: the
+ * rollover waits for them for a bounded time, without holding the lock, and
+ * the entry is not cached if the segment is still pinned after that.
+ */
+public class DefaultReadCache implements ReadCache {
+    private static final Logger log = LoggerFactory.getLogger(DefaultReadCache.class);
+
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+
+    private final List<ByteBuf> cacheSegments;
+    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+
+    private int currentSegmentIdx;
+    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder pinnedDropCount = new LongAdder();
+
+    private final int segmentSize;
+
+    private final long maxPinWaitNanos;
+    // After a rollover gave up on a pinned segment, the next one is not attempted before this time
+    private volatile long nextRolloverNanos = System.nanoTime();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public DefaultReadCache(ByteBufAllocator allocator, long maxCacheSize) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public DefaultReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, DEFAULT_MAX_PIN_WAIT_NANOS);
+    }
+
+    public DefaultReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, long maxPinWaitNanos) {
+        this.maxPinWaitNanos = maxPinWaitNanos;
+        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+        segmentSize = (int) (maxCacheSize / segmentsCount);
+
+        cacheSegments = new ArrayList<>();
+        cacheIndexes = new ArrayList<>();
+
+        for (int i = 0; i < segmentsCount; i++) {
+            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
+            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+            cacheIndexes.add(concurrentLongLongPairHashMap);
+        }
+    }
+
+    @Override
+    public void close() {
+        cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        int entrySize = entry.readableBytes();
+        int alignedSize = align64(entrySize);
+        int nextSegmentIdx;
+
+        lock.readLock().lock();
+
+        try {
+            if (entrySize > segmentSize) {
+                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                return;
+            }
+            nextSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+            int offset = currentSegmentOffset.getAndAdd(alignedSize);
+            if (offset + entrySize > segmentSize) {
+                // Roll-over the segment (outside the read-lock)
+            } else {
+                // Copy entry into read cache segment
+                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
+                        entry.readableBytes());
+                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (System.nanoTime() - nextRolloverNanos < 0) {
+            // A rollover has just given up waiting for the readers
+            pinnedDropCount.increment();
+            return;
+        }
+
+        // Wait for the readers to release the segment to recycle before taking the write lock, so that
+        // the other readers are not blocked meanwhile
+        awaitUnpinned(cacheSegments.get(nextSegmentIdx), System.nanoTime() + maxPinWaitNanos);
+
+        // We could not insert in segment, we to get the write lock and roll-over to
+        // next segment
+        lock.writeLock().lock();
+
+        try {
+            int offset = currentSegmentOffset.getAndAdd(entrySize);
+            if (offset + entrySize > segmentSize) {
+                nextSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                if (cacheSegments.get(nextSegmentIdx).refCnt() > 1) {
+                    // The segment is still pinned, skip the insertion
+                    nextRolloverNanos = System.nanoTime() + maxPinWaitNanos;
+                    pinnedDropCount.increment();
+                    log.warn("Read cache segment {} still pinned by readers after {} ms, skipping the rollover",
+                            nextSegmentIdx, TimeUnit.NANOSECONDS.toMillis(maxPinWaitNanos));
+                    return;
+                }
+
+                // Rollover to next segment
+                currentSegmentIdx = nextSegmentIdx;
+                currentSegmentOffset.set(alignedSize);
+                ConcurrentLongLongPairHashMap index = cacheIndexes.get(currentSegmentIdx);
+                evictedCount.add(index.size());
+                index.clear();
+                offset = 0;
+            }
+
+            // Copy entry into read cache segment
+            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
+            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        lock.readLock().lock();
+
+        try {
+            // We need to check all the segments, starting from the current one and looking
+            // backward to minimize the
+            // checks for recently inserted entries
+            int size = cacheSegments.size();
+            for (int i = 0; i < size; i++) {
+                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
+                if (res != null) {
+                    int entryOffset = (int) res.first;
+                    int entryLen = (int) res.second;
+
+                    // Pin the segment under the read lock, before it can be recycled
+                    return cacheSegments.get(segmentIdx).retainedSlice(entryOffset, entryLen);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Entry not found in any segment
+        return null;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        lock.readLock().lock();
+
+        try {
+            int size = cacheSegments.size();
+            for (int i = 0; i < size; i++) {
+                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
+                if (res != null) {
+                    return true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Entry not found in any segment
+        return false;
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+
+        try {
+            long size = 0;
+            for (int i = 0; i < cacheIndexes.size(); i++) {
+                if (i == currentSegmentIdx) {
+                    size += currentSegmentOffset.get();
+                } else if (!cacheIndexes.get(i).isEmpty()) {
+                    size += segmentSize;
+                } else {
+                    // the segment is empty
+                }
+            }
+
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+
+        try {
+            long count = 0;
+            for (int i = 0; i < cacheIndexes.size(); i++) {
+                count += cacheIndexes.get(i).size();
+            }
+
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long evictedCount() {
+        return evictedCount.sum();
+    }
+
+    @Override
+    public long pinnedDropCount() {
+        return pinnedDropCount.sum();
+    }
+}
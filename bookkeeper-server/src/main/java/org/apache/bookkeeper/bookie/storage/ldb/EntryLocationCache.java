@@ -0,0 +1,225 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Bounded cache of entry locations, (ledgerId, entryId) -&gt; location, kept in direct memory.
+ *
+ * <p>The cache is a set-associative table: a key is hashed to a set of a few slots, and when the set is full one of
+ * its slots is overwritten. Sets are grouped in stripes, each one protected by a {@link StampedLock}. Lookups use
+ * optimistic reads and never block.
+ *
+ * <p>A location 0 marks an empty slot, since no entry can be stored at the very beginning of an entry log.
+ *
+ * <p>Locations read from the index are inserted with {@link #putIfNotModified}, using a stamp taken before reading
+ * the index. If the stripe was updated in the meantime, by a flush or a compaction, the insertion is skipped, so
+ * that a location read before an update can never replace the updated one.
+ */
+class EntryLocationCache implements Closeable {
+
+    // Slot: ledgerId (8), entryId (8), location (8)
+    private static final int SLOT_SIZE = 24;
+    private static final int WAYS = 8;
+    private static final int SET_SIZE = SLOT_SIZE * WAYS;
+    private static final int STRIPES = 256;
+
+    private final ByteBuf table;
+    private final int setsMask;
+    private final StampedLock[] locks = new StampedLock[STRIPES];
+    // Bumped on every update that does not come from the index itself
+    private final long[] versions = new long[STRIPES];
+    // Next slot to overwrite in a full set, for each stripe
+    private final int[] victims = new int[STRIPES];
+
+    private final LongAdder count = new LongAdder();
+
+    EntryLocationCache(long maxSizeBytes) {
+        // Number of sets is a power of 2, at least one per stripe
+        long sets = Math.max(STRIPES, Long.highestOneBit(Math.max(1, maxSizeBytes / SET_SIZE)));
+        sets = Math.min(sets, Integer.MAX_VALUE / SET_SIZE + 1);
+        sets = Long.highestOneBit(sets);
+        this.setsMask = (int) sets - 1;
+        int tableSize = (int) sets * SET_SIZE;
+        this.table = Unpooled.directBuffer(tableSize, tableSize);
+        this.table.setZero(0, tableSize);
+
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new StampedLock();
+        }
+    }
+
+    private static int hash(long ledgerId, long entryId) {
+        long h = (ledgerId * 0x9E3779B97F4A7C15L) ^ (entryId * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 29;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the cached location, or 0 if the entry is not in the cache
+     */
+    long get(long ledgerId, long entryId) {
+        int set = hash(ledgerId, entryId) & setsMask;
+        StampedLock lock = locks[set & (STRIPES - 1)];
+
+        long stamp = lock.tryOptimisticRead();
+        long location = find(set, ledgerId, entryId);
+        if (lock.validate(stamp)) {
+            return location;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return find(set, ledgerId, entryId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long find(int set, long ledgerId, long entryId) {
+        int base = set * SET_SIZE;
+        for (int i = 0; i < WAYS; i++) {
+            int slot = base + i * SLOT_SIZE;
+            long location = table.getLong(slot + 16);
+            if (location != 0 && table.getLong(slot) == ledgerId && table.getLong(slot + 8) == entryId) {
+                return location;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return a stamp to pass to {@link #putIfNotModified} after reading the location of the entry from the index
+     */
+    long stamp(long ledgerId, long entryId) {
+        int stripe = (hash(ledgerId, entryId) & setsMask) & (STRIPES - 1);
+        StampedLock lock = locks[stripe];
+        long stamp = lock.readLock();
+        try {
+            return versions[stripe];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Insert a location read from the index, unless the cache was updated for the same stripe since the stamp was
+     * taken.
+     */
+    void putIfNotModified(long ledgerId, long entryId, long location, long stamp) {
+        put(ledgerId, entryId, location, stamp);
+    }
+
+    /**
+     * Insert or update the location of an entry.
+     */
+    void put(long ledgerId, long entryId, long location) {
+        put(ledgerId, entryId, location, -1);
+    }
+
+    private void put(long ledgerId, long entryId, long location, long expectedVersion) {
+        int set = hash(ledgerId, entryId) & setsMask;
+        int stripe = set & (STRIPES - 1);
+        StampedLock lock = locks[stripe];
+
+        long stamp = lock.writeLock();
+        try {
+            if (expectedVersion == -1) {
+                versions[stripe]++;
+            } else if (versions[stripe] != expectedVersion) {
+                // The entry might have been moved after its location was read
+                return;
+            }
+
+            int base = set * SET_SIZE;
+            int freeSlot = -1;
+            for (int i = 0; i < WAYS; i++) {
+                int slot = base + i * SLOT_SIZE;
+                long current = table.getLong(slot + 16);
+                if (current == 0) {
+                    if (freeSlot == -1) {
+                        freeSlot = slot;
+                    }
+                } else if (table.getLong(slot) == ledgerId && table.getLong(slot + 8) == entryId) {
+                    table.setLong(slot + 16, location);
+                    return;
+                }
+            }
+
+            int slot;
+            if (freeSlot != -1) {
+                slot = freeSlot;
+                count.increment();
+            } else {
+                slot = base + victims[stripe] * SLOT_SIZE;
+                victims[stripe] = (victims[stripe] + 1) % WAYS;
+            }
+            table.setLong(slot, ledgerId);
+            table.setLong(slot + 8, entryId);
+            table.setLong(slot + 16, location);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all the entries of the given ledgers. This scans the whole cache.
+     */
+    void removeLedgers(Set<Long> ledgerIds) {
+        int sets = setsMask + 1;
+        for (int set = 0; set < sets; set++) {
+            int stripe = set & (STRIPES - 1);
+            StampedLock lock = locks[stripe];
+            long stamp = lock.writeLock();
+            try {
+                versions[stripe]++;
+                int base = set * SET_SIZE;
+                for (int i = 0; i < WAYS; i++) {
+                    int slot = base + i * SLOT_SIZE;
+                    if (table.getLong(slot + 16) != 0 && ledgerIds.contains(table.getLong(slot))) {
+                        table.setLong(slot + 16, 0);
+                        count.decrement();
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached locations
+     */
+    long count() {
+        return count.sum();
+    }
+
+    @Override
+    public void close() {
+        table.release();
+    }
+}
@@ -23,12 +23,14 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -50,10 +52,19 @@ public class EntryLocationIndex implements Closeable {
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
 
+    // Cache of the locations of recently flushed or looked up entries, null when disabled
+    private final EntryLocationCache locationCache;
+
+    private static final long DEFAULT_LOCATION_CACHE_MAX_SIZE_MB = 0;
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
 
+        long locationCacheMaxSize = DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.LOCATION_CACHE_MAX_SIZE_MB, DEFAULT_LOCATION_CACHE_MAX_SIZE_MB) * 1024 * 1024;
+        locationCache = locationCacheMaxSize > 0 ? new EntryLocationCache(locationCacheMaxSize) : null;
+
         this.stats = new EntryLocationIndexStats(
             stats,
             () -> {
@@ -62,15 +73,32 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> locationCache != null ? locationCache.count() : 0L);
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (locationCache != null) {
+            locationCache.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        long cacheStamp = 0;
+        // The entries of deleted ledgers are only removed from the cache with their index records
+        boolean useCache = locationCache != null && !deletedLedgers.contains(ledgerId);
+        if (useCache) {
+            long location = locationCache.get(ledgerId, entryId);
+            if (location != 0) {
+                stats.getLocationCacheHitCounter().inc();
+                return location;
+            }
+            stats.getLocationCacheMissCounter().inc();
+            cacheStamp = locationCache.stamp(ledgerId, entryId);
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -84,7 +112,11 @@ public class EntryLocationIndex implements Closeable {
                 return 0;
             }
             operationSuccess = true;
-            return value.getValue();
+            long location = value.getValue();
+            if (useCache) {
+                locationCache.putIfNotModified(ledgerId, entryId, location, cacheStamp);
+            }
+            return location;
         } finally {
             key.recycle();
             value.recycle();
@@ -98,6 +130,49 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Get the locations of a range of entries of a ledger with a single scan of the index.
+     *
+     * @param ledgerId the ledger id
+     * @param firstEntryId the id of the first entry of the range
+     * @param locations filled with the location of each entry of the range, starting with firstEntryId, or 0 if
+     *                  the entry is not in the index
+     * @return the number of entries of the range that were found in the index
+     */
+    public int getLocations(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        Arrays.fill(locations, 0L);
+        if (locations.length == 0) {
+            return 0;
+        }
+
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, firstEntryId);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, firstEntryId + locations.length);
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean operationSuccess = false;
+        int found = 0;
+        try (CloseableIterator<Entry<byte[], byte[]>> iter = locationsDb.iterator(firstKey.array, lastKey.array)) {
+            while (iter.hasNext()) {
+                Entry<byte[], byte[]> entry = iter.next();
+                long entryId = ArrayUtil.getLong(entry.getKey(), 8);
+                locations[(int) (entryId - firstEntryId)] = ArrayUtil.getLong(entry.getValue(), 0);
+                found++;
+            }
+            operationSuccess = true;
+            return found;
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+            if (operationSuccess) {
+                stats.getLookupEntryLocationRangeStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                stats.getLookupEntryLocationRangeStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -139,14 +214,19 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(long ledgerId, long entryId, long location) throws IOException {
-        Batch batch = locationsDb.newBatch();
+        Batch batch = newBatch();
         addLocation(batch, ledgerId, entryId, location);
         batch.flush();
         batch.close();
     }
 
+    /**
+     * @return a batch for {@link #addLocation(Batch, long, long, long)}. The locations added to the batch are inserted
+     *         in the location cache once the batch is flushed.
+     */
     public Batch newBatch() {
-        return locationsDb.newBatch();
+        Batch batch = locationsDb.newBatch();
+        return locationCache != null ? new LocationsBatch(batch) : batch;
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
@@ -163,6 +243,11 @@ public class EntryLocationIndex implements Closeable {
             key.recycle();
             value.recycle();
         }
+
+        if (batch instanceof LocationsBatch) {
+            // Entries being flushed are still served by the write cache until the batch is written
+            ((LocationsBatch) batch).addPending(ledgerId, entryId, location);
+        }
     }
 
     public void updateLocations(Iterable<EntryLocation> newLocations) throws IOException {
@@ -170,18 +255,98 @@ public class EntryLocationIndex implements Closeable {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
         }
 
-        Batch batch = newBatch();
+        Batch batch = locationsDb.newBatch();
         // Update all the ledger index pages with the new locations
         for (EntryLocation e : newLocations) {
             if (log.isDebugEnabled()) {
                 log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
             }
 
-            addLocation(batch, e.ledger, e.entry, e.location);
+            LongPairWrapper key = LongPairWrapper.get(e.ledger, e.entry);
+            LongWrapper value = LongWrapper.get(e.location);
+            try {
+                batch.put(key.array, value.array);
+            } finally {
+                key.recycle();
+                value.recycle();
+            }
         }
 
         batch.flush();
         batch.close();
+
+        if (locationCache != null) {
+            // Only switch to the compacted locations once they are in the index. The compacted entry log is not
+            // removed before this method returns, so the old cached locations can still be read until then
+            for (EntryLocation e : newLocations) {
+                locationCache.put(e.ledger, e.entry, e.location);
+            }
+        }
+    }
+
+    /**
+     * Batch that inserts its locations in the location cache after they are written to the index, so that the cache
+     * never returns a location which is not persisted yet.
+     */
+    private final class LocationsBatch implements Batch {
+        private final Batch batch;
+        // (ledgerId, entryId, location) of the locations added since the last flush
+        private long[] pending = new long[3 * 1024];
+        private int pendingCount;
+
+        LocationsBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        void addPending(long ledgerId, long entryId, long location) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[pendingCount++] = ledgerId;
+            pending[pendingCount++] = entryId;
+            pending[pendingCount++] = location;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+            pendingCount = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            batch.flush();
+
+            for (int i = 0; i < pendingCount; i += 3) {
+                locationCache.put(pending[i], pending[i + 1], pending[i + 2]);
+            }
+            pendingCount = 0;
+        }
+
+        @Override
+        public int batchCount() {
+            return batch.batchCount();
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+        }
     }
 
     public void delete(long ledgerId) throws IOException {
@@ -233,6 +398,9 @@ public class EntryLocationIndex implements Closeable {
             }
 
             batch.flush();
+            if (locationCache != null) {
+                locationCache.removeLedgers(ledgersToDelete);
+            }
             for (long ledgerId : ledgersToDelete) {
                 deletedLedgers.remove(ledgerId);
             }
@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -42,6 +43,11 @@ class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
+    private static final String LOOKUP_ENTRY_LOCATION_RANGE = "lookup-entry-location-range";
+    private static final String LOCATION_CACHE_HITS = "location-cache-hits";
+    private static final String LOCATION_CACHE_MISSES = "location-cache-misses";
+    private static final String LOCATION_CACHE_COUNT = "location-cache-count";
+    private static final String LOCATION_CACHE_HIT_RATIO = "location-cache-hit-ratio";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -55,8 +61,39 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger lookupEntryLocationStats;
 
+    @StatsDoc(
+            name = LOOKUP_ENTRY_LOCATION_RANGE,
+            help = "operation stats of looking up the locations of a range of entries of a ledger"
+    )
+    private final OpStatsLogger lookupEntryLocationRangeStats;
+
+    @StatsDoc(
+            name = LOCATION_CACHE_HITS,
+            help = "number of entry location lookups served by the location cache"
+    )
+    private final Counter locationCacheHitCounter;
+
+    @StatsDoc(
+            name = LOCATION_CACHE_MISSES,
+            help = "number of entry location lookups that missed the location cache"
+    )
+    private final Counter locationCacheMissCounter;
+
+    @StatsDoc(
+        name = LOCATION_CACHE_COUNT,
+        help = "Current number of entry locations in the location cache"
+    )
+    private final Gauge<Long> locationCacheCountGauge;
+
+    @StatsDoc(
+        name = LOCATION_CACHE_HIT_RATIO,
+        help = "Percentage of the entry location lookups served by the location cache, since the bookie started"
+    )
+    private final Gauge<Long> locationCacheHitRatioGauge;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> locationCacheCountSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -70,6 +107,35 @@ class EntryLocationIndexStats {
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
+        lookupEntryLocationRangeStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION_RANGE);
+        locationCacheHitCounter = statsLogger.getCounter(LOCATION_CACHE_HITS);
+        locationCacheMissCounter = statsLogger.getCounter(LOCATION_CACHE_MISSES);
+        locationCacheCountGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheCountSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_COUNT, locationCacheCountGauge);
+        locationCacheHitRatioGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                long hits = locationCacheHitCounter.get();
+                long lookups = hits + locationCacheMissCounter.get();
+                return lookups > 0 ? hits * 100 / lookups : 0L;
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_HIT_RATIO, locationCacheHitRatioGauge);
     }
 
 }
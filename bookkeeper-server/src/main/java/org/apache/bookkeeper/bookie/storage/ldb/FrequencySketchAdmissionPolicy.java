@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TinyLFU style admission policy.
+ *
+ * <p>The access frequency of the entries is estimated with a count-min sketch of 4-bit counters. The counters are
+ * halved every {@code 2 * expectedItems} accesses, so that the estimation follows the recent history of the accesses
+ * rather than the whole lifetime of the bookie. Entries that were accessed only once are forgotten at each halving.
+ *
+ * <p>An entry is admitted once it has been accessed at least {@code promotionThreshold} times. An entry that is
+ * read-ahead and then read once by a scanning reader is accessed only once, so it will never be admitted.
+ *
+ * <p>The sketch takes 4 rows of 4 counters per expected item, rounded up to a power of two, that is 8 to 16 bytes
+ * of heap per expected item. The counters are updated with compare-and-set on the words holding them, so the
+ * concurrent accesses are never lost, and the halving never races with an increment of the same word.
+ */
+public class FrequencySketchAdmissionPolicy implements ReadCacheAdmissionPolicy {
+
+    private static final int DEPTH = 4;
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    // Max number of items tracked, whatever the expected items, that is 512 MB of heap
+    private static final int MAX_ITEMS = 1 << 26;
+
+    private final AtomicLongArray[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private final int promotionThreshold;
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param expectedItems the number of distinct entries that the sketch should be able to track
+     * @param promotionThreshold the number of accesses after which an entry is admitted
+     */
+    public FrequencySketchAdmissionPolicy(int expectedItems, int promotionThreshold) {
+        checkArgument(expectedItems > 0);
+        checkArgument(promotionThreshold > 0 && promotionThreshold <= MAX_COUNT);
+
+        // Use 4 counters per expected item in each row, and age the history before the rows get half full: this keeps
+        // the probability that all the counters of a key that was accessed once are inflated by collisions below a few
+        // percents, which matters since the admission is based on an absolute threshold
+        int counters = Math.max(COUNTERS_PER_WORD,
+                Integer.highestOneBit(Math.min(expectedItems, MAX_ITEMS) * 4 - 1) << 1);
+        this.counterMask = counters - 1;
+        this.table = new AtomicLongArray[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            table[i] = new AtomicLongArray(counters / COUNTERS_PER_WORD);
+        }
+        this.sampleSize = counters / 2;
+        this.promotionThreshold = promotionThreshold;
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int counter = counterIndex(hash, i);
+            added |= increment(table[i], counter / COUNTERS_PER_WORD, (counter % COUNTERS_PER_WORD) * 4);
+        }
+
+        if (added) {
+            int count = additions.incrementAndGet();
+            // Only the thread that moves the count back under the sample size ages the history
+            if (count >= sampleSize && additions.compareAndSet(count, sampleSize / 2)) {
+                reset();
+            }
+        }
+    }
+
+    /**
+     * @return false if the counter is already saturated
+     */
+    private static boolean increment(AtomicLongArray row, int wordIdx, int shift) {
+        while (true) {
+            long word = row.get(wordIdx);
+            if (((word >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return false;
+            }
+            if (row.compareAndSet(wordIdx, word, word + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean admit(long ledgerId, long entryId) {
+        return frequency(ledgerId, entryId) >= promotionThreshold;
+    }
+
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        long frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            int counter = counterIndex(hash, i);
+            long word = table[i].get(counter / COUNTERS_PER_WORD);
+            frequency = Math.min(frequency, (word >>> ((counter % COUNTERS_PER_WORD) * 4)) & MAX_COUNT);
+        }
+        return (int) frequency;
+    }
+
+    /**
+     * Halve all the counters, to age the recorded history.
+     */
+    private void reset() {
+        for (AtomicLongArray row : table) {
+            for (int i = 0; i < row.length(); i++) {
+                while (true) {
+                    long word = row.get(i);
+                    if (row.compareAndSet(i, word, (word >>> 1) & RESET_MASK)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the heap used by the counters of the sketch
+     */
+    long sizeInBytes() {
+        return (long) DEPTH * table[0].length() * Long.BYTES;
+    }
+
+    private int counterIndex(long hash, int row) {
+        long h = (hash ^ SEEDS[row]) * 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & counterMask;
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 31;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 29);
+    }
+}
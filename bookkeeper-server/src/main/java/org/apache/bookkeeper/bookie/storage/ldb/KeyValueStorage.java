@@ -142,6 +142,17 @@ public interface KeyValueStorage extends Closeable {
      */
     CloseableIterator<Entry<byte[], byte[]>> iterator();
 
+    /**
+     * Get an iterator to scan sequentially through all the entries within a
+     * specified range.
+     *
+     * @param firstKey
+     *            the first key in the range (included)
+     * @param lastKey
+     *            the lastKey in the range (not included)
+     */
+    CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey);
+
     /**
      * Commit all pending write to durable storage.
      */
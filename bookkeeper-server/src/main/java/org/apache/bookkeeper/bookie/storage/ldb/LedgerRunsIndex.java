@@ -0,0 +1,321 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Index of the entries stored in a {@link WriteCache}, kept in (ledgerId, entryId) order while the entries are added.
+ *
+ * <p>The first record of each ledger is kept in the heap, next to the state of the ledger. The following records are
+ * appended to a chain of fixed size chunks, which are taken from the memory of the write cache itself, so that the
+ * index counts against the size of the cache and is dropped with the entries when the cache is cleared. Since the
+ * entries of a ledger are normally added with increasing entry ids, the records of a ledger form a single sorted run.
+ * An entry id that is not greater than the previous one starts a new run, and the runs of the ledger are k-way merged
+ * when it is iterated. Getting the whole cache in order only needs to sort the ledger ids.
+ *
+ * <p>Records are added concurrently, under the lock of their ledger. The iteration must not overlap with
+ * {@link #clear()}.
+ */
+class LedgerRunsIndex {
+
+    /**
+     * Consumer of the index records, in (ledgerId, entryId) order.
+     */
+    interface RecordConsumer {
+        void accept(long ledgerId, long entryId, long offset, int length) throws IOException;
+    }
+
+    /**
+     * Allocator of the memory of the chunks in the write cache.
+     */
+    interface ChunkAllocator {
+        /**
+         * @return the offset in the write cache of a new chunk of {@link #CHUNK_SIZE} bytes, which does not cross
+         *         a segment boundary, or -1 if the cache is full
+         */
+        long allocateChunk();
+    }
+
+    // Record: entryId (8), offset in the write cache (8), length (4), padding (4)
+    private static final int RECORD_SIZE = 24;
+    private static final int CHUNK_RECORDS = 16;
+    static final int CHUNK_SIZE = RECORD_SIZE * CHUNK_RECORDS;
+
+    private static final class LedgerRuns {
+        // The first record
+        private long firstEntryId;
+        private long firstOffset;
+        private int firstLength;
+        // Offsets in the write cache of the chunks of the following records
+        private long[] chunks = new long[1];
+        private int count;
+        private long lastEntryId;
+        // Index of the first record of each run
+        private int[] runStarts = new int[1];
+        private int runsCount;
+        private long bytes;
+    }
+
+    private final ConcurrentLongHashMap<LedgerRuns> ledgers = ConcurrentLongHashMap.<LedgerRuns>newBuilder()
+            .expectedItems(1024)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
+    private final ByteBuf[] segments;
+    private final long segmentOffsetMask;
+    private final long segmentOffsetBits;
+    private final ChunkAllocator chunkAllocator;
+
+    LedgerRunsIndex(ByteBuf[] segments, long segmentOffsetBits, ChunkAllocator chunkAllocator) {
+        this.segments = segments;
+        this.segmentOffsetBits = segmentOffsetBits;
+        this.segmentOffsetMask = (1L << segmentOffsetBits) - 1;
+        this.chunkAllocator = chunkAllocator;
+    }
+
+    /**
+     * Add the record of an entry.
+     *
+     * @return false if the record could not be added because the write cache is full
+     */
+    boolean add(long ledgerId, long entryId, long offset, int length) {
+        LedgerRuns runs = ledgers.computeIfAbsent(ledgerId, id -> new LedgerRuns());
+
+        synchronized (runs) {
+            int record = runs.count;
+            if (record == 0) {
+                runs.firstEntryId = entryId;
+                runs.firstOffset = offset;
+                runs.firstLength = length;
+            } else {
+                int chunkIdx = (record - 1) / CHUNK_RECORDS;
+                if ((record - 1) % CHUNK_RECORDS == 0) {
+                    long chunk = chunkAllocator.allocateChunk();
+                    if (chunk < 0) {
+                        return false;
+                    }
+                    if (chunkIdx == runs.chunks.length) {
+                        runs.chunks = Arrays.copyOf(runs.chunks, chunkIdx * 2);
+                    }
+                    runs.chunks[chunkIdx] = chunk;
+                }
+
+                long pos = position(runs.chunks, record);
+                ByteBuf segment = segments[(int) (pos >>> segmentOffsetBits)];
+                int localPos = (int) (pos & segmentOffsetMask);
+                segment.setLong(localPos, entryId);
+                segment.setLong(localPos + 8, offset);
+                segment.setInt(localPos + 16, length);
+            }
+
+            if (record == 0 || entryId <= runs.lastEntryId) {
+                if (runs.runsCount == runs.runStarts.length) {
+                    runs.runStarts = Arrays.copyOf(runs.runStarts, runs.runsCount * 2);
+                }
+                runs.runStarts[runs.runsCount++] = record;
+            }
+
+            runs.count++;
+            runs.lastEntryId = entryId;
+            runs.bytes += length;
+        }
+        return true;
+    }
+
+    /**
+     * @return the ids of the ledgers in the index, sorted
+     */
+    long[] sortedLedgers() {
+        long[] ledgerIds = new long[(int) ledgers.size()];
+        int[] count = new int[1];
+        ledgers.forEach((ledgerId, runs) -> {
+            if (count[0] < ledgerIds.length) {
+                ledgerIds[count[0]++] = ledgerId;
+            }
+        });
+
+        long[] sorted = count[0] == ledgerIds.length ? ledgerIds : Arrays.copyOf(ledgerIds, count[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @return the total length of the entries of the ledger
+     */
+    long ledgerBytes(long ledgerId) {
+        LedgerRuns runs = ledgers.get(ledgerId);
+        if (runs == null) {
+            return 0;
+        }
+
+        synchronized (runs) {
+            return runs.bytes;
+        }
+    }
+
+    /**
+     * Pass the records of a ledger to the consumer, by increasing entry id. When an entry was added more than once,
+     * only the last record is passed.
+     */
+    void forEach(long ledgerId, RecordConsumer consumer) throws IOException {
+        LedgerRuns runs = ledgers.get(ledgerId);
+        if (runs == null) {
+            return;
+        }
+
+        Records records;
+        int[] runStarts;
+        int runsCount;
+        synchronized (runs) {
+            records = new Records(runs);
+            runStarts = runs.runStarts;
+            runsCount = runs.runsCount;
+        }
+
+        if (runsCount == 1) {
+            // Entries were added in order, no merge needed
+            for (int record = 0; record < records.count; record++) {
+                records.accept(ledgerId, record, consumer);
+            }
+            return;
+        }
+
+        // Min-heap of the runs, by the entry id of their current record. For the same entry id, the most recent run
+        // comes first, so that it wins over the older records for that entry
+        int[] cursors = new int[runsCount];
+        int[] ends = new int[runsCount];
+        long[] heads = new long[runsCount];
+        int[] heap = new int[runsCount];
+        for (int i = 0; i < runsCount; i++) {
+            cursors[i] = runStarts[i];
+            ends[i] = i + 1 < runsCount ? runStarts[i + 1] : records.count;
+            heads[i] = records.entryId(cursors[i]);
+            heap[i] = i;
+        }
+
+        int heapSize = runsCount;
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, heads);
+        }
+
+        boolean hasLastEntry = false;
+        long lastEntryId = 0;
+        while (heapSize > 0) {
+            int run = heap[0];
+            long entryId = heads[run];
+            if (!hasLastEntry || entryId != lastEntryId) {
+                records.accept(ledgerId, cursors[run], consumer);
+                hasLastEntry = true;
+                lastEntryId = entryId;
+            }
+
+            if (++cursors[run] < ends[run]) {
+                heads[run] = records.entryId(cursors[run]);
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, heads);
+        }
+    }
+
+    /**
+     * Snapshot of the records of a ledger, taken under the ledger lock.
+     */
+    private final class Records {
+        private final long firstEntryId;
+        private final long firstOffset;
+        private final int firstLength;
+        private final long[] chunks;
+        private final int count;
+
+        Records(LedgerRuns runs) {
+            this.firstEntryId = runs.firstEntryId;
+            this.firstOffset = runs.firstOffset;
+            this.firstLength = runs.firstLength;
+            this.chunks = runs.chunks;
+            this.count = runs.count;
+        }
+
+        long entryId(int record) {
+            if (record == 0) {
+                return firstEntryId;
+            }
+            long pos = position(chunks, record);
+            return segments[(int) (pos >>> segmentOffsetBits)].getLong((int) (pos & segmentOffsetMask));
+        }
+
+        void accept(long ledgerId, int record, RecordConsumer consumer) throws IOException {
+            if (record == 0) {
+                consumer.accept(ledgerId, firstEntryId, firstOffset, firstLength);
+                return;
+            }
+            long pos = position(chunks, record);
+            ByteBuf segment = segments[(int) (pos >>> segmentOffsetBits)];
+            int localPos = (int) (pos & segmentOffsetMask);
+            consumer.accept(ledgerId, segment.getLong(localPos), segment.getLong(localPos + 8),
+                    segment.getInt(localPos + 16));
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int idx, long[] heads) {
+        while (true) {
+            int smallest = idx;
+            int left = 2 * idx + 1;
+            int right = left + 1;
+            if (left < heapSize && before(heap[left], heap[smallest], heads)) {
+                smallest = left;
+            }
+            if (right < heapSize && before(heap[right], heap[smallest], heads)) {
+                smallest = right;
+            }
+            if (smallest == idx) {
+                return;
+            }
+
+            int tmp = heap[idx];
+            heap[idx] = heap[smallest];
+            heap[smallest] = tmp;
+            idx = smallest;
+        }
+    }
+
+    private static boolean before(int runA, int runB, long[] heads) {
+        return heads[runA] < heads[runB] || (heads[runA] == heads[runB] && runA > runB);
+    }
+
+    /**
+     * @return the offset in the write cache of a record stored in the chunks, so any record but the first one
+     */
+    private static long position(long[] chunks, int record) {
+        return chunks[(record - 1) / CHUNK_RECORDS] + ((record - 1) % CHUNK_RECORDS) * RECORD_SIZE;
+    }
+
+    /**
+     * Drop all the records. The memory of the chunks is released with the rest of the write cache.
+     */
+    void clear() {
+        ledgers.clear();
+    }
+}
@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+import org.apache.bookkeeper.bookie.CompactEntryLogMetadata;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
 import org.apache.bookkeeper.bookie.EntryLogMetadata.EntryLogMetadataRecyclable;
 import org.apache.bookkeeper.bookie.EntryLogMetadataMap;
@@ -50,6 +51,7 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
     // persistent Rocksdb to store metadata-map
     private final KeyValueStorage metadataMapDB;
     private AtomicBoolean isClosed = new AtomicBoolean(false);
+    private final boolean compactEncoding;
 
     private static final FastThreadLocal<ByteArrayOutputStream> baos = new FastThreadLocal<ByteArrayOutputStream>() {
         @Override
@@ -86,6 +88,7 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
         }
         metadataMapDB = KeyValueStorageRocksDB.factory.newKeyValueStorage(metadataPath, METADATA_CACHE,
                 DbConfigType.Default, conf);
+        compactEncoding = conf.isGcEntryLogMetadataCompactEncodingEnabled();
     }
 
     @Override
@@ -112,7 +115,11 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
         try {
             baos.get().reset();
             try {
-                entryLogMeta.serialize(dataos.get());
+                if (compactEncoding) {
+                    entryLogMeta.serializeCompact(dataos.get());
+                } else {
+                    entryLogMeta.serialize(dataos.get());
+                }
                 metadataMapDB.put(key.array, baos.get().toByteArray());
             } catch (IllegalStateException | IOException e) {
                 log.error("Failed to serialize entrylog-metadata, entryLogId {}", entryLogId);
@@ -139,11 +146,11 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
                 }
                 Entry<byte[], byte[]> entry = iterator.next();
                 long entryLogId = ArrayUtil.getLong(entry.getKey(), 0);
-                EntryLogMetadataRecyclable metadata = getEntryLogMetadataRecyclable(entry.getValue());
+                EntryLogMetadata metadata = getEntryLogMetadata(entry.getValue());
                 try {
                     action.accept(entryLogId, metadata);
                 } finally {
-                    metadata.recycle();
+                    releaseEntryLogMetadata(metadata);
                 }
             }
         } catch (IOException e) {
@@ -172,11 +179,11 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
                 action.accept(entryLogId, null);
                 return;
             }
-            EntryLogMetadataRecyclable metadata = getEntryLogMetadataRecyclable(value);
+            EntryLogMetadata metadata = getEntryLogMetadata(value);
             try {
                 action.accept(entryLogId, metadata);
             } finally {
-                metadata.recycle();
+                releaseEntryLogMetadata(metadata);
             }
         } catch (IOException e) {
             log.error("Failed to get metadata for entryLogId {}: {}", entryLogId, e.getMessage(), e);
@@ -186,6 +193,20 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
         }
     }
 
+    private EntryLogMetadata getEntryLogMetadata(byte[] value) throws IOException {
+        // The compact values are wrapped as they are, instead of being decoded into a hash map
+        CompactEntryLogMetadata metadata = EntryLogMetadata.deserializeCompact(value);
+        return metadata != null ? metadata : getEntryLogMetadataRecyclable(value);
+    }
+
+    private static void releaseEntryLogMetadata(EntryLogMetadata metadata) {
+        if (metadata instanceof CompactEntryLogMetadata) {
+            ((CompactEntryLogMetadata) metadata).release();
+        } else {
+            ((EntryLogMetadataRecyclable) metadata).recycle();
+        }
+    }
+
     private EntryLogMetadataRecyclable getEntryLogMetadataRecyclable(byte[] value) throws IOException {
         ByteArrayInputStream localBais = bais.get();
         DataInputStream localDatais = datais.get();
@@ -0,0 +1,40 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Decides which entries of the read cache are worth being protected from eviction.
+ *
+ * <p>Used by {@link ScanResistantReadCache}: all the entries are first inserted in a probationary area, and only
+ * the ones that are admitted by the policy are moved into the protected area when they are read again.
+ */
+public interface ReadCacheAdmissionPolicy {
+
+    /**
+     * Record a read access to an entry, regardless of whether it was found in the cache.
+     */
+    void recordAccess(long ledgerId, long entryId);
+
+    /**
+     * @return true if the entry, found in the probationary area, should be moved to the protected area
+     */
+    boolean admit(long ledgerId, long entryId);
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read cache split into a probationary and a protected area, to avoid that a single reader scanning through a cold
+ * ledger evicts all the entries that are repeatedly read by the other readers.
+ *
+ * <p>New entries, either read from the entry logs or read-ahead, are always inserted in the probationary area. When an
+ * entry is found in the probationary area and the {@link ReadCacheAdmissionPolicy} admits it, a copy of the entry is
+ * moved into the protected area, which is only ever filled by such promotions. A scan therefore only rotates the
+ * probationary area, while the hot entries stay in the protected one.
+ */
+public class ScanResistantReadCache implements ReadCache {
+
+    private final ReadCache probationCache;
+    private final ReadCache protectedCache;
+    private final ReadCacheAdmissionPolicy admissionPolicy;
+
+    private final LongAdder protectedHits = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+
+    public ScanResistantReadCache(ReadCache probationCache, ReadCache protectedCache,
+                                  ReadCacheAdmissionPolicy admissionPolicy) {
+        this.probationCache = probationCache;
+        this.protectedCache = protectedCache;
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        probationCache.put(ledgerId, entryId, entry);
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        ByteBuf entry = protectedCache.get(ledgerId, entryId);
+        if (entry != null) {
+            protectedHits.increment();
+            return entry;
+        }
+
+        admissionPolicy.recordAccess(ledgerId, entryId);
+
+        entry = probationCache.get(ledgerId, entryId);
+        if (entry != null && admissionPolicy.admit(ledgerId, entryId)) {
+            protectedCache.put(ledgerId, entryId, entry);
+            promotions.increment();
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return protectedCache.hasEntry(ledgerId, entryId) || probationCache.hasEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        return probationCache.size() + protectedCache.size();
+    }
+
+    @Override
+    public long count() {
+        return probationCache.count() + protectedCache.count();
+    }
+
+    @Override
+    public long evictedCount() {
+        return probationCache.evictedCount() + protectedCache.evictedCount();
+    }
+
+    @Override
+    public long pinnedDropCount() {
+        return probationCache.pinnedDropCount() + protectedCache.pinnedDropCount();
+    }
+
+    /**
+     * @return the number of reads served from the protected area
+     */
+    public long protectedHitCount() {
+        return protectedHits.sum();
+    }
+
+    /**
+     * @return the number of entries moved from the probationary to the protected area
+     */
+    public long promotedCount() {
+        return promotions.sum();
+    }
+
+    @Override
+    public void close() {
+        probationCache.close();
+        protectedCache.close();
+    }
+}
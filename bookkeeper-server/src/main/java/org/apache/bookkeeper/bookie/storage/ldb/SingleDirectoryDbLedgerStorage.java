@@ -35,15 +35,20 @@ import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -56,6 +61,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
+import org.apache.bookkeeper.bookie.CompactionIoBudget;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -77,7 +83,9 @@ import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -91,6 +99,7 @@ import org.slf4j.LoggerFactory;
  */
 public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage {
     private final EntryLogger entryLogger;
+    private final ByteBufAllocator allocator;
 
     private final LedgerMetadataIndex ledgerIndex;
     private final EntryLocationIndex entryLocationIndex;
@@ -128,6 +137,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
 
+    // Executor used for asynchronous read-ahead, null when read-ahead is done by the reader thread
+    private final ThreadPoolExecutor readAheadExecutor;
+
+    // Executor used to write partitions of the write cache in parallel during a flush, null when the flush thread
+    // writes all the entries by itself
+    private final ExecutorService flushExecutor;
+    private final int flushThreads;
+
+    // First entry id of the read-ahead batch in progress for each ledger, there is at most one at a time
+    private final ConcurrentLongLongHashMap pendingReadAheads;
+
     private final CopyOnWriteArrayList<LedgerDeletionListener> ledgerDeletionListeners = Lists
             .newCopyOnWriteArrayList();
 
@@ -141,19 +161,47 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final long maxThrottleTimeNanos;
 
+    // Delays the adds while a flush is in progress and the write cache is filling up, null when disabled
+    private final WriteAdmissionController writeAdmissionController;
+
     private final DbLedgerStorageStats dbLedgerStorageStats;
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long DEFAULT_READ_CACHE_PROTECTED_PERCENTAGE = 0;
+    private static final long DEFAULT_READ_CACHE_PROMOTION_THRESHOLD = 2;
+    private static final long DEFAULT_READ_CACHE_FREQUENCY_SKETCH_MAX_ITEMS = 1024 * 1024;
+    private static final int DEFAULT_READ_AHEAD_MAX_BATCH_SIZE_FACTOR = 10;
+    private static final int DEFAULT_READ_AHEAD_THREADS = 1;
+    private static final int DEFAULT_READ_AHEAD_MAX_PENDING_BATCHES = 64;
+    private static final int DEFAULT_FLUSH_THREADS = 1;
+    private static final long DEFAULT_WRITE_ADMISSION_THRESHOLD_PERCENTAGE = 50;
+    private static final long DEFAULT_WRITE_ADMISSION_MAX_DELAY_MILLIS = 100;
+    private static final long DEFAULT_CACHE_MAX_PIN_WAIT_MILLIS = 10;
+
+    // Bounds of the size of a single positional read issued by the read-ahead
+    private static final int MIN_READ_AHEAD_READ_SIZE = 64 * 1024;
+    private static final int MAX_READ_AHEAD_READ_SIZE = 4 * 1024 * 1024;
+
+    // Number of entries whose locations are looked up at once by batch reads
+    private static final int INITIAL_BATCH_READ_WINDOW = 64;
+    private static final int MAX_BATCH_READ_WINDOW = 1024;
+
+    // Max distance between two entries of a batch read that are read with the same positional read
+    private static final int MAX_BATCH_READ_GAP = 64 * 1024;
 
     private final long maxReadAheadBytesSize;
 
+    private final boolean adaptiveReadAhead;
+    private final int readAheadMaxBatchSize;
+
     private final Counter flushExecutorTime;
     private final boolean singleLedgerDirs;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
                                           LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
                                           EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
-                                          long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                                          CompactionIoBudget compactionIoBudget, long writeCacheSize,
+                                          long readCacheSize, int readAheadCacheBatchSize,
                                           long readAheadCacheBatchBytesSize)
             throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
@@ -178,8 +226,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        long maxPinWaitNanos = TimeUnit.MILLISECONDS.toNanos(DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.CACHE_MAX_PIN_WAIT_MILLIS, DEFAULT_CACHE_MAX_PIN_WAIT_MILLIS));
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, WriteCache.DEFAULT_MAX_SEGMENT_SIZE,
+                maxPinWaitNanos);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2,
+                WriteCache.DEFAULT_MAX_SEGMENT_SIZE, maxPinWaitNanos);
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
@@ -189,11 +241,62 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
 
+        adaptiveReadAhead = DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.READ_AHEAD_ADAPTIVE,
+                false);
+        readAheadMaxBatchSize = (int) DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.READ_AHEAD_MAX_BATCH_SIZE,
+                (long) DEFAULT_READ_AHEAD_MAX_BATCH_SIZE_FACTOR * readAheadCacheBatchSize);
+
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.READ_AHEAD_ASYNC, false)) {
+            int readAheadThreads = (int) DbLedgerStorage.getLongVariableOrDefault(conf,
+                    DbLedgerStorage.READ_AHEAD_THREADS, DEFAULT_READ_AHEAD_THREADS);
+            int readAheadMaxPendingBatches = (int) DbLedgerStorage.getLongVariableOrDefault(conf,
+                    DbLedgerStorage.READ_AHEAD_MAX_PENDING_BATCHES, DEFAULT_READ_AHEAD_MAX_PENDING_BATCHES);
+            checkArgument(readAheadThreads > 0, "Read-ahead threads must be greater than 0");
+            checkArgument(readAheadMaxPendingBatches > 0, "Read-ahead max pending batches must be greater than 0");
+
+            readAheadExecutor = new ThreadPoolExecutor(readAheadThreads, readAheadThreads,
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(readAheadMaxPendingBatches),
+                    new DefaultThreadFactory("db-storage-read-ahead"));
+            pendingReadAheads = ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(readAheadMaxPendingBatches + readAheadThreads)
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                    .build();
+        } else {
+            readAheadExecutor = null;
+            pendingReadAheads = null;
+        }
+
+        flushThreads = (int) DbLedgerStorage.getLongVariableOrDefault(conf, DbLedgerStorage.FLUSH_THREADS,
+                DEFAULT_FLUSH_THREADS);
+        checkArgument(flushThreads > 0, "Flush threads must be greater than 0");
+        if (flushThreads > 1) {
+            // The thread doing the checkpoint writes one of the partitions
+            flushExecutor = Executors.newFixedThreadPool(flushThreads - 1,
+                    new DefaultThreadFactory("db-storage-flush"));
+        } else {
+            flushExecutor = null;
+        }
+
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.WRITE_ADMISSION_CONTROL, false)) {
+            long thresholdPercentage = DbLedgerStorage.getLongVariableOrDefault(conf,
+                    DbLedgerStorage.WRITE_ADMISSION_THRESHOLD_PERCENTAGE, DEFAULT_WRITE_ADMISSION_THRESHOLD_PERCENTAGE);
+            long maxDelayMillis = DbLedgerStorage.getLongVariableOrDefault(conf,
+                    DbLedgerStorage.WRITE_ADMISSION_MAX_DELAY_MILLIS, DEFAULT_WRITE_ADMISSION_MAX_DELAY_MILLIS);
+            checkArgument(thresholdPercentage >= 0 && thresholdPercentage < 100,
+                    "Write admission threshold percentage must be in [0, 100)");
+            checkArgument(maxDelayMillis > 0, "Write admission max delay must be greater than 0");
+            writeAdmissionController = new WriteAdmissionController(thresholdPercentage / 100.0,
+                    TimeUnit.MILLISECONDS.toNanos(maxDelayMillis));
+        } else {
+            writeAdmissionController = null;
+        }
+
+        readCache = newReadCache(conf, allocator, readCacheMaxSize, maxPinWaitNanos);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
@@ -209,15 +312,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
         this.entryLogger = entryLogger;
+        this.allocator = allocator;
         gcThread = new GarbageCollectorThread(conf,
-                ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger);
+                ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger, compactionIoBudget,
+                allocator);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             ledgerIndexDirStatsLogger,
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> readCache.evictedCount(),
+            () -> readCache instanceof ScanResistantReadCache
+                    ? ((ScanResistantReadCache) readCache).protectedHitCount() : 0L,
+            () -> readCache instanceof ScanResistantReadCache
+                    ? ((ScanResistantReadCache) readCache).promotedCount() : 0L,
+            () -> readCache.pinnedDropCount(),
+            () -> writeCache.pinnedOverflowCount() + writeCacheBeingFlushed.pinnedOverflowCount(),
+            () -> writeAdmissionController != null ? writeAdmissionController.getFlushBandwidth() : 0L,
+            () -> writeAdmissionController != null ? writeAdmissionController.getPressurePercentage() : 0L,
+            () -> writeAdmissionController != null ? writeAdmissionController.getAdmissionRate() : 0L
         );
 
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
@@ -234,6 +349,49 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    private static ReadCache newReadCache(ServerConfiguration conf, ByteBufAllocator allocator, long readCacheSize,
+                                          long maxPinWaitNanos) {
+        boolean striped = DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.READ_CACHE_STRIPED, false);
+        long protectedPercentage = DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.READ_CACHE_PROTECTED_PERCENTAGE, DEFAULT_READ_CACHE_PROTECTED_PERCENTAGE);
+        checkArgument(protectedPercentage >= 0 && protectedPercentage < 100,
+                "Read cache protected percentage must be in [0, 100)");
+
+        if (protectedPercentage == 0) {
+            return newReadCache(striped, allocator, readCacheSize, maxPinWaitNanos);
+        }
+
+        long protectedSize = readCacheSize * protectedPercentage / 100;
+        int promotionThreshold = (int) DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.READ_CACHE_PROMOTION_THRESHOLD, DEFAULT_READ_CACHE_PROMOTION_THRESHOLD);
+        long sketchMaxItems = DbLedgerStorage.getLongVariableOrDefault(conf,
+                DbLedgerStorage.READ_CACHE_FREQUENCY_SKETCH_MAX_ITEMS, DEFAULT_READ_CACHE_FREQUENCY_SKETCH_MAX_ITEMS);
+        checkArgument(sketchMaxItems > 0, "Read cache frequency sketch max items must be positive");
+        // Size the frequency sketch assuming 1 KB entries on average, the sketch is on the heap
+        int expectedItems = (int) Math.min(Math.min(Integer.MAX_VALUE, sketchMaxItems),
+                Math.max(1024, readCacheSize / 1024));
+        FrequencySketchAdmissionPolicy admissionPolicy =
+                new FrequencySketchAdmissionPolicy(expectedItems, promotionThreshold);
+
+        log.info("Read cache with protected area of {} MB, promotion threshold: {}, frequency sketch of {} KB",
+                protectedSize / 1024 / 1024, promotionThreshold, admissionPolicy.sizeInBytes() / 1024);
+        return new ScanResistantReadCache(
+                newReadCache(striped, allocator, readCacheSize - protectedSize, maxPinWaitNanos),
+                newReadCache(striped, allocator, protectedSize, maxPinWaitNanos),
+                admissionPolicy);
+    }
+
+    private static ReadCache newReadCache(boolean striped, ByteBufAllocator allocator, long readCacheSize,
+                                          long maxPinWaitNanos) {
+        if (striped) {
+            return new StripedReadCache(allocator, readCacheSize, StripedReadCache.DEFAULT_MAX_SEGMENT_SIZE,
+                    maxPinWaitNanos);
+        } else {
+            return new DefaultReadCache(allocator, readCacheSize, DefaultReadCache.DEFAULT_MAX_SEGMENT_SIZE,
+                    maxPinWaitNanos);
+        }
+    }
+
     @Override
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
             LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
@@ -343,6 +501,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdown();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+                flushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
@@ -478,6 +644,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Add entry. {}@{}, lac = {}", ledgerId, entryId, lac);
         }
 
+        if (writeAdmissionController != null) {
+            waitForWriteAdmission(ledgerId, entryId, entry.readableBytes());
+        }
+
         // First we try to do an optimistic locking to get access to the current write cache.
         // This is based on the fact that the write cache is only being rotated (swapped) every 1 minute. During the
         // rest of the time, we can have multiple thread using the optimistic lock here without interfering.
@@ -512,6 +682,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryId;
     }
 
+    private void waitForWriteAdmission(long ledgerId, long entryId, int entrySize) throws IOException {
+        long delayNanos = writeAdmissionController.acquire(entrySize, writeCache.size(), writeCacheMaxSize / 2,
+                isFlushOngoing.get());
+        if (delayNanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted when adding entry " + ledgerId + "@" + entryId);
+        }
+        dbLedgerStorageStats.getWriteAdmissionDelayStats().registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
         long throttledStartTime = MathUtils.nowInNano();
@@ -576,6 +762,270 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    @Override
+    public ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxBytes)
+            throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            ByteBufList entries = doGetEntries(ledgerId, firstEntryId, maxCount, maxBytes);
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntriesStats(), startTime);
+            dbLedgerStorageStats.getReadEntriesCountStats().registerSuccessfulValue(entries.size());
+            return entries;
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntriesStats(), startTime);
+            throw e;
+        }
+    }
+
+    private ByteBufList doGetEntries(long ledgerId, long firstEntryId, int maxCount, long maxBytes)
+            throws IOException, BookieException {
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entries: {}@{} maxCount: {} maxBytes: {}", ledgerId, firstEntryId, maxCount, maxBytes);
+        }
+
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED || maxCount <= 1) {
+            return ByteBufList.get(doGetEntry(ledgerId, firstEntryId));
+        }
+
+        ByteBufList entries = null;
+        int count = 0;
+        long size = 0;
+        int window = Math.min(maxCount, INITIAL_BATCH_READ_WINDOW);
+        try {
+            while (true) {
+                ByteBuf[] batch = new ByteBuf[window];
+                int available = readEntriesWindow(ledgerId, firstEntryId + count, batch, maxBytes - size,
+                        entries == null);
+                if (available == 0) {
+                    if (entries == null) {
+                        // Let the regular read path report the missing first entry, exactly as a single read would
+                        return ByteBufList.get(doGetEntry(ledgerId, firstEntryId));
+                    }
+                    break;
+                }
+
+                for (int i = 0; i < available; i++) {
+                    if (entries == null) {
+                        entries = ByteBufList.get(batch[i]);
+                    } else {
+                        entries.add(batch[i]);
+                    }
+                    size += batch[i].readableBytes();
+                }
+                count += available;
+
+                if (count >= maxCount || size >= maxBytes) {
+                    break;
+                }
+
+                // A short window can come from over-estimated entry sizes, the next window will be empty if the
+                // batch was really cut by a missing entry or by the bytes budget
+
+                // Size the next window after the entries read so far
+                long averageEntrySize = Math.max(1, size / count);
+                window = (int) Math.min(Math.min(maxCount - count, MAX_BATCH_READ_WINDOW),
+                        (maxBytes - size) / averageEntrySize + 1);
+            }
+            return entries;
+        } catch (IOException | BookieException | RuntimeException e) {
+            ReferenceCountUtil.safeRelease(entries);
+            throw e;
+        }
+    }
+
+    /**
+     * Get a window of consecutive entries of a ledger. Entries are first looked up in the caches, the locations of
+     * the other ones are then looked up with a single scan of the locations index, and they are read from the entry
+     * logs in location order, coalescing the neighbouring ones in the same positional read.
+     *
+     * @return the number of consecutive entries, from the start of the window, that were found and fit in maxBytes.
+     *         Only those are left in the window, the caller must release them.
+     */
+    private int readEntriesWindow(long ledgerId, long firstEntryId, ByteBuf[] window, long maxBytes,
+                                  boolean isFirstWindow) throws IOException {
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        if (!writeCacheRotationLock.validate(stamp)) {
+            stamp = writeCacheRotationLock.readLock();
+            try {
+                localWriteCache = writeCache;
+                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+
+        int missing = 0;
+        for (int i = 0; i < window.length; i++) {
+            long entryId = firstEntryId + i;
+            ByteBuf entry = localWriteCache.get(ledgerId, entryId);
+            if (entry == null) {
+                entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+            }
+            if (entry != null) {
+                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+            } else {
+                dbLedgerStorageStats.getWriteCacheMissCounter().inc();
+                entry = readCache.get(ledgerId, entryId);
+                if (entry != null) {
+                    dbLedgerStorageStats.getReadCacheHitCounter().inc();
+                } else {
+                    dbLedgerStorageStats.getReadCacheMissCounter().inc();
+                    missing++;
+                }
+            }
+            window[i] = entry;
+        }
+
+        int length = window.length;
+        if (missing > 0) {
+            long[] locations = new long[window.length];
+            long locationIndexStartNano = MathUtils.nowInNano();
+            try {
+                entryLocationIndex.getLocations(ledgerId, firstEntryId, locations);
+            } finally {
+                dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
+                        MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
+            }
+
+            // Do not read past the first unknown entry, nor past the bytes budget. The distance to the next location
+            // gives the size of an entry that is not read yet, when they are contiguous in the same entry log.
+            long size = 0;
+            for (int i = 0; i < length; i++) {
+                if (window[i] == null && locations[i] == 0) {
+                    length = i;
+                    break;
+                }
+                size += window[i] != null ? window[i].readableBytes() : estimatedEntrySize(locations, i);
+                if (size > maxBytes && i > 0) {
+                    length = i;
+                    break;
+                }
+            }
+
+            long readEntryStartNano = MathUtils.nowInNano();
+            try {
+                readEntriesFromEntryLogs(ledgerId, firstEntryId, window, locations, length);
+            } finally {
+                dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                        MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        int available = 0;
+        long size = 0;
+        while (available < length && window[available] != null) {
+            size += window[available].readableBytes();
+            if (size > maxBytes && !(isFirstWindow && available == 0)) {
+                break;
+            }
+            available++;
+        }
+
+        for (int i = available; i < window.length; i++) {
+            ReferenceCountUtil.safeRelease(window[i]);
+            window[i] = null;
+        }
+        return available;
+    }
+
+    private static long estimatedEntrySize(long[] locations, int i) {
+        if (i + 1 < locations.length && (locations[i + 1] >> 32) == (locations[i] >> 32)
+                && locations[i + 1] > locations[i]) {
+            return locations[i + 1] - locations[i] - 4;
+        } else {
+            return 0;
+        }
+    }
+
+    private void readEntriesFromEntryLogs(long ledgerId, long firstEntryId, ByteBuf[] window, long[] locations,
+                                          int length) {
+        int toReadCount = 0;
+        Integer[] toRead = new Integer[length];
+        for (int i = 0; i < length; i++) {
+            if (window[i] == null) {
+                toRead[toReadCount++] = i;
+            }
+        }
+        Arrays.sort(toRead, 0, toReadCount, (i1, i2) -> Long.compare(locations[i1], locations[i2]));
+
+        int runStart = 0;
+        while (runStart < toReadCount) {
+            long runFirstLocation = locations[toRead[runStart]];
+            int runEnd = runStart + 1;
+            while (runEnd < toReadCount) {
+                long previousLocation = locations[toRead[runEnd - 1]];
+                long location = locations[toRead[runEnd]];
+                if ((location >> 32) != (runFirstLocation >> 32)
+                        || location - previousLocation > MAX_BATCH_READ_GAP
+                        || location - runFirstLocation > MAX_READ_AHEAD_READ_SIZE) {
+                    break;
+                }
+                runEnd++;
+            }
+
+            readEntriesRun(ledgerId, firstEntryId, window, locations, toRead, runStart, runEnd);
+            runStart = runEnd;
+        }
+    }
+
+    private void readEntriesRun(long ledgerId, long firstEntryId, ByteBuf[] window, long[] locations,
+                                Integer[] sortedIndexes, int runStart, int runEnd) {
+        ByteBuf records = null;
+        long runFirstLocation = locations[sortedIndexes[runStart]];
+        if (runEnd - runStart > 1) {
+            int lastIndex = sortedIndexes[runEnd - 1];
+            long runLength = locations[lastIndex] - runFirstLocation;
+            long lastEntrySize = estimatedEntrySize(locations, lastIndex);
+            if (lastEntrySize == 0) {
+                // Assume the last entry is about as big as the others
+                lastEntrySize = runLength / (runEnd - runStart - 1);
+            }
+
+            try {
+                records = entryLogger.readEntries(allocator, runFirstLocation,
+                        (int) (runLength + 4 + lastEntrySize));
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to read entries of ledger {} at {}, reading them one by one", ledgerId,
+                            runFirstLocation, e);
+                }
+            }
+        }
+
+        try {
+            for (int j = runStart; j < runEnd; j++) {
+                int i = sortedIndexes[j];
+                long entryId = firstEntryId + i;
+
+                if (records != null) {
+                    int offset = (int) (locations[i] - runFirstLocation);
+                    if (records.writerIndex() >= offset + 4) {
+                        int entrySize = records.getInt(offset);
+                        if (entrySize >= 16 && records.writerIndex() >= offset + 4 + entrySize
+                                && records.getLong(offset + 4) == ledgerId
+                                && records.getLong(offset + 12) == entryId) {
+                            window[i] = records.retainedSlice(offset + 4, entrySize);
+                            continue;
+                        }
+                    }
+                }
+
+                // Not covered by the coalesced read, read the entry on its own
+                try {
+                    window[i] = entryLogger.readEntry(ledgerId, entryId, locations[i]);
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to read entry {}@{} at {}", ledgerId, entryId, locations[i], e);
+                    }
+                }
+            }
+        } finally {
+            ReferenceCountUtil.safeRelease(records);
+        }
+    }
+
     private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
         if (log.isDebugEnabled()) {
             log.debug("Get Entry: {}@{}", ledgerId, entryId);
@@ -627,6 +1077,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
 
+        // The read-ahead state of the ledger is only looked up on misses, the hits are inferred from the next miss
+        TransientLedgerInfo ledgerInfo = adaptiveReadAhead ? getOrAddLedgerInfo(ledgerId) : null;
+        int readAheadBatchSize = readAheadCacheBatchSize;
+        if (ledgerInfo != null) {
+            dbLedgerStorageStats.getReadAheadHitCounter().addCount(ledgerInfo.onReadAheadConsumed(entryId));
+            readAheadBatchSize = ledgerInfo.onReadCacheMiss(entryId, readAheadCacheBatchSize, readAheadMaxBatchSize);
+        }
+
         // Read from main storage
         long entryLocation;
         long locationIndexStartNano = MathUtils.nowInNano();
@@ -654,46 +1112,127 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCache.put(ledgerId, entryId, entry);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (readAheadBatchSize > 0) {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            int readSize = readAheadReadSize(readAheadBatchSize, entry.readableBytes());
+            if (readAheadExecutor != null) {
+                scheduleReadAhead(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize, readSize,
+                        ledgerInfo);
+            } else {
+                fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize, readSize,
+                        ledgerInfo);
+            }
+        } else if (ledgerInfo != null) {
+            // Random access, the previous read-ahead batch of this ledger is abandoned
+            dbLedgerStorageStats.getReadAheadWastedBytes().addCount(ledgerInfo.onReadAhead(entryId + 1, 0, 0));
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long originalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Size of the first positional read of a read-ahead batch, sized after the entry that was just read. It is
+     * grown later in the batch only if a single entry does not fit in it.
+     */
+    private int readAheadReadSize(int batchSize, int entrySize) {
+        long readSize = (long) batchSize * (4 + entrySize);
+        if (readAheadCacheBatchBytesSize > 0) {
+            readSize = Math.min(readSize, readAheadCacheBatchBytesSize + 4 + entrySize);
+        }
+        return (int) Math.max(MIN_READ_AHEAD_READ_SIZE, Math.min(readSize, MAX_READ_AHEAD_READ_SIZE));
+    }
+
+    private void scheduleReadAhead(long ledgerId, long firstEntryId, long firstEntryLocation, int batchSize,
+                                   int readSize, TransientLedgerInfo ledgerInfo) {
+        if (pendingReadAheads.putIfAbsent(ledgerId, firstEntryId) != -1) {
+            // A batch is already being read for this ledger. A sequential reader is served by it, a random one would
+            // not benefit from a batch anyway.
+            return;
+        }
+
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerId, firstEntryId, firstEntryLocation, batchSize, readSize, ledgerInfo);
+                } finally {
+                    pendingReadAheads.remove(ledgerId, firstEntryId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReadAheads.remove(ledgerId, firstEntryId);
+            dbLedgerStorageStats.getReadAheadRejectedCounter().inc();
+        }
+    }
+
+    /**
+     * Read the entries following an entry that was missing from the read cache. Contiguous entries are read from the
+     * entry log in large chunks, and the ones belonging to the ledger are inserted in the read cache, until the batch
+     * limits are reached or an entry of another ledger is found.
+     */
+    private void fillReadAheadCache(long originalLedgerId, long firstEntryId, long firstEntryLocation,
+                                    int batchSize, int readSize, TransientLedgerInfo ledgerInfo) {
         long readAheadStartNano = MathUtils.nowInNano();
+        long nextEntryId = firstEntryId;
         int count = 0;
         long size = 0;
 
         try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
+            boolean done = false;
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(originalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
+            while (!done && chargeReadAheadCache(count, size, batchSize)) {
+                ByteBuf records = entryLogger.readEntries(allocator, currentEntryLocation, readSize);
                 try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
+                    int nextEntrySize = -1;
+                    while (chargeReadAheadCache(count, size, batchSize)) {
+                        if (records.readableBytes() < 4) {
+                            break;
+                        }
 
-                    if (currentEntryLedgerId != originalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
+                        nextEntrySize = records.getInt(records.readerIndex());
+                        if (nextEntrySize < 16) {
+                            // Reached the end of the written data, or garbage
+                            done = true;
+                            break;
+                        }
+                        if (records.readableBytes() < 4 + nextEntrySize) {
+                            // Entry truncated by the end of this chunk
+                            break;
+                        }
+
+                        int entryOffset = records.readerIndex() + 4;
+                        long currentEntryLedgerId = records.getLong(entryOffset);
+                        long currentEntryId = records.getLong(entryOffset + 8);
+                        if (currentEntryLedgerId != originalLedgerId || currentEntryId != nextEntryId) {
+                            // Found an entry belonging to a different ledger, stopping read-ahead
+                            done = true;
+                            break;
+                        }
 
-                    // Insert entry in read cache
-                    readCache.put(originalLedgerId, currentEntryId, entry);
+                        // Insert entry in read cache
+                        readCache.put(originalLedgerId, currentEntryId, records.slice(entryOffset, nextEntrySize));
 
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
+                        count++;
+                        nextEntryId++;
+                        size += nextEntrySize;
 
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
+                        records.skipBytes(4 + nextEntrySize);
+                        currentEntryLocation += 4 + nextEntrySize;
+                    }
+
+                    if (records.writerIndex() < readSize) {
+                        // There is no more data in the entry log
+                        done = true;
+                    } else if (records.readerIndex() == 0) {
+                        // Not even a single entry fitted, make room for it
+                        if (nextEntrySize < 0 || 4L + nextEntrySize > maxReadAheadBytesSize) {
+                            done = true;
+                        } else {
+                            readSize = 4 + nextEntrySize;
+                        }
+                    }
                 } finally {
-                    ReferenceCountUtil.release(entry);
+                    ReferenceCountUtil.release(records);
                 }
             }
         } catch (Exception e) {
@@ -701,6 +1240,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 log.debug("Exception during read ahead for ledger: {}: e", originalLedgerId, e);
             }
         } finally {
+            if (ledgerInfo != null) {
+                dbLedgerStorageStats.getReadAheadWastedBytes().addCount(
+                        ledgerInfo.onReadAhead(firstEntryId, count, size));
+            }
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().addLatency(
@@ -709,8 +1252,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     }
 
     protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
+        return chargeReadAheadCache(currentReadAheadCount, currentReadAheadBytes, readAheadCacheBatchSize);
+    }
+
+    protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes, int batchSize) {
         // compatible with old logic
-        boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheBatchSize
+        boolean chargeSizeCondition = currentReadAheadCount < batchSize
                 && currentReadAheadBytes < maxReadAheadBytesSize;
         if (chargeSizeCondition && readAheadCacheBatchBytesSize > 0) {
             // exact limits limit the size and count for each batch
@@ -790,6 +1337,30 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Writes one partition of the write cache being flushed to the entry logs, and builds its own locations index
+     * batch at the same time.
+     */
+    private final class FlushPartitionWriter implements WriteCache.EntryConsumer {
+        private final Batch batch;
+        private long writeNanos;
+        private long indexNanos;
+
+        FlushPartitionWriter(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) throws IOException {
+            long startTime = MathUtils.nowInNano();
+            long location = entryLogger.addEntry(ledgerId, entry);
+            long writeTime = MathUtils.nowInNano();
+            entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+            writeNanos += writeTime - startTime;
+            indexNanos += MathUtils.elapsedNanos(writeTime);
+        }
+    }
+
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
         Checkpoint thisCheckpoint = checkpointSource.newCheckpoint();
@@ -824,24 +1395,46 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             // Write all the pending entries into the entry logger and collect the offset
             // position for each entry
+            List<FlushPartitionWriter> writers = new ArrayList<>(flushThreads);
+            try {
+                for (int i = 0; i < flushThreads; i++) {
+                    writers.add(new FlushPartitionWriter(entryLocationIndex.newBatch()));
+                }
 
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                long location = entryLogger.addEntry(ledgerId, entry);
-                entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-            });
+                long writeEntriesStartTime = MathUtils.nowInNano();
+                int partitions = 1;
+                if (flushExecutor == null) {
+                    writeCacheBeingFlushed.forEach(writers.get(0));
+                } else {
+                    partitions = writeCacheBeingFlushed.forEach(new ArrayList<>(writers), flushExecutor);
+                }
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushWriteEntriesStats(), writeEntriesStartTime);
+
+                for (int i = 0; i < partitions; i++) {
+                    FlushPartitionWriter writer = writers.get(i);
+                    dbLedgerStorageStats.getFlushPartitionWriteStats()
+                            .registerSuccessfulEvent(writer.writeNanos, TimeUnit.NANOSECONDS);
+                    dbLedgerStorageStats.getFlushPartitionIndexStats()
+                            .registerSuccessfulEvent(writer.indexNanos, TimeUnit.NANOSECONDS);
+                }
 
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
 
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+                long batchFlushStartTime = MathUtils.nowInNano();
+                for (FlushPartitionWriter writer : writers) {
+                    writer.batch.flush();
+                }
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+                if (log.isDebugEnabled()) {
+                    log.debug("DB batch flushed time : {} s",
+                            MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+                }
+            } finally {
+                for (FlushPartitionWriter writer : writers) {
+                    writer.batch.close();
+                }
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -862,6 +1455,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             recordSuccessfulEvent(dbLedgerStorageStats.getFlushStats(), startTime);
             dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
+            if (writeAdmissionController != null) {
+                writeAdmissionController.recordFlush(sizeToFlush, MathUtils.elapsedNanos(startTime));
+            }
         } catch (IOException e) {
             recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
             // Leave IOException as it is
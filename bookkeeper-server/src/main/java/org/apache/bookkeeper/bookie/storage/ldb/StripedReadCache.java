@@ -0,0 +1,287 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.DEFAULT_MAX_PIN_WAIT_NANOS;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.awaitUnpinned;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read cache implementation where readers never block.
+ *
+ * <p>The memory layout is the same as {@link DefaultReadCache}: a ring of segments, each one paired with its own
+ * hashmap index. Instead of a global read-write lock, each segment carries its own {@link StampedLock} whose stamp
+ * acts as the segment epoch. The exclusive lock is only taken, on a single segment, while that segment is being
+ * recycled during a rollover. Writers hold the shared lock of the segment they are appending to, which is never the
+ * one being recycled unless the whole ring wraps around during a single insertion.
+ *
+ * <p>Readers use optimistic stamps: they look up the index and take a retained slice of the segment, then validate
+ * the stamp. If the segment started to be recycled in the meantime, the slice is released and the lookup continues
+ * on the older segments. Otherwise the slice pins the segment: a rollover waits, for a bounded time, until all the
+ * slices of the segment it recycles are released, so a read can never observe a partially overwritten entry. If the
+ * segment is still pinned after that time, the rollover is abandoned and the entries that do not fit in the current
+ * segment are not cached until the next attempt.
+ */
+public class StripedReadCache implements ReadCache {
+    private static final Logger log = LoggerFactory.getLogger(StripedReadCache.class);
+
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+
+    private static final class Segment {
+        private final ByteBuf buffer;
+        private final ConcurrentLongLongPairHashMap index;
+        private final AtomicInteger offset = new AtomicInteger(0);
+        private final StampedLock epoch = new StampedLock();
+
+        Segment(int segmentSize) {
+            this.buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+            this.index = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+        }
+    }
+
+    private final Segment[] segments;
+    private final int segmentSize;
+
+    private volatile int currentSegmentIdx;
+
+    // Only serializes writers that need to roll over to the next segment
+    private final ReentrantLock rolloverLock = new ReentrantLock();
+
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder pinnedDropCount = new LongAdder();
+
+    private final long maxPinWaitNanos;
+    // After a rollover gave up on a pinned segment, the next one is not attempted before this time. Guarded by
+    // the rollover lock
+    private long nextRolloverNanos = System.nanoTime();
+
+    public StripedReadCache(ByteBufAllocator allocator, long maxCacheSize) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public StripedReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, DEFAULT_MAX_PIN_WAIT_NANOS);
+    }
+
+    public StripedReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, long maxPinWaitNanos) {
+        this.maxPinWaitNanos = maxPinWaitNanos;
+        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+        segmentSize = (int) (maxCacheSize / segmentsCount);
+
+        segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            ReferenceCountUtil.safeRelease(segment.buffer);
+        }
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        int entrySize = entry.readableBytes();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
+
+        int alignedSize = align64(entrySize);
+
+        while (true) {
+            int segmentIdx = currentSegmentIdx;
+            Segment segment = segments[segmentIdx];
+
+            // Writers share the segment lock, so that the segment cannot be recycled while an entry is being copied
+            // into it and indexed
+            long stamp = segment.epoch.readLock();
+            try {
+                int offset = segment.offset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    // Copy entry into read cache segment
+                    segment.buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    segment.index.put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                segment.epoch.unlockRead(stamp);
+            }
+
+            // We could not insert in segment, we need to roll-over to the next one
+            if (!rollover(segmentIdx)) {
+                // The next segment is still pinned by readers, skip the insertion
+                pinnedDropCount.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the next segment could not be recycled, because it is still pinned by readers
+     */
+    private boolean rollover(int fullSegmentIdx) {
+        rolloverLock.lock();
+        try {
+            if (currentSegmentIdx != fullSegmentIdx) {
+                // Some other writer has already rolled over
+                return true;
+            }
+
+            if (System.nanoTime() - nextRolloverNanos < 0) {
+                // A rollover has just given up waiting for the readers
+                return false;
+            }
+
+            int nextSegmentIdx = (fullSegmentIdx + 1) % segments.length;
+            Segment nextSegment = segments[nextSegmentIdx];
+
+            // Bump the epoch of the segment being recycled. Only readers that are currently looking at this
+            // segment are affected, and they will just fail validation instead of waiting.
+            long stamp = nextSegment.epoch.writeLock();
+            try {
+                // No reader can pin the segment from now on, wait for the ones that did to release it
+                if (!awaitUnpinned(nextSegment.buffer, System.nanoTime() + maxPinWaitNanos)) {
+                    nextRolloverNanos = System.nanoTime() + maxPinWaitNanos;
+                    log.warn("Read cache segment {} still pinned by readers after {} ms, skipping the rollover",
+                            nextSegmentIdx, TimeUnit.NANOSECONDS.toMillis(maxPinWaitNanos));
+                    return false;
+                }
+
+                evictedCount.add(nextSegment.index.size());
+                nextSegment.index.clear();
+                nextSegment.offset.set(0);
+            } finally {
+                nextSegment.epoch.unlockWrite(stamp);
+            }
+
+            currentSegmentIdx = nextSegmentIdx;
+            return true;
+        } finally {
+            rolloverLock.unlock();
+        }
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        // We need to check all the segments, starting from the current one and looking
+        // backward to minimize the checks for recently inserted entries
+        int size = segments.length;
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            Segment segment = segments[(currentIdx + (size - i)) % size];
+
+            long stamp = segment.epoch.tryOptimisticRead();
+            if (stamp == 0) {
+                // Segment is being recycled, its entries are gone
+                continue;
+            }
+
+            LongPair res = segment.index.get(ledgerId, entryId);
+            if (res != null) {
+                int entryOffset = (int) res.first;
+                int entryLen = (int) res.second;
+
+                ByteBuf entry = segment.buffer.retainedSlice(entryOffset, entryLen);
+                if (segment.epoch.validate(stamp)) {
+                    return entry;
+                }
+
+                // The segment started to be recycled before we pinned it
+                ReferenceCountUtil.release(entry);
+            }
+        }
+
+        // Entry not found in any segment
+        return null;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        int size = segments.length;
+        int currentIdx = currentSegmentIdx;
+        for (int i = 0; i < size; i++) {
+            Segment segment = segments[(currentIdx + (size - i)) % size];
+            if (segment.index.containsKey(ledgerId, entryId)) {
+                return true;
+            }
+        }
+
+        // Entry not found in any segment
+        return false;
+    }
+
+    @Override
+    public long size() {
+        int currentIdx = currentSegmentIdx;
+        long size = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (i == currentIdx) {
+                size += Math.min(segments[i].offset.get(), segmentSize);
+            } else if (!segments[i].index.isEmpty()) {
+                size += segmentSize;
+            } else {
+                // the segment is empty
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.index.size();
+        }
+
+        return count;
+    }
+
+    @Override
+    public long evictedCount() {
+        return evictedCount.sum();
+    }
+
+    @Override
+    public long pinnedDropCount() {
+        return pinnedDropCount.sum();
+    }
+}
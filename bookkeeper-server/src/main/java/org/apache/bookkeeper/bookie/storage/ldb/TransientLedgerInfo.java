@@ -42,6 +42,12 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     static final long NOT_ASSIGNED_LAC = Long.MIN_VALUE;
 
+    static final long NOT_ASSIGNED_ENTRY_ID = -1;
+
+    // Max distance from the entry following the last read one, for a read to still be considered sequential. This
+    // tolerates reordering between the reads that are in flight at the same time.
+    static final long SEQUENTIAL_READ_TOLERANCE = 8;
+
     // lac
     private volatile long lac = NOT_ASSIGNED_LAC;
     // request from explicit lac requests
@@ -55,6 +61,14 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     private long lastAccessed;
 
+    // Read-ahead state, only tracked when the adaptive read-ahead is enabled
+    private long lastReadEntryId = NOT_ASSIGNED_ENTRY_ID;
+    private int readAheadWindow = 0;
+    private long readAheadFirstEntryId = NOT_ASSIGNED_ENTRY_ID;
+    private long readAheadLastEntryId = NOT_ASSIGNED_ENTRY_ID;
+    private long readAheadConsumedEntryId = NOT_ASSIGNED_ENTRY_ID;
+    private long readAheadBytes = 0;
+
     /**
      * Construct an Watchable with zero watchers.
      */
@@ -137,6 +151,83 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
         setLastAddConfirmed(explicitLacValue);
     }
 
+    /**
+     * Record a read of an entry that was not in the read cache, and compute how many entries should be read-ahead
+     * after it.
+     *
+     * <p>The reads served by the read cache are not tracked, to keep them cheap. A read is sequential if it follows
+     * the last entry that missed the cache, or the last entry of the last read-ahead batch, which the reads served
+     * by the read cache went through.
+     *
+     * <p>The read-ahead window is doubled, up to {@code maxWindow}, each time the ledger misses the cache while being
+     * read sequentially. It is disabled as soon as the ledger is accessed randomly, and restarts from
+     * {@code initialWindow} once the accesses become sequential again.
+     *
+     * @return the number of entries to read-ahead
+     */
+    synchronized int onReadCacheMiss(long entryId, int initialWindow, int maxWindow) {
+        lastAccessed = System.currentTimeMillis();
+        if (lastReadEntryId == NOT_ASSIGNED_ENTRY_ID) {
+            // First read on this ledger, we don't know the access pattern yet
+            readAheadWindow = initialWindow;
+        } else if (Math.abs(entryId - (lastReadEntryId + 1)) <= SEQUENTIAL_READ_TOLERANCE
+                || (readAheadLastEntryId != NOT_ASSIGNED_ENTRY_ID
+                    && Math.abs(entryId - (readAheadLastEntryId + 1)) <= SEQUENTIAL_READ_TOLERANCE)) {
+            readAheadWindow = readAheadWindow == 0
+                    ? initialWindow : (int) Math.min((long) readAheadWindow * 2, maxWindow);
+        } else {
+            readAheadWindow = 0;
+        }
+
+        lastReadEntryId = entryId;
+        return readAheadWindow;
+    }
+
+    /**
+     * Record that the entries of the last read-ahead batch which precede an entry that missed the read cache were
+     * read from the read cache. It must be called before {@link #onReadCacheMiss}.
+     *
+     * @return the number of entries of the last read-ahead batch that were not already known to be read
+     */
+    synchronized long onReadAheadConsumed(long missedEntryId) {
+        if (readAheadFirstEntryId == NOT_ASSIGNED_ENTRY_ID || missedEntryId <= readAheadFirstEntryId
+                || missedEntryId > readAheadLastEntryId + 1 + SEQUENTIAL_READ_TOLERANCE) {
+            return 0;
+        }
+        long consumed = Math.min(missedEntryId - 1, readAheadLastEntryId);
+        long previouslyConsumed = Math.max(readAheadConsumedEntryId, readAheadFirstEntryId - 1);
+        if (consumed <= previouslyConsumed) {
+            return 0;
+        }
+        readAheadConsumedEntryId = consumed;
+        return consumed - previouslyConsumed;
+    }
+
+    /**
+     * Record the range of entries that were read-ahead, replacing the previous read-ahead batch.
+     *
+     * @return an estimation of the bytes of the previous batch that were read-ahead and never read
+     */
+    synchronized long onReadAhead(long firstEntryId, int count, long bytes) {
+        long wastedBytes = 0;
+        long batchSize = readAheadLastEntryId - readAheadFirstEntryId + 1;
+        if (readAheadFirstEntryId != NOT_ASSIGNED_ENTRY_ID && batchSize > 0) {
+            long unreadEntries = readAheadLastEntryId - Math.max(readAheadConsumedEntryId, readAheadFirstEntryId - 1);
+            wastedBytes = readAheadBytes * unreadEntries / batchSize;
+        }
+
+        if (count > 0) {
+            readAheadFirstEntryId = firstEntryId;
+            readAheadLastEntryId = firstEntryId + count - 1;
+        } else {
+            readAheadFirstEntryId = NOT_ASSIGNED_ENTRY_ID;
+            readAheadLastEntryId = NOT_ASSIGNED_ENTRY_ID;
+        }
+        readAheadConsumedEntryId = NOT_ASSIGNED_ENTRY_ID;
+        readAheadBytes = bytes;
+        return wastedBytes;
+    }
+
     boolean isStale() {
         return (lastAccessed + TimeUnit.MINUTES.toMillis(LEDGER_INFO_CACHING_TIME_MINUTES)) < System
                 .currentTimeMillis();
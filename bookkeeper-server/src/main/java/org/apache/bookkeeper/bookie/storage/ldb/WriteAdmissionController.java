@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that slows down the adds to the write cache while a flush is in progress, before the cache fills up.
+ *
+ * <p>The write cache can only be swapped once the previous flush is done, so while a flush is running the cache is
+ * effectively drained at the flush bandwidth. The bandwidth is measured on each flush. Once the write cache is
+ * filled above a threshold, the bytes added are charged against a bucket refilled at
+ * {@code bandwidth / pressure}, where the pressure grows linearly from 0 at the threshold to 1 when the cache is
+ * full. Producers then see a delay growing with the fill level, instead of a stall followed by a rejection when the
+ * cache is full.
+ */
+class WriteAdmissionController {
+
+    // Weight of the last flush in the bandwidth estimate
+    private static final double BANDWIDTH_SMOOTHING = 0.5;
+
+    // Idle time saved as tokens, letting a short burst of adds through without delay
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final double thresholdRatio;
+    private final long maxDelayNanos;
+
+    // Estimate of the flush bandwidth, in bytes per second. 0 until the first flush is measured
+    private volatile double flushBandwidth = 0;
+
+    // Time at which the bucket will have enough tokens for the next add, in nanoseconds
+    private final AtomicLong nextAvailableNanos = new AtomicLong(System.nanoTime());
+
+    private volatile double lastPressure = 0;
+
+    WriteAdmissionController(double thresholdRatio, long maxDelayNanos) {
+        this.thresholdRatio = thresholdRatio;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * Update the flush bandwidth estimate with a completed flush.
+     */
+    void recordFlush(long bytes, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+
+        double bandwidth = bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        double current = flushBandwidth;
+        flushBandwidth = current == 0 ? bandwidth
+                : BANDWIDTH_SMOOTHING * bandwidth + (1 - BANDWIDTH_SMOOTHING) * current;
+    }
+
+    /**
+     * Compute the time an add has to wait before being admitted in the write cache, and charge its size to the
+     * bucket.
+     *
+     * @param size the size of the entry
+     * @param cacheSize the number of bytes in the write cache
+     * @param cacheMaxSize the capacity of the write cache
+     * @param flushOngoing whether the write cache cannot be swapped because a flush is in progress
+     * @return the delay in nanoseconds, 0 if the add can proceed immediately
+     */
+    long acquire(int size, long cacheSize, long cacheMaxSize, boolean flushOngoing) {
+        double bandwidth = flushBandwidth;
+        double fillRatio = (double) cacheSize / cacheMaxSize;
+        if (!flushOngoing || bandwidth == 0 || fillRatio <= thresholdRatio) {
+            if (lastPressure != 0) {
+                lastPressure = 0;
+            }
+            return 0;
+        }
+
+        double pressure = Math.min(1.0, (fillRatio - thresholdRatio) / (1.0 - thresholdRatio));
+        lastPressure = pressure;
+        long costNanos = (long) (size * pressure * TimeUnit.SECONDS.toNanos(1) / bandwidth);
+
+        while (true) {
+            long now = System.nanoTime();
+            long next = nextAvailableNanos.get();
+            // Unused tokens are not accumulated beyond the burst, and the debt of adds that were only delayed by the
+            // max delay is not carried over
+            long start = Math.min(Math.max(next, now - BURST_NANOS), now + maxDelayNanos);
+            long newNext = start + costNanos;
+            if (nextAvailableNanos.compareAndSet(next, newNext)) {
+                return Math.min(maxDelayNanos, Math.max(0, newNext - now));
+            }
+        }
+    }
+
+    /**
+     * @return the estimated flush bandwidth, in bytes per second
+     */
+    long getFlushBandwidth() {
+        return (long) flushBandwidth;
+    }
+
+    /**
+     * @return the pressure seen by the last add, as a percentage
+     */
+    long getPressurePercentage() {
+        return Math.round(lastPressure * 100);
+    }
+
+    /**
+     * @return the rate at which adds are currently admitted, in bytes per second, or 0 when they are not throttled
+     */
+    long getAdmissionRate() {
+        double pressure = lastPressure;
+        return pressure == 0 ? 0 : (long) (flushBandwidth / pressure);
+    }
+}
@@ -25,11 +25,21 @@ import static com.google.common.base.Preconditions.checkArgument;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
@@ -48,7 +58,16 @@ import org.slf4j.LoggerFactory;
  * until the cache is cleared.
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
- * way, by (ledgerId, entry).
+ * way, by (ledgerId, entry). The order is maintained while the entries are added,
+ * by a {@link LedgerRunsIndex}, so the iteration does not need to sort them. The
+ * chunks of the index are taken from the top of the cache memory, while the entries
+ * are appended from the bottom, so the index counts against the cache size.
+ *
+ * <p>Entries are read as retained slices of the cache segments, so each slice pins its segment.
+ * Clearing the cache waits, for a bounded time, until the pinned segments are released. The
+ * segments still pinned after that are detached: the cache replaces them with new memory and
+ * the old one is freed when the last slice is released. A read racing with a clear detects it
+ * and returns null, as the entry is then found in the flushed storage.
  */
 public class WriteCache implements Closeable {
 
@@ -79,24 +98,46 @@ public class WriteCache implements Closeable {
 
     private final AtomicLong cacheSize = new AtomicLong(0);
     private final AtomicLong cacheOffset = new AtomicLong(0);
+    // Start of the memory used by the chunks of the sorted index, which grows down from the end of the cache
+    private final AtomicLong indexOffset;
     private final LongAdder cacheCount = new LongAdder();
 
+    // Keeps the entries in (ledgerId, entryId) order, so that they can be iterated without sorting them
+    private final LedgerRunsIndex sortedIndex;
+
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
-    private final ByteBufAllocator allocator;
+    // Taken exclusively when clearing the cache, so that readers can detect that the
+    // entry they have just looked up is going to be overwritten
+    private final StampedLock clearLock = new StampedLock();
+
+    // Segments that were still pinned by readers when the cache was cleared, and had to be replaced
+    private final LongAdder pinnedOverflowCount = new LongAdder();
+
+    private final long maxPinWaitNanos;
+
+    // Default maxSegmentSize set to 1Gb
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+
+    static final long DEFAULT_MAX_PIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long PIN_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
-        // Default maxSegmentSize set to 1Gb
-        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, DEFAULT_MAX_PIN_WAIT_NANOS);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, long maxPinWaitNanos) {
         checkArgument(maxSegmentSize > 0);
+        checkArgument(maxPinWaitNanos >= 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
-        this.allocator = allocator;
+        this.maxPinWaitNanos = maxPinWaitNanos;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -113,15 +154,40 @@ public class WriteCache implements Closeable {
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+
+        this.indexOffset = new AtomicLong(maxCacheSize);
+        this.sortedIndex = new LedgerRunsIndex(cacheSegments, segmentOffsetBits, this::allocateIndexChunk);
     }
 
     public void clear() {
-        cacheSize.set(0L);
-        cacheOffset.set(0L);
-        cacheCount.reset();
-        index.clear();
-        lastEntryMap.clear();
-        deletedLedgers.clear();
+        long stamp = clearLock.writeLock();
+        try {
+            // No new slice can be taken from now on, wait for the readers to release the ones they hold
+            long deadline = System.nanoTime() + maxPinWaitNanos;
+            for (int i = 0; i < segmentsCount; i++) {
+                ByteBuf segment = cacheSegments[i];
+                if (!awaitUnpinned(segment, deadline)) {
+                    // Leave the pinned memory to the readers, it is freed when they release their slices
+                    int capacity = segment.capacity();
+                    cacheSegments[i] = Unpooled.directBuffer(capacity, capacity);
+                    segment.release();
+                    pinnedOverflowCount.increment();
+                    log.warn("Write cache segment {} of {} bytes still pinned by readers after {} ms, replacing it",
+                            i, capacity, TimeUnit.NANOSECONDS.toMillis(maxPinWaitNanos));
+                }
+            }
+
+            cacheSize.set(0L);
+            cacheOffset.set(0L);
+            indexOffset.set(maxCacheSize);
+            cacheCount.reset();
+            index.clear();
+            lastEntryMap.clear();
+            sortedIndex.clear();
+            deletedLedgers.clear();
+        } finally {
+            clearLock.unlockWrite(stamp);
+        }
     }
 
     @Override
@@ -147,7 +213,7 @@ public class WriteCache implements Closeable {
             localOffset = (int) (offset & segmentOffsetMask);
             segmentIdx = (int) (offset >>> segmentOffsetBits);
 
-            if ((offset + size) > maxCacheSize) {
+            if ((offset + size) > indexOffset.get()) {
                 // Cache is full
                 return false;
             } else if (maxSegmentSize - localOffset < size) {
@@ -162,6 +228,11 @@ public class WriteCache implements Closeable {
 
         cacheSegments[segmentIdx].setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
 
+        if (!sortedIndex.add(ledgerId, entryId, offset, size)) {
+            // No space left for the index
+            return false;
+        }
+
         // Update last entryId for ledger. This logic is to handle writes for the same
         // ledger coming out of order and from different thread, though in practice it
         // should not happen and the compareAndSet should be always uncontended.
@@ -183,7 +254,42 @@ public class WriteCache implements Closeable {
         return true;
     }
 
+    private long allocateIndexChunk() {
+        while (true) {
+            long start = indexOffset.get();
+            long newStart = start - LedgerRunsIndex.CHUNK_SIZE;
+            long segmentStart = ((start - 1) >>> segmentOffsetBits) << segmentOffsetBits;
+            if (newStart < segmentStart) {
+                // A chunk cannot cross the boundary of a segment, move to the end of the previous one
+                newStart = segmentStart - LedgerRunsIndex.CHUNK_SIZE;
+            }
+
+            if (newStart < cacheOffset.get()) {
+                // Cache is full
+                return -1;
+            }
+
+            if (indexOffset.compareAndSet(start, newStart)) {
+                // Check again after taking the chunk, as an entry might have been appended concurrently
+                if (newStart < cacheOffset.get()) {
+                    return -1;
+                }
+                cacheSize.addAndGet(start - newStart);
+                return newStart;
+            }
+        }
+    }
+
+    /**
+     * Get an entry from the cache.
+     *
+     * <p>The returned buffer is a retained slice of the cache memory, which must not be modified and must be
+     * released by the caller as soon as possible, since it delays the next {@link #clear()} of the cache.
+     *
+     * @return a slice with the content of the entry, or null if the entry is not in the cache
+     */
     public ByteBuf get(long ledgerId, long entryId) {
+        long stamp = clearLock.tryOptimisticRead();
         LongPair result = index.get(ledgerId, entryId);
         if (result == null) {
             return null;
@@ -191,11 +297,24 @@ public class WriteCache implements Closeable {
 
         long offset = result.first;
         int size = (int) result.second;
-        ByteBuf entry = allocator.buffer(size, size);
 
         int localOffset = (int) (offset & segmentOffsetMask);
         int segmentIdx = (int) (offset >>> segmentOffsetBits);
-        entry.writeBytes(cacheSegments[segmentIdx], localOffset, size);
+
+        ByteBuf entry;
+        try {
+            entry = cacheSegments[segmentIdx].retainedSlice(localOffset, size);
+        } catch (IllegalReferenceCountException e) {
+            // The segment was detached by a clear and already freed
+            return null;
+        }
+
+        if (!clearLock.validate(stamp)) {
+            // The cache was cleared before we pinned the segment, so the entry might be overwritten. The entry was
+            // already flushed, so the caller can find it in the storage
+            entry.release();
+            return null;
+        }
         return entry;
     }
 
@@ -218,66 +337,151 @@ public class WriteCache implements Closeable {
     }
 
     public void forEach(EntryConsumer consumer) throws IOException {
-        sortedEntriesLock.lock();
+        long startTime = MathUtils.nowInNano();
 
-        try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
+        long[] ledgerIds = sortedLedgers();
+        forEachLedger(ledgerIds, 0, ledgerIds.length, consumer);
+
+        if (log.isDebugEnabled()) {
+            log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+    }
+
+    /**
+     * Iterate over the entries sorted by (ledgerId, entryId), using several consumers in parallel.
+     *
+     * <p>The ledgers are split in up to {@code consumers.size()} partitions of about the same size in bytes, so all
+     * the entries of a ledger are passed, in order, to the same consumer. The last partition is processed by the
+     * calling thread, the others are submitted to the executor.
+     *
+     * @return the number of partitions that were used
+     */
+    public int forEach(List<EntryConsumer> consumers, Executor executor) throws IOException {
+        checkArgument(!consumers.isEmpty(), "At least one consumer is needed");
+
+        long[] ledgerIds = sortedLedgers();
+        int[] bounds = partitionLedgers(ledgerIds, consumers.size());
+        int partitions = bounds.length - 1;
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions - 1; p++) {
+            final int start = bounds[p];
+            final int end = bounds[p + 1];
+            final EntryConsumer consumer = consumers.get(p);
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures.add(future);
+            try {
+                executor.execute(() -> {
+                    try {
+                        forEachLedger(ledgerIds, start, end, consumer);
+                        future.complete(null);
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
             }
+        }
 
-            long startTime = MathUtils.nowInNano();
+        IOException exception = null;
+        if (partitions > 0) {
+            try {
+                forEachLedger(ledgerIds, bounds[partitions - 1], bounds[partitions], consumers.get(partitions - 1));
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
 
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
+        // Always wait for all the partitions, without giving up on interruption, since they are reading from
+        // the cache segments
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (exception == null) {
+                    Throwable cause = e.getCause();
+                    exception = cause instanceof IOException ? (IOException) cause : new IOException(cause);
                 }
+            }
+        }
 
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+        if (exception != null) {
+            throw exception;
+        }
+        return partitions;
+    }
 
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
-            }
-            startTime = MathUtils.nowInNano();
+    private long[] sortedLedgers() {
+        long startTime = MathUtils.nowInNano();
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        long[] ledgerIds = sortedIndex.sortedLedgers();
+        int count = 0;
+        for (long ledgerId : ledgerIds) {
+            if (!deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                ledgerIds[count++] = ledgerId;
             }
-            startTime = MathUtils.nowInNano();
+        }
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ledgers took {} ms", count, MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        return count == ledgerIds.length ? ledgerIds : Arrays.copyOf(ledgerIds, count);
+    }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
-            }
+    /**
+     * Split the sorted ledgers in up to maxPartitions ranges of about the same size in bytes.
+     *
+     * @return the boundaries of the partitions, as indexes in the ledgers array
+     */
+    private int[] partitionLedgers(long[] ledgerIds, int maxPartitions) {
+        long[] ledgerBytes = new long[ledgerIds.length];
+        long totalBytes = 0;
+        for (int i = 0; i < ledgerIds.length; i++) {
+            ledgerBytes[i] = sortedIndex.ledgerBytes(ledgerIds[i]);
+            totalBytes += ledgerBytes[i];
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        int[] bounds = new int[maxPartitions + 1];
+        int partitions = 0;
+        // The target is recomputed after each cut, so that the overshoot of a partition is spread over the next ones
+        long remainingBytes = totalBytes;
+        long targetBytes = remainingBytes / maxPartitions;
+        long partitionBytes = 0;
+        for (int i = 0; i < ledgerIds.length; i++) {
+            if (partitionBytes > 0 && partitionBytes >= targetBytes && partitions < maxPartitions - 1) {
+                bounds[++partitions] = i;
+                remainingBytes -= partitionBytes;
+                targetBytes = remainingBytes / (maxPartitions - partitions);
+                partitionBytes = 0;
             }
-        } finally {
-            sortedEntriesLock.unlock();
+            partitionBytes += ledgerBytes[i];
+        }
+
+        if (ledgerIds.length > 0) {
+            bounds[++partitions] = ledgerIds.length;
+        }
+        return Arrays.copyOf(bounds, partitions + 1);
+    }
+
+    private void forEachLedger(long[] ledgerIds, int start, int end, EntryConsumer consumer) throws IOException {
+        // Each caller gets its own slices, since the reader and writer indexes are updated for every entry
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+
+        LedgerRunsIndex.RecordConsumer recordConsumer = (ledgerId, entryId, offset, length) -> {
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + length);
+            consumer.accept(ledgerId, entryId, entry);
+        };
+
+        for (int i = start; i < end; i++) {
+            sortedIndex.forEach(ledgerIds[i], recordConsumer);
         }
     }
 
@@ -293,6 +497,28 @@ public class WriteCache implements Closeable {
         return cacheSize.get() == 0L;
     }
 
+    /**
+     * @return the number of segments that were still pinned by readers when the cache was cleared
+     */
+    public long pinnedOverflowCount() {
+        return pinnedOverflowCount.sum();
+    }
+
+    /**
+     * Wait until a cache segment is no longer pinned by the slices handed out to the readers, or until the deadline.
+     *
+     * @return true if the segment is not pinned and can be overwritten
+     */
+    static boolean awaitUnpinned(ByteBuf segment, long deadlineNanos) {
+        while (segment.refCnt() > 1) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(PIN_POLL_INTERVAL_NANOS);
+        }
+        return true;
+    }
+
     private static final int ALIGN_64_MASK = ~(64 - 1);
 
     static int align64(int size) {
@@ -303,9 +529,5 @@ public class WriteCache implements Closeable {
         return (long) Math.pow(2, 64 - Long.numberOfLeadingZeros(n - 1));
     }
 
-    private final ReentrantLock sortedEntriesLock = new ReentrantLock();
-    private long[] sortedEntries;
-    private int sortedEntriesIdx;
-
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 }
@@ -26,10 +26,12 @@ import java.io.File;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.EntryLogSelectionPolicy;
 import org.apache.bookkeeper.bookie.FileChannelProvider;
 import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.SortedLedgerStorage;
+import org.apache.bookkeeper.bookie.UsageEntryLogSelectionPolicy;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
 import org.apache.bookkeeper.common.conf.ConfigDef;
 import org.apache.bookkeeper.common.conf.ConfigException;
@@ -92,6 +94,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         .build();
 
     protected static final String ENTRY_LOG_FILE_PREALLOCATION_ENABLED = "entryLogFilePreallocationEnabled";
+    protected static final String ENTRY_LOG_INDEX_FILE_ENABLED = "entryLogIndexFileEnabled";
 
 
     protected static final String FORCE_ALLOW_COMPACTION = "forceAllowCompaction";
@@ -106,6 +109,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_THREADS_PER_LEDGER_DIR = "compactionThreadsPerLedgerDir";
+    protected static final String COMPACTION_IO_BUDGET_ENABLED = "compactionIoBudgetEnabled";
+    protected static final String COMPACTION_IO_BUDGET_LATENCY_THRESHOLD_MS = "compactionIoBudgetLatencyThresholdMs";
+    protected static final String COMPACTION_ENTRY_LOG_SELECTION_POLICY_CLASS =
+            "compactionEntryLogSelectionPolicyClass";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -115,8 +123,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             "gcOverreplicatedLedgerMaxConcurrentRequests";
     protected static final String USE_TRANSACTIONAL_COMPACTION = "useTransactionalCompaction";
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
+    protected static final String GC_METADATA_SCAN_SLICES = "gcMetadataScanSlices";
+    protected static final String GC_KNOWN_ALIVE_LEDGER_TTL_SECONDS = "gcKnownAliveLedgerTtlSeconds";
     protected static final String GC_ENTRYLOGMETADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
     protected static final String GC_ENTRYLOG_METADATA_CACHE_PATH = "gcEntryLogMetadataCachePath";
+    protected static final String GC_ENTRYLOG_METADATA_COMPACT_ENCODING_ENABLED =
+            "gcEntryLogMetadataCompactEncodingEnabled";
     protected static final String USE_TARGET_ENTRYLOG_SIZE_FOR_GC = "useTargetEntryLogSizeForGc";
     // Scrub Parameters
     protected static final String LOCAL_SCRUB_PERIOD = "localScrubInterval";
@@ -140,6 +152,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT = "journalAdaptiveGroupCommit";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
@@ -154,6 +167,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
     protected static final String JOURNAL_REUSE_FILES = "journalReuseFiles";
+    protected static final String JOURNAL_DIRECT_IO = "journalDirectIO";
+    protected static final String JOURNAL_WRITE_PIPELINE_DEPTH = "journalWritePipelineDepth";
+    protected static final String JOURNAL_LOAD_BALANCING = "journalLoadBalancing";
+    protected static final String JOURNAL_ACK_DEFERRED_SYNC_ON_ENQUEUE = "journalAckDeferredSyncOnEnqueue";
+    protected static final String JOURNAL_MAX_UNFLUSHED_ACKED_BYTES = "journalMaxUnflushedAckedBytes";
+    protected static final String JOURNAL_MAX_UNFLUSHED_ACKED_MSEC = "journalMaxUnflushedAckedMSec";
+    protected static final String IO_URING_ENABLED = "ioUringEnabled";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
@@ -344,6 +364,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         "maxOperationNumbersInSingleRocksdbWriteBatch";
 
     protected static final String SKIP_REPLAY_JOURNAL_INVALID_RECORD = "skipReplayJournalInvalidRecord";
+    protected static final String JOURNAL_REPLAY_THREADS = "journalReplayThreads";
+    protected static final String JOURNAL_SCAN_MMAP = "journalScanMmap";
 
     protected static final String MAX_BATCH_READ_SIZE = "maxBatchReadSize";
     protected static final int DEFAULT_MAX_BATCH_READ_SIZE = 5 * 1024 * 1024; // 5MB
@@ -407,6 +429,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether an index file is written along with each entry log, with the sizes of the ledgers in the entry log.
+     *
+     * <p>The index file is appended each time the entry log is synced. It allows to get the metadata of an entry
+     * log without scanning it when the entry log has no ledgers map, because the bookie crashed before rotating it.
+     *
+     * @return whether entry log index files are enabled or not.
+     */
+    public boolean isEntryLogIndexFileEnabled() {
+        return this.getBoolean(ENTRY_LOG_INDEX_FILE_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable writing an index file along with each entry log.
+     *
+     * @param enabled
+     *          enable/disable entry log index files.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogIndexFileEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_INDEX_FILE_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get Garbage collection wait time. Default value is 10 minutes.
      * The guideline is not to set a too low value for this, if using zookeeper based
@@ -499,6 +545,101 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of entry logs a garbage collector thread compacts concurrently. There is a garbage collector
+     * thread per ledger directory with DbLedgerStorage, and a single one with the other ledger storages.
+     *
+     * @return the number of entry logs compacted concurrently
+     */
+    public int getCompactionThreadsPerLedgerDir() {
+        return this.getInt(COMPACTION_THREADS_PER_LEDGER_DIR, 1);
+    }
+
+    /**
+     * Set the number of entry logs a garbage collector thread compacts concurrently.
+     *
+     * @param threads
+     *          the number of entry logs compacted concurrently
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionThreadsPerLedgerDir(int threads) {
+        this.setProperty(COMPACTION_THREADS_PER_LEDGER_DIR, threads);
+        return this;
+    }
+
+    /**
+     * Whether all the compactions of the bookie share a single compaction rate, which is lowered while the add
+     * and read requests are slow. When disabled, each compaction is throttled at the compaction rate on its own.
+     *
+     * @return true if the compactions share a single rate adjusted to the request latency
+     */
+    public boolean isCompactionIoBudgetEnabled() {
+        return this.getBoolean(COMPACTION_IO_BUDGET_ENABLED, false);
+    }
+
+    /**
+     * Set whether all the compactions of the bookie share a single compaction rate, which is lowered while the
+     * add and read requests are slow.
+     *
+     * @param enabled
+     *          whether the compactions share a single rate adjusted to the request latency
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionIoBudgetEnabled(boolean enabled) {
+        this.setProperty(COMPACTION_IO_BUDGET_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the 99th percentile latency of the add and read requests above which the shared compaction rate is
+     * halved, down to a sixteenth of the compaction rate. Below it, the rate grows back to the compaction rate.
+     *
+     * @return the request latency threshold, in milliseconds
+     */
+    public long getCompactionIoBudgetLatencyThresholdMs() {
+        return this.getLong(COMPACTION_IO_BUDGET_LATENCY_THRESHOLD_MS, 50);
+    }
+
+    /**
+     * Set the 99th percentile latency of the add and read requests above which the shared compaction rate is
+     * lowered.
+     *
+     * @param thresholdMs
+     *          the request latency threshold, in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionIoBudgetLatencyThresholdMs(long thresholdMs) {
+        this.setProperty(COMPACTION_IO_BUDGET_LATENCY_THRESHOLD_MS, thresholdMs);
+        return this;
+    }
+
+    /**
+     * Get the policy which orders the entry logs to compact in a compaction round. The default policy compacts the
+     * least used entry logs first.
+     *
+     * @return the entry log selection policy class
+     * @throws ConfigurationException
+     */
+    public Class<? extends EntryLogSelectionPolicy> getCompactionEntryLogSelectionPolicyClass()
+        throws ConfigurationException {
+        return ReflectionUtils.getClass(this, COMPACTION_ENTRY_LOG_SELECTION_POLICY_CLASS,
+                                        UsageEntryLogSelectionPolicy.class, EntryLogSelectionPolicy.class,
+                                        DEFAULT_LOADER);
+    }
+
+    /**
+     * Set the policy which orders the entry logs to compact in a compaction round.
+     *
+     * @param policyClass
+     *          the entry log selection policy class
+     * @return server configuration
+     */
+    public ServerConfiguration setCompactionEntryLogSelectionPolicyClass(
+            Class<? extends EntryLogSelectionPolicy> policyClass) {
+        this.setProperty(COMPACTION_ENTRY_LOG_SELECTION_POLICY_CLASS, policyClass.getName());
+        return this;
+    }
+
     /**
      * Get whether the bookie is configured to double check prior to gc.
      *
@@ -518,6 +659,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of slices the ledgers of the bookie are split into, by ledger id, for garbage collection.
+     * Each garbage collection compares one slice with the metadata store, and stops listing the ledgers of the
+     * metadata store after the end of the slice.
+     *
+     * @return the number of slices of the ledgers compared with the metadata store
+     */
+    public int getGcMetadataScanSlices() {
+        return this.getInt(GC_METADATA_SCAN_SLICES, 1);
+    }
+
+    /**
+     * Set the number of slices the ledgers of the bookie are split into, by ledger id, for garbage collection.
+     *
+     * @param slices
+     *          the number of slices of the ledgers compared with the metadata store
+     * @return server configuration
+     */
+    public ServerConfiguration setGcMetadataScanSlices(int slices) {
+        this.setProperty(GC_METADATA_SCAN_SLICES, slices);
+        return this;
+    }
+
+    /**
+     * Get how long a ledger found in the metadata store is assumed to exist. A garbage collection does not list
+     * the metadata store for a slice of ledgers which were all found within this time, so a deleted ledger may be
+     * garbage collected this much later. 0 disables the cache.
+     *
+     * @return the time a ledger found in the metadata store is assumed to exist, in seconds
+     */
+    public long getGcKnownAliveLedgerTtlSeconds() {
+        return this.getLong(GC_KNOWN_ALIVE_LEDGER_TTL_SECONDS, 0);
+    }
+
+    /**
+     * Set how long a ledger found in the metadata store is assumed to exist.
+     *
+     * @param ttlSeconds
+     *          the time a ledger found in the metadata store is assumed to exist, in seconds
+     * @return server configuration
+     */
+    public ServerConfiguration setGcKnownAliveLedgerTtlSeconds(long ttlSeconds) {
+        this.setProperty(GC_KNOWN_ALIVE_LEDGER_TTL_SECONDS, ttlSeconds);
+        return this;
+    }
+
     /**
      * Get whether the bookie is configured to use persistent
      * entrylogMetadataMap.
@@ -565,6 +752,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get whether the entry log metadata keep their ledgers in a compact encoding: in direct memory, sorted and
+     * delta encoded, instead of a hash map on the heap. With gcEntryLogMetadataCacheEnabled, the persisted
+     * metadata use the same encoding, which older bookies cannot read.
+     *
+     * @return true if the entry log metadata use the compact encoding
+     */
+    public boolean isGcEntryLogMetadataCompactEncodingEnabled() {
+        return getBoolean(GC_ENTRYLOG_METADATA_COMPACT_ENCODING_ENABLED, false);
+    }
+
+    /**
+     * Set whether the entry log metadata keep their ledgers in a compact encoding.
+     *
+     * @param enabled
+     *          whether the entry log metadata use the compact encoding
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataCompactEncodingEnabled(boolean enabled) {
+        this.setProperty(GC_ENTRYLOG_METADATA_COMPACT_ENCODING_ENABLED, enabled);
+        return this;
+    }
+
     public boolean isUseTargetEntryLogSizeForGc() {
         return getBoolean(USE_TARGET_ENTRYLOG_SIZE_FOR_GC, false);
     }
@@ -1031,6 +1241,170 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal is written with direct I/O (O_DIRECT), bypassing the page cache.
+     *
+     * @return true if the journal is written with direct I/O
+     */
+    public boolean getJournalDirectIO() {
+        return this.getBoolean(JOURNAL_DIRECT_IO, false);
+    }
+
+    /**
+     * Set whether the journal is written with direct I/O (O_DIRECT), bypassing the page cache. The journal
+     * falls back to buffered writes when direct I/O is not available on the platform.
+     *
+     * @param journalDirectIO
+     *          true to write the journal with direct I/O
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalDirectIO(boolean journalDirectIO) {
+        setProperty(JOURNAL_DIRECT_IO, journalDirectIO);
+        return this;
+    }
+
+    /**
+     * Get the number of batch buffers of the journal write pipeline. With 2 or more buffers, the journal thread
+     * assembles the next batch of entries while the previous one is written to the journal file by a separate
+     * thread. Values lower than 2 disable the pipeline.
+     *
+     * @return the number of batch buffers of the journal write pipeline
+     */
+    public int getJournalWritePipelineDepth() {
+        return this.getInt(JOURNAL_WRITE_PIPELINE_DEPTH, 0);
+    }
+
+    /**
+     * Set the number of batch buffers of the journal write pipeline.
+     *
+     * @param depth
+     *          the number of batch buffers, 2 for double buffering, 3 for triple buffering. Values lower than 2
+     *          disable the pipeline
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalWritePipelineDepth(int depth) {
+        setProperty(JOURNAL_WRITE_PIPELINE_DEPTH, depth);
+        return this;
+    }
+
+    /**
+     * Whether the ledgers are routed to the least loaded journal, instead of by ledger id.
+     *
+     * @return true if the ledgers are routed to the journals by load
+     */
+    public boolean getJournalLoadBalancing() {
+        return this.getBoolean(JOURNAL_LOAD_BALANCING, false);
+    }
+
+    /**
+     * Set whether the ledgers are routed to the least loaded journal, instead of by ledger id. A ledger is routed
+     * when it is first written after the bookie start, and keeps writing to the same journal until the bookie
+     * restarts. It only makes a difference with several journal directories.
+     *
+     * @param journalLoadBalancing
+     *          whether to route the ledgers to the journals by load
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalLoadBalancing(boolean journalLoadBalancing) {
+        setProperty(JOURNAL_LOAD_BALANCING, journalLoadBalancing);
+        return this;
+    }
+
+    /**
+     * Whether the entries of the ledgers written with {@code WriteFlag.DEFERRED_SYNC} are acknowledged as soon as
+     * they are added to the journal queue, before they are written to the journal file. The entries acknowledged
+     * and not written yet are lost if the bookie crashes, and are bounded by
+     * {@link #getJournalMaxUnflushedAckedBytes()} and {@link #getJournalMaxUnflushedAckedMSec()}.
+     *
+     * @return true if the deferred sync entries are acknowledged when enqueued
+     */
+    public boolean getJournalAckDeferredSyncOnEnqueue() {
+        return this.getBoolean(JOURNAL_ACK_DEFERRED_SYNC_ON_ENQUEUE, false);
+    }
+
+    /**
+     * Set whether the entries of the ledgers written with {@code WriteFlag.DEFERRED_SYNC} are acknowledged as soon
+     * as they are added to the journal queue.
+     *
+     * @param enabled
+     *          whether to acknowledge the deferred sync entries when enqueued
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalAckDeferredSyncOnEnqueue(boolean enabled) {
+        setProperty(JOURNAL_ACK_DEFERRED_SYNC_ON_ENQUEUE, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum size of the entries of a journal which are acknowledged and not written to the journal file
+     * yet. When the limit is reached, the next deferred sync entries are acknowledged after they are written.
+     *
+     * @return the maximum size of the acknowledged entries not written yet, in bytes
+     */
+    public long getJournalMaxUnflushedAckedBytes() {
+        return this.getLong(JOURNAL_MAX_UNFLUSHED_ACKED_BYTES, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Set the maximum size of the entries of a journal which are acknowledged and not written to the journal file
+     * yet.
+     *
+     * @param maxBytes
+     *          the maximum size of the acknowledged entries not written yet, in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalMaxUnflushedAckedBytes(long maxBytes) {
+        setProperty(JOURNAL_MAX_UNFLUSHED_ACKED_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the maximum time a journal keeps entries acknowledged and not written to the journal file. The journal
+     * writes the acknowledged entries when the oldest one is this old, and the deferred sync entries are
+     * acknowledged after they are written while the acknowledged entries of the last this long are not written.
+     *
+     * @return the maximum time the acknowledged entries are not written, in milliseconds
+     */
+    public long getJournalMaxUnflushedAckedMSec() {
+        return this.getLong(JOURNAL_MAX_UNFLUSHED_ACKED_MSEC, 10);
+    }
+
+    /**
+     * Set the maximum time a journal keeps entries acknowledged and not written to the journal file.
+     *
+     * @param maxMSec
+     *          the maximum time the acknowledged entries are not written, in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalMaxUnflushedAckedMSec(long maxMSec) {
+        setProperty(JOURNAL_MAX_UNFLUSHED_ACKED_MSEC, maxMSec);
+        return this;
+    }
+
+    /**
+     * Whether the writes of the direct I/O entry logger are submitted to io_uring.
+     *
+     * @return true if the direct I/O entry logger writes with io_uring
+     */
+    public boolean getIoUringEnabled() {
+        return this.getBoolean(IO_URING_ENABLED, false);
+    }
+
+    /**
+     * Set whether the writes of the direct I/O entry logger are submitted to io_uring. The buffers queued for
+     * writing are then written concurrently with a single syscall, and a flush writes the last buffers and syncs
+     * the entry log with a single syscall. The writes fall back to pwrite and fsync when io_uring is not available,
+     * which needs linux 5.1 or later.
+     *
+     * @param ioUringEnabled
+     *          whether to submit the writes of the direct I/O entry logger to io_uring
+     * @return server configuration
+     */
+    public ServerConfiguration setIoUringEnabled(boolean ioUringEnabled) {
+        setProperty(IO_URING_ENABLED, ioUringEnabled);
+        return this;
+    }
+
     /**
      * Get max number of adds in progress. 0 == unlimited.
      *
@@ -2364,6 +2738,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the time the journal waits to group entries is tuned from the load. The journal then waits up to the
+     * expected commit latency when entries arrive faster than they can be committed one by one, and does not wait
+     * when the load is light. {@link #getJournalMaxGroupWaitMSec()} caps the wait.
+     *
+     * @return true if the group wait is adaptive
+     */
+    public boolean getJournalAdaptiveGroupCommit() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT, false);
+    }
+
+    /**
+     * Enable/disable tuning the time the journal waits to group entries from the load.
+     *
+     * @param enabled flag to enable/disable the adaptive group wait
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommit(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT, enabled);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -4044,6 +4440,51 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getBoolean(SKIP_REPLAY_JOURNAL_INVALID_RECORD, false);
     }
 
+    /**
+     * Get the number of threads adding the entries replayed from the journals to the ledger storage.
+     *
+     * @return number of journal replay threads
+     */
+    public int getJournalReplayThreads() {
+        return this.getInt(JOURNAL_REPLAY_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads adding the entries replayed from the journals to the ledger storage. With more than
+     * one thread, each journal directory is read by its own thread and the entries are dispatched to the replay
+     * threads by ledger id, so that the entries of a ledger are still added in order. With 1, the journal
+     * directories are replayed one after the other on the bookie startup thread.
+     *
+     * @param numThreads
+     *          number of journal replay threads
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayThreads(int numThreads) {
+        this.setProperty(JOURNAL_REPLAY_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Whether the journal files are memory-mapped, instead of read, when they are scanned for replay.
+     *
+     * @return true if the journal files are scanned with mmap
+     */
+    public boolean getJournalScanMmap() {
+        return this.getBoolean(JOURNAL_SCAN_MMAP, false);
+    }
+
+    /**
+     * Set whether the journal files are memory-mapped, instead of read, when they are scanned for replay.
+     *
+     * @param journalScanMmap
+     *          whether to scan the journal files with mmap
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalScanMmap(boolean journalScanMmap) {
+        this.setProperty(JOURNAL_SCAN_MMAP, journalScanMmap);
+        return this;
+    }
+
     /**
      * Get default rocksdb conf.
      *
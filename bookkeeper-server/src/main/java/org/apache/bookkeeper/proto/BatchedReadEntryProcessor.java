@@ -20,7 +20,6 @@
  */
 package org.apache.bookkeeper.proto;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCounted;
 import java.util.concurrent.ExecutorService;
@@ -48,7 +47,6 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
 
     @Override
     protected ReferenceCounted readData() throws Exception {
-        ByteBufList data = null;
         BatchedReadRequest batchRequest = (BatchedReadRequest) request;
         int maxCount = batchRequest.getMaxCount();
         if (maxCount <= 0) {
@@ -57,25 +55,26 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
         long maxSize = Math.min(batchRequest.getMaxSize(), maxBatchReadSize);
         //See BookieProtoEncoding.ResponseEnDeCoderPreV3#encode on BatchedReadResponse case.
         long frameSize = 24 + 8 + 4;
-        for (int i = 0; i < maxCount; i++) {
-            try {
-                ByteBuf entry = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId() + i);
-                frameSize += entry.readableBytes() + 4;
-                if (data == null) {
-                    data = ByteBufList.get(entry);
-                } else {
-                    if (frameSize > maxSize) {
-                        entry.release();
-                        break;
-                    }
-                    data.add(entry);
-                }
-            } catch (Throwable e) {
-                if (data == null) {
-                    throw e;
-                }
+        // The storage reads the whole batch at once, and only accounts for the size of the entries
+        ByteBufList data = requestProcessor.getBookie().readEntries(request.getLedgerId(), request.getEntryId(),
+                maxCount, maxSize - frameSize);
+
+        // Each entry also takes 4 bytes of the frame, drop the ones that do not fit
+        int fittingEntries = 0;
+        for (int i = 0; i < data.size(); i++) {
+            frameSize += data.getBuffer(i).readableBytes() + 4;
+            if (i > 0 && frameSize > maxSize) {
                 break;
             }
+            fittingEntries++;
+        }
+        if (fittingEntries < data.size()) {
+            ByteBufList fittingData = ByteBufList.get(data.getBuffer(0).retain());
+            for (int i = 1; i < fittingEntries; i++) {
+                fittingData.add(data.getBuffer(i).retain());
+            }
+            data.release();
+            data = fittingData;
         }
         return data;
     }
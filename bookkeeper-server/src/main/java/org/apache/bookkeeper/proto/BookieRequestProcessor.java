@@ -46,6 +46,7 @@ import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.CompactionIoBudget;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -198,7 +199,11 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         // Expose Stats
         this.statsEnabled = serverCfg.isStatisticsEnabled();
-        this.requestStats = new RequestStats(statsLogger);
+        // The latency of the requests drives the compaction budget of the bookie, when there is one
+        CompactionIoBudget compactionIoBudget = bookie != null && bookie.getLedgerStorage() != null
+                ? bookie.getLedgerStorage().getCompactionIoBudget() : null;
+        this.requestStats = new RequestStats(statsLogger,
+                compactionIoBudget != null ? compactionIoBudget::recordRequestLatency : null);
 
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
         addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
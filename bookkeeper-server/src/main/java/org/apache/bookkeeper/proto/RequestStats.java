@@ -57,9 +57,11 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_THREAD_QU
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsData;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
@@ -248,15 +250,24 @@ public class RequestStats {
     final OpStatsLogger getListOfEntriesOfLedgerStats;
 
     public RequestStats(StatsLogger statsLogger) {
+        this(statsLogger, null);
+    }
+
+    /**
+     * @param requestLatencyListener notified of the latency of the add and read requests, in nanoseconds, or null
+     */
+    public RequestStats(StatsLogger statsLogger, LongConsumer requestLatencyListener) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
         this.writeThreadQueuedLatency = statsLogger.getThreadScopedOpStatsLogger(WRITE_THREAD_QUEUED_LATENCY);
-        this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
+        this.addRequestStats = withLatencyListener(statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST),
+                requestLatencyListener);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
-        this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
+        this.readRequestStats = withLatencyListener(statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST),
+                requestLatencyListener);
         this.fenceReadEntryStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_READ);
         this.fenceReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_REQUEST);
         this.fenceReadWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_WAIT);
@@ -382,4 +393,53 @@ public class RequestStats {
         return maxReadsInProgress.get();
     }
 
+    private static OpStatsLogger withLatencyListener(OpStatsLogger delegate, LongConsumer latencyListener) {
+        return latencyListener != null ? new LatencyListenerOpStatsLogger(delegate, latencyListener) : delegate;
+    }
+
+    /**
+     * Reports the latency of the requests to a listener, such as the compaction budget of the bookie, which slows
+     * down the compactions while the requests are slow.
+     */
+    private static class LatencyListenerOpStatsLogger implements OpStatsLogger {
+        private final OpStatsLogger delegate;
+        private final LongConsumer latencyListener;
+
+        LatencyListenerOpStatsLogger(OpStatsLogger delegate, LongConsumer latencyListener) {
+            this.delegate = delegate;
+            this.latencyListener = latencyListener;
+        }
+
+        @Override
+        public void registerFailedEvent(long eventLatency, TimeUnit unit) {
+            delegate.registerFailedEvent(eventLatency, unit);
+            latencyListener.accept(unit.toNanos(eventLatency));
+        }
+
+        @Override
+        public void registerSuccessfulEvent(long eventLatency, TimeUnit unit) {
+            delegate.registerSuccessfulEvent(eventLatency, unit);
+            latencyListener.accept(unit.toNanos(eventLatency));
+        }
+
+        @Override
+        public void registerSuccessfulValue(long value) {
+            delegate.registerSuccessfulValue(value);
+        }
+
+        @Override
+        public void registerFailedValue(long value) {
+            delegate.registerFailedValue(value);
+        }
+
+        @Override
+        public OpStatsData toOpStatsData() {
+            return delegate.toOpStatsData();
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+    }
 }
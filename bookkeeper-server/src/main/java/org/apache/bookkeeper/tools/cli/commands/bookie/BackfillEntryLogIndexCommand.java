@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.tools.cli.commands.bookie;
+
+import com.beust.jcommander.Parameter;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.ReadOnlyDefaultEntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.tools.cli.commands.bookie.BackfillEntryLogIndexCommand.BackfillEntryLogIndexFlags;
+import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
+import org.apache.bookkeeper.tools.framework.CliFlags;
+import org.apache.bookkeeper.tools.framework.CliSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command to write the index files of the entry logs which have neither an index file nor a ledgers map, by
+ * scanning them.
+ */
+public class BackfillEntryLogIndexCommand extends BookieCommand<BackfillEntryLogIndexFlags> {
+
+    static final Logger LOG = LoggerFactory.getLogger(BackfillEntryLogIndexCommand.class);
+
+    private static final String NAME = "backfill-entrylog-index";
+    private static final String DESC = "Write the index files of the entry logs without index file nor ledgers map,"
+        + " by scanning them in parallel. The bookie must not be running.";
+
+    private static final int DEFAULT_THREADS = 4;
+
+    public BackfillEntryLogIndexCommand() {
+        this(new BackfillEntryLogIndexFlags());
+    }
+
+    public BackfillEntryLogIndexCommand(BackfillEntryLogIndexFlags flags) {
+        super(CliSpec.<BackfillEntryLogIndexFlags>newBuilder()
+                     .withName(NAME)
+                     .withDescription(DESC)
+                     .withFlags(flags)
+                     .build());
+    }
+
+    /**
+     * Flags for backfill entry log index command.
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class BackfillEntryLogIndexFlags extends CliFlags {
+
+        @Parameter(names = { "-t", "--threads" }, description = "Number of entry logs scanned in parallel")
+        private int threads = DEFAULT_THREADS;
+
+        @Parameter(names = { "-o", "--overwrite" },
+                description = "Rewrite the index files of all the entry logs, even those which already have one")
+        private boolean overwrite;
+    }
+
+    @Override
+    public boolean apply(ServerConfiguration conf, BackfillEntryLogIndexFlags cmdFlags) {
+        try {
+            return backfill(conf, cmdFlags);
+        } catch (IOException e) {
+            throw new UncheckedExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedExecutionException(e.getMessage(), e);
+        }
+    }
+
+    public boolean backfill(ServerConfiguration conf, BackfillEntryLogIndexFlags flags)
+            throws IOException, InterruptedException {
+        DefaultEntryLogger entryLogger = new ReadOnlyDefaultEntryLogger(conf);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, flags.threads),
+                new DefaultThreadFactory("entrylog-index-backfill"));
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            Set<Long> entryLogs = entryLogger.getEntryLogsSet();
+            LOG.info("Writing the index files of {} entry logs", entryLogs.size());
+            for (long entryLogId : entryLogs) {
+                executor.execute(() -> {
+                    try {
+                        if (entryLogger.writeIndexFile(entryLogId, flags.overwrite)) {
+                            written.incrementAndGet();
+                            LOG.info("Wrote the index file of entry log {} ({}.log)",
+                                    entryLogId, Long.toHexString(entryLogId));
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                        LOG.error("Failed to write the index file of entry log {} ({}.log)",
+                                entryLogId, Long.toHexString(entryLogId), e);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            LOG.info("Wrote {} index files, skipped {} entry logs, failed {}", written.get(),
+                    entryLogs.size() - written.get() - failed.get(), failed.get());
+        } finally {
+            executor.shutdownNow();
+            entryLogger.close();
+        }
+        return failed.get() == 0;
+    }
+}
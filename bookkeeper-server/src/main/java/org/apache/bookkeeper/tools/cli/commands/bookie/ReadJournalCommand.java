@@ -211,6 +211,7 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
     }
 
     private void scanJournal(Journal journal, long journalId, Journal.JournalScanner scanner) throws IOException {
-        journal.scanJournal(journalId, 0L, scanner, false);
+        // The journal file is only read once, from start to end, map it rather than copying it
+        journal.scanJournal(journalId, 0L, scanner, false, true);
     }
 }
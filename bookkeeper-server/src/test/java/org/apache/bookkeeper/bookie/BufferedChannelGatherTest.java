@@ -0,0 +1,173 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Writes larger than the free space of the write buffer, gathered with the buffered data when in direct memory.
+ */
+@RunWith(Parameterized.class)
+public class BufferedChannelGatherTest {
+
+    private static final int CAPACITY = 1024;
+
+    private enum SourceType {
+        HEAP, DIRECT, COMPOSITE
+    }
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final SourceType sourceType;
+    private File file;
+    private RandomAccessFile raf;
+    private BufferedChannel channel;
+    private final Random random = new Random(1);
+    private byte[] expected = new byte[0];
+
+    @Parameterized.Parameters(name = "source={0}")
+    public static Collection<Object[]> getParams() {
+        return Arrays.asList(new Object[][]{
+                {SourceType.HEAP},
+                {SourceType.DIRECT},
+                {SourceType.COMPOSITE},
+        });
+    }
+
+    public BufferedChannelGatherTest(SourceType sourceType) {
+        this.sourceType = sourceType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        file = tmpDir.newFile("0.log");
+        raf = new RandomAccessFile(file, "rw");
+        channel = new BufferedChannel(ByteBufAllocator.DEFAULT, raf.getChannel(), CAPACITY);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuf newSource(byte[] data) {
+        switch (sourceType) {
+        case HEAP:
+            return Unpooled.wrappedBuffer(data);
+        case DIRECT:
+            return Unpooled.directBuffer(data.length).writeBytes(data);
+        default:
+            CompositeByteBuf composite = Unpooled.compositeBuffer();
+            int half = data.length / 2;
+            composite.addComponent(true, Unpooled.directBuffer(half).writeBytes(data, 0, half));
+            composite.addComponent(true, Unpooled.directBuffer(data.length - half)
+                    .writeBytes(data, half, data.length - half));
+            return composite;
+        }
+    }
+
+    private void write(int size) throws Exception {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        ByteBuf src = newSource(data);
+        try {
+            channel.write(src);
+            // The source is not consumed
+            Assert.assertEquals(size, src.readableBytes());
+        } finally {
+            src.release();
+        }
+
+        int offset = expected.length;
+        expected = Arrays.copyOf(expected, offset + size);
+        System.arraycopy(data, 0, expected, offset, size);
+        Assert.assertEquals(expected.length, channel.position());
+    }
+
+    private void assertContent() throws Exception {
+        // Reads through the channel see both the flushed and the buffered data
+        ByteBuf read = Unpooled.buffer(expected.length);
+        try {
+            Assert.assertEquals(expected.length, channel.read(read, 0, expected.length));
+            Assert.assertArrayEquals(expected, Arrays.copyOf(read.array(), expected.length));
+        } finally {
+            read.release();
+        }
+
+        channel.flush();
+        Assert.assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void largeWrites() throws Exception {
+        write(100);
+        write(3 * CAPACITY + 10);
+
+        if (sourceType == SourceType.HEAP) {
+            // Copied chunk by chunk, the tail stays in the write buffer
+            Assert.assertEquals((100 + 3 * CAPACITY + 10) % CAPACITY, channel.getNumOfBytesInWriteBuffer());
+        } else {
+            // Written to the file along with the buffered data
+            Assert.assertEquals(0, channel.getNumOfBytesInWriteBuffer());
+            Assert.assertEquals(expected.length, channel.getFileChannelPosition());
+            Assert.assertEquals(expected.length, file.length());
+        }
+        assertContent();
+    }
+
+    @Test
+    public void mixedWrites() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            // Mostly small writes, buffered, and some larger than the free space of the buffer
+            write(i % 10 == 0 ? 1 + random.nextInt(4 * CAPACITY) : 1 + random.nextInt(200));
+        }
+        assertContent();
+    }
+
+    @Test
+    public void writesThatFit() throws Exception {
+        write(CAPACITY / 2);
+        write(CAPACITY / 2 - 1);
+        Assert.assertEquals(CAPACITY - 1, channel.getNumOfBytesInWriteBuffer());
+        Assert.assertEquals(0, file.length());
+        assertContent();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.bookie.EntryLogMetadata.EntryLogMetadataRecyclable;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class CompactEntryLogMetadataTest {
+
+    private static EntryLogMetadata newMetadata(long entryLogId, int numLedgers, long seed) {
+        Random random = new Random(seed);
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        long ledgerId = random.nextInt(100);
+        for (int i = 0; i < numLedgers; i++) {
+            // Small and large gaps between the ledger ids, and small and large sizes
+            ledgerId += 1 + (random.nextBoolean() ? random.nextInt(10) : random.nextInt(Integer.MAX_VALUE));
+            long size = random.nextBoolean() ? random.nextInt(100) : random.nextInt(Integer.MAX_VALUE);
+            meta.addLedgerSize(ledgerId, 1 + size);
+        }
+        return meta;
+    }
+
+    private static Map<Long, Long> ledgersOf(EntryLogMetadata meta) {
+        Map<Long, Long> ledgers = new HashMap<>();
+        meta.forEachLedger((ledgerId, size) -> Assert.assertNull(ledgers.put(ledgerId, size)));
+        return ledgers;
+    }
+
+    private static void assertSameMetadata(EntryLogMetadata expected, EntryLogMetadata actual) {
+        Assert.assertEquals(expected.getEntryLogId(), actual.getEntryLogId());
+        Assert.assertEquals(expected.getTotalSize(), actual.getTotalSize());
+        Assert.assertEquals(expected.getRemainingSize(), actual.getRemainingSize());
+        Assert.assertEquals(expected.getLedgersCount(), actual.getLedgersCount());
+        Assert.assertEquals(expected.isEmpty(), actual.isEmpty());
+        Assert.assertEquals(ledgersOf(expected), ledgersOf(actual));
+        Map<Long, Long> expectedLedgers = ledgersOf(expected);
+        for (long ledgerId : expectedLedgers.keySet()) {
+            Assert.assertTrue(actual.containsLedger(ledgerId));
+            Assert.assertEquals(expectedLedgers.containsKey(ledgerId + 1), actual.containsLedger(ledgerId + 1));
+        }
+    }
+
+    private static byte[] serialize(EntryLogMetadata meta, boolean compact) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        if (compact) {
+            meta.serializeCompact(out);
+        } else {
+            meta.serialize(out);
+        }
+        return baos.toByteArray();
+    }
+
+    @RunWith(Parameterized.class)
+    public static class EncodingTest {
+
+        private final int numLedgers;
+        private EntryLogMetadata meta;
+        private CompactEntryLogMetadata compact;
+
+        @Parameterized.Parameters(name = "ledgers={0}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{{0}, {1}, {15}, {16}, {17}, {100}, {1000}});
+        }
+
+        public EncodingTest(int numLedgers) {
+            this.numLedgers = numLedgers;
+        }
+
+        @Before
+        public void setUp() {
+            meta = newMetadata(7, numLedgers, numLedgers);
+            compact = CompactEntryLogMetadata.copyOf(meta, UnpooledByteBufAllocator.DEFAULT);
+        }
+
+        @After
+        public void tearDown() {
+            compact.release();
+        }
+
+        @Test
+        public void copy() {
+            assertSameMetadata(meta, compact);
+            Assert.assertEquals(meta.getLedgersMap().size(), compact.getLedgersMap().size());
+            Assert.assertFalse(compact.containsLedger(-1));
+            Assert.assertFalse(compact.containsLedger(Long.MAX_VALUE));
+        }
+
+        @Test
+        public void removeLedgers() {
+            List<Long> ledgers = new ArrayList<>(ledgersOf(meta).keySet());
+            for (int i = 0; i < ledgers.size(); i += 3) {
+                long ledgerId = ledgers.get(i);
+                meta.removeLedgerIf(id -> id == ledgerId);
+                compact.removeLedgerIf(id -> id == ledgerId);
+                Assert.assertFalse(compact.containsLedger(ledgerId));
+            }
+            assertSameMetadata(meta, compact);
+
+            meta.removeLedgerIf(id -> true);
+            compact.removeLedgerIf(id -> true);
+            assertSameMetadata(meta, compact);
+            Assert.assertTrue(compact.isEmpty());
+        }
+
+        @Test
+        public void addLedgers() {
+            // Ledgers added after the encoding, new ones and encoded ones
+            List<Long> ledgers = new ArrayList<>(ledgersOf(meta).keySet());
+            for (int i = 0; i < ledgers.size(); i += 5) {
+                meta.addLedgerSize(ledgers.get(i), 10);
+                compact.addLedgerSize(ledgers.get(i), 10);
+            }
+            meta.addLedgerSize(Long.MAX_VALUE - 1, 100);
+            compact.addLedgerSize(Long.MAX_VALUE - 1, 100);
+            meta.addLedgerSize(0, 100);
+            compact.addLedgerSize(0, 100);
+            assertSameMetadata(meta, compact);
+
+            // Then removed
+            meta.removeLedgerIf(id -> id == 0 || id % 2 == 0);
+            compact.removeLedgerIf(id -> id == 0 || id % 2 == 0);
+            assertSameMetadata(meta, compact);
+        }
+
+        @Test
+        public void clear() {
+            compact.clear();
+            Assert.assertEquals(-1, compact.getEntryLogId());
+            Assert.assertTrue(compact.isEmpty());
+            Assert.assertEquals(0, compact.getLedgersCount());
+            Assert.assertTrue(ledgersOf(compact).isEmpty());
+        }
+
+        @Test
+        public void compactSerialization() throws Exception {
+            compact.removeLedgerIf(id -> id % 2 == 0);
+            meta.removeLedgerIf(id -> id % 2 == 0);
+            byte[] value = serialize(compact, true);
+
+            CompactEntryLogMetadata wrapped = EntryLogMetadata.deserializeCompact(value);
+            try {
+                assertSameMetadata(meta, wrapped);
+            } finally {
+                wrapped.release();
+            }
+
+            // The previous deserialization reads both versions
+            EntryLogMetadataRecyclable decoded =
+                    EntryLogMetadata.deserialize(new DataInputStream(new ByteArrayInputStream(value)));
+            try {
+                assertSameMetadata(meta, decoded);
+            } finally {
+                decoded.recycle();
+            }
+        }
+
+        @Test
+        public void defaultSerialization() throws Exception {
+            byte[] value = serialize(compact, false);
+            Assert.assertNull(EntryLogMetadata.deserializeCompact(value));
+            EntryLogMetadataRecyclable decoded =
+                    EntryLogMetadata.deserialize(new DataInputStream(new ByteArrayInputStream(value)));
+            try {
+                assertSameMetadata(meta, decoded);
+            } finally {
+                decoded.recycle();
+            }
+        }
+
+        @Test(expected = IOException.class)
+        public void truncatedValue() throws Exception {
+            byte[] value = serialize(meta, true);
+            EntryLogMetadata.deserializeCompact(Arrays.copyOf(value, value.length - (numLedgers > 0 ? 1 : 5)));
+        }
+    }
+
+    public static class MetadataMapTest {
+
+        @Rule
+        public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+        @Test
+        public void inMemoryMapKeepsCompactMetadata() throws Exception {
+            InMemoryEntryLogMetadataMap map = new InMemoryEntryLogMetadataMap(UnpooledByteBufAllocator.DEFAULT);
+            EntryLogMetadata meta = newMetadata(1, 100, 1);
+            map.put(1, meta);
+            map.forKey(1, (entryLogId, stored) -> {
+                Assert.assertTrue(stored instanceof CompactEntryLogMetadata);
+                assertSameMetadata(meta, stored);
+            });
+
+            // Replaced and removed metadata are released
+            map.put(1, newMetadata(1, 10, 2));
+            map.put(2, newMetadata(2, 10, 3));
+            map.remove(1);
+            Assert.assertEquals(1, map.size());
+            map.close();
+            Assert.assertTrue(map.isEmpty());
+        }
+
+        @Test
+        public void removeWhileCompactionHoldsMetadata() throws Exception {
+            UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+            InMemoryEntryLogMetadataMap map = new InMemoryEntryLogMetadataMap(allocator);
+            EntryLogMetadata meta = newMetadata(1, 100, 1);
+            map.put(1, meta);
+
+            AtomicBoolean compacted = new AtomicBoolean();
+            map.forKey(1, (entryLogId, stored) -> {
+                // The entry log is deleted by the gc while it is compacted
+                map.remove(1);
+                Assert.assertTrue(allocator.metric().usedDirectMemory() > 0);
+                assertSameMetadata(meta, stored);
+                compacted.set(true);
+            });
+            Assert.assertTrue(compacted.get());
+
+            // Released by the compaction, and no longer visible
+            Assert.assertEquals(0, allocator.metric().usedDirectMemory());
+            map.forKey(1, (entryLogId, stored) -> Assert.assertNull(stored));
+            map.close();
+        }
+
+        @Test
+        public void readAfterReleaseFails() {
+            CompactEntryLogMetadata compact =
+                    CompactEntryLogMetadata.copyOf(newMetadata(1, 100, 1), UnpooledByteBufAllocator.DEFAULT);
+            compact.release();
+            Assert.assertFalse(compact.tryRetain());
+            try {
+                compact.forEachLedger((ledgerId, size) -> {});
+                Assert.fail("Should fail to read the released ledgers");
+            } catch (IllegalReferenceCountException e) {
+                // Expected
+            }
+        }
+
+        @Test
+        public void persistentMapWithCompactValues() throws Exception {
+            String path = tmpFolder.newFolder().getAbsolutePath();
+            ServerConfiguration conf = new ServerConfiguration();
+            EntryLogMetadata previous = newMetadata(1, 50, 1);
+            try (PersistentEntryLogMetadataMap map = new PersistentEntryLogMetadataMap(path, conf)) {
+                map.put(1, previous);
+            }
+
+            // The values written before the compact encoding are still read
+            conf.setGcEntryLogMetadataCompactEncodingEnabled(true);
+            EntryLogMetadata meta = newMetadata(2, 500, 2);
+            try (PersistentEntryLogMetadataMap map = new PersistentEntryLogMetadataMap(path, conf)) {
+                map.put(2, meta);
+                map.forKey(1, (entryLogId, stored) -> assertSameMetadata(previous, stored));
+                map.forKey(2, (entryLogId, stored) -> {
+                    Assert.assertTrue(stored instanceof CompactEntryLogMetadata);
+                    assertSameMetadata(meta, stored);
+                });
+                Map<Long, Long> ledgersCounts = new HashMap<>();
+                map.forEach((entryLogId, stored) -> ledgersCounts.put(entryLogId, stored.getLedgersCount()));
+                Assert.assertEquals(50L, (long) ledgersCounts.get(1L));
+                Assert.assertEquals(500L, (long) ledgersCounts.get(2L));
+
+                map.remove(1);
+                Assert.assertEquals(1, map.size());
+                map.clear();
+                Assert.assertEquals(0, map.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.RequestStats;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+@RunWith(Enclosed.class)
+public class CompactionIoBudgetTest {
+
+    private static final double MAX_RATE = 1600;
+    private static final long THRESHOLD_MS = 10;
+    // Longer than the interval between two adjustments of the rate
+    private static final long ADJUST_WAIT_MS = 1100;
+
+    private static ServerConfiguration newConf() {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setCompactionIoBudgetEnabled(true);
+        conf.setCompactionIoBudgetLatencyThresholdMs(THRESHOLD_MS);
+        conf.setIsThrottleByBytes(true);
+        conf.setCompactionRateByBytes((int) MAX_RATE);
+        return conf;
+    }
+
+    private static void recordLatencies(CompactionIoBudget budget, int count, long latencyMs) {
+        for (int i = 0; i < count; i++) {
+            budget.recordRequestLatency(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        }
+    }
+
+    // Let an adjustment interval elapse, then trigger the adjustment of the rate
+    private static void adjust(CompactionIoBudget budget) throws InterruptedException {
+        Thread.sleep(ADJUST_WAIT_MS);
+        budget.tryAcquire(1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public static class BudgetTest {
+
+        @Test
+        public void disabledByDefault() {
+            Assert.assertNull(CompactionIoBudget.create(new ServerConfiguration()));
+        }
+
+        @Test
+        public void startsAtTheCompactionRate() {
+            ServerConfiguration conf = newConf();
+            Assert.assertEquals(MAX_RATE, CompactionIoBudget.create(conf).getRate(), 0.001);
+
+            conf.setIsThrottleByBytes(false);
+            conf.setCompactionRateByEntries(100);
+            Assert.assertEquals(100, CompactionIoBudget.create(conf).getRate(), 0.001);
+        }
+
+        @Test
+        public void slowRequestsHalveTheRate() throws Exception {
+            CompactionIoBudget budget = new CompactionIoBudget(MAX_RATE, THRESHOLD_MS);
+            recordLatencies(budget, 200, 100);
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE / 2, budget.getRate(), 0.001);
+
+            // Without slow requests the rate grows back by a sixteenth of the max rate
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE / 2 + MAX_RATE / 16, budget.getRate(), 0.001);
+        }
+
+        @Test
+        public void fastRequestsKeepTheRate() throws Exception {
+            CompactionIoBudget budget = new CompactionIoBudget(MAX_RATE, THRESHOLD_MS);
+            recordLatencies(budget, 200, 1);
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE, budget.getRate(), 0.001);
+        }
+
+        @Test
+        public void fewSlowRequestsKeepTheRate() throws Exception {
+            CompactionIoBudget budget = new CompactionIoBudget(MAX_RATE, THRESHOLD_MS);
+            recordLatencies(budget, 10, 100);
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE, budget.getRate(), 0.001);
+        }
+
+        @Test
+        public void onePercentOfSlowRequestsKeepsTheRate() throws Exception {
+            CompactionIoBudget budget = new CompactionIoBudget(MAX_RATE, THRESHOLD_MS);
+            recordLatencies(budget, 990, 1);
+            recordLatencies(budget, 10, 100);
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE, budget.getRate(), 0.001);
+        }
+
+        @Test
+        public void requestStatsReportTheLatencies() throws Exception {
+            CompactionIoBudget budget = new CompactionIoBudget(MAX_RATE, THRESHOLD_MS);
+            RequestStats stats = new RequestStats(NullStatsLogger.INSTANCE, budget::recordRequestLatency);
+            for (int i = 0; i < 100; i++) {
+                stats.getAddRequestStats().registerSuccessfulEvent(100, TimeUnit.MILLISECONDS);
+                stats.getReadRequestStats().registerFailedEvent(100, TimeUnit.MILLISECONDS);
+            }
+            adjust(budget);
+            Assert.assertEquals(MAX_RATE / 2, budget.getRate(), 0.001);
+        }
+    }
+
+    public static class ThrottlerTest {
+
+        @Test
+        public void throttlersShareTheBudget() throws Exception {
+            ServerConfiguration conf = newConf();
+            CompactionIoBudget budget = CompactionIoBudget.create(conf);
+            AbstractLogCompactor.Throttler first = new AbstractLogCompactor.Throttler(conf, budget);
+            AbstractLogCompactor.Throttler second = new AbstractLogCompactor.Throttler(conf, budget);
+
+            // The first acquisition is granted at once, and the next ones wait for the budget to refill
+            first.acquire((int) MAX_RATE);
+            Assert.assertEquals((long) MAX_RATE, first.getAcquiredBytes());
+            Assert.assertFalse(second.tryAcquire((int) MAX_RATE, 0, TimeUnit.MILLISECONDS));
+            Assert.assertFalse(first.tryAcquire((int) MAX_RATE, 0, TimeUnit.MILLISECONDS));
+        }
+
+        @Test
+        public void throttlersWithoutBudgetAreIndependent() throws Exception {
+            ServerConfiguration conf = newConf();
+            AbstractLogCompactor.Throttler first = new AbstractLogCompactor.Throttler(conf, null);
+            AbstractLogCompactor.Throttler second = new AbstractLogCompactor.Throttler(conf, null);
+
+            first.acquire((int) MAX_RATE);
+            Assert.assertTrue(second.tryAcquire((int) MAX_RATE, 0, TimeUnit.MILLISECONDS));
+            Assert.assertFalse(first.tryAcquire((int) MAX_RATE, 0, TimeUnit.MILLISECONDS));
+        }
+
+        @Test
+        public void cancelledAcquireFails() throws Exception {
+            ServerConfiguration conf = newConf();
+            AbstractLogCompactor.Throttler throttler =
+                    new AbstractLogCompactor.Throttler(conf, CompactionIoBudget.create(conf));
+            throttler.acquire((int) MAX_RATE);
+            throttler.cancelledAcquire();
+            try {
+                throttler.acquire(100 * (int) MAX_RATE);
+                Assert.fail("Should fail once cancelled");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public static class LedgerStorageTest {
+
+        @Rule
+        public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+        private DbLedgerStorage newStorage(ServerConfiguration conf) throws Exception {
+            File dir = tmpFolder.newFolder();
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(dir));
+            conf.setAllowLoopback(true);
+            conf.setLedgerDirNames(new String[]{dir.toString()});
+            conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+            conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            DbLedgerStorage storage = new DbLedgerStorage();
+            storage.initialize(conf, Mockito.mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                    NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT);
+            return storage;
+        }
+
+        @Test
+        public void eachBookieHasItsOwnBudget() throws Exception {
+            DbLedgerStorage first = newStorage(newConf());
+            DbLedgerStorage second = newStorage(newConf());
+            try {
+                Assert.assertNotNull(first.getCompactionIoBudget());
+                Assert.assertNotNull(second.getCompactionIoBudget());
+                Assert.assertNotSame(first.getCompactionIoBudget(), second.getCompactionIoBudget());
+            } finally {
+                first.shutdown();
+                second.shutdown();
+            }
+        }
+
+        @Test
+        public void noBudgetWhenDisabled() throws Exception {
+            DbLedgerStorage storage = newStorage(new ServerConfiguration());
+            try {
+                Assert.assertNull(storage.getCompactionIoBudget());
+            } finally {
+                storage.shutdown();
+            }
+        }
+    }
+}
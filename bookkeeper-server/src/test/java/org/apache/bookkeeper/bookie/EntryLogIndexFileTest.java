@@ -0,0 +1,375 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+@RunWith(Enclosed.class)
+public class EntryLogIndexFileTest {
+
+    private static final long ENTRY_LOG_ID = 0x1234;
+    private static final int ENTRY_SIZE = 100;
+    // The size prefix and the entry
+    private static final int RECORD_SIZE = 4 + ENTRY_SIZE;
+    private static final long HEADER_END = DefaultEntryLogger.LOGFILE_HEADER_SIZE;
+
+    private static ConcurrentLongLongHashMap ledgers(long... ledgerIdsAndSizes) {
+        ConcurrentLongLongHashMap ledgers = ConcurrentLongLongHashMap.newBuilder().build();
+        for (int i = 0; i < ledgerIdsAndSizes.length; i += 2) {
+            ledgers.put(ledgerIdsAndSizes[i], ledgerIdsAndSizes[i + 1]);
+        }
+        return ledgers;
+    }
+
+    private static Map<Long, Long> ledgersOf(EntryLogMetadata meta) {
+        Map<Long, Long> ledgers = new HashMap<>();
+        meta.forEachLedger(ledgers::put);
+        return ledgers;
+    }
+
+    private static Map<Long, Long> expectedLedgers(long... ledgerIdsAndSizes) {
+        Map<Long, Long> ledgers = new HashMap<>();
+        for (int i = 0; i < ledgerIdsAndSizes.length; i += 2) {
+            ledgers.put(ledgerIdsAndSizes[i], ledgerIdsAndSizes[i + 1]);
+        }
+        return ledgers;
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    /**
+     * The records of the index file, read and checked directly.
+     */
+    public static class RecordsTest {
+
+        @Rule
+        public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+        private File file;
+        private long firstRecordEnd;
+
+        @Before
+        public void setUp() throws Exception {
+            file = EntryLogIndexFile.getIndexFile(tmpFolder.getRoot(), ENTRY_LOG_ID);
+            try (EntryLogIndexFile index = EntryLogIndexFile.create(file, ENTRY_LOG_ID)) {
+                index.append(HEADER_END + 1000, ledgers(1, 600, 2, 400));
+                firstRecordEnd = file.length();
+                index.append(HEADER_END + 1500, ledgers(1, 200, 3, 300));
+            }
+        }
+
+        private EntryLogMetadata read(long entryLogSize, long expectedPosition) throws IOException {
+            EntryLogMetadata meta = new EntryLogMetadata(ENTRY_LOG_ID);
+            Assert.assertEquals(expectedPosition, EntryLogIndexFile.read(file, ENTRY_LOG_ID, entryLogSize, meta));
+            return meta;
+        }
+
+        @Test
+        public void readAllRecords() throws Exception {
+            EntryLogMetadata meta = read(HEADER_END + 1500, HEADER_END + 1500);
+            Assert.assertEquals(expectedLedgers(1, 800, 2, 400, 3, 300), ledgersOf(meta));
+            Assert.assertEquals(1500, meta.getTotalSize());
+        }
+
+        @Test
+        public void replacedWhenCreatedAgain() throws Exception {
+            EntryLogIndexFile.create(file, ENTRY_LOG_ID).close();
+            Assert.assertTrue(read(HEADER_END + 1500, HEADER_END).isEmpty());
+        }
+
+        @Test
+        public void tornRecord() throws Exception {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 1);
+            }
+            Assert.assertEquals(expectedLedgers(1, 600, 2, 400), ledgersOf(read(HEADER_END + 1500, HEADER_END + 1000)));
+        }
+
+        @Test
+        public void corruptedRecord() throws Exception {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long offset = raf.length() - 5;
+                raf.seek(offset);
+                int b = raf.read();
+                raf.seek(offset);
+                raf.write(b ^ 0xFF);
+            }
+            Assert.assertEquals(expectedLedgers(1, 600, 2, 400), ledgersOf(read(HEADER_END + 1500, HEADER_END + 1000)));
+        }
+
+        @Test
+        public void corruptedLength() throws Exception {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(firstRecordEnd);
+                raf.writeInt(Integer.MAX_VALUE);
+            }
+            Assert.assertEquals(expectedLedgers(1, 600, 2, 400), ledgersOf(read(HEADER_END + 1500, HEADER_END + 1000)));
+        }
+
+        @Test
+        public void recordBeyondTheEndOfTheEntryLog() throws Exception {
+            // The entries of the second record are not in the entry log
+            Assert.assertEquals(expectedLedgers(1, 600, 2, 400), ledgersOf(read(HEADER_END + 1200, HEADER_END + 1000)));
+            Assert.assertTrue(read(HEADER_END + 999, HEADER_END).isEmpty());
+        }
+
+        @Test(expected = IOException.class)
+        public void otherEntryLog() throws Exception {
+            EntryLogIndexFile.read(file, ENTRY_LOG_ID + 1, Long.MAX_VALUE, new EntryLogMetadata(ENTRY_LOG_ID + 1));
+        }
+
+        @Test(expected = IOException.class)
+        public void invalidHeader() throws Exception {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.writeInt(0);
+            }
+            read(Long.MAX_VALUE, HEADER_END);
+        }
+    }
+
+    /**
+     * The records appended by the channel of an entry log.
+     */
+    public static class LogChannelTest {
+
+        @Rule
+        public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+        private File logFile;
+        private File indexFile;
+        private RandomAccessFile raf;
+        private DefaultEntryLogger.BufferedLogChannel channel;
+
+        @Before
+        public void setUp() throws Exception {
+            logFile = tmpFolder.newFile();
+            indexFile = EntryLogIndexFile.getIndexFile(tmpFolder.getRoot(), ENTRY_LOG_ID);
+            raf = new RandomAccessFile(logFile, "rw");
+            FileChannel fc = raf.getChannel();
+            channel = new DefaultEntryLogger.BufferedLogChannel(ByteBufAllocator.DEFAULT, fc, 64 * 1024, 64 * 1024,
+                    ENTRY_LOG_ID, logFile, 0, EntryLogIndexFile.create(indexFile, ENTRY_LOG_ID));
+            channel.write(Unpooled.wrappedBuffer(new byte[(int) HEADER_END]));
+            channel.flushAndForceWrite(false);
+        }
+
+        @After
+        public void tearDown() throws Exception {
+            channel.close();
+            raf.close();
+        }
+
+        private void addEntry(long ledgerId, long entryId) throws IOException {
+            ByteBuf size = Unpooled.buffer(4);
+            size.writeInt(ENTRY_SIZE);
+            channel.write(size);
+            channel.write(entry(ledgerId, entryId));
+            channel.registerWrittenEntry(ledgerId, RECORD_SIZE);
+        }
+
+        private EntryLogMetadata readIndex(long expectedPosition) throws IOException {
+            EntryLogMetadata meta = new EntryLogMetadata(ENTRY_LOG_ID);
+            Assert.assertEquals(expectedPosition,
+                    EntryLogIndexFile.read(indexFile, ENTRY_LOG_ID, logFile.length(), meta));
+            return meta;
+        }
+
+        @Test
+        public void onlySyncedEntriesAreIndexed() throws Exception {
+            for (int i = 0; i < 5; i++) {
+                addEntry(1, i);
+            }
+            // The entries are still in the write buffer
+            channel.forceWrite(false);
+            Assert.assertTrue(readIndex(HEADER_END).isEmpty());
+
+            channel.flushAndForceWrite(false);
+            Assert.assertEquals(expectedLedgers(1, 5 * RECORD_SIZE),
+                    ledgersOf(readIndex(HEADER_END + 5 * RECORD_SIZE)));
+
+            // Entries flushed before the sync are indexed, the entries buffered after wait for the next sync
+            addEntry(2, 0);
+            addEntry(3, 0);
+            channel.flush();
+            addEntry(2, 1);
+            channel.forceWrite(false);
+            Assert.assertEquals(expectedLedgers(1, 5 * RECORD_SIZE, 2, RECORD_SIZE, 3, RECORD_SIZE),
+                    ledgersOf(readIndex(HEADER_END + 7 * RECORD_SIZE)));
+
+            channel.flushAndForceWrite(false);
+            Assert.assertEquals(expectedLedgers(1, 5 * RECORD_SIZE, 2, 2 * RECORD_SIZE, 3, RECORD_SIZE),
+                    ledgersOf(readIndex(HEADER_END + 8 * RECORD_SIZE)));
+        }
+
+        @Test
+        public void closeWritesNoRecordForUnsyncedEntries() throws Exception {
+            addEntry(1, 0);
+            channel.flushAndForceWrite(false);
+            addEntry(1, 1);
+            channel.close();
+            Assert.assertEquals(expectedLedgers(1, RECORD_SIZE), ledgersOf(readIndex(HEADER_END + RECORD_SIZE)));
+        }
+    }
+
+    /**
+     * The metadata of the entry logs rebuilt from their index file.
+     */
+    public static class EntryLoggerTest {
+
+        private static final int NUM_ENTRIES = 20;
+
+        @Rule
+        public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+        private File ledgerDir;
+        private ServerConfiguration conf;
+        private DefaultEntryLogger entryLogger;
+
+        @Before
+        public void setUp() throws Exception {
+            ledgerDir = tmpFolder.newFolder();
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+            conf = new ServerConfiguration();
+            conf.setLedgerDirNames(new String[]{ledgerDir.toString()});
+        }
+
+        @After
+        public void tearDown() throws Exception {
+            if (entryLogger != null) {
+                entryLogger.close();
+            }
+        }
+
+        private DefaultEntryLogger newEntryLogger() throws Exception {
+            return new DefaultEntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
+        }
+
+        // Add the entries to the current entry log, which has no ledgers map as it is not rotated
+        private long addEntries() throws IOException {
+            long location = 0;
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                location = entryLogger.addEntry(i % 2, entry(i % 2, i / 2));
+            }
+            return DefaultEntryLogger.logIdForOffset(location);
+        }
+
+        private File indexFile(long entryLogId) {
+            return EntryLogIndexFile.getIndexFile(BookieImpl.getCurrentDirectory(ledgerDir), entryLogId);
+        }
+
+        private void checkMetadata(EntryLogMetadata meta) {
+            long ledgerSize = NUM_ENTRIES / 2 * RECORD_SIZE;
+            Assert.assertEquals(expectedLedgers(0, ledgerSize, 1, ledgerSize), ledgersOf(meta));
+        }
+
+        @Test
+        public void metadataFromTheIndexFile() throws Exception {
+            conf.setEntryLogIndexFileEnabled(true);
+            entryLogger = newEntryLogger();
+            long entryLogId = addEntries();
+            entryLogger.flush();
+
+            Assert.assertTrue(indexFile(entryLogId).exists());
+            checkMetadata(entryLogger.extractEntryLogMetadataFromIndexFile(entryLogId, null));
+            checkMetadata(entryLogger.getEntryLogMetadata(entryLogId, null));
+        }
+
+        @Test
+        public void entriesAfterTheLastRecordAreScanned() throws Exception {
+            conf.setEntryLogIndexFileEnabled(true);
+            entryLogger = newEntryLogger();
+            long entryLogId = addEntries();
+            entryLogger.flush();
+
+            // The record of the entries is lost
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile(entryLogId), "rw")) {
+                raf.setLength(raf.length() - 1);
+            }
+            checkMetadata(entryLogger.extractEntryLogMetadataFromIndexFile(entryLogId, null));
+        }
+
+        @Test
+        public void noIndexFileWhenDisabled() throws Exception {
+            entryLogger = newEntryLogger();
+            long entryLogId = addEntries();
+            entryLogger.flush();
+
+            Assert.assertFalse(indexFile(entryLogId).exists());
+            Assert.assertNull(entryLogger.extractEntryLogMetadataFromIndexFile(entryLogId, null));
+        }
+
+        @Test
+        public void backfillIndexFile() throws Exception {
+            entryLogger = newEntryLogger();
+            long entryLogId = addEntries();
+            entryLogger.flush();
+
+            Assert.assertTrue(entryLogger.writeIndexFile(entryLogId, false));
+            checkMetadata(entryLogger.extractEntryLogMetadataFromIndexFile(entryLogId, null));
+            Assert.assertFalse(new File(indexFile(entryLogId).getPath() + ".tmp").exists());
+
+            // Written once, unless overwritten
+            Assert.assertFalse(entryLogger.writeIndexFile(entryLogId, false));
+            Assert.assertTrue(entryLogger.writeIndexFile(entryLogId, true));
+            checkMetadata(entryLogger.extractEntryLogMetadataFromIndexFile(entryLogId, null));
+        }
+
+        @Test
+        public void indexFileDeletedWithTheEntryLog() throws Exception {
+            conf.setEntryLogIndexFileEnabled(true);
+            entryLogger = newEntryLogger();
+            long entryLogId = addEntries();
+            entryLogger.flush();
+            // Roll the entry log
+            entryLogger.addEntry(2, entry(2, 0), true);
+            entryLogger.flush();
+
+            Assert.assertTrue(indexFile(entryLogId).exists());
+            Assert.assertTrue(entryLogger.removeEntryLog(entryLogId));
+            Assert.assertFalse(indexFile(entryLogId).exists());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.EntryLogSelectionPolicy.Candidate;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+@RunWith(Enclosed.class)
+public class EntryLogSelectionPolicyTest {
+
+    private static final long TOTAL_SIZE = 1000;
+
+    private static Candidate candidate(long entryLogId, double usage) {
+        return new Candidate(entryLogId, TOTAL_SIZE, (long) (usage * TOTAL_SIZE), usage);
+    }
+
+    private static List<Long> ids(List<Candidate> candidates) {
+        List<Long> ids = new ArrayList<>();
+        for (Candidate c : candidates) {
+            ids.add(c.getEntryLogId());
+        }
+        return ids;
+    }
+
+    public static class UsagePolicyTest {
+
+        private final EntryLogSelectionPolicy policy = new UsageEntryLogSelectionPolicy();
+
+        @Test
+        public void leastUsedFirst() {
+            List<Candidate> candidates = Arrays.asList(
+                    candidate(1, 0.75), candidate(2, 0.05), candidate(3, 0.45), candidate(4, 0.25));
+            Assert.assertEquals(Arrays.asList(2L, 4L, 3L, 1L), ids(policy.select(candidates, 10)));
+        }
+
+        @Test
+        public void keepsTheListedOrderWithinAStep() {
+            // All in the 20% to 30% step
+            List<Candidate> candidates = Arrays.asList(
+                    candidate(3, 0.29), candidate(1, 0.21), candidate(2, 0.25));
+            Assert.assertEquals(Arrays.asList(3L, 1L, 2L), ids(policy.select(candidates, 10)));
+        }
+
+        @Test
+        public void fullEntryLogsInTheLastStep() {
+            List<Candidate> candidates = Arrays.asList(candidate(1, 1.0), candidate(2, 0.95), candidate(3, 0.5));
+            Assert.assertEquals(Arrays.asList(3L, 1L, 2L), ids(policy.select(candidates, 10)));
+        }
+
+        @Test
+        public void doesNotModifyTheCandidates() {
+            List<Candidate> candidates = Arrays.asList(candidate(1, 0.5), candidate(2, 0.1));
+            policy.select(candidates, 10);
+            Assert.assertEquals(Arrays.asList(1L, 2L), ids(candidates));
+        }
+    }
+
+    public static class CostBenefitPolicyTest {
+
+        private final EntryLogSelectionPolicy policy = new CostBenefitEntryLogSelectionPolicy();
+
+        @Test
+        public void leastUsedFirstAtTheSameAge() {
+            List<Candidate> candidates = Arrays.asList(
+                    candidate(10, 0.5), candidate(10, 0.1), candidate(10, 0.3));
+            List<Candidate> selected = policy.select(candidates, 10);
+            Assert.assertEquals(0.1, selected.get(0).getUsage(), 0.0);
+            Assert.assertEquals(0.3, selected.get(1).getUsage(), 0.0);
+            Assert.assertEquals(0.5, selected.get(2).getUsage(), 0.0);
+        }
+
+        @Test
+        public void oldestFirstAtTheSameUsage() {
+            List<Candidate> candidates = Arrays.asList(
+                    candidate(50, 0.4), candidate(1, 0.4), candidate(90, 0.4));
+            Assert.assertEquals(Arrays.asList(1L, 50L, 90L), ids(policy.select(candidates, 100)));
+        }
+
+        @Test
+        public void oldEntryLogsAreCompactedAtAHigherUsage() {
+            // The old entry log reclaims less space, but its data is likely to stay
+            List<Candidate> candidates = Arrays.asList(candidate(100, 0.4), candidate(1, 0.6));
+            Assert.assertEquals(Arrays.asList(1L, 100L), ids(policy.select(candidates, 100)));
+        }
+
+        @Test
+        public void score() {
+            // (1 - u) * age / (1 + u)
+            Assert.assertEquals(0.5 * 10 / 1.5,
+                    CostBenefitEntryLogSelectionPolicy.score(candidate(91, 0.5), 100), 1e-9);
+            // The newest entry log has an age of 1
+            Assert.assertEquals(1.0, CostBenefitEntryLogSelectionPolicy.score(candidate(100, 0.0), 100), 1e-9);
+            // An entry log newer than the newest known one also has an age of 1
+            Assert.assertEquals(1.0, CostBenefitEntryLogSelectionPolicy.score(candidate(105, 0.0), 100), 1e-9);
+            // The usage is bounded to 1, a full entry log reclaims nothing
+            Assert.assertEquals(0.0, CostBenefitEntryLogSelectionPolicy.score(candidate(1, 1.5), 100), 1e-9);
+        }
+
+        @Test
+        public void doesNotModifyTheCandidates() {
+            List<Candidate> candidates = Arrays.asList(candidate(90, 0.5), candidate(1, 0.1));
+            policy.select(candidates, 100);
+            Assert.assertEquals(Arrays.asList(90L, 1L), ids(candidates));
+        }
+    }
+
+    public static class ConfigurationTest {
+
+        @Test
+        public void usagePolicyByDefault() throws Exception {
+            Assert.assertEquals(UsageEntryLogSelectionPolicy.class,
+                    new ServerConfiguration().getCompactionEntryLogSelectionPolicyClass());
+        }
+
+        @Test
+        public void configuredPolicy() throws Exception {
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setCompactionEntryLogSelectionPolicyClass(CostBenefitEntryLogSelectionPolicy.class);
+            Assert.assertEquals(CostBenefitEntryLogSelectionPolicy.class,
+                    conf.getCompactionEntryLogSelectionPolicyClass());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+@RunWith(Enclosed.class)
+public class EntryLoggerReadEntriesTest {
+
+    private static final int ENTRY_SIZE = 100;
+    private static final int RECORD_SIZE = 4 + ENTRY_SIZE;
+    private static final int NUM_ENTRIES = 10;
+    private static final ByteBufAllocator ALLOCATOR = new UnpooledByteBufAllocator(true);
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Check that the records hold the consecutive entries of ledger 1 from entry 0, and return their number.
+     */
+    private static int checkRecords(ByteBuf records) {
+        int count = 0;
+        while (records.readableBytes() >= RECORD_SIZE) {
+            Assert.assertEquals(ENTRY_SIZE, records.readInt());
+            Assert.assertEquals(entry(1, count), records.readSlice(ENTRY_SIZE));
+            count++;
+        }
+        return count;
+    }
+
+    @RunWith(Parameterized.class)
+    public static class DefaultEntryLoggerTest {
+
+        private final boolean flushed;
+        private final int maxBytes;
+        private final int expectedEntries;
+        private final int expectedBytes;
+
+        private File tmpDir;
+        private DefaultEntryLogger entryLogger;
+        private final List<Long> locations = new ArrayList<>();
+
+        @Parameterized.Parameters(name = "flushed={0}, maxBytes={1}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    // FLUSHED  MAX_BYTES  EXPECTED_ENTRIES  EXPECTED_BYTES
+                    {true, 1024 * 1024, NUM_ENTRIES, NUM_ENTRIES * RECORD_SIZE},
+                    {false, 1024 * 1024, NUM_ENTRIES, NUM_ENTRIES * RECORD_SIZE},
+                    {true, 3 * RECORD_SIZE, 3, 3 * RECORD_SIZE},
+                    {false, 3 * RECORD_SIZE, 3, 3 * RECORD_SIZE},
+                    // The last record is truncated
+                    {true, 3 * RECORD_SIZE + 10, 3, 3 * RECORD_SIZE + 10},
+                    {false, 3 * RECORD_SIZE + 10, 3, 3 * RECORD_SIZE + 10},
+            });
+        }
+
+        public DefaultEntryLoggerTest(boolean flushed, int maxBytes, int expectedEntries, int expectedBytes) {
+            this.flushed = flushed;
+            this.maxBytes = maxBytes;
+            this.expectedEntries = expectedEntries;
+            this.expectedBytes = expectedBytes;
+        }
+
+        @Before
+        public void setup() throws Exception {
+            tmpDir = Files.createTempDirectory("readEntries").toFile();
+            BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setLedgerDirNames(new String[]{tmpDir.toString()});
+            entryLogger = new DefaultEntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
+
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                locations.add(entryLogger.addEntry(1, entry(1, entryId)));
+            }
+            if (flushed) {
+                entryLogger.flush();
+            }
+        }
+
+        @After
+        public void clean() throws Exception {
+            entryLogger.close();
+            FileUtils.deleteDirectory(tmpDir);
+        }
+
+        @Test
+        public void readEntries() throws Exception {
+            ByteBuf records = entryLogger.readEntries(ALLOCATOR, locations.get(0), maxBytes);
+            try {
+                Assert.assertSame(ALLOCATOR, records.alloc());
+                Assert.assertEquals(expectedBytes, records.readableBytes());
+                Assert.assertEquals(expectedEntries, checkRecords(records));
+            } finally {
+                records.release();
+            }
+        }
+
+        @Test
+        public void readEntriesFromMiddle() throws Exception {
+            ByteBuf records = entryLogger.readEntries(ALLOCATOR, locations.get(NUM_ENTRIES - 2), maxBytes);
+            try {
+                Assert.assertEquals(Math.min(maxBytes, 2 * RECORD_SIZE), records.readableBytes());
+                Assert.assertEquals(ENTRY_SIZE, records.readInt());
+                Assert.assertEquals(entry(1, NUM_ENTRIES - 2), records.readSlice(ENTRY_SIZE));
+            } finally {
+                records.release();
+            }
+        }
+
+        @Test
+        public void readEntriesAcrossWriteBuffer() throws Exception {
+            // The first entries are in the file when flushed, the next ones are still in the write buffer
+            for (long entryId = NUM_ENTRIES; entryId < 2 * NUM_ENTRIES; entryId++) {
+                entryLogger.addEntry(1, entry(1, entryId));
+            }
+            int regionSize = maxBytes + NUM_ENTRIES * RECORD_SIZE;
+            ByteBuf records = entryLogger.readEntries(ALLOCATOR, locations.get(0), regionSize);
+            try {
+                Assert.assertEquals(Math.min(regionSize, 2 * NUM_ENTRIES * RECORD_SIZE), records.readableBytes());
+                Assert.assertEquals(expectedEntries + NUM_ENTRIES, checkRecords(records));
+            } finally {
+                records.release();
+            }
+        }
+    }
+
+    /**
+     * The default implementation of the interface reads the entries one by one.
+     */
+    public static class DefaultImplementationTest {
+
+        private EntryLogger entryLogger;
+
+        @Before
+        public void setup() throws Exception {
+            entryLogger = Mockito.mock(EntryLogger.class, Mockito.CALLS_REAL_METHODS);
+            Mockito.doAnswer(invocation -> {
+                long location = invocation.getArgument(0);
+                if (location >= NUM_ENTRIES * RECORD_SIZE) {
+                    throw new IOException("End of the entry log");
+                }
+                return entry(1, location / RECORD_SIZE);
+            }).when(entryLogger).readEntry(ArgumentMatchers.anyLong());
+        }
+
+        @Test
+        public void readUpToEndOfLog() throws Exception {
+            ByteBuf records = entryLogger.readEntries(ALLOCATOR, 0, 1024 * 1024);
+            try {
+                Assert.assertEquals(NUM_ENTRIES * RECORD_SIZE, records.readableBytes());
+                Assert.assertEquals(NUM_ENTRIES, checkRecords(records));
+            } finally {
+                records.release();
+            }
+        }
+
+        @Test
+        public void readUpToMaxBytes() throws Exception {
+            ByteBuf records = entryLogger.readEntries(ALLOCATOR, 0, 2 * RECORD_SIZE + 10);
+            try {
+                Assert.assertEquals(2 * RECORD_SIZE + 10, records.readableBytes());
+                Assert.assertEquals(2, checkRecords(records));
+            } finally {
+                records.release();
+            }
+        }
+
+        @Test(expected = IOException.class)
+        public void failIfFirstEntryCannotBeRead() throws Exception {
+            entryLogger.readEntries(ALLOCATOR, NUM_ENTRIES * RECORD_SIZE, 1024);
+        }
+    }
+}
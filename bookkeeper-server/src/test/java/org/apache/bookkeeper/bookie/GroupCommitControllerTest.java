@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+@RunWith(Enclosed.class)
+public class GroupCommitControllerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static class WindowTest {
+
+        private GroupCommitController controller;
+        private long now;
+
+        @Before
+        public void setup() {
+            controller = new GroupCommitController(2 * MS);
+            now = System.nanoTime();
+        }
+
+        private void arrivals(int count, long elapsedNanos) {
+            now += elapsedNanos;
+            controller.recordArrivals(count, now);
+        }
+
+        @Test
+        public void noWindowBeforeTheFirstCommit() {
+            Assert.assertEquals(0, controller.getGroupWaitNanos());
+            arrivals(1000, 10 * MS);
+            Assert.assertEquals(0, controller.getGroupWaitNanos());
+        }
+
+        @Test
+        public void windowIsTheCommitLatency() {
+            controller.recordCommit(MS);
+            // 10 entries expected per commit
+            arrivals(100, 10 * MS);
+            Assert.assertEquals(MS, controller.getGroupWaitNanos());
+
+            // The latency estimate is smoothed
+            controller.recordCommit(MS / 2);
+            arrivals(100, 10 * MS);
+            Assert.assertEquals(MS - MS / 10, controller.getGroupWaitNanos());
+        }
+
+        @Test
+        public void windowIsCapped() {
+            controller.recordCommit(10 * MS);
+            arrivals(100, 10 * MS);
+            Assert.assertEquals(2 * MS, controller.getGroupWaitNanos());
+        }
+
+        @Test
+        public void noWindowAtLowRate() {
+            controller.recordCommit(MS);
+            // 0.1 entry expected per commit
+            arrivals(1, 10 * MS);
+            Assert.assertEquals(0, controller.getGroupWaitNanos());
+        }
+
+        @Test
+        public void windowClosesWhenIdle() {
+            controller.recordCommit(MS);
+            arrivals(100, 10 * MS);
+            Assert.assertEquals(MS, controller.getGroupWaitNanos());
+
+            // Short samples are not taken into account
+            arrivals(0, MS / 2);
+            Assert.assertEquals(MS, controller.getGroupWaitNanos());
+
+            for (int i = 0; i < 20 && controller.getGroupWaitNanos() != 0; i++) {
+                arrivals(0, 10 * MS);
+            }
+            Assert.assertEquals(0, controller.getGroupWaitNanos());
+        }
+    }
+
+    public static class JournalTest {
+
+        @Rule
+        public TemporaryFolder tmpDir = new TemporaryFolder();
+
+        private Journal journal;
+
+        @Before
+        public void setup() throws Exception {
+            ServerConfiguration conf = JournalPipelineTest.newConf(tmpDir.newFolder());
+            conf.setJournalAdaptiveGroupCommit(true);
+            conf.setJournalMaxGroupWaitMSec(2);
+            journal = JournalPipelineTest.newJournal(conf);
+            journal.start();
+        }
+
+        @After
+        public void teardown() {
+            if (journal != null) {
+                journal.shutdown();
+            }
+        }
+
+        @Test
+        public void singleWriter() throws Exception {
+            // Each entry is committed on its own
+            JournalPipelineTest.addEntries(journal, 1, 200, false);
+            journal.shutdown();
+            JournalPipelineTest.verifyJournal(journal, 1, 200);
+        }
+
+        @Test
+        public void concurrentWriters() throws Exception {
+            // Entries are grouped
+            JournalPipelineTest.addEntries(journal, 8, 200, false);
+            journal.shutdown();
+            JournalPipelineTest.verifyJournal(journal, 8, 200);
+        }
+    }
+}
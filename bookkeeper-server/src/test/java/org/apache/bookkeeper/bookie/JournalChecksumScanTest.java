@@ -0,0 +1,179 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Scan of corrupted and torn checksummed journals.
+ */
+@RunWith(Parameterized.class)
+public class JournalChecksumScanTest {
+
+    private static final int ENTRIES = 100;
+    // Length and checksum
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final boolean useMmap;
+    private Journal journal;
+    private long journalId;
+    private File journalFile;
+    // Offset of each record, in the journal order
+    private final List<Long> recordOffsets = new ArrayList<>();
+
+    @Parameterized.Parameters(name = "useMmap={0}")
+    public static Collection<Object[]> getParams() {
+        return Arrays.asList(new Object[][]{
+                {false},
+                {true},
+        });
+    }
+
+    public JournalChecksumScanTest(boolean useMmap) {
+        this.useMmap = useMmap;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        ServerConfiguration conf = JournalPipelineTest.newConf(tmpDir.newFolder());
+        conf.setJournalFormatVersionToWrite(JournalChannel.V7);
+        journal = JournalPipelineTest.newJournal(conf);
+        journal.start();
+        try {
+            JournalPipelineTest.addEntries(journal, 1, ENTRIES, false);
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> journalIds = Journal.listJournalIds(journal.getJournalDirectory(), null);
+        Assert.assertEquals(1, journalIds.size());
+        journalId = journalIds.get(0);
+        journalFile = new File(journal.getJournalDirectory(), Long.toHexString(journalId) + ".txn");
+        scan(false, recordOffsets);
+        Assert.assertEquals(ENTRIES, recordOffsets.size());
+    }
+
+    private long scan(boolean skipInvalidRecord, List<Long> offsets) throws IOException {
+        return journal.scanJournal(journalId, 0, (version, offset, entry) -> {
+            Assert.assertEquals(JournalChannel.V7, version);
+            Assert.assertEquals(offsets.size(), entry.getLong(entry.position() + 8));
+            offsets.add(offset);
+        }, skipInvalidRecord, useMmap);
+    }
+
+    private void writeInt(long position, int value) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(position);
+            file.writeInt(value);
+        }
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xff);
+        }
+    }
+
+    private void zeroFrom(long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long length = file.length();
+            file.seek(position);
+            byte[] zeros = new byte[4096];
+            while (position < length) {
+                int n = (int) Math.min(zeros.length, length - position);
+                file.write(zeros, 0, n);
+                position += n;
+            }
+        }
+    }
+
+    @Test
+    public void tornTailWithInvalidChecksum() throws Exception {
+        long lastRecord = recordOffsets.get(ENTRIES - 1);
+        // The data of the last record was only partially written
+        zeroFrom(lastRecord + RECORD_HEADER_SIZE + 20);
+
+        List<Long> offsets = new ArrayList<>();
+        Assert.assertEquals(lastRecord, scan(false, offsets));
+        Assert.assertEquals(recordOffsets.subList(0, ENTRIES - 1), offsets);
+    }
+
+    @Test
+    public void tornTailWithInvalidLength() throws Exception {
+        long lastRecord = recordOffsets.get(ENTRIES - 1);
+        zeroFrom(lastRecord);
+        writeInt(lastRecord, -12345);
+
+        List<Long> offsets = new ArrayList<>();
+        Assert.assertEquals(lastRecord, scan(false, offsets));
+        Assert.assertEquals(recordOffsets.subList(0, ENTRIES - 1), offsets);
+    }
+
+    @Test
+    public void corruptedRecordFailsTheScan() throws Exception {
+        long corrupted = recordOffsets.get(ENTRIES / 2);
+        flipByte(corrupted + RECORD_HEADER_SIZE + 20);
+
+        try {
+            scan(false, new ArrayList<>());
+            Assert.fail("The scan should fail on a corrupted record followed by other records");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // The rest of the file is skipped
+        List<Long> offsets = new ArrayList<>();
+        scan(true, offsets);
+        Assert.assertEquals(recordOffsets.subList(0, ENTRIES / 2), offsets);
+    }
+
+    @Test
+    public void invalidLengthFailsTheScan() throws Exception {
+        writeInt(recordOffsets.get(ENTRIES / 2), -12345);
+
+        try {
+            scan(false, new ArrayList<>());
+            Assert.fail("The scan should fail on an invalid length followed by other records");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Parameterized.class)
+public class JournalPackedRecordsTest {
+
+    private static final int LEDGERS = 4;
+    private static final int ENTRIES_PER_LEDGER = 500;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final int pipelineDepth;
+    private Journal journal;
+
+    @Parameterized.Parameters(name = "pipelineDepth={0}")
+    public static Collection<Object[]> getParams() {
+        return Arrays.asList(new Object[][]{
+                {0},
+                {2},
+        });
+    }
+
+    public JournalPackedRecordsTest(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        ServerConfiguration conf = JournalPipelineTest.newConf(tmpDir.newFolder());
+        conf.setJournalFormatVersionToWrite(JournalChannel.V8);
+        conf.setJournalWritePipelineDepth(pipelineDepth);
+        // Group the entries of the connections
+        conf.setJournalMaxGroupWaitMSec(2);
+        journal = JournalPipelineTest.newJournal(conf);
+        journal.start();
+    }
+
+    @After
+    public void teardown() {
+        if (journal != null) {
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    public void smallEntriesArePacked() throws Exception {
+        JournalPipelineTest.addEntries(journal, LEDGERS, ENTRIES_PER_LEDGER, false);
+        journal.shutdown();
+        JournalPipelineTest.verifyJournal(journal, LEDGERS, ENTRIES_PER_LEDGER);
+
+        // (journal id, record offset) -> entries of the record
+        Map<String, Integer> records = new HashMap<>();
+        Map<String, Long> ledgers = new HashMap<>();
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            File journalFile = new File(journal.getJournalDirectory(), Long.toHexString(journalId) + ".txn");
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+                journal.scanJournal(journalId, 0, (version, offset, entry) -> {
+                    Assert.assertEquals(JournalChannel.V8, version);
+                    String record = journalId + "@" + offset;
+                    int entries = records.merge(record, 1, Integer::sum);
+                    long ledgerId = entry.getLong(entry.position());
+                    if (entries == 1) {
+                        ledgers.put(record, ledgerId);
+                    } else {
+                        // Only the entries of a connection are packed together, and never large ones
+                        Assert.assertEquals((long) ledgers.get(record), ledgerId);
+                        Assert.assertTrue(entry.remaining() <= Journal.PACKED_ENTRY_MAX_SIZE);
+                        file.seek(offset);
+                        Assert.assertEquals(Journal.PACKED_MASK, file.readInt());
+                    }
+                }, false);
+            }
+        }
+
+        int entries = records.values().stream().mapToInt(Integer::intValue).sum();
+        Assert.assertEquals(LEDGERS * ENTRIES_PER_LEDGER, entries);
+        Assert.assertTrue("No packed record", records.size() < entries);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Parameterized.class)
+public class JournalPipelineTest {
+
+    private static final int LEDGERS = 4;
+    private static final int ENTRIES_PER_LEDGER = 500;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final int pipelineDepth;
+    private final long maxGroupWaitMSec;
+    private Journal journal;
+
+    @Parameterized.Parameters(name = "pipelineDepth={0}, maxGroupWaitMSec={1}")
+    public static Collection<Object[]> getParams() {
+        return Arrays.asList(new Object[][]{
+                // PIPELINE_DEPTH  MAX_GROUP_WAIT_MSEC
+                // Serial path
+                {0, 0L},
+                {0, 2L},
+                {2, 0L},
+                {2, 2L},
+                {4, 2L},
+        });
+    }
+
+    public JournalPipelineTest(int pipelineDepth, long maxGroupWaitMSec) {
+        this.pipelineDepth = pipelineDepth;
+        this.maxGroupWaitMSec = maxGroupWaitMSec;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        ServerConfiguration conf = newConf(tmpDir.newFolder());
+        conf.setJournalWritePipelineDepth(pipelineDepth);
+        conf.setJournalMaxGroupWaitMSec(maxGroupWaitMSec);
+        journal = newJournal(conf);
+        journal.start();
+    }
+
+    @After
+    public void teardown() {
+        if (journal != null) {
+            journal.shutdown();
+        }
+    }
+
+    static ServerConfiguration newConf(File journalDir) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        // Small preallocation, extended several times by the test
+        conf.setProperty("journalPreAllocSizeMB", 1);
+        // Reading the file descriptor by reflection is not allowed without --add-opens
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    static Journal newJournal(ServerConfiguration conf) {
+        return new Journal(0, new File(conf.getJournalDirNames()[0]), conf, mock(LedgerDirsManager.class));
+    }
+
+    /**
+     * Content of an entry, of a size depending on its id.
+     */
+    static ByteBuf newEntry(long ledgerId, long entryId) {
+        int size = 16 + (int) ((ledgerId * 7919 + entryId * 104729) % 5000);
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    /**
+     * Add the entries of the ledgers from one thread per ledger, each one acting as a connection, and wait for all
+     * the acknowledgements.
+     */
+    static void addEntries(Journal journal, int ledgers, int entriesPerLedger, boolean ackBeforeSync)
+            throws Exception {
+        CountDownLatch acked = new CountDownLatch(ledgers * entriesPerLedger);
+        AtomicInteger failures = new AtomicInteger();
+        WriteCallback cb = (int rc, long ledgerId, long entryId, BookieId addr, Object ctx) -> {
+            if (rc != BookieProtocol.EOK) {
+                failures.incrementAndGet();
+            }
+            acked.countDown();
+        };
+
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int l = 0; l < ledgers; l++) {
+            long ledgerId = l;
+            Object connection = new Object();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (long entryId = 0; entryId < entriesPerLedger; entryId++) {
+                        ByteBuf entry = newEntry(ledgerId, entryId);
+                        journal.logAddEntry(entry, ackBeforeSync, cb, connection);
+                        entry.release();
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), errors);
+        Assert.assertTrue(acked.await(60, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+    }
+
+    /**
+     * Check that the journal contains all the entries, in order for each ledger.
+     */
+    static void verifyJournal(Journal journal, int ledgers, int entriesPerLedger) throws Exception {
+        Map<Long, Long> nextEntryIds = new HashMap<>();
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            journal.scanJournal(journalId, 0, (int journalVersion, long offset, ByteBuffer entry) -> {
+                long ledgerId = entry.getLong(entry.position());
+                long entryId = entry.getLong(entry.position() + 8);
+                long expectedEntryId = nextEntryIds.getOrDefault(ledgerId, 0L);
+                Assert.assertEquals("Ledger " + ledgerId, expectedEntryId, entryId);
+                ByteBuf expected = newEntry(ledgerId, entryId);
+                Assert.assertEquals(expected.nioBuffer(), entry);
+                expected.release();
+                nextEntryIds.put(ledgerId, entryId + 1);
+            }, false);
+        }
+
+        Assert.assertEquals(ledgers, nextEntryIds.size());
+        for (long nextEntryId : nextEntryIds.values()) {
+            Assert.assertEquals(entriesPerLedger, nextEntryId);
+        }
+    }
+
+    @Test
+    public void entriesAreWrittenInOrder() throws Exception {
+        addEntries(journal, LEDGERS, ENTRIES_PER_LEDGER, false);
+        journal.shutdown();
+        verifyJournal(journal, LEDGERS, ENTRIES_PER_LEDGER);
+    }
+
+    @Test
+    public void ackBeforeSync() throws Exception {
+        addEntries(journal, LEDGERS, ENTRIES_PER_LEDGER, true);
+        journal.shutdown();
+        verifyJournal(journal, LEDGERS, ENTRIES_PER_LEDGER);
+    }
+
+    @Test(timeout = 60000)
+    public void writeFailureFailsBatchAndReleasesIt() throws Exception {
+        Assume.assumeTrue(pipelineDepth > 0);
+        journal.shutdown();
+
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        AtomicBoolean failFlush = new AtomicBoolean();
+        ServerConfiguration conf = newConf(tmpDir.newFolder());
+        conf.setJournalWritePipelineDepth(pipelineDepth);
+        conf.setJournalMaxGroupWaitMSec(maxGroupWaitMSec);
+        journal = new Journal(0, new File(conf.getJournalDirNames()[0]), conf, mock(LedgerDirsManager.class),
+                NullStatsLogger.INSTANCE, allocator) {
+            @Override
+            public BufferedChannelBuilder getBufferedChannelBuilder() {
+                return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity) {
+                    @Override
+                    public void flush() throws IOException {
+                        if (failFlush.get()) {
+                            throw new IOException("Injected failure");
+                        }
+                        super.flush();
+                    }
+                };
+            }
+        };
+        journal.start();
+        addEntries(journal, 1, 1, false);
+
+        failFlush.set(true);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBuf entry = newEntry(0, 1);
+        journal.logAddEntry(entry, false,
+                (int rc, long ledgerId, long entryId, BookieId addr, Object ctx) -> result.complete(rc), null);
+        entry.release();
+
+        // The entry of the batch that could not be written is failed, instead of never being acknowledged
+        Assert.assertEquals(BookieProtocol.EIO, (int) result.get(30, TimeUnit.SECONDS));
+
+        // And the batch is handed back, to be released with the others
+        journal.shutdown();
+        Assert.assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalRouterTest {
+
+    private List<Journal> journals;
+    private JournalRouter router;
+
+    @Before
+    public void setup() {
+        journals = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            journals.add(mock(Journal.class));
+        }
+        router = new JournalRouter(journals, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void ledgersStayOnTheirJournal() {
+        Journal journal = router.getJournal(1);
+        for (int i = 0; i < 10; i++) {
+            router.getJournal(100 + i);
+            Assert.assertSame(journal, router.getJournal(1));
+        }
+    }
+
+    @Test
+    public void newLedgersAreSpreadWithoutLoad() {
+        int[] ledgers = new int[journals.size()];
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            ledgers[journals.indexOf(router.getJournal(ledgerId))]++;
+        }
+        Assert.assertEquals(5, ledgers[0]);
+        Assert.assertEquals(5, ledgers[1]);
+    }
+
+    @Test
+    public void newLedgersAvoidTheLoadedJournal() throws Exception {
+        Journal loaded = router.getJournal(1);
+        Journal idle = router.getJournal(2);
+        Assert.assertNotSame(loaded, idle);
+
+        // Ledger 1 writes 10MB in the next sample
+        when(loaded.getEnqueuedBytes()).thenReturn(10L * 1024 * 1024);
+        when(loaded.getEnqueuedEntries()).thenReturn(1000L);
+        Thread.sleep(1100);
+
+        // A new ledger is expected to write as much as the average ledger written in the last sample, so the idle
+        // journal takes the next ledger, and the one after ties with the loaded journal
+        Assert.assertSame(idle, router.getJournal(10));
+        Assert.assertSame(loaded, router.getJournal(1));
+
+        // A deleted ledger is routed again when written
+        router.ledgerDeleted(1);
+        Assert.assertSame(idle, router.getJournal(1));
+    }
+
+    @Test
+    public void queuedEntriesCountInTheLoad() throws Exception {
+        Journal first = router.getJournal(1);
+        Journal second = router.getJournal(2);
+
+        // Both journals wrote as much in the last sample, but entries are piling up in the queue of the first one
+        when(first.getEnqueuedBytes()).thenReturn(1024L * 1024);
+        when(first.getEnqueuedEntries()).thenReturn(1024L);
+        when(second.getEnqueuedBytes()).thenReturn(1024L * 1024);
+        when(second.getEnqueuedEntries()).thenReturn(1024L);
+        when(first.getJournalQueueLength()).thenReturn(1000);
+        Thread.sleep(1100);
+
+        Assert.assertSame(second, router.getJournal(3));
+    }
+
+    @Test
+    public void closedLedgersDoNotDiluteTheLedgerRate() throws Exception {
+        // Many ledgers written once, and never again
+        for (long ledgerId = 0; ledgerId < 1000; ledgerId++) {
+            router.getJournal(ledgerId);
+        }
+        long hotLedger = 10_000;
+        Journal hot = router.getJournal(hotLedger);
+        Journal idle = journals.get(1 - journals.indexOf(hot));
+
+        // Only the hot ledger keeps writing, 10MB per sample
+        when(hot.getEnqueuedBytes()).thenReturn(10L * 1024 * 1024);
+        Thread.sleep(1100);
+        router.getJournal(20_000);
+        router.getJournal(hotLedger);
+        when(hot.getEnqueuedBytes()).thenReturn(20L * 1024 * 1024);
+        Thread.sleep(1100);
+
+        // The new ledgers are expected to write like the ledgers written in the last sample, not like the average of
+        // all the ledgers ever routed, so they do not all pile up on the idle journal
+        int routedToHot = 0;
+        for (long ledgerId = 30_000; ledgerId < 30_008; ledgerId++) {
+            if (router.getJournal(ledgerId) == hot) {
+                routedToHot++;
+            }
+        }
+        Assert.assertTrue("Routed to the hot journal: " + routedToHot, routedToHot >= 2);
+        Assert.assertTrue(router.getRoutedLedgers(journals.indexOf(idle)) > 0);
+    }
+
+    @Test
+    public void idleLedgersAreForgotten() throws Exception {
+        long idleSamples = 2;
+        router = new JournalRouter(journals, NullStatsLogger.INSTANCE, TimeUnit.MILLISECONDS.toNanos(1),
+                idleSamples);
+        for (long ledgerId = 0; ledgerId < 1000; ledgerId++) {
+            router.getJournal(ledgerId);
+        }
+        Journal active = router.getJournal(1);
+
+        // Each new ledger closes a sample, while ledger 1 keeps writing
+        for (long ledgerId = 10_000; ledgerId < 10_000 + 2 * idleSamples; ledgerId++) {
+            Thread.sleep(2);
+            router.getJournal(ledgerId);
+            Assert.assertSame(active, router.getJournal(1));
+        }
+
+        // Only the ledgers written in the last samples are still routed
+        long routed = router.getRoutedLedgers(0) + router.getRoutedLedgers(1);
+        Assert.assertTrue("Routed ledgers: " + routed, routed <= 1 + 2 * idleSamples);
+        Assert.assertSame(active, router.getJournal(1));
+    }
+}
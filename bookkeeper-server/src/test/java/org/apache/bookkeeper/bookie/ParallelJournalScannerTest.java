@@ -0,0 +1,211 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelJournalScannerTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private OrderedExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = OrderedExecutor.newBuilder().numThreads(4).name("test-replay").build();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static ByteBuffer record(long ledgerId, long entryId, int size) {
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putLong(ledgerId);
+        record.putLong(entryId);
+        record.clear();
+        return record;
+    }
+
+    @Test
+    public void recordsOfALedgerAreProcessedInOrder() throws Exception {
+        Map<Long, List<Long>> processed = new ConcurrentHashMap<>();
+        ParallelJournalScanner scanner = new ParallelJournalScanner((version, offset, entry) -> {
+            processed.computeIfAbsent(entry.getLong(0), ledgerId -> new ArrayList<>()).add(entry.getLong(8));
+        }, executor, 1024);
+
+        // The journal scan reuses its buffer
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for (long entryId = 0; entryId < 1000; entryId++) {
+            for (long ledgerId = 0; ledgerId < 8; ledgerId++) {
+                buffer.clear();
+                buffer.putLong(ledgerId).putLong(entryId).putLong(0);
+                buffer.flip();
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, buffer);
+            }
+        }
+        scanner.awaitProcessed();
+
+        Assert.assertEquals(8, processed.size());
+        for (List<Long> entryIds : processed.values()) {
+            Assert.assertEquals(1000, entryIds.size());
+            for (int i = 0; i < entryIds.size(); i++) {
+                Assert.assertEquals(i, (long) entryIds.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void pendingRecordsAreBounded() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+        ParallelJournalScanner scanner = new ParallelJournalScanner((version, offset, entry) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processed.incrementAndGet();
+        }, executor, 100);
+
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, 60));
+
+        CountDownLatch secondQueued = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(2, 0, 60));
+                // Larger than the limit, waits for all the pending records
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(3, 0, 1000));
+                secondQueued.countDown();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+
+        Assert.assertFalse(secondQueued.await(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, processed.get());
+
+        blocked.countDown();
+        Assert.assertTrue(secondQueued.await(10, TimeUnit.SECONDS));
+        reader.join();
+        scanner.awaitProcessed();
+        Assert.assertEquals(3, processed.get());
+    }
+
+    @Test
+    public void failuresAreRethrown() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        ParallelJournalScanner scanner = new ParallelJournalScanner((version, offset, entry) -> {
+            if (entry.getLong(0) == 1) {
+                throw new IOException("Failed to add entry");
+            }
+            processed.incrementAndGet();
+        }, executor, 1024);
+
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, 16));
+        try {
+            scanner.awaitProcessed();
+            Assert.fail("The failure should be rethrown");
+        } catch (IOException e) {
+            Assert.assertEquals("Failed to add entry", e.getMessage());
+        }
+
+        // The scan stops at the next record
+        try {
+            scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(2, 0, 16));
+            Assert.fail("The failure should be rethrown");
+        } catch (IOException e) {
+            Assert.assertEquals("Failed to add entry", e.getMessage());
+        }
+        Assert.assertEquals(0, processed.get());
+    }
+
+    @Test
+    public void runtimeFailuresAreWrapped() throws Exception {
+        JournalScanner failing = (version, offset, entry) -> {
+            throw new IllegalStateException("Unexpected");
+        };
+        ParallelJournalScanner scanner = new ParallelJournalScanner(failing, executor, 1024);
+
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, 16));
+        try {
+            scanner.awaitProcessed();
+            Assert.fail("The failure should be rethrown");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void scanJournal() throws Exception {
+        ServerConfiguration conf = JournalPipelineTest.newConf(tmpDir.newFolder());
+        Journal journal = JournalPipelineTest.newJournal(conf);
+        journal.start();
+        try {
+            JournalPipelineTest.addEntries(journal, 4, 500, false);
+        } finally {
+            journal.shutdown();
+        }
+
+        Map<Long, Long> nextEntryIds = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        ParallelJournalScanner scanner = new ParallelJournalScanner((version, offset, entry) -> {
+            long ledgerId = entry.getLong(0);
+            long entryId = entry.getLong(8);
+            if (nextEntryIds.getOrDefault(ledgerId, 0L) != entryId) {
+                outOfOrder.incrementAndGet();
+            }
+            nextEntryIds.put(ledgerId, entryId + 1);
+        }, executor, 64 * 1024);
+
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            journal.scanJournal(journalId, 0, scanner, false);
+        }
+        scanner.awaitProcessed();
+
+        Assert.assertEquals(0, outOfOrder.get());
+        Assert.assertEquals(4, nextEntryIds.size());
+        for (long nextEntryId : nextEntryIds.values()) {
+            Assert.assertEquals(500, nextEntryId);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanAndCompareGarbageCollectorSlicesTest {
+
+    // The metadata store lists the ledgers in ranges of this size
+    private static final int RANGE_SIZE = 10;
+
+    private final NavigableSet<Long> localLedgers = new TreeSet<>();
+    private final NavigableSet<Long> metadataLedgers = new TreeSet<>();
+    private final Set<Long> cleaned = new HashSet<>();
+    private int listings;
+    private int rangesListed;
+
+    private LedgerManager ledgerManager;
+    private CompactableLedgerStorage ledgerStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            listings++;
+            return newRangeIterator();
+        });
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.getActiveLedgersInRange(anyLong(), anyLong()))
+                .thenAnswer(invocation -> new ArrayList<>(localLedgers));
+    }
+
+    private LedgerRangeIterator newRangeIterator() {
+        List<LedgerRange> ranges = new ArrayList<>();
+        Set<Long> range = new TreeSet<>();
+        for (long ledgerId : metadataLedgers) {
+            range.add(ledgerId);
+            if (range.size() == RANGE_SIZE) {
+                ranges.add(new LedgerRange(range));
+                range = new TreeSet<>();
+            }
+        }
+        if (!range.isEmpty()) {
+            ranges.add(new LedgerRange(range));
+        }
+        Iterator<LedgerRange> iterator = ranges.iterator();
+        return new LedgerRangeIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public LedgerRange next() {
+                rangesListed++;
+                return iterator.next();
+            }
+        };
+    }
+
+    private ScanAndCompareGarbageCollector newCollector(int slices, long ttlSeconds) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("bookie-1");
+        conf.setGcMetadataScanSlices(slices);
+        conf.setGcKnownAliveLedgerTtlSeconds(ttlSeconds);
+        return new ScanAndCompareGarbageCollector(ledgerManager, ledgerStorage, conf, NullStatsLogger.INSTANCE);
+    }
+
+    private void gc(ScanAndCompareGarbageCollector collector) {
+        listings = 0;
+        rangesListed = 0;
+        collector.gc(ledgerId -> {
+            cleaned.add(ledgerId);
+            localLedgers.remove(ledgerId);
+        });
+    }
+
+    private static void addLedgers(Set<Long> ledgers, long first, long last) {
+        for (long ledgerId = first; ledgerId <= last; ledgerId++) {
+            ledgers.add(ledgerId);
+        }
+    }
+
+    @Test
+    public void listingStopsAfterTheLastLocalLedger() throws Exception {
+        addLedgers(localLedgers, 0, 29);
+        addLedgers(metadataLedgers, 0, 99);
+        metadataLedgers.remove(5L);
+
+        gc(newCollector(1, 0));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(5L)), cleaned);
+        Assert.assertEquals(3, rangesListed);
+    }
+
+    @Test
+    public void eachCycleComparesTheNextSlice() throws Exception {
+        addLedgers(localLedgers, 0, 99);
+        addLedgers(metadataLedgers, 0, 99);
+        metadataLedgers.removeAll(Arrays.asList(5L, 30L, 55L, 95L));
+        ScanAndCompareGarbageCollector collector = newCollector(4, 0);
+
+        // Slice 0 - 24
+        gc(collector);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(5L)), cleaned);
+        Assert.assertEquals(3, rangesListed);
+
+        // Slice 25 - 49, with one ledger less on the bookie
+        gc(collector);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(5L, 30L)), cleaned);
+        Assert.assertEquals(5, rangesListed);
+
+        // The whole key space is covered after as many cycles as slices
+        gc(collector);
+        gc(collector);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(5L, 30L, 55L, 95L)), cleaned);
+
+        // Then it starts over from the first slice
+        metadataLedgers.remove(0L);
+        gc(collector);
+        Assert.assertTrue(cleaned.contains(0L));
+    }
+
+    @Test
+    public void knownAliveSlicesAreSkipped() throws Exception {
+        addLedgers(localLedgers, 0, 99);
+        addLedgers(metadataLedgers, 0, 99);
+        ScanAndCompareGarbageCollector collector = newCollector(2, 3600);
+
+        // The first pass finds all the ledgers in the metadata store
+        gc(collector);
+        Assert.assertEquals(1, listings);
+        gc(collector);
+        Assert.assertEquals(1, listings);
+
+        // The next passes skip them until the ttl expires
+        gc(collector);
+        Assert.assertEquals(0, listings);
+        gc(collector);
+        Assert.assertEquals(0, listings);
+
+        // Only the slice with a new ledger is listed again, here the ledgers after the last slice
+        localLedgers.add(100L);
+        metadataLedgers.add(100L);
+        gc(collector);
+        Assert.assertEquals(1, listings);
+        gc(collector);
+        Assert.assertEquals(0, listings);
+        gc(collector);
+        Assert.assertEquals(0, listings);
+        Assert.assertTrue(cleaned.isEmpty());
+    }
+
+    @Test
+    public void withoutTtlEverySliceIsListed() throws Exception {
+        addLedgers(localLedgers, 0, 99);
+        addLedgers(metadataLedgers, 0, 99);
+        ScanAndCompareGarbageCollector collector = newCollector(2, 0);
+        for (int i = 0; i < 4; i++) {
+            gc(collector);
+            Assert.assertEquals(1, listings);
+        }
+        Assert.assertTrue(cleaned.isEmpty());
+    }
+
+    @Test
+    public void newLedgerMissingFromTheMetadataIsCollected() throws Exception {
+        addLedgers(localLedgers, 0, 99);
+        addLedgers(metadataLedgers, 0, 99);
+        ScanAndCompareGarbageCollector collector = newCollector(2, 3600);
+        gc(collector);
+        gc(collector);
+
+        // The slice with the new ledger is not known alive, so it is compared
+        localLedgers.add(100L);
+        gc(collector);
+        gc(collector);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(100L)), cleaned);
+    }
+}
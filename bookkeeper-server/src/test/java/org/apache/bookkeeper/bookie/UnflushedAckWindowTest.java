@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+@RunWith(Enclosed.class)
+public class UnflushedAckWindowTest {
+
+    public static class WindowTest {
+
+        @Test
+        public void windowIsBoundedBySize() {
+            UnflushedAckWindow window = new UnflushedAckWindow(1000, 60_000, NullStatsLogger.INSTANCE);
+            Assert.assertEquals(0, window.getAgeNanos());
+
+            Assert.assertTrue(window.tryAdd(600));
+            Assert.assertTrue(window.tryAdd(400));
+            Assert.assertFalse(window.tryAdd(1));
+            Assert.assertEquals(1000, window.getBytes());
+            Assert.assertTrue(window.getAgeNanos() > 0);
+
+            // Room is made as the entries are written
+            window.remove(600);
+            Assert.assertTrue(window.tryAdd(500));
+            window.remove(400);
+            window.remove(500);
+            Assert.assertEquals(0, window.getBytes());
+            Assert.assertEquals(0, window.getAgeNanos());
+
+            // An entry larger than the window is never acknowledged before it is written
+            Assert.assertFalse(window.tryAdd(1001));
+            Assert.assertEquals(0, window.getBytes());
+        }
+
+        @Test
+        public void windowIsBoundedByTime() throws Exception {
+            UnflushedAckWindow window = new UnflushedAckWindow(1000, 50, NullStatsLogger.INSTANCE);
+            Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(50), window.getMaxNanos());
+
+            Assert.assertTrue(window.tryAdd(10));
+            Thread.sleep(60);
+            Assert.assertFalse(window.tryAdd(10));
+
+            // The window reopens once the journal caught up
+            window.remove(10);
+            Assert.assertTrue(window.tryAdd(10));
+        }
+
+        @Test
+        public void awaitEmpty() throws Exception {
+            UnflushedAckWindow window = new UnflushedAckWindow(1000, 60_000, NullStatsLogger.INSTANCE);
+            Assert.assertTrue(window.awaitEmpty(0));
+
+            window.tryAdd(10);
+            Assert.assertFalse(window.awaitEmpty(10));
+
+            Thread writer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                window.remove(10);
+            });
+            writer.start();
+            Assert.assertTrue(window.awaitEmpty(10_000));
+            writer.join();
+        }
+    }
+
+    public static class JournalTest {
+
+        @Rule
+        public TemporaryFolder tmpDir = new TemporaryFolder();
+
+        private Journal journal;
+        private final AtomicInteger acked = new AtomicInteger();
+        private final WriteCallback cb = (int rc, long ledgerId, long entryId, BookieId addr, Object ctx) -> {
+            Assert.assertEquals(0, rc);
+            acked.incrementAndGet();
+        };
+
+        @Before
+        public void setup() throws Exception {
+            ServerConfiguration conf = JournalPipelineTest.newConf(tmpDir.newFolder());
+            conf.setJournalAckDeferredSyncOnEnqueue(true);
+            conf.setJournalMaxUnflushedAckedBytes(64 * 1024);
+            conf.setJournalMaxUnflushedAckedMSec(60_000);
+            journal = JournalPipelineTest.newJournal(conf);
+        }
+
+        @After
+        public void teardown() {
+            journal.shutdown();
+        }
+
+        private void addEntry(long entryId, boolean ackBeforeSync) throws Exception {
+            ByteBuf entry = JournalPipelineTest.newEntry(0, entryId);
+            journal.logAddEntry(entry, ackBeforeSync, cb, null);
+            entry.release();
+        }
+
+        @Test
+        public void deferredSyncEntriesAreAckedWhenEnqueued() throws Exception {
+            // The journal thread is not started, nothing is written yet
+            int entryId = 0;
+            int bytes = 0;
+            while (true) {
+                int size = JournalPipelineTest.newEntry(0, entryId).readableBytes();
+                if (bytes + size > 64 * 1024) {
+                    break;
+                }
+                addEntry(entryId++, true);
+                bytes += size;
+                Assert.assertEquals(entryId, acked.get());
+            }
+
+            // The window is full
+            addEntry(entryId++, true);
+            // Entries of regular ledgers still wait for the sync
+            addEntry(entryId++, false);
+            Assert.assertEquals(entryId - 2, acked.get());
+
+            journal.start();
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (acked.get() < entryId && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(entryId, acked.get());
+
+            // All the acknowledged entries are written before the shutdown completes
+            journal.shutdown();
+            JournalPipelineTest.verifyJournal(journal, 1, entryId);
+        }
+
+        @Test
+        public void shutdownWaitsForAckedEntries() throws Exception {
+            journal.start();
+            for (int entryId = 0; entryId < 10; entryId++) {
+                addEntry(entryId, true);
+            }
+            Assert.assertEquals(10, acked.get());
+            // Nobody waits for these entries, the journal groups them until the max window time
+            journal.shutdown();
+            JournalPipelineTest.verifyJournal(journal, 1, 10);
+        }
+    }
+}
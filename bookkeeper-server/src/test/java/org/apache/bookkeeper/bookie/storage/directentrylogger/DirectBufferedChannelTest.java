@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import org.apache.bookkeeper.bookie.BufferedChannel;
+import org.apache.bookkeeper.bookie.Journal;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectBufferedChannelTest {
+
+    private static final int CAPACITY = 2 * Buffer.ALIGNMENT;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private NativeIO nativeIO;
+    private BufferPool bufferPool;
+    private File file;
+    private final byte[] expected = new byte[4 * CAPACITY];
+    private int expectedLength;
+
+    @Before
+    public void setup() throws Exception {
+        try {
+            nativeIO = new NativeIOImpl();
+        } catch (Throwable t) {
+            Assume.assumeNoException("Native library not available", t);
+        }
+        bufferPool = new BufferPool(nativeIO, ByteBufAllocator.DEFAULT,
+                DirectBufferedChannel.writeCapacity(CAPACITY), 1);
+        file = tmpDir.newFile("journal.txn");
+        new Random(1).nextBytes(expected);
+    }
+
+    @After
+    public void teardown() {
+        if (bufferPool != null) {
+            bufferPool.close();
+        }
+    }
+
+    private DirectBufferedChannel open(long position) throws Exception {
+        FileChannel fc = new RandomAccessFile(file, "rw").getChannel();
+        fc.position(position);
+        DirectBufferedChannel channel = DirectBufferedChannel.tryCreate(nativeIO, bufferPool,
+                ByteBufAllocator.DEFAULT, file, fc, CAPACITY);
+        Assert.assertNotNull(channel);
+        return channel;
+    }
+
+    private void write(BufferedChannel channel, int length) throws Exception {
+        ByteBuf buf = Unpooled.wrappedBuffer(expected, expectedLength, length);
+        try {
+            channel.write(buf);
+        } finally {
+            buf.release();
+        }
+        expectedLength += length;
+    }
+
+    private void assertFileContent() throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        Assert.assertTrue(content.length >= expectedLength);
+        // The last block is padded with zeros
+        Assert.assertEquals(0, content.length % Buffer.ALIGNMENT);
+        for (int i = 0; i < expectedLength; i++) {
+            Assert.assertEquals("Byte " + i, expected[i], content[i]);
+        }
+    }
+
+    @Test
+    public void unalignedWrites() throws Exception {
+        try (DirectBufferedChannel channel = open(0)) {
+            // Each flush rewrites the partial block of the previous one
+            for (int length : new int[] {100, 1000, Buffer.ALIGNMENT + 1, 3 * Buffer.ALIGNMENT, 7}) {
+                write(channel, length);
+                channel.flush();
+                Assert.assertEquals(expectedLength, channel.position());
+                assertFileContent();
+            }
+
+            // Only full blocks are forced, the partial one is kept in the write buffer
+            long forced = channel.forceWrite(false);
+            Assert.assertEquals(expectedLength & ~(Buffer.ALIGNMENT - 1), forced);
+        }
+        assertFileContent();
+    }
+
+    @Test
+    public void writesLargerThanTheBuffer() throws Exception {
+        try (DirectBufferedChannel channel = open(0)) {
+            write(channel, 3 * CAPACITY + 123);
+            channel.flushAndForceWrite(true);
+            Assert.assertEquals(expectedLength, channel.position());
+        }
+        assertFileContent();
+    }
+
+    @Test
+    public void reopenAtUnalignedPosition() throws Exception {
+        // Data written before, such as the journal header
+        int headerLength = 512;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            fc.write(ByteBuffer.wrap(expected, 0, headerLength));
+        }
+        expectedLength = headerLength;
+
+        try (DirectBufferedChannel channel = open(headerLength)) {
+            Assert.assertEquals(headerLength, channel.position());
+            write(channel, 1000);
+            channel.flush();
+        }
+        assertFileContent();
+    }
+
+    @Test
+    public void tryCreateDoesNotWaitForBuffers() throws Exception {
+        DirectBufferedChannel channel = open(0);
+
+        try (FileChannel fc = new RandomAccessFile(file, "rw").getChannel()) {
+            Assert.assertNull(DirectBufferedChannel.tryCreate(nativeIO, bufferPool, ByteBufAllocator.DEFAULT,
+                    file, fc, CAPACITY));
+        }
+
+        // Closing the channel returns its buffer to the pool
+        channel.close();
+        open(0).close();
+    }
+
+    @Test
+    public void journalFallsBackToBufferedWrites() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirectIO(true);
+        Journal journal = new Journal(0, tmpDir.newFolder(), conf, mock(LedgerDirsManager.class));
+        Journal.BufferedChannelBuilder builder = journal.getBufferedChannelBuilder();
+
+        // The journal pool has two buffers, held by the files which are not closed yet
+        BufferedChannel[] channels = new BufferedChannel[3];
+        for (int i = 0; i < channels.length; i++) {
+            File journalFile = tmpDir.newFile(i + ".txn");
+            channels[i] = builder.create(journalFile, new RandomAccessFile(journalFile, "rw").getChannel(),
+                    CAPACITY);
+        }
+        Assert.assertTrue(channels[0] instanceof DirectBufferedChannel);
+        Assert.assertTrue(channels[1] instanceof DirectBufferedChannel);
+        Assert.assertFalse(channels[2] instanceof DirectBufferedChannel);
+
+        channels[0].close();
+        File journalFile = tmpDir.newFile("3.txn");
+        try (BufferedChannel channel = builder.create(journalFile,
+                new RandomAccessFile(journalFile, "rw").getChannel(), CAPACITY)) {
+            Assert.assertTrue(channel instanceof DirectBufferedChannel);
+        }
+        channels[1].close();
+        channels[2].close();
+    }
+}
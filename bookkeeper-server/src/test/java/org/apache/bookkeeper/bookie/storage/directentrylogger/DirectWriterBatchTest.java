@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.bookkeeper.common.util.nativeio.IoUringNativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Batched writes of the direct entry logger, with pwrite and with io_uring.
+ */
+@RunWith(Parameterized.class)
+public class DirectWriterBatchTest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final boolean ioUring;
+    private NativeIO nativeIO;
+    private BufferPool bufferPool;
+    private ExecutorService writeExecutor;
+    private File file;
+
+    @Parameterized.Parameters(name = "ioUring={0}")
+    public static Collection<Object[]> getParams() {
+        return Arrays.asList(new Object[][]{
+                {false},
+                {true},
+        });
+    }
+
+    public DirectWriterBatchTest(boolean ioUring) {
+        this.ioUring = ioUring;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        try {
+            nativeIO = ioUring ? new IoUringNativeIO() : new NativeIOImpl();
+        } catch (Throwable t) {
+            Assume.assumeNoException("Native library not available", t);
+        }
+        Assume.assumeTrue("io_uring not available", !ioUring || IoUringNativeIO.isAvailable());
+        bufferPool = new BufferPool(nativeIO, ByteBufAllocator.DEFAULT, BUFFER_SIZE, 8);
+        writeExecutor = Executors.newSingleThreadExecutor();
+        file = new File(tmpDir.getRoot(), "0.log");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (writeExecutor != null) {
+            writeExecutor.shutdownNow();
+        }
+        if (bufferPool != null) {
+            bufferPool.close();
+        }
+        if (nativeIO instanceof IoUringNativeIO) {
+            ((IoUringNativeIO) nativeIO).close();
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void pwriteBatch() throws Exception {
+        Random random = new Random(1);
+        int n = 8;
+        Buffer[] buffers = new Buffer[n];
+        byte[][] contents = new byte[n][];
+        long[] pointers = new long[n];
+        int[] counts = new int[n];
+        long[] offsets = new long[n];
+        int fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        try {
+            for (int i = 0; i < n; i++) {
+                buffers[i] = bufferPool.acquire();
+                buffers[i].reset();
+                contents[i] = randomBytes(random, (i + 1) * Buffer.ALIGNMENT);
+                buffers[i].writeByteBuf(Unpooled.wrappedBuffer(contents[i]));
+                pointers[i] = buffers[i].pointer();
+                counts[i] = contents[i].length;
+                // Written in reverse order of the offsets
+                offsets[i] = (long) (n - 1 - i) * BUFFER_SIZE;
+            }
+
+            long written = nativeIO.pwriteBatch(fd, pointers, counts, offsets, n, NativeIO.SYNC_DATA);
+            Assert.assertEquals(Arrays.stream(counts).sum(), written);
+
+            // A single write
+            Assert.assertEquals(counts[0], nativeIO.pwriteBatch(fd, pointers, counts, new long[] {n * BUFFER_SIZE},
+                    1, NativeIO.SYNC_ALL));
+        } finally {
+            nativeIO.close(fd);
+            for (Buffer buffer : buffers) {
+                if (buffer != null) {
+                    bufferPool.release(buffer);
+                }
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = 0; i < n; i++) {
+                byte[] read = new byte[counts[i]];
+                raf.seek(offsets[i]);
+                raf.readFully(read);
+                Assert.assertArrayEquals("Buffer " + i, contents[i], read);
+            }
+            byte[] read = new byte[counts[0]];
+            raf.seek(n * BUFFER_SIZE);
+            raf.readFully(read);
+            Assert.assertArrayEquals(contents[0], read);
+        }
+    }
+
+    @Test
+    public void failedBatchIsReported() throws Exception {
+        int n = 2;
+        Buffer[] buffers = new Buffer[n];
+        for (int i = 0; i < n; i++) {
+            buffers[i] = bufferPool.acquire();
+        }
+        try {
+            try {
+                nativeIO.pwriteBatch(-1, new long[] {buffers[0].pointer(), buffers[1].pointer()},
+                        new int[] {Buffer.ALIGNMENT, Buffer.ALIGNMENT}, new long[] {0, Buffer.ALIGNMENT}, n,
+                        NativeIO.SYNC_DATA);
+                Assert.fail("The batch should fail on an invalid file descriptor");
+            } catch (NativeIOException e) {
+                // expected
+            }
+        } finally {
+            for (Buffer buffer : buffers) {
+                bufferPool.release(buffer);
+            }
+        }
+
+        // The next batches are not affected
+        pwriteBatch();
+    }
+
+    @Test
+    public void entriesAreWrittenAndSynced() throws Exception {
+        Random random = new Random(2);
+        List<byte[]> entries = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        try (DirectWriter writer = new DirectWriter(0, file.getPath(), MAX_FILE_SIZE, writeExecutor, bufferPool,
+                nativeIO, Slogger.NULL)) {
+            for (int i = 0; i < 500; i++) {
+                byte[] entry = randomBytes(random, 1 + random.nextInt(8 * 1024));
+                entries.add(entry);
+                positions.add(writer.writeDelimited(Unpooled.wrappedBuffer(entry)));
+                if (i % 100 == 99) {
+                    writer.flush();
+                }
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = 0; i < entries.size(); i++) {
+                byte[] entry = entries.get(i);
+                raf.seek(positions.get(i) - Integer.BYTES);
+                Assert.assertEquals(entry.length, raf.readInt());
+                byte[] read = new byte[entry.length];
+                raf.readFully(read);
+                Assert.assertArrayEquals("Entry " + i, entry, read);
+            }
+        }
+    }
+
+    @Test
+    public void flushDoesNotSyncAfterAFailedWrite() throws Exception {
+        NativeIO failingIO = spy(nativeIO);
+        doThrow(new NativeIOException("Injected failure", 5)).when(failingIO)
+                .pwriteBatch(anyInt(), any(), any(), any(), anyInt(), eq(NativeIO.SYNC_NONE));
+
+        DirectWriter writer = new DirectWriter(0, file.getPath(), MAX_FILE_SIZE, writeExecutor, bufferPool,
+                failingIO, Slogger.NULL);
+        try {
+            try {
+                // Fill more than a buffer, so that the write executor writes one
+                byte[] entry = new byte[1024];
+                for (int i = 0; i < 2 * BUFFER_SIZE / entry.length; i++) {
+                    writer.writeDelimited(Unpooled.wrappedBuffer(entry));
+                }
+                writer.flush();
+                Assert.fail("The flush should report the failed write");
+            } catch (IOException e) {
+                // expected, reported by the flush, or by a write once the failed one has completed
+            }
+            verify(failingIO, never()).pwriteBatch(anyInt(), any(), any(), any(), anyInt(), eq(NativeIO.SYNC_ALL));
+        } finally {
+            // Closing would flush again
+            nativeIO.close(writer.fd);
+            bufferPool.release(writer.nativeBuffer);
+        }
+    }
+}
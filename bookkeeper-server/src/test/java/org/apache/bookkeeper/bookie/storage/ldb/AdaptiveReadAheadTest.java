@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mockito;
+
+@RunWith(Enclosed.class)
+public class AdaptiveReadAheadTest {
+
+    private static final int INITIAL_WINDOW = 4;
+    private static final int MAX_WINDOW = 32;
+
+    private static TransientLedgerInfo newLedgerInfo() {
+        return new TransientLedgerInfo(1, Mockito.mock(LedgerMetadataIndex.class));
+    }
+
+    /**
+     * Window after a sequence of cache misses.
+     */
+    @RunWith(Parameterized.class)
+    public static class WindowTest {
+
+        private final long[] missedEntries;
+        private final int expectedWindow;
+
+        @Parameterized.Parameters
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    // MISSED_ENTRIES    EXPECTED_WINDOW
+                    {new long[]{0}, INITIAL_WINDOW},
+                    {new long[]{0, 1}, 2 * INITIAL_WINDOW},
+                    {new long[]{0, 1, 2}, 4 * INITIAL_WINDOW},
+                    {new long[]{0, 1, 2, 3, 4, 5, 6, 7}, MAX_WINDOW},
+                    // Reordered reads in flight are still sequential
+                    {new long[]{0, 5}, 2 * INITIAL_WINDOW},
+                    // Random reads disable the read-ahead
+                    {new long[]{0, 1, 100}, 0},
+                    {new long[]{0, 1, 100, 50}, 0},
+                    // Then it restarts from the initial window
+                    {new long[]{0, 1, 100, 101}, INITIAL_WINDOW},
+                    {new long[]{0, 1, 100, 101, 102}, 2 * INITIAL_WINDOW},
+            });
+        }
+
+        public WindowTest(long[] missedEntries, int expectedWindow) {
+            this.missedEntries = missedEntries;
+            this.expectedWindow = expectedWindow;
+        }
+
+        @Test
+        public void window() {
+            TransientLedgerInfo info = newLedgerInfo();
+            int window = -1;
+            for (long entryId : missedEntries) {
+                window = info.onReadCacheMiss(entryId, INITIAL_WINDOW, MAX_WINDOW);
+            }
+            Assert.assertEquals(expectedWindow, window);
+        }
+    }
+
+    public static class ReadAheadBatchTest {
+
+        private TransientLedgerInfo info;
+
+        @Before
+        public void setup() {
+            info = newLedgerInfo();
+        }
+
+        @Test
+        public void missAfterReadAheadBatchIsSequential() {
+            Assert.assertEquals(INITIAL_WINDOW, info.onReadCacheMiss(0, INITIAL_WINDOW, MAX_WINDOW));
+            info.onReadAhead(1, INITIAL_WINDOW, INITIAL_WINDOW * 100);
+
+            // Entries 1 to 4 are served by the read cache, without being tracked
+            long missed = INITIAL_WINDOW + 1;
+            Assert.assertEquals(INITIAL_WINDOW, info.onReadAheadConsumed(missed));
+            Assert.assertEquals(2 * INITIAL_WINDOW, info.onReadCacheMiss(missed, INITIAL_WINDOW, MAX_WINDOW));
+        }
+
+        @Test
+        public void consumedEntriesAreCountedOnce() {
+            info.onReadCacheMiss(0, INITIAL_WINDOW, MAX_WINDOW);
+            info.onReadAhead(1, 8, 800);
+
+            Assert.assertEquals(2, info.onReadAheadConsumed(3));
+            Assert.assertEquals(0, info.onReadAheadConsumed(3));
+            Assert.assertEquals(3, info.onReadAheadConsumed(6));
+            // Misses before the batch or far beyond it consumed nothing
+            Assert.assertEquals(0, info.onReadAheadConsumed(1));
+            Assert.assertEquals(0, info.onReadAheadConsumed(1000));
+        }
+
+        @Test
+        public void unreadEntriesAreWasted() {
+            info.onReadCacheMiss(0, INITIAL_WINDOW, MAX_WINDOW);
+            Assert.assertEquals(0, info.onReadAhead(1, 10, 1000));
+
+            // 4 of the 10 entries read, the next batch replaces the previous one
+            info.onReadAheadConsumed(5);
+            Assert.assertEquals(600, info.onReadAhead(20, 10, 1000));
+            // None of them read
+            Assert.assertEquals(1000, info.onReadAhead(40, 0, 0));
+            // No batch to waste
+            Assert.assertEquals(0, info.onReadAhead(50, 0, 0));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * The entries read from the caches are slices that pin the cache memory, which is not reused until they are
+ * released, or until the bounded wait of the cache expires.
+ */
+@RunWith(Enclosed.class)
+public class CacheEntryPinningTest {
+
+    private static final int ENTRY_SIZE = 128;
+    private static final long LONG_PIN_WAIT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static ByteBuf filledEntry(int value) {
+        byte[] content = new byte[ENTRY_SIZE];
+        Arrays.fill(content, (byte) value);
+        return Unpooled.wrappedBuffer(content);
+    }
+
+    private static boolean isFilledEntry(ByteBuf entry) {
+        byte value = entry.getByte(entry.readerIndex());
+        for (int i = entry.readerIndex(); i < entry.writerIndex(); i++) {
+            if (entry.getByte(i) != value) {
+                return false;
+            }
+        }
+        return entry.readableBytes() == ENTRY_SIZE;
+    }
+
+    private static void assertStillBlocked(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            Assert.fail("Should wait for the pinned entry to be released");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+    }
+
+    public static class WriteCacheGetTest {
+
+        private WriteCache cache;
+
+        private WriteCache newCache(long maxPinWaitNanos) {
+            cache = new WriteCache(ByteBufAllocator.DEFAULT, 64 * 1024, 16 * 1024, maxPinWaitNanos);
+            return cache;
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+        }
+
+        @Test
+        public void entryPinsSegment() {
+            newCache(LONG_PIN_WAIT_NANOS);
+            cache.put(1, 1, filledEntry(1));
+            ByteBuf entry = cache.get(1, 1);
+            ByteBuf again = cache.get(1, 1);
+
+            Assert.assertEquals(filledEntry(1), entry);
+            // The two reads share the memory of the cache, which is retained once per entry
+            Assert.assertEquals(3, entry.refCnt());
+            again.release();
+            entry.release();
+            Assert.assertEquals(1, entry.refCnt());
+        }
+
+        @Test(timeout = 60000)
+        public void clearWaitsForPinnedEntry() throws Exception {
+            newCache(LONG_PIN_WAIT_NANOS);
+            cache.put(1, 1, filledEntry(1));
+            ByteBuf entry = cache.get(1, 1);
+
+            CompletableFuture<Void> clear = CompletableFuture.runAsync(cache::clear);
+            assertStillBlocked(clear);
+            Assert.assertEquals(filledEntry(1), entry);
+
+            entry.release();
+            clear.get();
+            Assert.assertEquals(0, cache.pinnedOverflowCount());
+            Assert.assertNull(cache.get(1, 1));
+        }
+
+        @Test
+        public void pinnedSegmentIsReplacedAfterMaxWait() {
+            newCache(0);
+            cache.put(1, 1, filledEntry(1));
+            cache.put(1, 2, filledEntry(2));
+            ByteBuf entry = cache.get(1, 1);
+            ByteBuf lastEntry = cache.getLastEntry(1);
+
+            cache.clear();
+            cache.put(1, 1, filledEntry(3));
+            cache.put(1, 2, filledEntry(4));
+
+            // The entries keep the memory of the old segment, while the cache writes into a new one
+            Assert.assertEquals(1, cache.pinnedOverflowCount());
+            Assert.assertEquals(filledEntry(1), entry);
+            Assert.assertEquals(filledEntry(2), lastEntry);
+            entry.release();
+            lastEntry.release();
+            Assert.assertEquals(0, entry.refCnt());
+
+            ByteBuf overwritten = cache.get(1, 1);
+            Assert.assertEquals(filledEntry(3), overwritten);
+            overwritten.release();
+        }
+
+        @Test(timeout = 60000)
+        public void readRacingWithClearIsNeverTorn() throws Exception {
+            newCache(WriteCache.DEFAULT_MAX_PIN_WAIT_NANOS);
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<String> failure = new AtomicReference<>();
+            CountDownLatch readerDone = new CountDownLatch(1);
+            new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        ByteBuf entry = cache.get(1, 1);
+                        if (entry != null) {
+                            if (!isFilledEntry(entry)) {
+                                failure.compareAndSet(null, "Torn entry " + entry);
+                            }
+                            entry.release();
+                        }
+                    }
+                } finally {
+                    readerDone.countDown();
+                }
+            }).start();
+
+            // Each generation of the cache writes the same entry with a different content, at the same offset
+            for (int generation = 0; generation < 20000; generation++) {
+                cache.put(1, 1, filledEntry(generation));
+                cache.clear();
+            }
+            done.set(true);
+            Assert.assertTrue(readerDone.await(30, TimeUnit.SECONDS));
+            Assert.assertNull(failure.get());
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class ReadCacheGetTest {
+
+        private static final int SEGMENT_SIZE = 1024;
+        // Entries needed to fill both segments, so that the segment of the first entry is recycled
+        private static final int ENTRIES_TO_ROLLOVER = 2 * SEGMENT_SIZE / ENTRY_SIZE;
+
+        private final boolean striped;
+        private ReadCache cache;
+
+        @Parameterized.Parameters(name = "striped={0}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    {false},
+                    {true},
+            });
+        }
+
+        public ReadCacheGetTest(boolean striped) {
+            this.striped = striped;
+        }
+
+        private ReadCache newCache(long maxPinWaitNanos) {
+            cache = striped
+                    ? new StripedReadCache(ByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE, maxPinWaitNanos)
+                    : new DefaultReadCache(ByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE, maxPinWaitNanos);
+            return cache;
+        }
+
+        private void fillCache(int value) {
+            for (long entryId = 1; entryId <= ENTRIES_TO_ROLLOVER; entryId++) {
+                cache.put(1, entryId, filledEntry(value));
+            }
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+        }
+
+        @Test
+        public void entryPinsSegment() {
+            newCache(LONG_PIN_WAIT_NANOS);
+            cache.put(1, 0, filledEntry(1));
+            ByteBuf entry = cache.get(1, 0);
+
+            Assert.assertEquals(filledEntry(1), entry);
+            Assert.assertEquals(2, entry.refCnt());
+            entry.release();
+            Assert.assertEquals(1, entry.refCnt());
+        }
+
+        @Test(timeout = 60000)
+        public void rolloverWaitsForPinnedEntry() throws Exception {
+            newCache(LONG_PIN_WAIT_NANOS);
+            cache.put(1, 0, filledEntry(1));
+            ByteBuf entry = cache.get(1, 0);
+
+            CompletableFuture<Void> fill = CompletableFuture.runAsync(() -> fillCache(2));
+            assertStillBlocked(fill);
+            Assert.assertEquals(filledEntry(1), entry);
+
+            entry.release();
+            fill.get();
+            Assert.assertEquals(0, cache.pinnedDropCount());
+            Assert.assertNull(cache.get(1, 0));
+        }
+
+        @Test
+        public void pinnedSegmentIsNotOverwrittenAfterMaxWait() {
+            newCache(0);
+            cache.put(1, 0, filledEntry(1));
+            ByteBuf entry = cache.get(1, 0);
+
+            fillCache(2);
+
+            // The entry that needed the pinned segment was not cached
+            Assert.assertEquals(1, cache.pinnedDropCount());
+            Assert.assertFalse(cache.hasEntry(1, ENTRIES_TO_ROLLOVER));
+            Assert.assertEquals(filledEntry(1), entry);
+            entry.release();
+
+            // Once released, the segment is recycled by the next rollover
+            cache.put(1, ENTRIES_TO_ROLLOVER, filledEntry(3));
+            Assert.assertNull(cache.get(1, 0));
+            ByteBuf last = cache.get(1, ENTRIES_TO_ROLLOVER);
+            Assert.assertEquals(filledEntry(3), last);
+            last.release();
+        }
+    }
+}
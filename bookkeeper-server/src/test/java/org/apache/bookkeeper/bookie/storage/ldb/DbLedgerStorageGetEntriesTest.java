@@ -0,0 +1,208 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.LedgerStorage;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.mockito.Mockito;
+
+@RunWith(Enclosed.class)
+public class DbLedgerStorageGetEntriesTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 100;
+    // More entries than the first lookup window of a batch read
+    private static final int NUM_ENTRIES = 200;
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    static DbLedgerStorage newStorage(File tmpDir) throws Exception {
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(tmpDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[]{tmpDir.toString()});
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        DbLedgerStorage storage = new DbLedgerStorage();
+        storage.initialize(conf, Mockito.mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setCheckpointer(Checkpointer.NULL);
+        return storage;
+    }
+
+    private static void checkEntries(ByteBufList entries, long firstEntryId, int expectedCount) {
+        Assert.assertEquals(expectedCount, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Assert.assertEquals(entry(LEDGER_ID, firstEntryId + i), entries.getBuffer(i));
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class BatchLimitsTest {
+
+        private final boolean flushed;
+        private final long firstEntryId;
+        private final int maxCount;
+        private final long maxBytes;
+        private final int expectedCount;
+
+        private File tmpDir;
+        private LedgerStorage storage;
+
+        @Parameterized.Parameters(name = "flushed={0}, first={1}, maxCount={2}, maxBytes={3}")
+        public static Collection<Object[]> getParams() {
+            Object[][] limits = {
+                    // FIRST_ENTRY  MAX_COUNT  MAX_BYTES  EXPECTED_COUNT
+                    {0L, 10, Long.MAX_VALUE, 10},
+                    {0L, 1, Long.MAX_VALUE, 1},
+                    // Stops at the first missing entry, after a few lookup windows
+                    {0L, 1000, Long.MAX_VALUE, NUM_ENTRIES},
+                    {NUM_ENTRIES - 10L, 100, Long.MAX_VALUE, 10},
+                    // Stops before exceeding the bytes budget
+                    {0L, 100, 5L * ENTRY_SIZE + 50, 5},
+                    // The first entry is always returned
+                    {0L, 100, ENTRY_SIZE / 2L, 1},
+            };
+            Object[][] params = new Object[2 * limits.length][];
+            for (int i = 0; i < limits.length; i++) {
+                params[2 * i] = new Object[]{false, limits[i][0], limits[i][1], limits[i][2], limits[i][3]};
+                params[2 * i + 1] = new Object[]{true, limits[i][0], limits[i][1], limits[i][2], limits[i][3]};
+            }
+            return Arrays.asList(params);
+        }
+
+        public BatchLimitsTest(boolean flushed, long firstEntryId, int maxCount, long maxBytes, int expectedCount) {
+            this.flushed = flushed;
+            this.firstEntryId = firstEntryId;
+            this.maxCount = maxCount;
+            this.maxBytes = maxBytes;
+            this.expectedCount = expectedCount;
+        }
+
+        @Before
+        public void setup() throws Exception {
+            tmpDir = Files.createTempDirectory("getEntries").toFile();
+            storage = newStorage(tmpDir);
+            storage.setMasterKey(LEDGER_ID, new byte[0]);
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                storage.addEntry(entry(LEDGER_ID, entryId));
+            }
+            if (flushed) {
+                storage.flush();
+            }
+        }
+
+        @After
+        public void clean() throws Exception {
+            if (storage != null) {
+                storage.shutdown();
+            }
+            FileUtils.deleteDirectory(tmpDir);
+        }
+
+        @Test
+        public void getEntries() throws Exception {
+            ByteBufList entries = storage.getEntries(LEDGER_ID, firstEntryId, maxCount, maxBytes);
+            try {
+                checkEntries(entries, firstEntryId, expectedCount);
+            } finally {
+                entries.release();
+            }
+        }
+    }
+
+    public static class MissingEntryTest {
+
+        private File tmpDir;
+        private LedgerStorage storage;
+
+        @Before
+        public void setup() throws Exception {
+            tmpDir = Files.createTempDirectory("getEntries").toFile();
+            storage = newStorage(tmpDir);
+            storage.setMasterKey(LEDGER_ID, new byte[0]);
+            storage.addEntry(entry(LEDGER_ID, 0));
+        }
+
+        @After
+        public void clean() throws Exception {
+            if (storage != null) {
+                storage.shutdown();
+            }
+            FileUtils.deleteDirectory(tmpDir);
+        }
+
+        @Test(expected = Bookie.NoEntryException.class)
+        public void missingFirstEntry() throws Exception {
+            storage.getEntries(LEDGER_ID, 1, 10, Long.MAX_VALUE);
+        }
+
+        @Test
+        public void entriesOfBothCaches() throws Exception {
+            // Entry 0 is flushed, entry 1 is in the write cache
+            storage.flush();
+            storage.addEntry(entry(LEDGER_ID, 1));
+
+            ByteBufList entries = storage.getEntries(LEDGER_ID, 0, 10, Long.MAX_VALUE);
+            try {
+                checkEntries(entries, 0, 2);
+            } finally {
+                entries.release();
+            }
+        }
+    }
+}
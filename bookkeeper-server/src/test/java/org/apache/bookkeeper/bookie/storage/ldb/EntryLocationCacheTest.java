@@ -0,0 +1,252 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+
+@RunWith(Enclosed.class)
+public class EntryLocationCacheTest {
+
+    public static class CacheTest {
+
+        private EntryLocationCache cache;
+
+        @Before
+        public void setup() {
+            // Smallest cache, one set of 8 slots per stripe
+            cache = new EntryLocationCache(0);
+        }
+
+        @After
+        public void teardown() {
+            cache.close();
+        }
+
+        @Test
+        public void putAndGet() {
+            Assert.assertEquals(0, cache.get(1, 0));
+
+            cache.put(1, 0, 100);
+            cache.put(1, 1, 200);
+            Assert.assertEquals(100, cache.get(1, 0));
+            Assert.assertEquals(200, cache.get(1, 1));
+            Assert.assertEquals(0, cache.get(2, 0));
+            Assert.assertEquals(2, cache.count());
+
+            cache.put(1, 0, 300);
+            Assert.assertEquals(300, cache.get(1, 0));
+            Assert.assertEquals(2, cache.count());
+        }
+
+        @Test
+        public void sizeIsBounded() {
+            int entries = 256 * 8 * 4;
+            for (int i = 0; i < entries; i++) {
+                cache.put(1, i, 100 + i);
+            }
+            Assert.assertEquals(256 * 8, cache.count());
+
+            // Older entries are evicted, the remaining ones keep the right location
+            int cached = 0;
+            for (int i = 0; i < entries; i++) {
+                long location = cache.get(1, i);
+                if (location != 0) {
+                    Assert.assertEquals(100 + i, location);
+                    cached++;
+                }
+            }
+            Assert.assertEquals(256 * 8, cached);
+        }
+
+        @Test
+        public void putIfNotModified() {
+            long stamp = cache.stamp(1, 0);
+            cache.putIfNotModified(1, 0, 100, stamp);
+            Assert.assertEquals(100, cache.get(1, 0));
+
+            // Location read from the index before a flush updated it
+            stamp = cache.stamp(1, 0);
+            cache.put(1, 0, 200);
+            cache.putIfNotModified(1, 0, 100, stamp);
+            Assert.assertEquals(200, cache.get(1, 0));
+
+            // The ledger was deleted after the lookup
+            stamp = cache.stamp(1, 1);
+            cache.removeLedgers(Collections.singleton(1L));
+            cache.putIfNotModified(1, 1, 100, stamp);
+            Assert.assertEquals(0, cache.get(1, 1));
+        }
+
+        @Test
+        public void removeLedgers() {
+            for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+                for (int i = 0; i < 100; i++) {
+                    cache.put(ledgerId, i, ledgerId * 1000 + i);
+                }
+            }
+
+            Set<Long> ledgers = new HashSet<>();
+            ledgers.add(1L);
+            ledgers.add(3L);
+            cache.removeLedgers(ledgers);
+
+            Assert.assertEquals(100, cache.count());
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(0, cache.get(1, i));
+                Assert.assertEquals(2000 + i, cache.get(2, i));
+                Assert.assertEquals(0, cache.get(3, i));
+            }
+        }
+    }
+
+    /**
+     * Location cache in front of a mocked index, which can only return the locations stored with
+     * {@link #storeInIndex}.
+     */
+    public static class IndexTest {
+
+        private KeyValueStorage locationsDb;
+        private EntryLocationIndex index;
+        private long indexedLocation;
+
+        @Before
+        public void setup() throws Exception {
+            locationsDb = mock(KeyValueStorage.class);
+            when(locationsDb.newBatch()).thenAnswer(invocation -> mock(Batch.class));
+            doAnswer(invocation -> {
+                if (indexedLocation == 0) {
+                    return -1;
+                }
+                ArrayUtil.setLong(invocation.getArgument(1), 0, indexedLocation);
+                return Long.BYTES;
+            }).when(locationsDb).get(any(byte[].class), any(byte[].class));
+
+            KeyValueStorageFactory factory = mock(KeyValueStorageFactory.class);
+            when(factory.newKeyValueStorage(anyString(), anyString(), any(), any())).thenReturn(locationsDb);
+
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setProperty(DbLedgerStorage.LOCATION_CACHE_MAX_SIZE_MB, 1);
+            index = new EntryLocationIndex(conf, factory, "", NullStatsLogger.INSTANCE);
+        }
+
+        @After
+        public void teardown() throws IOException {
+            index.close();
+        }
+
+        private void storeInIndex(long location) {
+            indexedLocation = location;
+        }
+
+        @Test
+        public void batchIsCachedOnceFlushed() throws Exception {
+            Batch batch = index.newBatch();
+            index.addLocation(batch, 1, 0, 100);
+            index.addLocation(batch, 1, 1, 200);
+            Assert.assertEquals(0, index.getLocation(1, 0));
+
+            batch.flush();
+            Assert.assertEquals(100, index.getLocation(1, 0));
+            Assert.assertEquals(200, index.getLocation(1, 1));
+            // Only the lookup before the flush went to the index
+            verify(locationsDb, times(1)).get(any(byte[].class), any(byte[].class));
+
+            // Cleared batches do not fill the cache
+            index.addLocation(batch, 1, 2, 300);
+            batch.clear();
+            batch.flush();
+            Assert.assertEquals(0, index.getLocation(1, 2));
+            batch.close();
+        }
+
+        @Test
+        public void missesFillTheCache() throws Exception {
+            storeInIndex(100);
+            Assert.assertEquals(100, index.getLocation(1, 0));
+
+            storeInIndex(0);
+            Assert.assertEquals(100, index.getLocation(1, 0));
+            verify(locationsDb, times(1)).get(any(byte[].class), any(byte[].class));
+        }
+
+        @Test
+        public void updateLocations() throws Exception {
+            Batch batch = index.newBatch();
+            index.addLocation(batch, 1, 0, 100);
+            batch.flush();
+            batch.close();
+
+            index.updateLocations(Collections.singletonList(new EntryLocation(1, 0, 500)));
+            Assert.assertEquals(500, index.getLocation(1, 0));
+        }
+
+        @Test
+        public void deletedLedgersBypassTheCache() throws Exception {
+            Batch batch = index.newBatch();
+            index.addLocation(batch, 1, 0, 100);
+            index.addLocation(batch, 2, 0, 200);
+            batch.flush();
+            batch.close();
+
+            index.delete(1);
+            Assert.assertEquals(0, index.getLocation(1, 0));
+            Assert.assertEquals(200, index.getLocation(2, 0));
+
+            index.removeOffsetFromDeletedLedgers();
+            Assert.assertEquals(0, index.getLocation(1, 0));
+            Assert.assertEquals(200, index.getLocation(2, 0));
+        }
+
+        @Test
+        public void cacheIsDisabledByDefault() throws Exception {
+            KeyValueStorageFactory factory = mock(KeyValueStorageFactory.class);
+            when(factory.newKeyValueStorage(anyString(), anyString(), any(), any())).thenReturn(locationsDb);
+            try (EntryLocationIndex uncached = new EntryLocationIndex(new ServerConfiguration(), factory, "",
+                    NullStatsLogger.INSTANCE)) {
+                Batch batch = uncached.newBatch();
+                uncached.addLocation(batch, 1, 0, 100);
+                batch.flush();
+                Assert.assertEquals(0, uncached.getLocation(1, 0));
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class LedgerRunsIndexTest {
+
+    private static final int SEGMENT_OFFSET_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_OFFSET_BITS;
+
+    /**
+     * Index over a single segment, whose chunks are allocated up to maxChunks.
+     */
+    private static LedgerRunsIndex newIndex(int maxChunks) {
+        ByteBuf[] segments = {Unpooled.buffer(SEGMENT_SIZE, SEGMENT_SIZE)};
+        AtomicLong nextChunk = new AtomicLong();
+        return new LedgerRunsIndex(segments, SEGMENT_OFFSET_BITS, () -> {
+            long chunk = nextChunk.getAndIncrement();
+            return chunk < maxChunks ? chunk * LedgerRunsIndex.CHUNK_SIZE : -1;
+        });
+    }
+
+    /**
+     * Collect the records of a ledger as (entryId, offset, length) triplets.
+     */
+    private static List<long[]> records(LedgerRunsIndex index, long ledgerId) throws Exception {
+        List<long[]> records = new ArrayList<>();
+        index.forEach(ledgerId, (id, entryId, offset, length) -> {
+            Assert.assertEquals(ledgerId, id);
+            records.add(new long[]{entryId, offset, length});
+        });
+        return records;
+    }
+
+    /**
+     * Entries added in any order are iterated by increasing entry id.
+     */
+    @RunWith(Parameterized.class)
+    public static class OrderTest {
+
+        private final long[] addedEntries;
+        private final long[] expectedEntries;
+
+        @Parameterized.Parameters
+        public static Collection<Object[]> getParams() {
+            long[] manyEntries = new long[100];
+            long[] manyEntriesReversed = new long[100];
+            for (int i = 0; i < 100; i++) {
+                manyEntries[i] = i;
+                manyEntriesReversed[i] = 99 - i;
+            }
+            return Arrays.asList(new Object[][]{
+                    // ADDED_ENTRIES  EXPECTED_ENTRIES
+                    {new long[]{0}, new long[]{0}},
+                    {new long[]{0, 1, 2, 3}, new long[]{0, 1, 2, 3}},
+                    {new long[]{3, 1, 2, 0}, new long[]{0, 1, 2, 3}},
+                    {new long[]{0, 2, 4, 1, 3, 5}, new long[]{0, 1, 2, 3, 4, 5}},
+                    // An entry added twice is only iterated once
+                    {new long[]{0, 1, 2, 1, 2, 3}, new long[]{0, 1, 2, 3}},
+                    // Records spanning several chunks
+                    {manyEntries, manyEntries},
+                    {manyEntriesReversed, manyEntries},
+            });
+        }
+
+        public OrderTest(long[] addedEntries, long[] expectedEntries) {
+            this.addedEntries = addedEntries;
+            this.expectedEntries = expectedEntries;
+        }
+
+        @Test
+        public void iterateInOrder() throws Exception {
+            LedgerRunsIndex index = newIndex(Integer.MAX_VALUE);
+            long bytes = 0;
+            for (int i = 0; i < addedEntries.length; i++) {
+                // The offset tells which record of the entry is iterated
+                Assert.assertTrue(index.add(1, addedEntries[i], 1000 + i, 10 + i));
+                bytes += 10 + i;
+            }
+
+            List<long[]> records = records(index, 1);
+            Assert.assertEquals(expectedEntries.length, records.size());
+            for (int i = 0; i < expectedEntries.length; i++) {
+                long[] record = records.get(i);
+                Assert.assertEquals(expectedEntries[i], record[0]);
+                // The last record added for the entry wins
+                int lastAdded = -1;
+                for (int j = 0; j < addedEntries.length; j++) {
+                    if (addedEntries[j] == expectedEntries[i]) {
+                        lastAdded = j;
+                    }
+                }
+                Assert.assertEquals(1000 + lastAdded, record[1]);
+                Assert.assertEquals(10 + lastAdded, record[2]);
+            }
+            Assert.assertEquals(bytes, index.ledgerBytes(1));
+        }
+    }
+
+    public static class LedgersTest {
+
+        private LedgerRunsIndex index;
+
+        @Before
+        public void setup() {
+            index = newIndex(2);
+        }
+
+        @Test
+        public void sortedLedgers() {
+            for (long ledgerId : new long[]{5, 3, 9, 1}) {
+                index.add(ledgerId, 0, 0, 10);
+            }
+            Assert.assertArrayEquals(new long[]{1, 3, 5, 9}, index.sortedLedgers());
+            Assert.assertEquals(10, index.ledgerBytes(5));
+            Assert.assertEquals(0, index.ledgerBytes(2));
+        }
+
+        @Test
+        public void fullCacheRejectsRecords() throws Exception {
+            // The first record is kept in the heap, the next ones fill the 2 chunks
+            int capacity = 1 + 2 * LedgerRunsIndex.CHUNK_SIZE / 24;
+            for (long entryId = 0; entryId < capacity; entryId++) {
+                Assert.assertTrue(index.add(1, entryId, entryId, 1));
+            }
+            Assert.assertFalse(index.add(1, capacity, capacity, 1));
+            // A new ledger still fits, as its first record does not need a chunk
+            Assert.assertTrue(index.add(2, 0, 0, 1));
+
+            Assert.assertEquals(capacity, records(index, 1).size());
+        }
+
+        @Test
+        public void clear() throws Exception {
+            index.add(1, 0, 0, 10);
+            index.clear();
+
+            Assert.assertEquals(0, index.sortedLedgers().length);
+            Assert.assertTrue(records(index, 1).isEmpty());
+        }
+    }
+
+    /**
+     * The index lives in the write cache memory, so it fills the cache along with the entries.
+     */
+    public static class WriteCacheIndexTest {
+
+        @Test
+        public void indexCountsAgainstCacheSize() {
+            WriteCache cache = new WriteCache(ByteBufAllocator.DEFAULT, 16 * 1024, 16 * 1024);
+            try {
+                int added = 0;
+                while (cache.put(1, added, Unpooled.wrappedBuffer(new byte[16]))) {
+                    added++;
+                }
+                // Each entry takes 64 bytes once aligned, and its record 24 more bytes in the index chunks
+                Assert.assertTrue("Added " + added, added < 16 * 1024 / 64);
+                Assert.assertTrue("Added " + added, added > 16 * 1024 / (64 + 24 + 24));
+
+                List<Long> entryIds = new ArrayList<>();
+                cache.forEach((ledgerId, entryId, entry) -> entryIds.add(entryId));
+                Assert.assertEquals(added, entryIds.size());
+
+                cache.clear();
+                Assert.assertTrue(cache.put(1, 0, Unpooled.wrappedBuffer(new byte[16])));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            } finally {
+                cache.close();
+            }
+        }
+    }
+}
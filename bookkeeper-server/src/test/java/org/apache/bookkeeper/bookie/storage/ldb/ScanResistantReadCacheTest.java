@@ -0,0 +1,211 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class ScanResistantReadCacheTest {
+
+    @RunWith(Parameterized.class)
+    public static class AdmissionPolicyTest {
+
+        private final int promotionThreshold;
+
+        @Parameterized.Parameters(name = "promotionThreshold={0}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    {1},
+                    {2},
+                    {5},
+                    {15},
+            });
+        }
+
+        public AdmissionPolicyTest(int promotionThreshold) {
+            this.promotionThreshold = promotionThreshold;
+        }
+
+        @Test
+        public void admitAfterThresholdAccesses() {
+            FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(1024, promotionThreshold);
+            for (int i = 1; i < promotionThreshold; i++) {
+                policy.recordAccess(1, 1);
+                Assert.assertFalse(policy.admit(1, 1));
+            }
+            policy.recordAccess(1, 1);
+            Assert.assertTrue(policy.admit(1, 1));
+            Assert.assertEquals(promotionThreshold, policy.frequency(1, 1));
+        }
+
+        @Test
+        public void historyIsAged() {
+            FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(1024, promotionThreshold);
+            for (int i = 0; i < promotionThreshold; i++) {
+                policy.recordAccess(1, 1);
+            }
+            Assert.assertTrue(policy.admit(1, 1));
+
+            // A scan through many other entries halves the counters, a few times
+            for (long entryId = 0; entryId < 64 * 1024; entryId++) {
+                policy.recordAccess(2, entryId);
+            }
+            Assert.assertEquals(0, policy.frequency(1, 1));
+            Assert.assertFalse(policy.admit(1, 1));
+        }
+    }
+
+    public static class InvalidAdmissionPolicyTest {
+
+        @Test(expected = IllegalArgumentException.class)
+        public void zeroExpectedItems() {
+            new FrequencySketchAdmissionPolicy(0, 2);
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void thresholdAboveMaxCount() {
+            new FrequencySketchAdmissionPolicy(1024, 16);
+        }
+
+        @Test
+        public void countersSaturate() {
+            FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(1024, 15);
+            for (int i = 0; i < 100; i++) {
+                policy.recordAccess(1, 1);
+            }
+            Assert.assertEquals(15, policy.frequency(1, 1));
+        }
+    }
+
+    public static class SketchTest {
+
+        @Test
+        public void heapCostPerExpectedItem() {
+            Assert.assertEquals(8 * 1024 * 1024, new FrequencySketchAdmissionPolicy(1024 * 1024, 2).sizeInBytes());
+            // Rounded up to a power of two
+            Assert.assertEquals(16 * 1024 * 1024,
+                    new FrequencySketchAdmissionPolicy(1024 * 1024 + 1, 2).sizeInBytes());
+        }
+
+        @Test(timeout = 60000)
+        public void concurrentAccessesAreNotLost() throws Exception {
+            // Large enough for the history not to be aged during the test
+            FrequencySketchAdmissionPolicy policy = new FrequencySketchAdmissionPolicy(64 * 1024, 15);
+            int threads = 8;
+            int entries = 1000;
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Thread> recorders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread recorder = new Thread(() -> {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    for (long entryId = 0; entryId < entries; entryId++) {
+                        policy.recordAccess(1, entryId);
+                    }
+                });
+                recorder.start();
+                recorders.add(recorder);
+            }
+            for (Thread recorder : recorders) {
+                recorder.join();
+            }
+
+            // Collisions can only inflate the estimations
+            for (long entryId = 0; entryId < entries; entryId++) {
+                Assert.assertTrue("Entry " + entryId, policy.frequency(1, entryId) >= threads);
+            }
+        }
+    }
+
+    public static class ScanTest {
+
+        private static final int SEGMENT_SIZE = 4096;
+        private static final int ENTRY_SIZE = 64;
+
+        private ScanResistantReadCache cache;
+
+        @Before
+        public void setup() {
+            cache = new ScanResistantReadCache(
+                    new StripedReadCache(ByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE),
+                    new StripedReadCache(ByteBufAllocator.DEFAULT, 2 * SEGMENT_SIZE, SEGMENT_SIZE),
+                    new FrequencySketchAdmissionPolicy(1024, 2));
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+        }
+
+        private void readAndRelease(long ledgerId, long entryId) {
+            ByteBuf entry = cache.get(ledgerId, entryId);
+            if (entry != null) {
+                entry.release();
+            }
+        }
+
+        @Test
+        public void singleReadIsNotPromoted() {
+            cache.put(1, 1, Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]));
+            readAndRelease(1, 1);
+
+            Assert.assertEquals(0, cache.promotedCount());
+            Assert.assertEquals(1, cache.count());
+        }
+
+        @Test
+        public void hotEntrySurvivesScan() {
+            cache.put(1, 1, Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]));
+            readAndRelease(1, 1);
+            readAndRelease(1, 1);
+            Assert.assertEquals(1, cache.promotedCount());
+
+            // A scan of a cold ledger rotates the whole probationary area, a few times over
+            for (long entryId = 0; entryId < 8 * SEGMENT_SIZE / ENTRY_SIZE; entryId++) {
+                cache.put(2, entryId, Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]));
+                readAndRelease(2, entryId);
+            }
+
+            Assert.assertTrue(cache.hasEntry(1, 1));
+            readAndRelease(1, 1);
+            Assert.assertEquals(1, cache.protectedHitCount());
+            Assert.assertEquals(1, cache.promotedCount());
+            Assert.assertFalse(cache.hasEntry(2, 0));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class StripedReadCacheTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int CACHE_SIZE = 4 * SEGMENT_SIZE;
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        for (int i = 0; i < size; i++) {
+            entry.writeByte((int) (ledgerId * 31 + entryId + i));
+        }
+        return entry;
+    }
+
+    /**
+     * Both implementations of the read cache have to behave the same.
+     */
+    @RunWith(Parameterized.class)
+    public static class PutGetTest {
+
+        private final boolean striped;
+        private ReadCache cache;
+
+        @Parameterized.Parameters(name = "striped={0}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    {false},
+                    {true},
+            });
+        }
+
+        public PutGetTest(boolean striped) {
+            this.striped = striped;
+        }
+
+        @Before
+        public void setup() {
+            cache = striped
+                    ? new StripedReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE)
+                    : new DefaultReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+        }
+
+        @Test
+        public void getReturnsCopyOfEntry() {
+            ByteBuf entry = entry(1, 1, 100);
+            cache.put(1, 1, entry);
+
+            Assert.assertTrue(cache.hasEntry(1, 1));
+            Assert.assertEquals(1, cache.count());
+            ByteBuf res = cache.get(1, 1);
+            Assert.assertEquals(entry, res);
+            res.release();
+
+            // The caller keeps the ownership of the entry it put
+            Assert.assertEquals(1, entry.refCnt());
+        }
+
+        @Test
+        public void getMissingEntry() {
+            cache.put(1, 1, entry(1, 1, 100));
+
+            Assert.assertNull(cache.get(1, 2));
+            Assert.assertNull(cache.get(2, 1));
+            Assert.assertFalse(cache.hasEntry(1, 2));
+        }
+
+        @Test
+        public void entryLargerThanSegmentIsSkipped() {
+            cache.put(1, 1, entry(1, 1, SEGMENT_SIZE + 1));
+
+            Assert.assertNull(cache.get(1, 1));
+            Assert.assertEquals(0, cache.count());
+        }
+
+        @Test
+        public void rolloverEvictsOldestSegment() {
+            // Each entry takes a whole segment, so each put rolls over to the next one
+            int entrySize = SEGMENT_SIZE - 64;
+            for (long entryId = 0; entryId < 5; entryId++) {
+                cache.put(1, entryId, entry(1, entryId, entrySize));
+            }
+
+            Assert.assertNull(cache.get(1, 0));
+            Assert.assertEquals(1, cache.evictedCount());
+            Assert.assertEquals(4, cache.count());
+            for (long entryId = 1; entryId < 5; entryId++) {
+                ByteBuf res = cache.get(1, entryId);
+                Assert.assertEquals(entry(1, entryId, entrySize), res);
+                res.release();
+            }
+        }
+    }
+
+    /**
+     * Readers racing with the rollovers of the writers get either a miss or the right content.
+     */
+    public static class ConcurrentRolloverTest {
+
+        @Test(timeout = 60000)
+        public void readersNeverSeeRecycledContent() throws Exception {
+            StripedReadCache cache = new StripedReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+            int entrySize = 100;
+            int numEntries = 20000;
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<String> failure = new AtomicReference<>();
+            CountDownLatch readersDone = new CountDownLatch(4);
+
+            for (int r = 0; r < 4; r++) {
+                new Thread(() -> {
+                    try {
+                        long entryId = 0;
+                        while (!done.get()) {
+                            ByteBuf res = cache.get(1, entryId);
+                            if (res != null) {
+                                if (!res.equals(entry(1, entryId, entrySize))) {
+                                    failure.compareAndSet(null, "Wrong content for entry " + entryId);
+                                }
+                                res.release();
+                            }
+                            entryId = (entryId + 7) % numEntries;
+                        }
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }).start();
+            }
+
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                cache.put(1, entryId, entry(1, entryId, entrySize));
+            }
+            done.set(true);
+            Assert.assertTrue(readersDone.await(30, TimeUnit.SECONDS));
+            cache.close();
+
+            Assert.assertNull(failure.get());
+            Assert.assertTrue(cache.evictedCount() > 0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class WriteAdmissionControllerTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long CACHE_MAX_SIZE = 100 * MB;
+    private static final long MAX_DELAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * Adds which are never delayed.
+     */
+    @RunWith(Parameterized.class)
+    public static class NoDelayTest {
+
+        private final boolean flushMeasured;
+        private final long cacheSize;
+        private final boolean flushOngoing;
+
+        @Parameterized.Parameters(name = "flushMeasured={0}, cacheSize={1}, flushOngoing={2}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    // FLUSH_MEASURED  CACHE_SIZE  FLUSH_ONGOING
+                    // No flush in progress, the cache can be swapped
+                    {true, 90 * MB, false},
+                    // Bandwidth not known yet
+                    {false, 90 * MB, true},
+                    // Below the threshold
+                    {true, 50 * MB, true},
+                    {true, 0L, true},
+            });
+        }
+
+        public NoDelayTest(boolean flushMeasured, long cacheSize, boolean flushOngoing) {
+            this.flushMeasured = flushMeasured;
+            this.cacheSize = cacheSize;
+            this.flushOngoing = flushOngoing;
+        }
+
+        @Test
+        public void noDelay() {
+            WriteAdmissionController controller = new WriteAdmissionController(0.5, MAX_DELAY_NANOS);
+            if (flushMeasured) {
+                controller.recordFlush(MB, TimeUnit.SECONDS.toNanos(1));
+            }
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(0, controller.acquire((int) MB, cacheSize, CACHE_MAX_SIZE, flushOngoing));
+            }
+            Assert.assertEquals(0, controller.getPressurePercentage());
+            Assert.assertEquals(0, controller.getAdmissionRate());
+        }
+    }
+
+    public static class ThrottlingTest {
+
+        private WriteAdmissionController controller;
+
+        @Before
+        public void setup() {
+            controller = new WriteAdmissionController(0.5, MAX_DELAY_NANOS);
+            controller.recordFlush(10 * MB, TimeUnit.SECONDS.toNanos(1));
+        }
+
+        @Test
+        public void bandwidthIsSmoothed() {
+            Assert.assertEquals(10 * MB, controller.getFlushBandwidth());
+            controller.recordFlush(30 * MB, TimeUnit.SECONDS.toNanos(1));
+            Assert.assertEquals(20 * MB, controller.getFlushBandwidth());
+
+            // Empty or instant flushes tell nothing about the bandwidth
+            controller.recordFlush(0, TimeUnit.SECONDS.toNanos(1));
+            controller.recordFlush(MB, 0);
+            Assert.assertEquals(20 * MB, controller.getFlushBandwidth());
+        }
+
+        @Test
+        public void delayGrowsWithFillLevel() {
+            // At 75% the pressure is 0.5: 10MB are admitted at 20MB/s, in 500ms
+            long delay = controller.acquire((int) (10 * MB), 75 * MB, CACHE_MAX_SIZE, true);
+            Assert.assertEquals(50, controller.getPressurePercentage());
+            Assert.assertEquals(20 * MB, controller.getAdmissionRate());
+            assertDelayMillis(500, delay);
+
+            // The next add waits for the previous one too
+            assertDelayMillis(1000, controller.acquire((int) (10 * MB), 75 * MB, CACHE_MAX_SIZE, true));
+
+            // Full cache, 10MB are admitted at the flush bandwidth
+            assertDelayMillis(2000, controller.acquire((int) (10 * MB), CACHE_MAX_SIZE, CACHE_MAX_SIZE, true));
+            Assert.assertEquals(100, controller.getPressurePercentage());
+        }
+
+        @Test
+        public void delayIsCapped() {
+            WriteAdmissionController capped = new WriteAdmissionController(0.5, TimeUnit.MILLISECONDS.toNanos(20));
+            capped.recordFlush(MB, TimeUnit.SECONDS.toNanos(1));
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20),
+                        capped.acquire((int) MB, CACHE_MAX_SIZE, CACHE_MAX_SIZE, true));
+            }
+        }
+
+        @Test
+        public void pressureIsResetBelowThreshold() {
+            controller.acquire((int) MB, 90 * MB, CACHE_MAX_SIZE, true);
+            Assert.assertEquals(80, controller.getPressurePercentage());
+            Assert.assertEquals(0, controller.acquire((int) MB, 90 * MB, CACHE_MAX_SIZE, false));
+            Assert.assertEquals(0, controller.getPressurePercentage());
+        }
+
+        private static void assertDelayMillis(long expectedMillis, long delayNanos) {
+            // Tolerate the burst allowance and the time elapsed between the calls
+            long delayMillis = TimeUnit.NANOSECONDS.toMillis(delayNanos);
+            Assert.assertTrue("Delay " + delayMillis + " ms, expected about " + expectedMillis + " ms",
+                    delayMillis <= expectedMillis && delayMillis >= expectedMillis - 200);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+@RunWith(Enclosed.class)
+public class WriteCacheParallelForEachTest {
+
+    private static final int NUM_LEDGERS = 10;
+    private static final int ENTRIES_PER_LEDGER = 50;
+
+    /**
+     * Consumer which records the entries it gets, for each ledger.
+     */
+    private static class RecordingConsumer implements WriteCache.EntryConsumer {
+        private final int id;
+        private final Map<Long, Integer> ledgerConsumers;
+        private final Map<Long, Long> lastEntries = new ConcurrentHashMap<>();
+        private int count;
+
+        RecordingConsumer(int id, Map<Long, Integer> ledgerConsumers) {
+            this.id = id;
+            this.ledgerConsumers = ledgerConsumers;
+        }
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) throws IOException {
+            Integer previous = ledgerConsumers.putIfAbsent(ledgerId, id);
+            Assert.assertTrue("Ledger " + ledgerId + " split across consumers", previous == null || previous == id);
+            Long lastEntryId = lastEntries.put(ledgerId, entryId);
+            Assert.assertEquals(lastEntryId == null ? 0 : lastEntryId + 1, entryId);
+            Assert.assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            Assert.assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            count++;
+        }
+    }
+
+    private static void fill(WriteCache cache, int numLedgers) {
+        // Interleave the ledgers, the way the journal adds them
+        for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+            for (long ledgerId = numLedgers; ledgerId > 0; ledgerId--) {
+                // The size varies with the ledger, so the partitions are balanced on bytes, not on ledgers
+                int size = 16 + (int) ledgerId * 8;
+                Assert.assertTrue(cache.put(ledgerId, entryId,
+                        Unpooled.buffer(size).writeLong(ledgerId).writeLong(entryId).writerIndex(size)));
+            }
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class PartitionTest {
+
+        private static ExecutorService executor;
+
+        private final int numConsumers;
+        private final int numLedgers;
+        private final int expectedPartitions;
+        private WriteCache cache;
+
+        @Parameterized.Parameters(name = "consumers={0}, ledgers={1}")
+        public static Collection<Object[]> getParams() {
+            return Arrays.asList(new Object[][]{
+                    // CONSUMERS  LEDGERS  EXPECTED_PARTITIONS
+                    {1, NUM_LEDGERS, 1},
+                    {2, NUM_LEDGERS, 2},
+                    {4, NUM_LEDGERS, 4},
+                    // Never more partitions than ledgers
+                    {4, 2, 2},
+                    {4, 0, 0},
+            });
+        }
+
+        public PartitionTest(int numConsumers, int numLedgers, int expectedPartitions) {
+            this.numConsumers = numConsumers;
+            this.numLedgers = numLedgers;
+            this.expectedPartitions = expectedPartitions;
+        }
+
+        @BeforeClass
+        public static void setupExecutor() {
+            executor = Executors.newFixedThreadPool(4);
+        }
+
+        @AfterClass
+        public static void shutdownExecutor() {
+            executor.shutdown();
+        }
+
+        @Before
+        public void setup() {
+            cache = new WriteCache(ByteBufAllocator.DEFAULT, 1024 * 1024);
+            fill(cache, numLedgers);
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+        }
+
+        @Test
+        public void eachLedgerGoesToSingleConsumerInOrder() throws Exception {
+            Map<Long, Integer> ledgerConsumers = new ConcurrentHashMap<>();
+            List<RecordingConsumer> consumers = new ArrayList<>();
+            for (int i = 0; i < numConsumers; i++) {
+                consumers.add(new RecordingConsumer(i, ledgerConsumers));
+            }
+
+            int partitions = cache.forEach(new ArrayList<>(consumers), executor);
+
+            Assert.assertEquals(expectedPartitions, partitions);
+            Assert.assertEquals(numLedgers, ledgerConsumers.size());
+            int total = 0;
+            for (RecordingConsumer consumer : consumers) {
+                total += consumer.count;
+                for (long lastEntryId : consumer.lastEntries.values()) {
+                    Assert.assertEquals(ENTRIES_PER_LEDGER - 1, lastEntryId);
+                }
+            }
+            Assert.assertEquals(numLedgers * ENTRIES_PER_LEDGER, total);
+        }
+    }
+
+    public static class FailureTest {
+
+        private ExecutorService executor;
+        private WriteCache cache;
+
+        @Before
+        public void setup() {
+            executor = Executors.newFixedThreadPool(2);
+            cache = new WriteCache(ByteBufAllocator.DEFAULT, 1024 * 1024);
+            fill(cache, NUM_LEDGERS);
+        }
+
+        @After
+        public void clean() {
+            cache.close();
+            executor.shutdown();
+        }
+
+        @Test
+        public void failureOfAnyPartitionIsThrown() {
+            List<WriteCache.EntryConsumer> consumers = new ArrayList<>();
+            consumers.add((ledgerId, entryId, entry) -> {
+                throw new IOException("Failed to write ledger " + ledgerId);
+            });
+            consumers.add((ledgerId, entryId, entry) -> { });
+
+            try {
+                cache.forEach(consumers, executor);
+                Assert.fail("The failure of the first partition should be thrown");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Failed to write ledger"));
+            }
+        }
+
+        @Test
+        public void deletedLedgersAreSkipped() throws Exception {
+            cache.deleteLedger(3);
+            Map<Long, Integer> ledgerConsumers = new ConcurrentHashMap<>();
+            List<WriteCache.EntryConsumer> consumers = new ArrayList<>();
+            consumers.add(new RecordingConsumer(0, ledgerConsumers));
+            consumers.add(new RecordingConsumer(1, ledgerConsumers));
+
+            cache.forEach(consumers, executor);
+
+            Assert.assertEquals(NUM_LEDGERS - 1, ledgerConsumers.size());
+            Assert.assertFalse(ledgerConsumers.containsKey(3L));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of writing entries through a {@link BufferedChannel}, with the entries larger than the free space of the
+ * write buffer either copied to the write buffer, or gathered with it in a single write.
+ *
+ * <p>Each entry is written as a size header followed by the payload, like the entry logger and the journal do. The
+ * channel writes to /dev/null, so that only the copies and the syscalls are measured. Run with {@code -prof gc} to
+ * compare the allocations.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class BufferedChannelWriteBenchmark {
+
+    @State(Scope.Thread)
+    public static class ChannelState {
+
+        @Param({"copy", "gather"})
+        private String writeMode;
+
+        @Param({"1024", "65536", "1048576"})
+        private int entrySize;
+
+        @Param({"65536"})
+        private int writeBufferSize;
+
+        private BufferedChannel channel;
+        private ByteBuf header;
+        private ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+            FileChannel fc = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+            if ("copy".equals(writeMode)) {
+                channel = new CopyingBufferedChannel(allocator, fc, writeBufferSize);
+            } else {
+                channel = new BufferedChannel(allocator, fc, writeBufferSize);
+            }
+
+            header = allocator.directBuffer(Integer.BYTES);
+            header.writeInt(entrySize);
+            entry = allocator.directBuffer(entrySize);
+            byte[] data = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(data);
+            entry.writeBytes(data);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            channel.close();
+            header.release();
+            entry.release();
+        }
+    }
+
+    /**
+     * A channel which always copies the data to its write buffer.
+     */
+    private static class CopyingBufferedChannel extends BufferedChannel {
+        CopyingBufferedChannel(ByteBufAllocator allocator, FileChannel fc, int capacity) throws IOException {
+            super(allocator, fc, capacity);
+        }
+
+        @Override
+        protected boolean writeGathered(ByteBuf src) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public long writeEntry(ChannelState s) throws IOException {
+        s.channel.write(s.header);
+        s.channel.write(s.entry);
+        return s.channel.position();
+    }
+}
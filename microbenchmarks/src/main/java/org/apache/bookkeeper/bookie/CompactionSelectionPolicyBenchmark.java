@@ -0,0 +1,232 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simulates a bookie disk of fixed size, kept at a fixed ratio of live data, to compare the write amplification of
+ * the compaction {@link EntryLogSelectionPolicy entry log selection policies}.
+ *
+ * <p>Each operation writes an entry log worth of new ledgers, and deletes as many old ledgers. With the uniform
+ * workload any live ledger is deleted with the same probability, and with the hot-cold workload 90% of the deletions
+ * hit the 10% of the ledgers which are hot. When the disk runs out of free entry logs, a compaction round copies the
+ * live ledgers of the entry logs chosen by the policy to new entry logs, until enough entry logs are free. The write
+ * amplification is {@code (userBytes + copiedBytes) / userBytes}, from the counters reported for each iteration.
+ * {@code stalls} counts the compaction rounds which found no entry log below the threshold.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class CompactionSelectionPolicyBenchmark {
+
+    private static final int DISK_ENTRY_LOGS = 400;
+    private static final int LEDGERS_PER_ENTRY_LOG = 64;
+    private static final long LEDGER_SIZE = 1024 * 1024;
+    private static final int MIN_FREE_ENTRY_LOGS = 4;
+    private static final double HOT_LEDGERS_RATIO = 0.1;
+    private static final double HOT_DELETIONS_RATIO = 0.9;
+
+    private static class Ledger {
+        final long ledgerId;
+        long entryLogId;
+
+        Ledger(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+    }
+
+    /**
+     * The bytes written and copied in an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long userBytes;
+        public long copiedBytes;
+        public long stalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            userBytes = 0;
+            copiedBytes = 0;
+            stalls = 0;
+        }
+    }
+
+    /**
+     * The entry logs and the ledgers of the simulated disk.
+     */
+    @State(Scope.Thread)
+    public static class Disk {
+        @Param({"usage", "costBenefit"})
+        private String policy;
+
+        @Param({"uniform", "hotCold"})
+        private String workload;
+
+        @Param({"0.75"})
+        private double liveRatio;
+
+        @Param({"0.9"})
+        private double threshold;
+
+        private EntryLogSelectionPolicy selectionPolicy;
+        private final Random random = new Random(1);
+        private final InMemoryEntryLogMetadataMap sealed = new InMemoryEntryLogMetadataMap();
+        private final Map<Long, Ledger> ledgers = new HashMap<>();
+        private final List<Ledger> hotLedgers = new ArrayList<>();
+        private final List<Ledger> coldLedgers = new ArrayList<>();
+        private OpenEntryLog userLog;
+        private OpenEntryLog compactionLog;
+        private long nextEntryLogId;
+        private long nextLedgerId;
+
+        /**
+         * An entry log being written.
+         */
+        private class OpenEntryLog {
+            EntryLogMetadata meta;
+
+            void add(Ledger ledger) {
+                if (meta == null) {
+                    meta = new EntryLogMetadata(nextEntryLogId++);
+                }
+                meta.addLedgerSize(ledger.ledgerId, LEDGER_SIZE);
+                ledger.entryLogId = meta.getEntryLogId();
+                if (meta.getLedgersMap().size() == LEDGERS_PER_ENTRY_LOG) {
+                    sealed.put(meta.getEntryLogId(), meta);
+                    meta = null;
+                }
+            }
+        }
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            selectionPolicy = "usage".equals(policy)
+                    ? new UsageEntryLogSelectionPolicy() : new CostBenefitEntryLogSelectionPolicy();
+            userLog = new OpenEntryLog();
+            compactionLog = new OpenEntryLog();
+            int liveLedgers = (int) (DISK_ENTRY_LOGS * LEDGERS_PER_ENTRY_LOG * liveRatio);
+            for (int i = 0; i < liveLedgers; i++) {
+                boolean hot = "hotCold".equals(workload) && random.nextDouble() < HOT_LEDGERS_RATIO;
+                userLog.add(newLedger(hot));
+            }
+        }
+
+        private Ledger newLedger(boolean hot) {
+            Ledger ledger = new Ledger(nextLedgerId++);
+            ledgers.put(ledger.ledgerId, ledger);
+            (hot ? hotLedgers : coldLedgers).add(ledger);
+            return ledger;
+        }
+
+        private void deleteLedger(boolean hot) throws Exception {
+            List<Ledger> group = hot ? hotLedgers : coldLedgers;
+            int index = random.nextInt(group.size());
+            Ledger ledger = group.get(index);
+            group.set(index, group.get(group.size() - 1));
+            group.remove(group.size() - 1);
+            ledgers.remove(ledger.ledgerId);
+
+            for (OpenEntryLog log : new OpenEntryLog[] {userLog, compactionLog}) {
+                if (log.meta != null && log.meta.getEntryLogId() == ledger.entryLogId) {
+                    log.meta.removeLedgerIf(l -> l == ledger.ledgerId);
+                    return;
+                }
+            }
+            sealed.forKey(ledger.entryLogId, (entryLogId, meta) -> meta.removeLedgerIf(l -> l == ledger.ledgerId));
+        }
+
+        private int freeEntryLogs() throws Exception {
+            return DISK_ENTRY_LOGS - sealed.size() - 2;
+        }
+
+        private void compact(Counters counters) throws Exception {
+            List<EntryLogSelectionPolicy.Candidate> candidates = new ArrayList<>();
+            List<Long> emptyEntryLogs = new ArrayList<>();
+            long[] newest = {-1L};
+            sealed.forEach((entryLogId, meta) -> {
+                newest[0] = Math.max(newest[0], entryLogId);
+                if (meta.isEmpty()) {
+                    emptyEntryLogs.add(entryLogId);
+                } else if (meta.getUsage() < threshold) {
+                    candidates.add(new EntryLogSelectionPolicy.Candidate(entryLogId, meta.getTotalSize(),
+                            meta.getRemainingSize(), meta.getUsage()));
+                }
+            });
+            // The garbage collector removes the empty entry logs without compacting them
+            for (long entryLogId : emptyEntryLogs) {
+                sealed.remove(entryLogId);
+            }
+
+            for (EntryLogSelectionPolicy.Candidate candidate : selectionPolicy.select(candidates, newest[0])) {
+                if (freeEntryLogs() >= MIN_FREE_ENTRY_LOGS) {
+                    return;
+                }
+                sealed.forKey(candidate.getEntryLogId(), (entryLogId, meta) ->
+                        meta.getLedgersMap().forEach((ledgerId, size) -> {
+                            compactionLog.add(ledgers.get(ledgerId));
+                            counters.copiedBytes += size;
+                        }));
+                sealed.remove(candidate.getEntryLogId());
+            }
+            if (freeEntryLogs() < MIN_FREE_ENTRY_LOGS) {
+                counters.stalls++;
+            }
+        }
+
+        void write(Counters counters) throws Exception {
+            for (int i = 0; i < LEDGERS_PER_ENTRY_LOG; i++) {
+                boolean hot = "hotCold".equals(workload) && random.nextDouble() < HOT_DELETIONS_RATIO;
+                deleteLedger(hot);
+                userLog.add(newLedger(hot));
+                counters.userBytes += LEDGER_SIZE;
+            }
+            if (freeEntryLogs() < MIN_FREE_ENTRY_LOGS) {
+                compact(counters);
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeEntryLog(Disk disk, Counters counters) throws Exception {
+        disk.write(counters);
+    }
+}
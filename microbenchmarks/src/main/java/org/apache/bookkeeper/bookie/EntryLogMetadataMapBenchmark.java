@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory and access cost of the entry log metadata kept by the garbage collector, with the ledgers of each entry log
+ * in a hash map on the heap, or in a {@link CompactEntryLogMetadata}.
+ *
+ * <p>The setup prints the heap used by the metadata, measured after a full gc, and the size of the compact
+ * encodings in direct memory. The benchmarks measure a garbage collection pass, which checks every ledger of
+ * every entry log, and the lookups of the compaction.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLogMetadataMapBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MetadataState {
+
+        @Param({"heap", "compact"})
+        private String encoding;
+
+        @Param({"64", "1024"})
+        private int ledgersPerEntryLog;
+
+        @Param({"2000"})
+        private int numEntryLogs;
+
+        private InMemoryEntryLogMetadataMap map;
+        // The ledger ids of an entry log are between its first ledger id and the one of the next entry log
+        private long[] firstLedgerIds;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            long heapBefore = usedHeap();
+            map = "compact".equals(encoding)
+                    ? new InMemoryEntryLogMetadataMap(PooledByteBufAllocator.DEFAULT)
+                    : new InMemoryEntryLogMetadataMap();
+
+            // The ledgers are written a few at a time, and spread over the entry logs written meanwhile
+            Random random = new Random(1);
+            long ledgerId = 0;
+            firstLedgerIds = new long[numEntryLogs + 1];
+            for (int i = 0; i < numEntryLogs; i++) {
+                firstLedgerIds[i] = ledgerId + 1;
+                EntryLogMetadata meta = new EntryLogMetadata(i);
+                for (int j = 0; j < ledgersPerEntryLog; j++) {
+                    ledgerId += 1 + random.nextInt(8);
+                    meta.addLedgerSize(ledgerId, 1 + random.nextInt(1024 * 1024));
+                }
+                map.put(i, meta);
+            }
+            firstLedgerIds[numEntryLogs] = ledgerId + 1;
+
+            long heapUsed = usedHeap() - heapBefore;
+            LongAdder encodedSize = new LongAdder();
+            map.forEach((entryLogId, meta) -> {
+                if (meta instanceof CompactEntryLogMetadata) {
+                    encodedSize.add(((CompactEntryLogMetadata) meta).getEncodedSize());
+                }
+            });
+            System.out.printf("%n%s: %d entry logs of %d ledgers, heap %d bytes per entry log,"
+                    + " direct %d bytes per entry log%n", encoding, numEntryLogs, ledgersPerEntryLog,
+                    heapUsed / numEntryLogs, encodedSize.sum() / numEntryLogs);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            map.close();
+        }
+
+        private static long usedHeap() throws InterruptedException {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+    }
+
+    /**
+     * Check every ledger of every entry log, without removing any, like a garbage collection pass.
+     */
+    @Benchmark
+    public long gcPass(MetadataState s) throws Exception {
+        LongAdder checked = new LongAdder();
+        s.map.forEach((entryLogId, meta) -> meta.removeLedgerIf(ledgerId -> {
+            checked.increment();
+            return false;
+        }));
+        return checked.sum();
+    }
+
+    /**
+     * Look up a ledger in an entry log, like the compaction does for each entry.
+     */
+    @Benchmark
+    public boolean containsLedger(MetadataState s) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int entryLogId = random.nextInt(s.numEntryLogs);
+        long ledgerId = random.nextLong(s.firstLedgerIds[entryLogId], s.firstLedgerIds[entryLogId + 1]);
+        boolean[] contains = new boolean[1];
+        s.map.forKey(entryLogId, (id, meta) -> contains[0] = meta.containsLedger(ledgerId));
+        return contains[0];
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.DefaultReadCache;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadCache;
+import org.apache.bookkeeper.bookie.storage.ldb.StripedReadCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contended get/put throughput of the DbLedgerStorage read cache implementations.
+ *
+ * <p>The cache is deliberately small compared to the number of distinct entries written so that puts keep rolling
+ * over segments while the readers are running.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class ReadCacheBenchmark {
+
+    private static final int LEDGERS = 64;
+    private static final int ENTRIES_PER_LEDGER = 4096;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param({"default", "striped"})
+        private String cacheType;
+
+        @Param({"1024"})
+        private int entrySize;
+
+        @Param({"64"})
+        private int cacheSizeMb;
+
+        private ReadCache cache;
+        private ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            long cacheSize = cacheSizeMb * 1024L * 1024L;
+            int segmentSize = (int) (cacheSize / 8);
+            if ("striped".equals(cacheType)) {
+                cache = new StripedReadCache(PooledByteBufAllocator.DEFAULT, cacheSize, segmentSize);
+            } else {
+                cache = new DefaultReadCache(PooledByteBufAllocator.DEFAULT, cacheSize, segmentSize);
+            }
+
+            entry = Unpooled.directBuffer(entrySize, entrySize);
+            entry.writerIndex(entrySize);
+
+            for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+                for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                    cache.put(ledgerId, entryId, entry);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            cache.close();
+            entry.release();
+        }
+    }
+
+    private static boolean get(CacheState s) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        ByteBuf res = s.cache.get(r.nextInt(LEDGERS), r.nextInt(ENTRIES_PER_LEDGER));
+        if (res != null) {
+            ReferenceCountUtil.release(res);
+            return true;
+        }
+        return false;
+    }
+
+    private static void put(CacheState s) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        s.cache.put(r.nextInt(LEDGERS), r.nextInt(ENTRIES_PER_LEDGER), s.entry);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean get8Threads(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean get32Threads(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean get64Threads(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void put8Threads(CacheState s) {
+        put(s);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void put32Threads(CacheState s) {
+        put(s);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void put64Threads(CacheState s) {
+        put(s);
+    }
+
+    @Benchmark
+    @Group("mixed8Threads")
+    @GroupThreads(6)
+    public boolean mixed8ThreadsGet(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Group("mixed8Threads")
+    @GroupThreads(2)
+    public void mixed8ThreadsPut(CacheState s) {
+        put(s);
+    }
+
+    @Benchmark
+    @Group("mixed32Threads")
+    @GroupThreads(24)
+    public boolean mixed32ThreadsGet(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Group("mixed32Threads")
+    @GroupThreads(8)
+    public void mixed32ThreadsPut(CacheState s) {
+        put(s);
+    }
+
+    @Benchmark
+    @Group("mixed64Threads")
+    @GroupThreads(48)
+    public boolean mixed64ThreadsGet(CacheState s) {
+        return get(s);
+    }
+
+    @Benchmark
+    @Group("mixed64Threads")
+    @GroupThreads(16)
+    public void mixed64ThreadsPut(CacheState s) {
+        put(s);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.ArrayGroupSort;
+import org.apache.bookkeeper.bookie.storage.ldb.WriteCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of iterating the write cache in (ledgerId, entryId) order, as done by every flush.
+ *
+ * <p>{@code writeCacheForEach} walks the per-ledger runs maintained by the cache. {@code groupSortForEach} is the
+ * previous approach, used as a baseline: copy the (ledgerId, entryId, offset, length) groups, in insertion order,
+ * into an array and sort it with {@link ArrayGroupSort}.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class WriteCacheForEachBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param({"1000000"})
+        private int entries;
+
+        @Param({"10", "1000"})
+        private int ledgers;
+
+        @Param({"64"})
+        private int entrySize;
+
+        private WriteCache cache;
+        private long[] insertedItems;
+        private long[] items;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            long cacheSize = (long) entries * WriteCacheForEachBenchmark.align64(entrySize) + 1024 * 1024;
+            cache = new WriteCache(PooledByteBufAllocator.DEFAULT, cacheSize);
+            insertedItems = new long[entries * 4];
+            items = new long[entries * 4];
+
+            ByteBuf entry = Unpooled.buffer(entrySize);
+            entry.writerIndex(entrySize);
+            long offset = 0;
+            for (int i = 0; i < entries; i++) {
+                // Ledgers are written in an interleaved way, as when many clients are writing at the same time
+                long ledgerId = i % ledgers;
+                long entryId = i / ledgers;
+                cache.put(ledgerId, entryId, entry);
+
+                insertedItems[i * 4] = ledgerId;
+                insertedItems[i * 4 + 1] = entryId;
+                insertedItems[i * 4 + 2] = offset;
+                insertedItems[i * 4 + 3] = entrySize;
+                offset += WriteCacheForEachBenchmark.align64(entrySize);
+            }
+            entry.release();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            cache.close();
+        }
+    }
+
+    private static int align64(int size) {
+        return (size + 63) & ~63;
+    }
+
+    @Benchmark
+    public void writeCacheForEach(CacheState s, Blackhole bh) throws IOException {
+        s.cache.forEach((ledgerId, entryId, entry) -> bh.consume(entry.readerIndex()));
+    }
+
+    @Benchmark
+    public void groupSortForEach(CacheState s, Blackhole bh) {
+        long[] items = s.items;
+        System.arraycopy(s.insertedItems, 0, items, 0, items.length);
+        ArrayGroupSort.sort(items, 0, items.length);
+        for (int i = 0; i < items.length; i += 4) {
+            bh.consume(items[i + 2]);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link NativeIO} which submits the batches of {@link #pwriteBatch} to an io_uring, so that all the writes of
+ * a batch and the following sync cost a single syscall, and run concurrently on the device. A batch with a single
+ * write still uses pwrite, which has a lower latency than a round trip through the ring.
+ *
+ * <p>A ring can only be used by one thread at a time, so the rings are pooled, and a new ring is set up when all
+ * the rings are in use. A ring is discarded when a batch fails, and the pooled rings are released by
+ * {@link #close()}. When io_uring is not available, because the kernel is older than 5.1 or the syscalls are
+ * filtered, the batches fall back to pwrite and fsync.
+ */
+public class IoUringNativeIO extends NativeIOImpl implements AutoCloseable {
+    private static final int RING_ENTRIES = 32;
+
+    private static volatile Boolean available = null;
+
+    private final Queue<Long> rings = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed = false;
+
+    /**
+     * @return true if io_uring can be used on this platform
+     */
+    public static boolean isAvailable() {
+        if (available == null) {
+            synchronized (IoUringNativeIO.class) {
+                if (available == null) {
+                    available = probe();
+                }
+            }
+        }
+        return available;
+    }
+
+    private static boolean probe() {
+        try {
+            NativeIOJni.io_uring_close(NativeIOJni.io_uring_setup(RING_ENTRIES));
+            return true;
+        } catch (NativeIOException | LinkageError | RuntimeException e) {
+            // Native library not loaded, or io_uring not supported
+            return false;
+        }
+    }
+
+    @Override
+    public long pwriteBatch(int fd, long[] pointers, int[] counts, long[] offsets, int n, int syncMode)
+            throws NativeIOException {
+        if (n < 2 || closed || !isAvailable()) {
+            return super.pwriteBatch(fd, pointers, counts, offsets, n, syncMode);
+        }
+
+        Long ring = rings.poll();
+        if (ring == null) {
+            try {
+                ring = NativeIOJni.io_uring_setup(RING_ENTRIES);
+            } catch (NativeIOException e) {
+                // Out of locked memory, or of file descriptors
+                return super.pwriteBatch(fd, pointers, counts, offsets, n, syncMode);
+            }
+        }
+        long written;
+        try {
+            written = NativeIOJni.io_uring_pwrite_batch(ring, fd, pointers, counts, offsets, n, syncMode);
+        } catch (NativeIOException | RuntimeException e) {
+            // The ring might still hold entries of the failed batch
+            NativeIOJni.io_uring_close(ring);
+            throw e;
+        }
+
+        rings.add(ring);
+        if (closed) {
+            closeRings();
+        }
+        return written;
+    }
+
+    /**
+     * Release the rings. The batches written after, or concurrently, fall back to pwrite and fsync.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeRings();
+    }
+
+    private void closeRings() {
+        Long ring;
+        while ((ring = rings.poll()) != null) {
+            NativeIOJni.io_uring_close(ring);
+        }
+    }
+}
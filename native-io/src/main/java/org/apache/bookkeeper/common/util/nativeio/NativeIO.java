@@ -37,10 +37,21 @@ public interface NativeIO {
 
     int FALLOC_FL_ZERO_RANGE = 0x10;
 
+    // Sync modes of pwriteBatch
+    int SYNC_NONE = 0;
+    int SYNC_DATA = 1;
+    int SYNC_ALL = 2;
+
     int open(String pathname, int flags, int mode) throws NativeIOException;
 
     int fsync(int fd) throws NativeIOException;
 
+    /**
+     * Like fsync, but does not flush the metadata that is not needed to read the data back, such as the
+     * modification time. Falls back to fsync where fdatasync is not available.
+     */
+    int fdatasync(int fd) throws NativeIOException;
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
@@ -55,6 +66,35 @@ public interface NativeIO {
 
     int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException;
 
+    /**
+     * Write a batch of buffers, each at its own offset, and then sync the file, with fdatasync for
+     * {@link #SYNC_DATA}, fsync for {@link #SYNC_ALL}, or not at all for {@link #SYNC_NONE}. The sync only starts
+     * once all the writes of the batch have completed.
+     *
+     * <p>This implementation issues a pwrite per buffer, stopping at the first short write, followed by the sync.
+     * Implementations backed by an asynchronous I/O interface can submit the whole batch with a single syscall.
+     *
+     * @return the total number of bytes written, which is less than the total size of the buffers if a write
+     *         was short
+     */
+    default long pwriteBatch(int fd, long[] pointers, int[] counts, long[] offsets, int n, int syncMode)
+            throws NativeIOException {
+        long written = 0;
+        for (int i = 0; i < n; i++) {
+            int ret = pwrite(fd, pointers[i], counts[i], offsets[i]);
+            written += ret;
+            if (ret != counts[i]) {
+                break;
+            }
+        }
+        if (syncMode == SYNC_DATA) {
+            fdatasync(fd);
+        } else if (syncMode == SYNC_ALL) {
+            fsync(fd);
+        }
+        return written;
+    }
+
     long posix_memalign(int alignment, int size) throws NativeIOException;
 
     void free(long pointer) throws NativeIOException;
@@ -28,6 +28,8 @@ class NativeIOJni {
 
     static native int fsync(int fd) throws NativeIOException;
 
+    static native int fdatasync(int fd) throws NativeIOException;
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
@@ -48,6 +50,19 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    /**
+     * io_uring is a linux-only interface, available since linux 5.1, so callers must handle the possibility
+     * that it does not exist.
+     *
+     * @return the address of the ring, to be passed to the other io_uring methods
+     */
+    static native long io_uring_setup(int entries) throws NativeIOException;
+
+    static native long io_uring_pwrite_batch(long ring, int fd, long[] pointers, int[] counts, long[] offsets,
+                                             int n, int syncMode) throws NativeIOException;
+
+    static native void io_uring_close(long ring);
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
@@ -26,6 +26,16 @@
 #include <string.h>
 #include <unistd.h>
 
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#define HAVE_IO_URING
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <sys/uio.h>
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 #ifdef _WIN32
@@ -174,6 +184,28 @@ Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_fsync(JNIEnv * env,
     return res;
 }
 
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    fdatasync
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_fdatasync(JNIEnv * env,
+                                                                   jclass clazz,
+                                                                   jint fd) {
+#ifdef __linux__
+    int res = fdatasync(fd);
+#else
+    int res = fsync(fd);
+#endif
+
+    if (res == -1) {
+      throwExceptionWithErrno(env, "Failed to fdatasync");
+    }
+
+    return res;
+}
+
 /*
  * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
  * Method:    fallocate
@@ -311,3 +343,302 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+
+#ifdef HAVE_IO_URING
+
+/*
+ * The rings are set up and driven with the raw syscalls, so that the library does not depend on liburing.
+ */
+struct io_ring {
+    int fd;
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    unsigned sq_entries;
+    struct io_uring_sqe *sqes;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+    void *sq_ptr;
+    size_t sq_len;
+    void *cq_ptr;
+    size_t cq_len;
+    size_t sqes_len;
+};
+
+static void io_ring_free(struct io_ring *ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_len);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED && ring->cq_ptr != ring->sq_ptr) {
+        munmap(ring->cq_ptr, ring->cq_len);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_len);
+    }
+    close(ring->fd);
+    free(ring);
+}
+
+/*
+ * Consume the available completions of a batch of n writes.
+ *
+ * Returns the number of completions consumed.
+ */
+static unsigned io_ring_reap(struct io_ring *ring, jint *counts, jint n, long *written, int *next, int *error) {
+    unsigned completed = 0;
+    unsigned head = *ring->cq_head;
+    while (head != __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE)) {
+        struct io_uring_cqe *cqe = &ring->cqes[head & *ring->cq_mask];
+        if (cqe->res < 0) {
+            if (*error == 0) {
+                *error = -cqe->res;
+            }
+        } else if (cqe->user_data != (__u64) -1) {
+            if (cqe->user_data >= (__u64) n) {
+                // Not a write of this batch
+                if (*error == 0) {
+                    *error = EIO;
+                }
+            } else {
+                *written += cqe->res;
+                if (cqe->res != counts[cqe->user_data]) {
+                    // Short write, let the caller find it from the bytes written
+                    *next = n;
+                }
+            }
+        }
+        head++;
+        completed++;
+    }
+    __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+    return completed;
+}
+
+/*
+ * Wait for the given number of completions, and discard them.
+ */
+static void io_ring_wait_completions(struct io_ring *ring, unsigned count) {
+    while (count > 0) {
+        int res = syscall(__NR_io_uring_enter, ring->fd, 0, count, IORING_ENTER_GETEVENTS, NULL, 0);
+        if (res == -1 && errno != EINTR && errno != EAGAIN && errno != EBUSY) {
+            // Cannot wait in the kernel, poll the completion queue
+            usleep(100);
+        }
+
+        unsigned head = *ring->cq_head;
+        while (count > 0 && head != __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE)) {
+            head++;
+            count--;
+        }
+        __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+    }
+}
+
+static void io_ring_release_batch(JNIEnv *env, jlongArray pointers, jlong *cPointers, jintArray counts,
+                                  jint *cCounts, jlongArray offsets, jlong *cOffsets, struct iovec *iovecs) {
+    free(iovecs);
+    if (cPointers != NULL) {
+        (*env)->ReleaseLongArrayElements(env, pointers, cPointers, JNI_ABORT);
+    }
+    if (cCounts != NULL) {
+        (*env)->ReleaseIntArrayElements(env, counts, cCounts, JNI_ABORT);
+    }
+    if (cOffsets != NULL) {
+        (*env)->ReleaseLongArrayElements(env, offsets, cOffsets, JNI_ABORT);
+    }
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_setup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1setup
+    (JNIEnv * env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+    int fd = syscall(__NR_io_uring_setup, entries, &p);
+    if (fd == -1) {
+        throwExceptionWithErrno(env, "Failed to set up io_uring");
+        return 0;
+    }
+
+    struct io_ring *ring = calloc(1, sizeof(struct io_ring));
+    if (ring == NULL) {
+        close(fd);
+        throwException(env, "Failed to allocate io_uring");
+        return 0;
+    }
+    ring->fd = fd;
+    ring->sq_len = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    ring->cq_len = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    ring->sqes_len = p.sq_entries * sizeof(struct io_uring_sqe);
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        if (ring->cq_len > ring->sq_len) {
+            ring->sq_len = ring->cq_len;
+        }
+        ring->cq_len = ring->sq_len;
+    }
+
+    ring->sq_ptr = mmap(NULL, ring->sq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        fd, IORING_OFF_SQ_RING);
+    if (ring->sq_ptr == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission queue");
+        io_ring_free(ring);
+        return 0;
+    }
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        ring->cq_ptr = ring->sq_ptr;
+    } else {
+        ring->cq_ptr = mmap(NULL, ring->cq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                            fd, IORING_OFF_CQ_RING);
+        if (ring->cq_ptr == MAP_FAILED) {
+            throwExceptionWithErrno(env, "Failed to map io_uring completion queue");
+            io_ring_free(ring);
+            return 0;
+        }
+    }
+    ring->sqes = mmap(NULL, ring->sqes_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      fd, IORING_OFF_SQES);
+    if (ring->sqes == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission entries");
+        io_ring_free(ring);
+        return 0;
+    }
+
+    char *sq = ring->sq_ptr;
+    ring->sq_head = (unsigned *) (sq + p.sq_off.head);
+    ring->sq_tail = (unsigned *) (sq + p.sq_off.tail);
+    ring->sq_mask = (unsigned *) (sq + p.sq_off.ring_mask);
+    ring->sq_array = (unsigned *) (sq + p.sq_off.array);
+    ring->sq_entries = p.sq_entries;
+    char *cq = ring->cq_ptr;
+    ring->cq_head = (unsigned *) (cq + p.cq_off.head);
+    ring->cq_tail = (unsigned *) (cq + p.cq_off.tail);
+    ring->cq_mask = (unsigned *) (cq + p.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe *) (cq + p.cq_off.cqes);
+    return (jlong) ring;
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_pwrite_batch
+ * Signature: (JI[J[I[JII)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1pwrite_1batch
+    (JNIEnv * env, jclass clazz, jlong ringAddress, jint fd, jlongArray pointers, jintArray counts,
+     jlongArray offsets, jint n, jint syncMode) {
+#ifdef HAVE_IO_URING
+    struct io_ring *ring = (struct io_ring *) ringAddress;
+    jlong *cPointers = (*env)->GetLongArrayElements(env, pointers, NULL);
+    jint *cCounts = (*env)->GetIntArrayElements(env, counts, NULL);
+    jlong *cOffsets = (*env)->GetLongArrayElements(env, offsets, NULL);
+    struct iovec *iovecs = malloc(sizeof(struct iovec) * (n > 0 ? n : 1));
+    if (cPointers == NULL || cCounts == NULL || cOffsets == NULL || iovecs == NULL) {
+        io_ring_release_batch(env, pointers, cPointers, counts, cCounts, offsets, cOffsets, iovecs);
+        if ((*env)->ExceptionCheck(env) == JNI_FALSE) {
+            throwException(env, "Failed to allocate write batch");
+        }
+        return -1;
+    }
+
+    long written = 0;
+    int error = 0;
+    int next = 0;
+    int synced = syncMode == 0;
+    while ((next < n || !synced) && error == 0) {
+        // Fill the submission queue with the next writes, and the sync once all the writes fit
+        unsigned head = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+        unsigned tail = *ring->sq_tail;
+        unsigned toSubmit = 0;
+        while (next < n && toSubmit < ring->sq_entries) {
+            unsigned index = tail & *ring->sq_mask;
+            struct io_uring_sqe *sqe = &ring->sqes[index];
+            memset(sqe, 0, sizeof(*sqe));
+            iovecs[next].iov_base = (void *) cPointers[next];
+            iovecs[next].iov_len = cCounts[next];
+            sqe->opcode = IORING_OP_WRITEV;
+            sqe->fd = fd;
+            sqe->addr = (unsigned long) &iovecs[next];
+            sqe->len = 1;
+            sqe->off = cOffsets[next];
+            sqe->user_data = next;
+            ring->sq_array[index] = index;
+            tail++;
+            toSubmit++;
+            next++;
+        }
+        if (next == n && !synced && toSubmit < ring->sq_entries) {
+            unsigned index = tail & *ring->sq_mask;
+            struct io_uring_sqe *sqe = &ring->sqes[index];
+            memset(sqe, 0, sizeof(*sqe));
+            sqe->opcode = IORING_OP_FSYNC;
+            sqe->fd = fd;
+            // The sync must not start before the writes complete
+            sqe->flags = IOSQE_IO_DRAIN;
+            sqe->fsync_flags = syncMode == 1 ? IORING_FSYNC_DATASYNC : 0;
+            sqe->user_data = (__u64) -1;
+            ring->sq_array[index] = index;
+            tail++;
+            toSubmit++;
+            synced = 1;
+        }
+        __atomic_store_n(ring->sq_tail, tail, __ATOMIC_RELEASE);
+
+        // Submit, and wait for all the completions
+        unsigned completed = 0;
+        while (completed < toSubmit) {
+            unsigned pending = tail - __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+            int res = syscall(__NR_io_uring_enter, ring->fd, pending, toSubmit - completed,
+                              IORING_ENTER_GETEVENTS, NULL, 0);
+            if (res == -1 && errno != EINTR && errno != EAGAIN && errno != EBUSY) {
+                error = errno;
+                // The buffers and the iovecs must stay valid until the kernel is done with the submitted writes.
+                // The entries left in the submission queue make the ring unusable, the caller discards it.
+                unsigned submitted = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE) - head;
+                io_ring_wait_completions(ring, submitted - completed);
+                break;
+            }
+
+            completed += io_ring_reap(ring, cCounts, n, &written, &next, &error);
+        }
+    }
+
+    io_ring_release_batch(env, pointers, cPointers, counts, cCounts, offsets, cOffsets, iovecs);
+
+    if (error != 0) {
+        errno = error;
+        throwExceptionWithErrno(env, "Failed to write batch on file");
+        return -1;
+    }
+    return written;
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_close
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1close
+  (JNIEnv * env, jclass clazz, jlong ringAddress) {
+#ifdef HAVE_IO_URING
+    io_ring_free((struct io_ring *) ringAddress);
+#endif
+}
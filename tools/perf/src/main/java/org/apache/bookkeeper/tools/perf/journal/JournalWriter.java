@@ -177,6 +177,31 @@ public class JournalWriter implements Runnable {
         )
         public int numJournalCallbackThreads = 8;
 
+        @Parameter(
+            names = {
+                "--direct-io"
+            },
+            description = "Write the journal with direct I/O (O_DIRECT), to compare with buffered writes"
+        )
+        public boolean journalDirectIO = false;
+
+        @Parameter(
+            names = {
+                "-ja", "--journal-alignment-size"
+            },
+            description = "Journal alignment size, 4096 is recommended with direct I/O"
+        )
+        public int journalAlignmentSize = 512;
+
+        @Parameter(
+            names = {
+                "-jv", "--journal-format-version"
+            },
+            description = "Journal format version to write, 8 packs the small entries of a test thread"
+                + " in a single record"
+        )
+        public int journalFormatVersion = 6;
+
     }
 
 
@@ -358,6 +383,8 @@ public class JournalWriter implements Runnable {
         ByteBuf payloadBuf = Unpooled.wrappedBuffer(payload);
         long[] entryIds = new long[numLedgersForThisThread];
         Arrays.fill(entryIds, 0L);
+        // Each test thread acts as a client connection, whose small entries the journal can pack together
+        final Object connectionCtx = new Object();
         while (true) {
             for (int i = 0; i < numJournals; i++) {
                 int ledgerIdx = ThreadLocalRandom.current().nextInt(numLedgersForThisThread);
@@ -409,7 +436,7 @@ public class JournalWriter implements Runnable {
                             Runtime.getRuntime().exit(-1);
                         }
                     },
-                    null
+                    connectionCtx
                 );
             }
         }
@@ -476,6 +503,9 @@ public class JournalWriter implements Runnable {
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalDirectIO(flags.journalDirectIO);
+        conf.setJournalAlignmentSize(flags.journalAlignmentSize);
+        conf.setJournalFormatVersionToWrite(flags.journalFormatVersion);
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());